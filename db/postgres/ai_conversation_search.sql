@@ -0,0 +1,24 @@
+-- Full-text search over AI conversations (titles, hot messages, archived blocks).
+-- Run as a DB admin against zenlink_db after the application has created its tables:
+--   psql -U postgres -d zenlink_db -f db/postgres/ai_conversation_search.sql
+--
+-- Text search config zenlink_ro (Romanian stemming on unaccented words); queries must use the same one.
+\ir zenlink_ro_text_search.sql
+
+-- Generated columns: maintained by Postgres on insert/update, never touched by Hibernate.
+ALTER TABLE ai_messages
+  ADD COLUMN IF NOT EXISTS content_tsv tsvector
+  GENERATED ALWAYS AS (to_tsvector('zenlink_ro'::regconfig, content)) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_ai_messages_content_tsv ON ai_messages USING gin(content_tsv);
+
+ALTER TABLE ai_conversations
+  ADD COLUMN IF NOT EXISTS title_tsv tsvector
+  GENERATED ALWAYS AS (to_tsvector('zenlink_ro'::regconfig, coalesce(title, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_ai_conversations_title_tsv ON ai_conversations USING gin(title_tsv);
+
+-- Archived blocks keep only a tsvector of their (compressed) text; filled by AiMessageArchiveService.
+ALTER TABLE ai_message_archive_blocks ADD COLUMN IF NOT EXISTS content_tsv tsvector;
+
+CREATE INDEX IF NOT EXISTS idx_ai_archive_blocks_content_tsv ON ai_message_archive_blocks USING gin(content_tsv);
@@ -0,0 +1,17 @@
+-- AI conversation/message keyset pagination indexes.
+-- Hibernate (ddl-auto=update) creates these on fresh databases; on a live database run this
+-- instead so the build does not lock the tables:
+--   psql -U postgres -d zenlink_db -f db/postgres/ai_conversations_keyset.sql
+--
+-- CREATE INDEX CONCURRENTLY cannot run inside a transaction block (do not wrap in BEGIN/COMMIT).
+
+-- Sidebar: WHERE user_id/user_role/scope_type/scope_id = ... ORDER BY updated_at DESC, id DESC
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_ai_conversations_owner_scope_updated
+  ON ai_conversations(user_id, user_role, scope_type, scope_id, updated_at, id);
+
+-- History pages: WHERE conversation_id = ? AND id < ? ORDER BY id DESC
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_ai_messages_conversation_id_id
+  ON ai_messages(conversation_id, id);
+
+-- Superseded by idx_ai_messages_conversation_id_id (same leading column).
+DROP INDEX CONCURRENTLY IF EXISTS idx_ai_messages_conversation_id;
@@ -1,5 +1,6 @@
 -- AI RAG bootstrap (patient files -> text/pages/chunks embeddings)
--- Run as a DB admin (e.g. postgres) against zenlink_db.
+-- Run as a DB admin (e.g. postgres) against zenlink_db, through psql (it includes zenlink_ro_text_search.sql):
+--   psql -U postgres -d zenlink_db -f db/postgres/ai_rag_bootstrap.sql
 --
 -- This creates:
 --  - patient_file_index: indexing status per file
@@ -12,12 +13,14 @@
 CREATE TABLE IF NOT EXISTS patient_file_index (
   file_id UUID PRIMARY KEY REFERENCES patient_files(id) ON DELETE CASCADE,
   patient_id BIGINT NOT NULL,
-  status TEXT NOT NULL, -- NEW|INDEXING|READY|ERROR
+  status TEXT NOT NULL, -- NEW|EXTRACTING|OCR|EMBEDDING|WRITING|READY|ERROR
   error_message TEXT,
   updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
 );
 
 CREATE INDEX IF NOT EXISTS idx_patient_file_index_patient_id ON patient_file_index(patient_id);
+-- Background indexer picks up queued / stuck rows by status.
+CREATE INDEX IF NOT EXISTS idx_patient_file_index_status_updated ON patient_file_index(status, updated_at);
 
 CREATE TABLE IF NOT EXISTS patient_file_pages (
   id BIGSERIAL PRIMARY KEY,
@@ -47,8 +50,96 @@ CREATE TABLE IF NOT EXISTS patient_file_chunks (
 CREATE INDEX IF NOT EXISTS idx_patient_file_chunks_patient_id ON patient_file_chunks(patient_id);
 CREATE INDEX IF NOT EXISTS idx_patient_file_chunks_file_id ON patient_file_chunks(file_id);
 
--- Optional (later, when you have enough rows): create a vector index for speed.
--- CREATE INDEX IF NOT EXISTS idx_patient_file_chunks_embedding
---   ON patient_file_chunks USING hnsw (embedding vector_l2_ops);
+-- Content-addressed reuse: a file whose content hash + embedding model match a READY file
+-- gets that file's pages/chunks copied instead of being extracted, OCR'd and embedded again. The copy
+-- includes the vectors: it saves the embedding calls, not storage or vector index size.
+ALTER TABLE patient_file_index ADD COLUMN IF NOT EXISTS content_sha256 TEXT;
+ALTER TABLE patient_file_index ADD COLUMN IF NOT EXISTS embedding_model TEXT;
+CREATE INDEX IF NOT EXISTS idx_patient_file_index_content_sha256
+  ON patient_file_index(content_sha256) WHERE status = 'READY';
+
+-- Incremental re-indexing: pages remember the text hash and chunker/embedder config version they
+-- were indexed with; only pages whose hash or config differ are re-chunked and re-embedded. A page whose
+-- boilerplate lines were blanked for chunking stores "<config>|mask=<hash of the chunked text>" instead.
+ALTER TABLE patient_file_pages ADD COLUMN IF NOT EXISTS text_sha256 TEXT;
+ALTER TABLE patient_file_pages ADD COLUMN IF NOT EXISTS index_config TEXT;
+ALTER TABLE patient_file_index ADD COLUMN IF NOT EXISTS index_config TEXT;
+
+-- Binary-quantized embeddings (sign bit per dimension, written by the app) for a cheap Hamming-distance
+-- first pass; the top candidates are rescored with the full vectors. Unlike the vector column (stored
+-- out of line), the 96-byte code lives in the main tuple, so the first pass never detoasts embeddings.
+-- There is no index on the codes: the first pass still visits every chunk of the patient.
+ALTER TABLE patient_file_chunks ADD COLUMN IF NOT EXISTS embedding_bits bit(768);
+-- Backfill rows written before the column existed. binary_quantize needs pgvector >= 0.7; on older versions
+-- those rows stay NULL and retrieval rescores them exactly on every query until their file is re-indexed.
+DO $$
+BEGIN
+  IF EXISTS (SELECT 1 FROM pg_proc WHERE proname = 'binary_quantize') THEN
+    EXECUTE 'UPDATE patient_file_chunks SET embedding_bits = binary_quantize(embedding)::bit(768) '
+         || 'WHERE embedding_bits IS NULL';
+  ELSE
+    RAISE NOTICE 'pgvector < 0.7: patient_file_chunks.embedding_bits not backfilled';
+  END IF;
+END $$;
+
+-- Full-text side of hybrid retrieval: Romanian stemming with accents folded (so "dinti" matches "dinți"),
+-- numbers such as tooth "36" or lab values kept as tokens. Requires the unaccent extension.
+\ir zenlink_ro_text_search.sql
+ALTER TABLE patient_file_chunks ADD COLUMN IF NOT EXISTS chunk_tsv tsvector
+  GENERATED ALWAYS AS (to_tsvector('zenlink_ro'::regconfig, chunk_text)) STORED;
+CREATE INDEX IF NOT EXISTS idx_patient_file_chunks_tsv ON patient_file_chunks USING gin (chunk_tsv);
+
+-- Where each chunk sits in its page's text ([char_start, char_end) of patient_file_pages.page_text), so
+-- overlapping hits from one page can be merged when the prompt context is packed. NULL for chunks written
+-- before; they get offsets when their file is re-indexed under the current chunker.
+ALTER TABLE patient_file_chunks ADD COLUMN IF NOT EXISTS char_start INT;
+ALTER TABLE patient_file_chunks ADD COLUMN IF NOT EXISTS char_end INT;
+
+-- patient_files.content_sha256 is added by the app (JPA); backfill hashes of older uploads once:
+-- UPDATE patient_files SET content_sha256 = encode(sha256(content), 'hex') WHERE content_sha256 IS NULL;
+
+-- Per-file summaries and a per-patient digest for broad PATIENT-scope questions, refreshed in the
+-- background after indexing. A summary is redone when the file's content_sha256 changes; the digest
+-- records which files it covers (source_files) so deletions and changes trigger a rebuild.
+CREATE TABLE IF NOT EXISTS patient_file_summaries (
+  file_id UUID PRIMARY KEY REFERENCES patient_files(id) ON DELETE CASCADE,
+  patient_id BIGINT NOT NULL,
+  content_sha256 TEXT NOT NULL,
+  summary TEXT NOT NULL,
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_patient_file_summaries_patient_id ON patient_file_summaries(patient_id);
+CREATE INDEX IF NOT EXISTS idx_patient_file_summaries_sha ON patient_file_summaries(content_sha256);
+
+CREATE TABLE IF NOT EXISTS patient_digests (
+  patient_id BIGINT PRIMARY KEY,
+  digest TEXT NOT NULL,
+  source_files UUID[] NOT NULL,
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- The indexer copies file content to disk in slices (substring(content FROM .. FOR ..)). PDFs barely
+-- compress, and uncompressed out-of-line storage lets Postgres read only the TOAST chunks of each slice
+-- instead of decompressing the whole value per slice. Applies to rows written after the change.
+ALTER TABLE patient_files ALTER COLUMN content SET STORAGE EXTERNAL;
+
+-- Boilerplate fingerprints (SimHash of letterhead / footer / disclaimer lines, plus the numbers they
+-- contain) per indexed file. Lines matching those of a patient's older files are left out of chunking.
+CREATE TABLE IF NOT EXISTS patient_file_boilerplate (
+  file_id UUID NOT NULL REFERENCES patient_files(id) ON DELETE CASCADE,
+  patient_id BIGINT NOT NULL,
+  simhash BIGINT NOT NULL,
+  digits TEXT NOT NULL,
+  PRIMARY KEY (file_id, simhash, digits)
+);
+
+CREATE INDEX IF NOT EXISTS idx_patient_file_boilerplate_patient_id ON patient_file_boilerplate(patient_id);
+
+-- Vector indexes on patient_file_chunks.embedding are created by the app (PgVectorIndexManager,
+-- rag.vector-index.*) with CREATE INDEX CONCURRENTLY once row counts cross the thresholds: a table-wide
+-- idx_patient_file_chunks_embedding_ann, and partial idx_patient_file_chunks_embedding_p<patient id>
+-- indexes (WHERE patient_id = ..) for large patients. The build needs maintenance_work_mem headroom;
+-- invalid indexes left by an interrupted build are dropped and rebuilt on the next check.
 
 
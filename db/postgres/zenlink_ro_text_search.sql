@@ -0,0 +1,18 @@
+-- Text search configuration shared by conversation search (ai_conversation_search.sql) and hybrid RAG
+-- retrieval (ai_rag_bootstrap.sql); both include this file with \ir, so run them through psql.
+--
+-- zenlink_ro = Romanian snowball stemming on unaccented words, so "măsea", "masea" and "măselei"
+-- all match each other, and "dinti" matches "dinți". Numbers (tooth "36", lab values) stay tokens.
+-- Queries must use the same configuration.
+
+CREATE EXTENSION IF NOT EXISTS unaccent;
+
+DO $$
+BEGIN
+  IF NOT EXISTS (SELECT 1 FROM pg_ts_config WHERE cfgname = 'zenlink_ro') THEN
+    CREATE TEXT SEARCH CONFIGURATION zenlink_ro (COPY = romanian);
+    ALTER TEXT SEARCH CONFIGURATION zenlink_ro
+      ALTER MAPPING FOR hword, hword_part, word WITH unaccent, romanian_stem;
+  END IF;
+END
+$$;
@@ -8,6 +8,9 @@ type ChatMessage = {
   content: string;
 };
 
+// Keyset cursor of the next (older) page of conversations, as returned by the list endpoint.
+type ConversationCursor = { beforeUpdatedAt: string; beforeId: number };
+
 type Props = {
   userId: string;
   userRole: 'PATIENT' | 'DOCTOR' | 'CLINIC';
@@ -26,6 +29,27 @@ function defaultBackendBaseUrl() {
   return API_BASE_URL;
 }
 
+function parseConversations(data: any): Array<{ id: number; title: string | null }> {
+  const rows = Array.isArray(data) ? data : Array.isArray(data?.conversations) ? data.conversations : [];
+  return rows
+    .filter((c: any) => c && typeof c.id === 'number')
+    .map((c: any) => ({ id: c.id as number, title: typeof c.title === 'string' ? c.title : null }));
+}
+
+function parseConversationCursor(data: any): ConversationCursor | null {
+  return typeof data?.nextBeforeUpdatedAt === 'string' && typeof data?.nextBeforeId === 'number'
+    ? { beforeUpdatedAt: data.nextBeforeUpdatedAt, beforeId: data.nextBeforeId }
+    : null;
+}
+
+function parseMessages(data: any): ChatMessage[] {
+  return Array.isArray(data?.messages)
+    ? data.messages
+        .filter((m: any) => m && (m.role === 'user' || m.role === 'assistant') && typeof m.content === 'string')
+        .map((m: any) => ({ role: m.role, content: m.content }))
+    : [];
+}
+
 export function AiChat({
   userId,
   userRole,
@@ -41,35 +65,51 @@ export function AiChat({
   const [sidebarOpen, setSidebarOpen] = useState(true);
 
   const [conversations, setConversations] = useState<Array<{ id: number; title: string | null }>>([]);
+  const [conversationCursor, setConversationCursor] = useState<ConversationCursor | null>(null);
   const [conversationId, setConversationId] = useState<number | null>(null);
   const [messages, setMessages] = useState<ChatMessage[]>([]);
+  // nextBeforeId of the loaded history: older messages exist when set.
+  const [olderMessagesCursor, setOlderMessagesCursor] = useState<number | null>(null);
   const [input, setInput] = useState('');
   const [isStreaming, setIsStreaming] = useState(false);
   const abortRef = useRef<AbortController | null>(null);
+  // Selected conversation for async callbacks, so a page arriving after a switch is dropped.
+  const conversationIdRef = useRef<number | null>(null);
+  conversationIdRef.current = conversationId;
 
   const canSend = useMemo(
     () => input.trim().length > 0 && !isStreaming && !!conversationId,
     [input, isStreaming, conversationId]
   );
 
+  function conversationsUrl(cursor: ConversationCursor | null) {
+    const page = cursor
+      ? `&beforeUpdatedAt=${encodeURIComponent(cursor.beforeUpdatedAt)}&beforeId=${encodeURIComponent(String(cursor.beforeId))}`
+      : '';
+    return `${baseUrl}/api/ai/conversations?userId=${encodeURIComponent(String(Number(userId)))}&userRole=${encodeURIComponent(
+      userRole
+    )}&scopeType=${encodeURIComponent(scopeType)}&scopeId=${encodeURIComponent(scopeId ? String(scopeId) : '')}${page}`;
+  }
+
+  function messagesUrl(id: number, beforeId: number | null) {
+    return `${baseUrl}/api/ai/conversations/${id}/messages?userId=${encodeURIComponent(
+      String(Number(userId))
+    )}&userRole=${encodeURIComponent(userRole)}&scopeType=${encodeURIComponent(scopeType)}&scopeId=${encodeURIComponent(
+      scopeId ? String(scopeId) : ''
+    )}${beforeId != null ? `&beforeId=${encodeURIComponent(String(beforeId))}` : ''}`;
+  }
+
   useEffect(() => {
     let cancelled = false;
     async function loadConversations() {
       if (!userId || !userRole) return;
-      const res = await fetch(
-        `${baseUrl}/api/ai/conversations?userId=${encodeURIComponent(String(Number(userId)))}&userRole=${encodeURIComponent(
-          userRole
-        )}&scopeType=${encodeURIComponent(scopeType)}&scopeId=${encodeURIComponent(scopeId ? String(scopeId) : '')}`
-      );
+      const res = await fetch(conversationsUrl(null));
       if (!res.ok) throw new Error(`HTTP ${res.status}`);
       const data = await res.json();
       if (cancelled) return;
-      const list = Array.isArray(data)
-        ? data
-            .filter((c: any) => c && typeof c.id === 'number')
-            .map((c: any) => ({ id: c.id as number, title: typeof c.title === 'string' ? c.title : null }))
-        : [];
+      const list = parseConversations(data);
       setConversations(list);
+      setConversationCursor(parseConversationCursor(data));
       if (list.length > 0) {
         setConversationId(list[0].id);
       } else {
@@ -80,6 +120,7 @@ export function AiChat({
 
     loadConversations().catch((e) => {
       setConversations([]);
+      setConversationCursor(null);
       setConversationId(null);
       setMessages([{ role: 'assistant', content: `Eroare la încărcarea conversațiilor: ${String(e?.message || e)}` }]);
     });
@@ -92,23 +133,14 @@ export function AiChat({
   useEffect(() => {
     let cancelled = false;
     async function loadMessages() {
+      setOlderMessagesCursor(null);
       if (!conversationId) return;
-      const res = await fetch(
-        `${baseUrl}/api/ai/conversations/${conversationId}/messages?userId=${encodeURIComponent(
-          String(Number(userId))
-        )}&userRole=${encodeURIComponent(userRole)}&scopeType=${encodeURIComponent(scopeType)}&scopeId=${encodeURIComponent(
-          scopeId ? String(scopeId) : ''
-        )}`
-      );
+      const res = await fetch(messagesUrl(conversationId, null));
       if (!res.ok) throw new Error(`HTTP ${res.status}`);
       const data = await res.json();
       if (cancelled) return;
-      const rows: ChatMessage[] = Array.isArray(data?.messages)
-        ? data.messages
-            .filter((m: any) => m && (m.role === 'user' || m.role === 'assistant') && typeof m.content === 'string')
-            .map((m: any) => ({ role: m.role, content: m.content }))
-        : [];
-      setMessages(rows);
+      setMessages(parseMessages(data));
+      setOlderMessagesCursor(typeof data?.nextBeforeId === 'number' ? data.nextBeforeId : null);
     }
 
     loadMessages().catch((e) => {
@@ -120,6 +152,43 @@ export function AiChat({
     };
   }, [baseUrl, conversationId, userId, userRole, scopeType, scopeId]);
 
+  async function loadMoreConversations() {
+    if (!conversationCursor) return;
+    const res = await fetch(conversationsUrl(conversationCursor));
+    if (!res.ok) throw new Error(`HTTP ${res.status}`);
+    const data = await res.json();
+    const page = parseConversations(data);
+    setConversations((prev) => [...prev, ...page.filter((c) => !prev.some((p) => p.id === c.id))]);
+    setConversationCursor(parseConversationCursor(data));
+  }
+
+  async function loadOlderMessages() {
+    if (!conversationId || olderMessagesCursor == null) return;
+    const id = conversationId;
+    const res = await fetch(messagesUrl(id, olderMessagesCursor));
+    if (!res.ok) throw new Error(`HTTP ${res.status}`);
+    const data = await res.json();
+    if (id !== conversationIdRef.current) return;
+    setMessages((prev) => [...parseMessages(data), ...prev]);
+    setOlderMessagesCursor(typeof data?.nextBeforeId === 'number' ? data.nextBeforeId : null);
+  }
+
+  function moreConversationsButton() {
+    if (!conversationCursor) return null;
+    return (
+      <button
+        onClick={() =>
+          loadMoreConversations().catch((e) => {
+            setMessages([{ role: 'assistant', content: `Eroare la încărcarea conversațiilor: ${String(e?.message || e)}` }]);
+          })
+        }
+        className="w-full px-3 py-2 bg-white/[0.02] hover:bg-white/[0.05] text-white/60 rounded-xl border border-white/[0.05] text-sm"
+      >
+        Mai multe conversații
+      </button>
+    );
+  }
+
   async function createConversation() {
     if (!userId || !userRole) return;
     const res = await fetch(`${baseUrl}/api/ai/conversations`, {
@@ -325,11 +394,27 @@ export function AiChat({
                     </div>
                   );
                 })}
+                {moreConversationsButton()}
               </div>
             </div>
           )}
 
           <div className="bg-white/[0.03] rounded-xl border border-white/[0.05] p-4 max-h-[420px] overflow-auto space-y-3">
+            {olderMessagesCursor != null && (
+              <button
+                onClick={() =>
+                  loadOlderMessages().catch((e) => {
+                    setMessages((prev) => [
+                      ...prev,
+                      { role: 'assistant', content: `Eroare la încărcarea istoricului: ${String(e?.message || e)}` },
+                    ]);
+                  })
+                }
+                className="w-full px-3 py-2 bg-white/[0.02] hover:bg-white/[0.05] text-white/60 rounded-xl border border-white/[0.05] text-sm"
+              >
+                Mesaje mai vechi
+              </button>
+            )}
             {messages.length === 0 && (
               <div className="text-white/50 text-sm">
                 {conversationId ? 'Conversație goală. Scrie primul mesaj.' : 'Creează o conversație nouă din dreapta.'}
@@ -433,6 +518,7 @@ export function AiChat({
                   </div>
                 );
               })}
+              {moreConversationsButton()}
             </div>
           </div>
         )}
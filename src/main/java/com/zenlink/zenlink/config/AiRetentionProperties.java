@@ -0,0 +1,69 @@
+package com.zenlink.zenlink.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Retention windows for AI conversations, per user role and scope:
+ * <pre>
+ * ai.retention.days.PATIENT.GENERAL=180
+ * ai.retention.days.DOCTOR.FILE=730
+ * </pre>
+ * Combinations without an entry are kept forever.
+ */
+@Component
+@ConfigurationProperties(prefix = "ai.retention")
+public class AiRetentionProperties {
+
+    private boolean enabled = true;
+    // role -> scopeType -> days since last update
+    private Map<String, Map<String, Integer>> days = new HashMap<>();
+    // Conversations deleted per transaction.
+    private int batchSize = 200;
+    // Pause between batches so purges never hold locks for long or starve chat traffic.
+    private long pauseMillis = 200;
+    private int maxBatchesPerRun = 500;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Map<String, Map<String, Integer>> getDays() {
+        return days;
+    }
+
+    public void setDays(Map<String, Map<String, Integer>> days) {
+        this.days = days;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    public void setPauseMillis(long pauseMillis) {
+        this.pauseMillis = pauseMillis;
+    }
+
+    public int getMaxBatchesPerRun() {
+        return maxBatchesPerRun;
+    }
+
+    public void setMaxBatchesPerRun(int maxBatchesPerRun) {
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+}
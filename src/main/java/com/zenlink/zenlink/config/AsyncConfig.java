@@ -0,0 +1,167 @@
+package com.zenlink.zenlink.config;
+
+import com.zenlink.zenlink.service.PdfTextExtractor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Background work that must stay off the request path (conversation compaction, archival jobs, etc.).
+ * Kept small on purpose: the Hikari pool only has 5 connections.
+ */
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class AsyncConfig {
+
+    public static final String AI_BACKGROUND_EXECUTOR = "aiBackgroundExecutor";
+    public static final String RAG_EMBEDDING_EXECUTOR = "ragEmbeddingExecutor";
+    public static final String RAG_INDEXING_EXECUTOR = "ragIndexingExecutor";
+    public static final String RAG_OCR_EXECUTOR = "ragOcrExecutor";
+    public static final String RAG_PDF_EXECUTOR = "ragPdfExecutor";
+    public static final String RAG_ANN_EXECUTOR = "ragAnnExecutor";
+    public static final String RAG_QUERY_EXECUTOR = "ragQueryExecutor";
+    public static final String RAG_SUMMARY_EXECUTOR = "ragSummaryExecutor";
+    public static final String RAG_VECTOR_INDEX_EXECUTOR = "ragVectorIndexExecutor";
+
+    @Bean(name = AI_BACKGROUND_EXECUTOR)
+    public ThreadPoolTaskExecutor aiBackgroundExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("ai-bg-");
+        // Background work is best-effort; when saturated, drop rather than block request threads.
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Embedding batches in flight at once (network bound, no DB connections held).
+     * Callers run the batch themselves when saturated, so indexing slows down instead of failing.
+     */
+    @Bean(name = RAG_EMBEDDING_EXECUTOR)
+    public ThreadPoolTaskExecutor ragEmbeddingExecutor(@Value("${rag.embedding.parallel-batches:3}") int parallelBatches) {
+        int threads = Math.max(1, parallelBatches);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads * 4);
+        executor.setThreadNamePrefix("rag-embed-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /** Extract / chunk+embed / write stages of file indexing. Rejections leave the file queued for the next sweep. */
+    @Bean(name = RAG_INDEXING_EXECUTOR)
+    public ThreadPoolTaskExecutor ragIndexingExecutor(@Value("${rag.indexing.workers:2}") int workers) {
+        int threads = Math.max(1, workers);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("rag-index-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * OCR is slow and CPU heavy; a separate pool keeps text PDFs from queueing behind scanned ones.
+     * One thread per ocrmypdf process allowed at once (each runs its own -j Tesseract workers).
+     */
+    @Bean(name = RAG_OCR_EXECUTOR)
+    public ThreadPoolTaskExecutor ragOcrExecutor(@Value("${rag.ocr.max-processes:1}") int maxProcesses) {
+        int threads = Math.max(1, maxProcesses);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("rag-ocr-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /** Page-range workers for PDF text extraction; each holds its own document handle, so this also caps handles on heap. */
+    @Bean(name = RAG_PDF_EXECUTOR)
+    public ThreadPoolTaskExecutor ragPdfExecutor(@Value("${rag.pdf.extract-workers:0}") int workers) {
+        int threads = PdfTextExtractor.resolveWorkers(workers);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads * 8);
+        executor.setThreadNamePrefix("rag-pdf-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /** Loads and refreshes in-memory ANN partitions; one at a time so a cold start cannot drain the Hikari pool. */
+    @Bean(name = RAG_ANN_EXECUTOR)
+    public ThreadPoolTaskExecutor ragAnnExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("rag-ann-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Lexical half of hybrid retrieval, run while the request thread embeds the question. Each task holds a
+     * JDBC connection briefly; when saturated the caller skips the lexical ranking rather than waiting.
+     */
+    @Bean(name = RAG_QUERY_EXECUTOR)
+    public ThreadPoolTaskExecutor ragQueryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("rag-query-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * File summaries and patient digests (chat-model calls). One at a time: refreshes are coalesced per
+     * patient and nobody waits for them. Rejections leave summaries stale until the next request.
+     */
+    @Bean(name = RAG_SUMMARY_EXECUTOR)
+    public ThreadPoolTaskExecutor ragSummaryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("rag-summary-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * pgvector index builds (CREATE INDEX CONCURRENTLY, minutes on large tables). One build at a time and
+     * none queued: the next periodic check plans again from what exists by then.
+     */
+    @Bean(name = RAG_VECTOR_INDEX_EXECUTOR)
+    public ThreadPoolTaskExecutor ragVectorIndexExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("rag-pgindex-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
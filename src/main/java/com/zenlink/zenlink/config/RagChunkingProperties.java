@@ -0,0 +1,71 @@
+package com.zenlink.zenlink.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chunk sizes in approximate tokens, with optional overrides per document type:
+ * <pre>
+ * rag.chunking.max-tokens=300
+ * rag.chunking.overlap-tokens=50
+ * rag.chunking.types.ocr.max-tokens=200
+ * </pre>
+ * Types without an entry (or with an unset field) use the defaults.
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.chunking")
+public class RagChunkingProperties {
+
+    private int maxTokens = 300;
+    private int overlapTokens = 50;
+    // document type (RagIndexConfig.TYPE_*) -> sizes
+    private Map<String, TypeSettings> types = new HashMap<>();
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public void setMaxTokens(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    public int getOverlapTokens() {
+        return overlapTokens;
+    }
+
+    public void setOverlapTokens(int overlapTokens) {
+        this.overlapTokens = overlapTokens;
+    }
+
+    public Map<String, TypeSettings> getTypes() {
+        return types;
+    }
+
+    public void setTypes(Map<String, TypeSettings> types) {
+        this.types = types;
+    }
+
+    public static class TypeSettings {
+        private Integer maxTokens;
+        private Integer overlapTokens;
+
+        public Integer getMaxTokens() {
+            return maxTokens;
+        }
+
+        public void setMaxTokens(Integer maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+
+        public Integer getOverlapTokens() {
+            return overlapTokens;
+        }
+
+        public void setOverlapTokens(Integer overlapTokens) {
+            this.overlapTokens = overlapTokens;
+        }
+    }
+}
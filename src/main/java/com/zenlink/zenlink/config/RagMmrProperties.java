@@ -0,0 +1,81 @@
+package com.zenlink.zenlink.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Diversity re-ranking of retrieved chunks (maximal marginal relevance), with the relevance/diversity
+ * trade-off optionally set per retrieval scope:
+ * <pre>
+ * rag.retrieval.mmr.enabled=true
+ * rag.retrieval.mmr.lambda=0.5
+ * rag.retrieval.mmr.over-fetch=3
+ * rag.retrieval.mmr.scopes.file.lambda=0.6
+ * </pre>
+ * Scopes without an entry use the default lambda.
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.retrieval.mmr")
+public class RagMmrProperties {
+
+    private boolean enabled = true;
+    // 1 = relevance only, 0 = diversity only
+    private double lambda = 0.5;
+    // candidates fetched per requested chunk
+    private int overFetch = 3;
+    // scope (PatientFileRagQueryService.SCOPE_*) -> settings
+    private Map<String, ScopeSettings> scopes = new HashMap<>();
+
+    public double lambdaFor(String scope) {
+        ScopeSettings s = scopes.get(scope);
+        double l = s != null && s.getLambda() != null ? s.getLambda() : lambda;
+        return Math.max(0.0, Math.min(1.0, l));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public void setLambda(double lambda) {
+        this.lambda = lambda;
+    }
+
+    public int getOverFetch() {
+        return overFetch;
+    }
+
+    public void setOverFetch(int overFetch) {
+        this.overFetch = overFetch;
+    }
+
+    public Map<String, ScopeSettings> getScopes() {
+        return scopes;
+    }
+
+    public void setScopes(Map<String, ScopeSettings> scopes) {
+        this.scopes = scopes;
+    }
+
+    public static class ScopeSettings {
+        private Double lambda;
+
+        public Double getLambda() {
+            return lambda;
+        }
+
+        public void setLambda(Double lambda) {
+            this.lambda = lambda;
+        }
+    }
+}
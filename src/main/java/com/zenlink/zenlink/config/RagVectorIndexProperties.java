@@ -0,0 +1,187 @@
+package com.zenlink.zenlink.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * pgvector ANN indexes on patient_file_chunks.embedding, created by the app once row counts cross the
+ * thresholds, and the per-query search settings derived from k:
+ * <pre>
+ * rag.vector-index.enabled=true
+ * rag.vector-index.type=hnsw
+ * rag.vector-index.min-rows=100000
+ * rag.vector-index.patient-min-rows=20000
+ * rag.vector-index.ef-search.factor=4
+ * rag.vector-index.ef-search.scopes.patient.factor=4
+ * </pre>
+ * Scopes without an entry use the default factor.
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.vector-index")
+public class RagVectorIndexProperties {
+
+    public enum Type { HNSW, IVFFLAT }
+
+    private boolean enabled = true;
+    private Type type = Type.HNSW;
+    // table-wide index once the table has this many chunks (estimate); 0 = never
+    private long minRows = 100_000;
+    // partial index (WHERE patient_id = ..) for each patient with at least this many chunks; 0 = never
+    private long patientMinRows = 20_000;
+    private int maxPatientIndexes = 50;
+    // HNSW build parameters
+    private int m = 16;
+    private int efConstruction = 64;
+    // IVFFlat lists; 0 = rows / 1000 (sqrt(rows) above a million rows)
+    private int lists = 0;
+    private int maintenanceWorkMemMb = 256;
+    private EfSearch efSearch = new EfSearch();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public long getMinRows() {
+        return minRows;
+    }
+
+    public void setMinRows(long minRows) {
+        this.minRows = minRows;
+    }
+
+    public long getPatientMinRows() {
+        return patientMinRows;
+    }
+
+    public void setPatientMinRows(long patientMinRows) {
+        this.patientMinRows = patientMinRows;
+    }
+
+    public int getMaxPatientIndexes() {
+        return maxPatientIndexes;
+    }
+
+    public void setMaxPatientIndexes(int maxPatientIndexes) {
+        this.maxPatientIndexes = maxPatientIndexes;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public void setM(int m) {
+        this.m = m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public void setEfConstruction(int efConstruction) {
+        this.efConstruction = efConstruction;
+    }
+
+    public int getLists() {
+        return lists;
+    }
+
+    public void setLists(int lists) {
+        this.lists = lists;
+    }
+
+    public int getMaintenanceWorkMemMb() {
+        return maintenanceWorkMemMb;
+    }
+
+    public void setMaintenanceWorkMemMb(int maintenanceWorkMemMb) {
+        this.maintenanceWorkMemMb = maintenanceWorkMemMb;
+    }
+
+    public EfSearch getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(EfSearch efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * hnsw.ef_search = clamp(k x factor, min, max); doubled when a table-wide index is filtered to one
+     * patient, since rows of other patients are visited and discarded. IVFFlat probes scale the same way.
+     */
+    public static class EfSearch {
+        private int min = 40;
+        private int max = 400;
+        private double factor = 4.0;
+        // scope (PatientFileRagQueryService.SCOPE_*) -> settings
+        private Map<String, ScopeSettings> scopes = new HashMap<>();
+
+        public int forQuery(String scope, int k, boolean filtered) {
+            ScopeSettings s = scopes.get(scope);
+            double f = s != null && s.getFactor() != null ? s.getFactor() : factor;
+            double ef = Math.ceil(Math.max(1, k) * Math.max(1.0, f)) * (filtered ? 2 : 1);
+            int lo = Math.max(1, min);
+            int hi = Math.max(lo, Math.min(1000, max));
+            return (int) Math.max(lo, Math.min(hi, ef));
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public void setMin(int min) {
+            this.min = min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        public void setMax(int max) {
+            this.max = max;
+        }
+
+        public double getFactor() {
+            return factor;
+        }
+
+        public void setFactor(double factor) {
+            this.factor = factor;
+        }
+
+        public Map<String, ScopeSettings> getScopes() {
+            return scopes;
+        }
+
+        public void setScopes(Map<String, ScopeSettings> scopes) {
+            this.scopes = scopes;
+        }
+    }
+
+    public static class ScopeSettings {
+        private Double factor;
+
+        public Double getFactor() {
+            return factor;
+        }
+
+        public void setFactor(Double factor) {
+            this.factor = factor;
+        }
+    }
+}
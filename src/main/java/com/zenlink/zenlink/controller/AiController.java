@@ -4,15 +4,23 @@ import com.zenlink.zenlink.dto.AiChatRequest;
 import com.zenlink.zenlink.dto.AiChatStreamRequest;
 import com.zenlink.zenlink.dto.AiChatHistoryResponse;
 import com.zenlink.zenlink.dto.AiConversationCreateRequest;
+import com.zenlink.zenlink.dto.AiConversationPage;
+import com.zenlink.zenlink.dto.AiConversationSearchResult;
 import com.zenlink.zenlink.dto.AiConversationSummary;
 import com.zenlink.zenlink.dto.AiMessage;
+import com.zenlink.zenlink.model.AiChatMessage;
 import com.zenlink.zenlink.model.AiConversation;
 import com.zenlink.zenlink.model.User;
 import com.zenlink.zenlink.model.UserRole;
+import com.zenlink.zenlink.service.AiConversationCompactionService;
+import com.zenlink.zenlink.service.AiConversationSearchService;
 import com.zenlink.zenlink.service.AiConversationService;
 import com.zenlink.zenlink.service.OpenAiChatService;
 import com.zenlink.zenlink.service.PatientFileRagIndexService;
 import com.zenlink.zenlink.service.PatientFileRagQueryService;
+import com.zenlink.zenlink.service.PatientFileSummaryService;
+import com.zenlink.zenlink.service.PgVectorIndexManager;
+import com.zenlink.zenlink.service.RagContextPacker;
 import com.zenlink.zenlink.service.MedicalProfileService;
 import com.zenlink.zenlink.service.PsychProfileService;
 import com.zenlink.zenlink.dto.MedicalProfileResponse;
@@ -31,10 +39,12 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.slf4j.Logger;
 
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,8 +67,13 @@ public class AiController {
 
     private final OpenAiChatService openAiChatService;
     private final AiConversationService aiConversationService;
+    private final AiConversationCompactionService compactionService;
+    private final AiConversationSearchService searchService;
     private final PatientFileRagIndexService ragIndexService;
     private final PatientFileRagQueryService ragQueryService;
+    private final PatientFileSummaryService summaryService;
+    private final PgVectorIndexManager vectorIndexManager;
+    private final RagContextPacker ragContextPacker;
     private final com.zenlink.zenlink.repository.PatientFileRepository patientFileRepository;
     private final MedicalProfileService medicalProfileService;
     private final PsychProfileService psychProfileService;
@@ -66,27 +81,41 @@ public class AiController {
     public AiController(
             OpenAiChatService openAiChatService,
             AiConversationService aiConversationService,
+            AiConversationCompactionService compactionService,
+            AiConversationSearchService searchService,
             @Autowired(required = false) PatientFileRagIndexService ragIndexService,
             @Autowired(required = false) PatientFileRagQueryService ragQueryService,
+            @Autowired(required = false) PatientFileSummaryService summaryService,
+            @Autowired(required = false) PgVectorIndexManager vectorIndexManager,
+            RagContextPacker ragContextPacker,
             com.zenlink.zenlink.repository.PatientFileRepository patientFileRepository,
             @Autowired(required = false) MedicalProfileService medicalProfileService,
             @Autowired(required = false) PsychProfileService psychProfileService
     ) {
         this.openAiChatService = openAiChatService;
         this.aiConversationService = aiConversationService;
+        this.compactionService = compactionService;
+        this.searchService = searchService;
         this.ragIndexService = ragIndexService;
         this.ragQueryService = ragQueryService;
+        this.summaryService = summaryService;
+        this.vectorIndexManager = vectorIndexManager;
+        this.ragContextPacker = ragContextPacker;
         this.patientFileRepository = patientFileRepository;
         this.medicalProfileService = medicalProfileService;
         this.psychProfileService = psychProfileService;
     }
 
     @GetMapping(value = "/conversations", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<AiConversationSummary>> listConversations(
+    public ResponseEntity<AiConversationPage> listConversations(
             @RequestParam Long userId,
             @RequestParam String userRole,
             @RequestParam String scopeType,
-            @RequestParam(required = false) String scopeId
+            @RequestParam(required = false) String scopeId,
+            // Keyset cursor: updatedAt + id of the last conversation on the previous page.
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeUpdatedAt,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "" + AiConversationService.DEFAULT_PAGE_SIZE) int limit
     ) {
         UserRole role;
         try {
@@ -94,11 +123,50 @@ public class AiController {
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
+        if ((beforeUpdatedAt == null) != (beforeId == null)) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        List<AiConversationSummary> out = aiConversationService.listConversations(userId, role, normScope(scopeType), normScopeId(scopeId)).stream()
+        List<AiConversationSummary> out = aiConversationService.listConversations(
+                        userId, role, normScope(scopeType), normScopeId(scopeId), beforeUpdatedAt, beforeId, limit
+                ).stream()
                 .map(c -> new AiConversationSummary(c.getId(), c.getTitle(), c.getUpdatedAt()))
                 .toList();
-        return ResponseEntity.ok(out);
+        // A full page means there may be older conversations; the last row on this page is the next cursor.
+        AiConversationSummary last = !out.isEmpty() && out.size() >= AiConversationService.clampPageSize(limit)
+                ? out.get(out.size() - 1)
+                : null;
+        return ResponseEntity.ok(new AiConversationPage(out,
+                last == null ? null : last.getUpdatedAt(), last == null ? null : last.getId()));
+    }
+
+    /**
+     * Ranked full-text search across the user's conversations (titles + messages, incl. archived ones).
+     * scopeType is optional: omit it to search every scope.
+     */
+    @GetMapping(value = "/conversations/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> searchConversations(
+            @RequestParam Long userId,
+            @RequestParam String userRole,
+            @RequestParam String q,
+            @RequestParam(required = false) String scopeType,
+            @RequestParam(required = false) String scopeId,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        UserRole role;
+        try {
+            role = UserRole.valueOf(userRole);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!searchService.isAvailable()) {
+            return ResponseEntity.status(503).body(Map.of("error", "Conversation search is not configured"));
+        }
+
+        String scope = scopeType == null || scopeType.isBlank() ? null : normScope(scopeType);
+        List<AiConversationSearchResult> results = searchService.search(
+                userId, role, scope, scope == null ? null : normScopeId(scopeId), q, limit);
+        return ResponseEntity.ok(results);
     }
 
     @PostMapping(value = "/conversations", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -151,7 +219,10 @@ public class AiController {
             @RequestParam Long userId,
             @RequestParam String userRole,
             @RequestParam String scopeType,
-            @RequestParam(required = false) String scopeId
+            @RequestParam(required = false) String scopeId,
+            // Keyset cursor: nextBeforeId from the previous (newer) page.
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "" + AiConversationService.DEFAULT_PAGE_SIZE) int limit
     ) {
         UserRole role;
         try {
@@ -161,8 +232,13 @@ public class AiController {
         }
 
         AiConversation c = aiConversationService.requireConversation(conversationId, userId, role, normScope(scopeType), normScopeId(scopeId));
-        List<AiMessage> messages = AiConversationService.toDtoMessages(aiConversationService.getMessages(c.getId()));
-        return ResponseEntity.ok(new AiChatHistoryResponse(c.getId(), messages));
+        List<AiChatMessage> page = aiConversationService.getMessagesPage(c.getId(), beforeId, limit);
+        List<AiMessage> messages = AiConversationService.toDtoMessages(page);
+        // A full page means there may be older messages; the oldest id on this page is the next cursor.
+        Long nextBeforeId = !page.isEmpty() && page.size() >= AiConversationService.clampPageSize(limit)
+                ? page.get(0).getId()
+                : null;
+        return ResponseEntity.ok(new AiChatHistoryResponse(c.getId(), messages, nextBeforeId));
     }
 
     /**
@@ -339,7 +415,14 @@ public class AiController {
 
                 String scopeType = normScope(request.getScopeType());
                 String scopeId = normScopeId(request.getScopeId());
-                String ragContext = buildRagContextForScope(scopeType, scopeId, userText);
+                String ragContext;
+                try {
+                    ragContext = buildRagContextForScope(scopeType, scopeId, userText);
+                } catch (Exception e) {
+                    // Indexing/embedding problems must not take the chat down; answer without document context.
+                    log.warn("RAG context unavailable for scope={} scopeId={}: {}", scopeType, scopeId, e.getMessage());
+                    ragContext = null;
+                }
                 
                 // Check if FILE scope and if it's an image - prepare image data for Vision API
                 byte[] imageData = null;
@@ -361,12 +444,14 @@ public class AiController {
                     }
                 }
 
-                // Build context from DB (last N turns), then stream the assistant reply.
-                List<AiMessage> context = aiConversationService.getMessagesForContext(conversation.getId(), 20);
-                String assistant = openAiChatService.streamChat(context, ragContext, outputStream, imageData, imageMimeType, scopeType);
+                // Build context from DB (summary checkpoint + last N turns), then stream the assistant reply.
+                AiConversationService.ConversationContext context = aiConversationService.getContext(conversation.getId(), compactionService.contextMessages());
+                String extraContext = withConversationSummary(ragContext, context.summary());
+                String assistant = openAiChatService.streamChat(context.recentMessages(), extraContext, outputStream, imageData, imageMimeType, scopeType);
 
                 // Persist assistant answer after streaming completes (1 write, not per token).
                 aiConversationService.appendMessage(conversation, "assistant", assistant);
+                compactionService.maybeCompactAsync(conversation.getId());
                 long dt = System.currentTimeMillis() - t0;
                 org.slf4j.LoggerFactory.getLogger(AiController.class).info("AI chat scope={} scopeId={} completed in {} ms", scopeType, scopeId, dt);
             } catch (Exception e) {
@@ -382,27 +467,55 @@ public class AiController {
                 .body(body);
     }
 
-    // Trigger indexing (RAG features disabled - Ollama removed)
+    // Queue indexing in the background (503 when rag.enabled=false); progress via /rag/patient/{patientId}/status
     @PostMapping(value = "/rag/patient/{patientId}/index-all")
     public ResponseEntity<?> indexAllPatientFiles(@PathVariable Long patientId) {
         if (ragIndexService == null) {
-            return ResponseEntity.status(503).body(java.util.Map.of("error", "RAG features disabled - Ollama removed"));
+            return ResponseEntity.status(503).body(java.util.Map.of("error", "RAG features disabled"));
         }
-        ragIndexService.ensureIndexedPatientAll(patientId);
-        return ResponseEntity.ok().body(java.util.Map.of("ok", true));
+        int queued = ragIndexService.enqueuePatientAll(patientId);
+        return ResponseEntity.accepted().body(java.util.Map.of("ok", true, "queued", queued));
     }
 
     @PostMapping(value = "/rag/file/{fileId}/index")
     public ResponseEntity<?> indexFile(@PathVariable UUID fileId) {
         if (ragIndexService == null) {
-            return ResponseEntity.status(503).body(java.util.Map.of("error", "RAG features disabled - Ollama removed"));
+            return ResponseEntity.status(503).body(java.util.Map.of("error", "RAG features disabled"));
+        }
+        ragIndexService.enqueueFile(fileId, true);
+        String status = ragIndexService.statusOf(fileId);
+        return ResponseEntity.accepted().body(java.util.Map.of("ok", true, "status", status == null ? "UNSUPPORTED" : status));
+    }
+
+    @GetMapping(value = "/rag/stats")
+    public ResponseEntity<?> ragStats() {
+        if (ragQueryService == null) {
+            return ResponseEntity.status(503).body(java.util.Map.of("error", "RAG features disabled"));
+        }
+        java.util.Map<String, Object> stats = new java.util.LinkedHashMap<>();
+        stats.put("queryEmbeddingCache", ragQueryService.queryEmbeddingCacheStats());
+        if (ragIndexService != null) {
+            stats.put("ocr", ragIndexService.ocrStats());
+            stats.put("scanClassifier", ragIndexService.scanClassifierStats());
+            stats.put("boilerplate", ragIndexService.boilerplateStats());
+        }
+        if (vectorIndexManager != null) {
+            stats.put("vectorIndex", vectorIndexManager.stats());
         }
-        ragIndexService.ensureIndexedFile(fileId);
-        return ResponseEntity.ok().body(java.util.Map.of("ok", true));
+        return ResponseEntity.ok(stats);
     }
 
+    @GetMapping(value = "/rag/patient/{patientId}/status")
+    public ResponseEntity<?> patientIndexStatus(@PathVariable Long patientId) {
+        if (ragIndexService == null) {
+            return ResponseEntity.status(503).body(java.util.Map.of("error", "RAG features disabled"));
+        }
+        return ResponseEntity.ok(ragIndexService.statusesForPatient(patientId));
+    }
+
+    /** Reads only what is already indexed; missing files are queued for the background indexer, never indexed inline. */
     private String buildRagContextForScope(String scopeType, String scopeId, String question) {
-        // RAG features disabled (Ollama removed) - return null for all scopes
+        // RAG disabled (rag.enabled=false) - no document context for any scope
         if (ragIndexService == null || ragQueryService == null) {
             return null;
         }
@@ -410,23 +523,39 @@ public class AiController {
         if ("FILE".equalsIgnoreCase(scopeType)) {
             if (scopeId == null) throw new RuntimeException("scopeId is required for FILE scope");
             UUID fileId = UUID.fromString(scopeId);
-            ragIndexService.ensureIndexedFile(fileId);
-            var hits = ragQueryService.retrieveForFile(fileId, question, 12);
-            return PatientFileRagQueryService.buildRagContext(hits);
+            ragIndexService.enqueueFile(fileId, false);
+            String status = ragIndexService.statusOf(fileId);
+            if (status == null) return null; // not a PDF
+            if (!ragIndexService.isSearchable(fileId)) {
+                return "NOTĂ: Documentul nu este încă indexat (status: " + status + "). Răspunde fără fragmente din document și spune că indexarea este în curs.\n";
+            }
+            var hits = ragQueryService.retrieveForFile(fileId, question, 8);
+            return ragContextPacker.pack(hits);
         }
         if ("PATIENT".equalsIgnoreCase(scopeType)) {
             if (scopeId == null) throw new RuntimeException("scopeId is required for PATIENT scope");
             Long patientId = Long.valueOf(scopeId);
-            // your rule: auto-index only top N newest
-            ragIndexService.ensureIndexedPatientTopN(patientId, 5);
-            var hits = ragQueryService.retrieveForPatient(patientId, question, 16);
-            String base = PatientFileRagQueryService.buildRagContext(hits);
-            return base + "\nNOTĂ: Pentru pacient, sunt indexate automat doar ultimele 5 fișiere. Dacă lipsesc informații, folosește butonul \"Index all\".\n";
+            // your rule: auto-index only top N newest (queued, answered from whatever is READY now)
+            ragIndexService.enqueuePatientTopN(patientId, 5);
+            // Broad questions ("istoricul pacientului") are answered from precomputed summaries when available
+            if (summaryService != null && PatientFileSummaryService.isBroadQuestion(question)) {
+                String summaries = summaryService.contextForPatient(patientId);
+                if (summaries != null) return summaries;
+            }
+            var hits = ragQueryService.retrieveForPatient(patientId, question, 10);
+            String base = ragContextPacker.pack(hits);
+            return base + "\nNOTĂ: Pentru pacient, sunt indexate automat doar ultimele 5 fișiere (în fundal). Dacă lipsesc informații, folosește butonul \"Index all\".\n";
         }
         // GENERAL scope -> no RAG
         return null;
     }
 
+    private static String withConversationSummary(String ragContext, String summary) {
+        if (summary == null || summary.isBlank()) return ragContext;
+        String memory = "REZUMATUL CONVERSAȚIEI ANTERIOARE (mesajele mai vechi nu mai sunt incluse integral):\n" + summary.trim() + "\n";
+        return ragContext == null || ragContext.isBlank() ? memory : memory + "\n" + ragContext;
+    }
+
     private static String normScope(String scopeType) {
         String t = scopeType == null ? "GENERAL" : scopeType.trim().toUpperCase();
         return switch (t) {
@@ -5,6 +5,8 @@ import com.zenlink.zenlink.dto.ReorderPatientFilesRequest;
 import com.zenlink.zenlink.dto.UpdatePatientFileRequest;
 import com.zenlink.zenlink.model.PatientFile;
 import com.zenlink.zenlink.repository.PatientFileRepository;
+import com.zenlink.zenlink.service.PatientFileRagIndexService;
+import com.zenlink.zenlink.service.PatientVectorIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -17,6 +19,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -28,6 +31,12 @@ public class PatientFileController {
     @Autowired
     private PatientFileRepository patientFileRepository;
 
+    @Autowired(required = false)
+    private PatientFileRagIndexService ragIndexService;
+
+    @Autowired(required = false)
+    private PatientVectorIndex vectorIndex;
+
     @GetMapping("/patient/{patientId}")
     public ResponseEntity<List<PatientFileResponse>> listPatientFiles(@PathVariable Long patientId) {
         List<PatientFile> files = patientFileRepository.findByPatientIdOrderBySortRankDescUploadedAtDesc(patientId);
@@ -53,6 +62,14 @@ public class PatientFileController {
             pf.setContent(file.getBytes());
 
             PatientFile saved = patientFileRepository.save(pf);
+            if (ragIndexService != null) {
+                // Index in the background so the document is ready before the first question about it
+                try {
+                    ragIndexService.enqueueFile(saved.getId(), false);
+                } catch (Exception e) {
+                    // Upload succeeded; the file gets queued again on first use
+                }
+            }
             return ResponseEntity.ok(PatientFileResponse.fromEntity(saved));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(Map.of("message", "Failed to upload file"));
@@ -81,6 +98,9 @@ public class PatientFileController {
                         f.setName(request.getName().trim());
                     }
                     PatientFile saved = patientFileRepository.save(f);
+                    if (vectorIndex != null) {
+                        vectorIndex.onFileRenamed(saved.getPatientId(), saved.getId(), saved.getName());
+                    }
                     return ResponseEntity.ok(PatientFileResponse.fromEntity(saved));
                 })
                 .orElse(ResponseEntity.notFound().build());
@@ -88,10 +108,17 @@ public class PatientFileController {
 
     @DeleteMapping("/{fileId}")
     public ResponseEntity<?> deleteFile(@PathVariable UUID fileId) {
-        if (!patientFileRepository.existsById(fileId)) {
+        Optional<PatientFileRepository.Fingerprint> existing = patientFileRepository.findFingerprintById(fileId);
+        if (existing.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         patientFileRepository.deleteById(fileId);
+        if (ragIndexService != null) {
+            ragIndexService.cancelIndexing(fileId);
+        }
+        if (vectorIndex != null) {
+            vectorIndex.onFileDeleted(existing.get().getPatientId(), fileId);
+        }
         return ResponseEntity.ok(Map.of("ok", true));
     }
 
@@ -5,12 +5,19 @@ import java.util.List;
 public class AiChatHistoryResponse {
     private Long conversationId;
     private List<AiMessage> messages;
+    // Pass back as beforeId to load the previous page; null when there is nothing older.
+    private Long nextBeforeId;
 
     public AiChatHistoryResponse() {}
 
     public AiChatHistoryResponse(Long conversationId, List<AiMessage> messages) {
+        this(conversationId, messages, null);
+    }
+
+    public AiChatHistoryResponse(Long conversationId, List<AiMessage> messages, Long nextBeforeId) {
         this.conversationId = conversationId;
         this.messages = messages;
+        this.nextBeforeId = nextBeforeId;
     }
 
     public Long getConversationId() {
@@ -28,6 +35,12 @@ public class AiChatHistoryResponse {
     public void setMessages(List<AiMessage> messages) {
         this.messages = messages;
     }
-}
 
+    public Long getNextBeforeId() {
+        return nextBeforeId;
+    }
 
+    public void setNextBeforeId(Long nextBeforeId) {
+        this.nextBeforeId = nextBeforeId;
+    }
+}
@@ -0,0 +1,43 @@
+package com.zenlink.zenlink.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class AiConversationPage {
+    private List<AiConversationSummary> conversations;
+    // Pass back as beforeUpdatedAt + beforeId to load the next (older) page; null when there is nothing older.
+    private LocalDateTime nextBeforeUpdatedAt;
+    private Long nextBeforeId;
+
+    public AiConversationPage() {}
+
+    public AiConversationPage(List<AiConversationSummary> conversations, LocalDateTime nextBeforeUpdatedAt, Long nextBeforeId) {
+        this.conversations = conversations;
+        this.nextBeforeUpdatedAt = nextBeforeUpdatedAt;
+        this.nextBeforeId = nextBeforeId;
+    }
+
+    public List<AiConversationSummary> getConversations() {
+        return conversations;
+    }
+
+    public void setConversations(List<AiConversationSummary> conversations) {
+        this.conversations = conversations;
+    }
+
+    public LocalDateTime getNextBeforeUpdatedAt() {
+        return nextBeforeUpdatedAt;
+    }
+
+    public void setNextBeforeUpdatedAt(LocalDateTime nextBeforeUpdatedAt) {
+        this.nextBeforeUpdatedAt = nextBeforeUpdatedAt;
+    }
+
+    public Long getNextBeforeId() {
+        return nextBeforeId;
+    }
+
+    public void setNextBeforeId(Long nextBeforeId) {
+        this.nextBeforeId = nextBeforeId;
+    }
+}
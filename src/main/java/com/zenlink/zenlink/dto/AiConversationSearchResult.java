@@ -0,0 +1,93 @@
+package com.zenlink.zenlink.dto;
+
+import java.time.LocalDateTime;
+
+public class AiConversationSearchResult {
+    private Long conversationId;
+    private String title;
+    private String scopeType;
+    private String scopeId;
+    private LocalDateTime updatedAt;
+    private double rank;
+    // Highlighted excerpt of the best-matching message (matches wrapped in <b>…</b>); null for title/archive-only hits.
+    private String snippet;
+    private Long messageId;
+
+    public AiConversationSearchResult() {}
+
+    public AiConversationSearchResult(Long conversationId, String title, String scopeType, String scopeId,
+                                      LocalDateTime updatedAt, double rank, String snippet, Long messageId) {
+        this.conversationId = conversationId;
+        this.title = title;
+        this.scopeType = scopeType;
+        this.scopeId = scopeId;
+        this.updatedAt = updatedAt;
+        this.rank = rank;
+        this.snippet = snippet;
+        this.messageId = messageId;
+    }
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getScopeType() {
+        return scopeType;
+    }
+
+    public void setScopeType(String scopeType) {
+        this.scopeType = scopeType;
+    }
+
+    public String getScopeId() {
+        return scopeId;
+    }
+
+    public void setScopeId(String scopeId) {
+        this.scopeId = scopeId;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public double getRank() {
+        return rank;
+    }
+
+    public void setRank(double rank) {
+        this.rank = rank;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+}
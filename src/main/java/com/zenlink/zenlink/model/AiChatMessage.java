@@ -6,7 +6,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "ai_messages", indexes = {
-        @Index(name = "idx_ai_messages_conversation_id", columnList = "conversation_id")
+        @Index(name = "idx_ai_messages_conversation_id_id", columnList = "conversation_id, id")
 })
 public class AiChatMessage {
 
@@ -40,6 +40,17 @@ public class AiChatMessage {
         this.content = content;
     }
 
+    /**
+     * Rehydrated from a cold archive block (see AiMessageArchiveService); detached, never persisted.
+     */
+    public AiChatMessage(Long id, AiConversation conversation, String role, String content, LocalDateTime createdAt) {
+        this.id = id;
+        this.conversation = conversation;
+        this.role = role;
+        this.content = content;
+        this.createdAt = createdAt;
+    }
+
     public Long getId() {
         return id;
     }
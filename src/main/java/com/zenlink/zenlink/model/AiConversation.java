@@ -7,7 +7,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "ai_conversations")
+@Table(name = "ai_conversations", indexes = {
+        // Matches the sidebar keyset query: owner + scope equality, then (updated_at, id) for ordering/cursor.
+        @Index(name = "idx_ai_conversations_owner_scope_updated", columnList = "user_id, user_role, scope_type, scope_id, updated_at, id"),
+        // Retention purge: expired conversations per (role, scope), oldest first.
+        @Index(name = "idx_ai_conversations_retention", columnList = "user_role, scope_type, updated_at")
+})
 public class AiConversation {
 
     @Id
@@ -31,6 +36,7 @@ public class AiConversation {
     @Column(name = "scope_id")
     private String scopeId; // patientId (Long) or fileId (UUID) as string
 
+    // Not used for deletes: AiConversationRetentionService removes conversations with set-based deletes.
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<AiChatMessage> messages = new ArrayList<>();
 
@@ -0,0 +1,84 @@
+package com.zenlink.zenlink.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Rolling summary of a conversation up to (and including) {@code throughMessageId}.
+ * Each checkpoint folds the previous checkpoint's summary with the turns that came after it,
+ * so only the latest one is needed to rebuild context.
+ */
+@Entity
+@Table(name = "ai_conversation_checkpoints", indexes = {
+        @Index(name = "idx_ai_checkpoints_conversation_through", columnList = "conversation_id, through_message_id")
+})
+public class AiConversationCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "conversation_id", nullable = false)
+    private AiConversation conversation;
+
+    @Column(columnDefinition = "text", nullable = false)
+    private String summary;
+
+    // First and last ai_messages.id folded into this checkpoint (the previous checkpoint covers everything before).
+    @Column(name = "from_message_id", nullable = false)
+    private Long fromMessageId;
+
+    @Column(name = "through_message_id", nullable = false)
+    private Long throughMessageId;
+
+    @Column(name = "folded_messages", nullable = false)
+    private int foldedMessages;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public AiConversationCheckpoint() {}
+
+    public AiConversationCheckpoint(AiConversation conversation, String summary, Long fromMessageId, Long throughMessageId, int foldedMessages) {
+        this.conversation = conversation;
+        this.summary = summary;
+        this.fromMessageId = fromMessageId;
+        this.throughMessageId = throughMessageId;
+        this.foldedMessages = foldedMessages;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public AiConversation getConversation() {
+        return conversation;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public Long getFromMessageId() {
+        return fromMessageId;
+    }
+
+    public Long getThroughMessageId() {
+        return throughMessageId;
+    }
+
+    public int getFoldedMessages() {
+        return foldedMessages;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,105 @@
+package com.zenlink.zenlink.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cold storage for messages of idle conversations: a contiguous id range of one conversation's
+ * ai_messages rows, serialized and compressed into a single row.
+ */
+@Entity
+@Table(name = "ai_message_archive_blocks", indexes = {
+        @Index(name = "idx_ai_archive_blocks_conversation_first", columnList = "conversation_id, first_message_id")
+})
+public class AiMessageArchiveBlock {
+
+    public static final String CODEC_DEFLATE_JSON = "DEFLATE_JSON";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "conversation_id", nullable = false)
+    private AiConversation conversation;
+
+    @Column(name = "first_message_id", nullable = false)
+    private Long firstMessageId;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "message_count", nullable = false)
+    private int messageCount;
+
+    @Column(nullable = false)
+    private String codec;
+
+    @Column(name = "raw_bytes", nullable = false)
+    private int rawBytes;
+
+    // Same binary binding as PatientFile.content (bytea, not OID).
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] payload;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public AiMessageArchiveBlock() {}
+
+    public AiMessageArchiveBlock(AiConversation conversation, Long firstMessageId, Long lastMessageId, int messageCount,
+                                 String codec, int rawBytes, byte[] payload) {
+        this.conversation = conversation;
+        this.firstMessageId = firstMessageId;
+        this.lastMessageId = lastMessageId;
+        this.messageCount = messageCount;
+        this.codec = codec;
+        this.rawBytes = rawBytes;
+        this.payload = payload;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public AiConversation getConversation() {
+        return conversation;
+    }
+
+    public Long getFirstMessageId() {
+        return firstMessageId;
+    }
+
+    public Long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public int getRawBytes() {
+        return rawBytes;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
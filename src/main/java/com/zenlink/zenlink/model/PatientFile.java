@@ -7,11 +7,16 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
 import java.util.UUID;
 
 @Entity
-@Table(name = "patient_files")
+@Table(name = "patient_files", indexes = {
+        @Index(name = "idx_patient_files_content_sha256", columnList = "content_sha256")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -44,12 +49,27 @@ public class PatientFile {
     @Column(nullable = false, columnDefinition = "bytea")
     private byte[] content;
 
+    // SHA-256 (hex) of content; identical uploads share their RAG index artifacts.
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
     @PrePersist
     protected void onCreate() {
         uploadedAt = LocalDateTime.now();
         if (sortRank == null) {
             sortRank = System.currentTimeMillis();
         }
+        if (contentSha256 == null && content != null) {
+            contentSha256 = sha256Hex(content);
+        }
+    }
+
+    public static String sha256Hex(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
 
@@ -1,14 +1,40 @@
 package com.zenlink.zenlink.repository;
 
 import com.zenlink.zenlink.model.AiChatMessage;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface AiChatMessageRepository extends JpaRepository<AiChatMessage, Long> {
     List<AiChatMessage> findByConversationIdOrderByIdAsc(Long conversationId);
-}
 
+    // Newest-first keyset pages over idx_ai_messages_conversation_id_id; callers reverse for display.
+    List<AiChatMessage> findByConversationIdOrderByIdDesc(Long conversationId, Limit limit);
+
+    List<AiChatMessage> findByConversationIdAndIdLessThanOrderByIdDesc(Long conversationId, Long beforeId, Limit limit);
+
+    // Turns after a summary checkpoint (oldest first / newest first).
+    List<AiChatMessage> findByConversationIdAndIdGreaterThanOrderByIdAsc(Long conversationId, Long afterId, Limit limit);
+
+    List<AiChatMessage> findByConversationIdAndIdGreaterThanOrderByIdDesc(Long conversationId, Long afterId, Limit limit);
 
+    long countByConversationIdAndIdGreaterThan(Long conversationId, Long afterId);
+
+    // Archive blocks: oldest hot rows up to the newest id seen when the conversation was picked as idle.
+    List<AiChatMessage> findByConversationIdAndIdLessThanEqualOrderByIdAsc(Long conversationId, Long throughId, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM AiChatMessage m WHERE m.conversation.id = :conversationId AND m.id BETWEEN :fromId AND :throughId")
+    int deleteRange(@Param("conversationId") Long conversationId, @Param("fromId") Long fromId, @Param("throughId") Long throughId);
+
+    @Modifying
+    @Query("DELETE FROM AiChatMessage m WHERE m.conversation.id IN :conversationIds")
+    int deleteByConversationIds(@Param("conversationIds") Collection<Long> conversationIds);
+}
@@ -0,0 +1,20 @@
+package com.zenlink.zenlink.repository;
+
+import com.zenlink.zenlink.model.AiConversationCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+@Repository
+public interface AiConversationCheckpointRepository extends JpaRepository<AiConversationCheckpoint, Long> {
+    Optional<AiConversationCheckpoint> findFirstByConversationIdOrderByThroughMessageIdDesc(Long conversationId);
+
+    @Modifying
+    @Query("DELETE FROM AiConversationCheckpoint c WHERE c.conversation.id IN :conversationIds")
+    int deleteByConversationIds(@Param("conversationIds") Collection<Long> conversationIds);
+}
@@ -2,21 +2,69 @@ package com.zenlink.zenlink.repository;
 
 import com.zenlink.zenlink.model.AiConversation;
 import com.zenlink.zenlink.model.UserRole;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface AiConversationRepository extends JpaRepository<AiConversation, Long> {
-    List<AiConversation> findByUserIdAndUserRoleAndScopeTypeAndScopeIdOrderByUpdatedAtDesc(
-            Long userId,
-            UserRole userRole,
-            String scopeType,
-            String scopeId
+
+    // Keyset pages (updatedAt DESC, id DESC). Both variants are served by idx_ai_conversations_owner_scope_updated;
+    // GENERAL scope has no scopeId, so it gets its own IS NULL query instead of an OR that defeats the index.
+    @Query("SELECT c FROM AiConversation c " +
+           "WHERE c.userId = :userId AND c.userRole = :userRole AND c.scopeType = :scopeType AND c.scopeId = :scopeId " +
+           "AND (c.updatedAt < :beforeUpdatedAt OR (c.updatedAt = :beforeUpdatedAt AND c.id < :beforeId)) " +
+           "ORDER BY c.updatedAt DESC, c.id DESC")
+    List<AiConversation> findPageBefore(
+            @Param("userId") Long userId,
+            @Param("userRole") UserRole userRole,
+            @Param("scopeType") String scopeType,
+            @Param("scopeId") String scopeId,
+            @Param("beforeUpdatedAt") LocalDateTime beforeUpdatedAt,
+            @Param("beforeId") Long beforeId,
+            Limit limit
+    );
+
+    @Query("SELECT c FROM AiConversation c " +
+           "WHERE c.userId = :userId AND c.userRole = :userRole AND c.scopeType = :scopeType AND c.scopeId IS NULL " +
+           "AND (c.updatedAt < :beforeUpdatedAt OR (c.updatedAt = :beforeUpdatedAt AND c.id < :beforeId)) " +
+           "ORDER BY c.updatedAt DESC, c.id DESC")
+    List<AiConversation> findPageBeforeWithoutScopeId(
+            @Param("userId") Long userId,
+            @Param("userRole") UserRole userRole,
+            @Param("scopeType") String scopeType,
+            @Param("beforeUpdatedAt") LocalDateTime beforeUpdatedAt,
+            @Param("beforeId") Long beforeId,
+            Limit limit
     );
 
+    // Archive candidates: idle conversations that still have rows in the hot ai_messages table.
+    @Query("SELECT c.id FROM AiConversation c WHERE c.updatedAt < :idleSince " +
+           "AND EXISTS (SELECT 1 FROM AiChatMessage m WHERE m.conversation = c) ORDER BY c.updatedAt ASC")
+    List<Long> findIdleWithHotMessages(@Param("idleSince") LocalDateTime idleSince, Limit limit);
+
+    // Retention candidates, oldest first (idx_ai_conversations_retention).
+    @Query("SELECT c.id FROM AiConversation c WHERE c.userRole = :userRole AND c.scopeType = :scopeType " +
+           "AND c.updatedAt < :cutoff ORDER BY c.updatedAt ASC")
+    List<Long> findExpiredIds(
+            @Param("userRole") UserRole userRole,
+            @Param("scopeType") String scopeType,
+            @Param("cutoff") LocalDateTime cutoff,
+            Limit limit
+    );
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM AiConversation c WHERE c.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
     Optional<AiConversation> findByIdAndUserIdAndUserRoleAndScopeTypeAndScopeId(
             Long id,
             Long userId,
@@ -25,5 +73,3 @@ public interface AiConversationRepository extends JpaRepository<AiConversation,
             String scopeId
     );
 }
-
-
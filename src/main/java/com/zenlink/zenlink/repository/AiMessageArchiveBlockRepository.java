@@ -0,0 +1,25 @@
+package com.zenlink.zenlink.repository;
+
+import com.zenlink.zenlink.model.AiMessageArchiveBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AiMessageArchiveBlockRepository extends JpaRepository<AiMessageArchiveBlock, Long> {
+    boolean existsByConversationId(Long conversationId);
+
+    List<AiMessageArchiveBlock> findByConversationIdOrderByFirstMessageIdAsc(Long conversationId);
+
+    // Blocks that may hold messages older than a cursor, newest block first.
+    List<AiMessageArchiveBlock> findByConversationIdAndFirstMessageIdLessThanOrderByFirstMessageIdDesc(Long conversationId, Long beforeId);
+
+    @Modifying
+    @Query("DELETE FROM AiMessageArchiveBlock b WHERE b.conversation.id IN :conversationIds")
+    int deleteByConversationIds(@Param("conversationIds") Collection<Long> conversationIds);
+}
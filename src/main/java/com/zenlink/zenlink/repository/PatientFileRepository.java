@@ -5,11 +5,22 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface PatientFileRepository extends JpaRepository<PatientFile, UUID> {
     List<PatientFile> findByPatientIdOrderBySortRankDescUploadedAtDesc(Long patientId);
+
+    /** Owner + content hash without loading the file bytes. */
+    interface Fingerprint {
+        Long getPatientId();
+        String getName();
+        Long getSize();
+        String getContentSha256();
+    }
+
+    Optional<Fingerprint> findFingerprintById(UUID id);
 }
 
 
@@ -0,0 +1,149 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.AsyncConfig;
+import com.zenlink.zenlink.model.AiChatMessage;
+import com.zenlink.zenlink.model.AiConversation;
+import com.zenlink.zenlink.model.AiConversationCheckpoint;
+import com.zenlink.zenlink.repository.AiChatMessageRepository;
+import com.zenlink.zenlink.repository.AiConversationCheckpointRepository;
+import com.zenlink.zenlink.repository.AiConversationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Background compaction of long conversations into rolling summary checkpoints.
+ * Each run summarizes only the turns since the previous checkpoint (plus that checkpoint's summary),
+ * so cost per run is bounded regardless of conversation length.
+ */
+@Service
+public class AiConversationCompactionService {
+
+    private static final Logger log = LoggerFactory.getLogger(AiConversationCompactionService.class);
+
+    // Upper bound on turns folded per run; a backlog is worked off over several runs.
+    private static final int MAX_FOLD_PER_RUN = 200;
+    private static final int MAX_MESSAGE_CHARS = 2000;
+
+    private static final String SYSTEM_PROMPT =
+            "You maintain a running memory of a conversation between a user and ZenLink AI (dental/healthcare assistant).\n" +
+            "Merge the PREVIOUS SUMMARY with the NEW TURNS into one updated summary.\n" +
+            "- Keep every durable fact: symptoms, dates, teeth/locations, medications, allergies, test results, decisions, open questions.\n" +
+            "- Drop greetings, repetition and formatting; JSON answers should be reduced to their content.\n" +
+            "- Write concise bullet points in Romanian. Output ONLY the summary.";
+
+    private final AiConversationRepository conversationRepository;
+    private final AiChatMessageRepository messageRepository;
+    private final AiConversationCheckpointRepository checkpointRepository;
+    private final OpenAiChatService openAiChatService;
+    private final int contextMessages;
+    private final int triggerMessages;
+    private final int keepRecentMessages;
+    private final int maxSummaryTokens;
+
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    public AiConversationCompactionService(
+            AiConversationRepository conversationRepository,
+            AiChatMessageRepository messageRepository,
+            AiConversationCheckpointRepository checkpointRepository,
+            OpenAiChatService openAiChatService,
+            @Value("${ai.context.recent-messages:20}") int contextMessages,
+            @Value("${ai.context.compaction.trigger-messages:24}") int triggerMessages,
+            @Value("${ai.context.compaction.keep-recent-messages:8}") int keepRecentMessages,
+            @Value("${ai.context.compaction.max-summary-tokens:700}") int maxSummaryTokens
+    ) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.openAiChatService = openAiChatService;
+        this.contextMessages = Math.max(4, contextMessages);
+        this.keepRecentMessages = Math.min(this.contextMessages - 2, Math.max(2, keepRecentMessages));
+        // Turns after the checkpoint reach the model only through the context window: compact before they outgrow it
+        this.triggerMessages = Math.min(this.contextMessages, Math.max(this.keepRecentMessages + 2, triggerMessages));
+        this.maxSummaryTokens = maxSummaryTokens;
+    }
+
+    /** How many turns after the latest checkpoint go into the prompt verbatim. */
+    public int contextMessages() {
+        return contextMessages;
+    }
+
+    /**
+     * Fire-and-forget: folds older turns into a new checkpoint if enough have accumulated.
+     * Concurrent calls for the same conversation collapse into one run.
+     */
+    @Async(AsyncConfig.AI_BACKGROUND_EXECUTOR)
+    public void maybeCompactAsync(Long conversationId) {
+        if (conversationId == null || !openAiChatService.isEnabled()) return;
+        if (!inFlight.add(conversationId)) return;
+        try {
+            compact(conversationId);
+        } catch (Exception e) {
+            log.warn("Compaction failed for conversation {}: {}", conversationId, e.getMessage());
+        } finally {
+            inFlight.remove(conversationId);
+        }
+    }
+
+    /**
+     * @return true if a new checkpoint was written
+     */
+    public boolean compact(Long conversationId) throws Exception {
+        AiConversationCheckpoint previous = checkpointRepository.findFirstByConversationIdOrderByThroughMessageIdDesc(conversationId)
+                .orElse(null);
+        long afterId = previous == null ? 0L : previous.getThroughMessageId();
+
+        long pending = messageRepository.countByConversationIdAndIdGreaterThan(conversationId, afterId);
+        if (pending < triggerMessages) return false;
+
+        int foldCount = (int) Math.min(MAX_FOLD_PER_RUN, pending - keepRecentMessages);
+        List<AiChatMessage> toFold = messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(
+                conversationId, afterId, Limit.of(foldCount));
+        if (toFold.isEmpty()) return false;
+
+        String prompt = buildPrompt(previous == null ? null : previous.getSummary(), toFold);
+        long t0 = System.currentTimeMillis();
+        String summary = openAiChatService.completeText(SYSTEM_PROMPT, prompt, maxSummaryTokens);
+        if (summary == null || summary.isBlank()) {
+            log.warn("Compaction for conversation {} returned an empty summary; keeping previous checkpoint", conversationId);
+            return false;
+        }
+
+        AiConversation conversation = conversationRepository.getReferenceById(conversationId);
+        checkpointRepository.save(new AiConversationCheckpoint(
+                conversation,
+                summary,
+                toFold.get(0).getId(),
+                toFold.get(toFold.size() - 1).getId(),
+                toFold.size()
+        ));
+        log.info("Conversation {} compacted: folded {} messages (through id {}) in {} ms",
+                conversationId, toFold.size(), toFold.get(toFold.size() - 1).getId(), System.currentTimeMillis() - t0);
+        return true;
+    }
+
+    private static String buildPrompt(String previousSummary, List<AiChatMessage> turns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PREVIOUS SUMMARY:\n");
+        sb.append(previousSummary == null || previousSummary.isBlank() ? "(none)" : previousSummary.trim());
+        sb.append("\n\nNEW TURNS:\n");
+        for (AiChatMessage m : turns) {
+            String content = m.getContent() == null ? "" : m.getContent().trim();
+            if (content.length() > MAX_MESSAGE_CHARS) {
+                content = content.substring(0, MAX_MESSAGE_CHARS) + "…";
+            }
+            sb.append("assistant".equalsIgnoreCase(m.getRole()) ? "AI: " : "Utilizator: ")
+                    .append(content)
+                    .append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.AiRetentionProperties;
+import com.zenlink.zenlink.model.UserRole;
+import com.zenlink.zenlink.repository.AiChatMessageRepository;
+import com.zenlink.zenlink.repository.AiConversationCheckpointRepository;
+import com.zenlink.zenlink.repository.AiConversationRepository;
+import com.zenlink.zenlink.repository.AiMessageArchiveBlockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deletes AI conversations with set-based statements (children first, then the conversations),
+ * without loading messages into the persistence context. Used by the scheduled retention purge
+ * and by the single-conversation delete API.
+ */
+@Service
+public class AiConversationRetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(AiConversationRetentionService.class);
+
+    private final AiConversationRepository conversationRepository;
+    private final AiChatMessageRepository messageRepository;
+    private final AiConversationCheckpointRepository checkpointRepository;
+    private final AiMessageArchiveBlockRepository archiveBlockRepository;
+    private final AiRetentionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    public AiConversationRetentionService(
+            AiConversationRepository conversationRepository,
+            AiChatMessageRepository messageRepository,
+            AiConversationCheckpointRepository checkpointRepository,
+            AiMessageArchiveBlockRepository archiveBlockRepository,
+            AiRetentionProperties properties,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.archiveBlockRepository = archiveBlockRepository;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Set-based delete of the given conversations and everything hanging off them.
+     * Joins the caller's transaction if there is one.
+     */
+    @Transactional
+    public int purgeConversations(Collection<Long> conversationIds) {
+        if (conversationIds == null || conversationIds.isEmpty()) return 0;
+        messageRepository.deleteByConversationIds(conversationIds);
+        checkpointRepository.deleteByConversationIds(conversationIds);
+        archiveBlockRepository.deleteByConversationIds(conversationIds);
+        return conversationRepository.deleteByIds(conversationIds);
+    }
+
+    @Scheduled(cron = "${ai.retention.cron:0 0 4 * * *}")
+    public void purgeExpired() {
+        if (!properties.isEnabled() || properties.getDays().isEmpty()) return;
+        long t0 = System.currentTimeMillis();
+        int total = 0;
+        int batchesLeft = Math.max(1, properties.getMaxBatchesPerRun());
+
+        rules:
+        for (Map.Entry<String, Map<String, Integer>> byRole : properties.getDays().entrySet()) {
+            UserRole role;
+            try {
+                role = UserRole.valueOf(byRole.getKey().trim().toUpperCase());
+            } catch (Exception e) {
+                log.warn("Ignoring retention rule for unknown role {}", byRole.getKey());
+                continue;
+            }
+            for (Map.Entry<String, Integer> byScope : byRole.getValue().entrySet()) {
+                Integer days = byScope.getValue();
+                if (days == null || days <= 0) continue;
+                String scopeType = byScope.getKey().trim().toUpperCase();
+                LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
+
+                while (true) {
+                    if (batchesLeft == 0) {
+                        log.info("Retention purge stopped after max batches; remaining rows are picked up next run");
+                        break rules;
+                    }
+                    batchesLeft--;
+                    int purged = purgeBatch(role, scopeType, cutoff);
+                    total += purged;
+                    if (purged < properties.getBatchSize()) break;
+                    if (!pause()) return;
+                }
+            }
+        }
+
+        if (total > 0) {
+            log.info("Retention purge deleted {} conversations in {} ms", total, System.currentTimeMillis() - t0);
+        }
+    }
+
+    private int purgeBatch(UserRole role, String scopeType, LocalDateTime cutoff) {
+        Integer n = transactionTemplate.execute(status -> {
+            List<Long> ids = conversationRepository.findExpiredIds(role, scopeType, cutoff, Limit.of(Math.max(1, properties.getBatchSize())));
+            purgeConversations(ids);
+            return ids.size();
+        });
+        return n == null ? 0 : n;
+    }
+
+    private boolean pause() {
+        if (properties.getPauseMillis() <= 0) return true;
+        try {
+            Thread.sleep(properties.getPauseMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.dto.AiConversationSearchResult;
+import com.zenlink.zenlink.model.UserRole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ranked full-text search over a user's AI conversations, backed by the tsvector columns and GIN indexes
+ * from db/postgres/ai_conversation_search.sql (config zenlink_ro: Romanian stemming + unaccent).
+ * Matching and ranking only read tsvectors; message text is touched just for the snippets of the returned page.
+ */
+@Service
+public class AiConversationSearchService {
+
+    public static final String TS_CONFIG = "zenlink_ro";
+
+    private static final Logger log = LoggerFactory.getLogger(AiConversationSearchService.class);
+
+    private static final int MAX_QUERY_LENGTH = 200;
+    // Postgres rejects a tsvector whose lexemes exceed 1 MB; its lexemes never outgrow the input text.
+    static final int MAX_INDEXED_BYTES = 768 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long recheckMillis;
+    private volatile boolean available;
+    private volatile long nextCheckAt;
+
+    public AiConversationSearchService(
+            JdbcTemplate jdbcTemplate,
+            @Value("${ai.search.schema-recheck-seconds:60}") long recheckSeconds
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.recheckMillis = Math.max(0, recheckSeconds) * 1000;
+    }
+
+    /**
+     * True once the search bootstrap SQL has been applied. A positive answer is cached for good; a negative one
+     * is re-checked every schema-recheck-seconds, so applying the script later needs no restart.
+     */
+    public boolean isAvailable() {
+        if (available) return true;
+        long now = System.currentTimeMillis();
+        if (now < nextCheckAt) return false;
+        nextCheckAt = now + recheckMillis;
+        try {
+            Integer n = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM information_schema.columns " +
+                            "WHERE table_schema = current_schema() AND table_name = 'ai_messages' AND column_name = 'content_tsv'",
+                    Integer.class);
+            if (n != null && n > 0) {
+                available = true;
+                return true;
+            }
+            log.warn("Conversation search disabled: run db/postgres/ai_conversation_search.sql");
+        } catch (Exception e) {
+            log.warn("Could not check conversation search schema: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    public List<AiConversationSearchResult> search(Long userId, UserRole userRole, String scopeType, String scopeId, String query, int limit) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Conversation search is not configured");
+        }
+        String q = query == null ? "" : query.trim();
+        if (q.isEmpty()) return List.of();
+        if (q.length() > MAX_QUERY_LENGTH) q = q.substring(0, MAX_QUERY_LENGTH);
+        int lim = Math.max(1, Math.min(limit, 50));
+
+        // Owner/scope predicate shared by the three sources; scope filter is optional.
+        StringBuilder owner = new StringBuilder("c.user_id = ? AND c.user_role = ?");
+        List<Object> ownerArgs = new ArrayList<>(List.of(userId, userRole.name()));
+        if (scopeType != null) {
+            owner.append(" AND c.scope_type = ?");
+            ownerArgs.add(scopeType);
+            if (scopeId == null) {
+                owner.append(" AND c.scope_id IS NULL");
+            } else {
+                owner.append(" AND c.scope_id = ?");
+                ownerArgs.add(scopeId);
+            }
+        }
+
+        String sql = """
+                WITH q AS (SELECT websearch_to_tsquery('%1$s', ?) AS query),
+                hits AS (
+                    SELECT m.conversation_id,
+                           ts_rank_cd(m.content_tsv, q.query) AS rank,
+                           m.id AS message_id
+                    FROM ai_messages m
+                    JOIN ai_conversations c ON c.id = m.conversation_id
+                    CROSS JOIN q
+                    WHERE %2$s AND m.content_tsv @@ q.query
+                    UNION ALL
+                    SELECT c.id, ts_rank_cd(c.title_tsv, q.query) * 2.0, NULL
+                    FROM ai_conversations c
+                    CROSS JOIN q
+                    WHERE %2$s AND c.title_tsv @@ q.query
+                    UNION ALL
+                    SELECT b.conversation_id, ts_rank_cd(b.content_tsv, q.query), NULL
+                    FROM ai_message_archive_blocks b
+                    JOIN ai_conversations c ON c.id = b.conversation_id
+                    CROSS JOIN q
+                    WHERE %2$s AND b.content_tsv @@ q.query
+                ),
+                ranked AS (
+                    SELECT conversation_id,
+                           sum(rank) AS rank,
+                           (array_agg(message_id ORDER BY rank DESC) FILTER (WHERE message_id IS NOT NULL))[1] AS best_message_id
+                    FROM hits
+                    GROUP BY conversation_id
+                    ORDER BY sum(rank) DESC
+                    LIMIT ?
+                )
+                SELECT c.id, c.title, c.scope_type, c.scope_id, c.updated_at, r.rank, r.best_message_id,
+                       CASE WHEN m.id IS NULL THEN NULL
+                            ELSE ts_headline('%1$s', m.content, q.query,
+                                             'MaxWords=35, MinWords=12, MaxFragments=2, FragmentDelimiter=" … "')
+                       END AS snippet
+                FROM ranked r
+                JOIN ai_conversations c ON c.id = r.conversation_id
+                LEFT JOIN ai_messages m ON m.id = r.best_message_id
+                CROSS JOIN q
+                ORDER BY r.rank DESC, c.updated_at DESC
+                """.formatted(TS_CONFIG, owner);
+
+        List<Object> args = new ArrayList<>();
+        args.add(q);
+        for (int i = 0; i < 3; i++) args.addAll(ownerArgs);
+        args.add(lim);
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Timestamp updatedAt = rs.getTimestamp("updated_at");
+            Number bestMessageId = (Number) rs.getObject("best_message_id");
+            return new AiConversationSearchResult(
+                    rs.getLong("id"),
+                    rs.getString("title"),
+                    rs.getString("scope_type"),
+                    rs.getString("scope_id"),
+                    updatedAt == null ? null : updatedAt.toLocalDateTime(),
+                    rs.getDouble("rank"),
+                    rs.getString("snippet"),
+                    bestMessageId == null ? null : bestMessageId.longValue()
+            );
+        }, args.toArray());
+    }
+
+    /**
+     * Stores the search vector of an archived block (its text is only kept compressed). No-op without the search schema.
+     * Text past {@link #MAX_INDEXED_BYTES} is left out, so an oversized block cannot fail (and roll back) the archiving.
+     */
+    public void indexArchiveBlock(Long blockId, String text) {
+        if (!isAvailable() || blockId == null) return;
+        jdbcTemplate.update(
+                "UPDATE ai_message_archive_blocks SET content_tsv = to_tsvector('" + TS_CONFIG + "'::regconfig, ?) WHERE id = ?",
+                capUtf8(text == null ? "" : text, MAX_INDEXED_BYTES),
+                blockId
+        );
+    }
+
+    /** The longest prefix of {@code text} whose UTF-8 encoding fits in {@code maxBytes}. */
+    static String capUtf8(String text, int maxBytes) {
+        if (text.length() <= maxBytes / 3) return text;
+        int bytes = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            bytes += cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+            if (bytes > maxBytes) return text.substring(0, i);
+            i += Character.charCount(cp);
+        }
+        return text;
+    }
+}
@@ -3,27 +3,50 @@ package com.zenlink.zenlink.service;
 import com.zenlink.zenlink.dto.AiMessage;
 import com.zenlink.zenlink.model.AiChatMessage;
 import com.zenlink.zenlink.model.AiConversation;
+import com.zenlink.zenlink.model.AiConversationCheckpoint;
 import com.zenlink.zenlink.model.UserRole;
 import com.zenlink.zenlink.repository.AiChatMessageRepository;
+import com.zenlink.zenlink.repository.AiConversationCheckpointRepository;
 import com.zenlink.zenlink.repository.AiConversationRepository;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Service
 public class AiConversationService {
 
+    /** Prompt context: rolling summary of older turns (null if none yet) + the newest turns verbatim. */
+    public record ConversationContext(String summary, List<AiMessage> recentMessages) {}
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    // Cursor for the first page: sorts after every real row.
+    private static final LocalDateTime FIRST_PAGE_UPDATED_AT = LocalDateTime.of(9999, 12, 31, 0, 0);
+
     private final AiConversationRepository conversationRepository;
     private final AiChatMessageRepository messageRepository;
+    private final AiConversationCheckpointRepository checkpointRepository;
+    private final AiMessageArchiveService archiveService;
+    private final AiConversationRetentionService retentionService;
 
     public AiConversationService(
             AiConversationRepository conversationRepository,
-            AiChatMessageRepository messageRepository
+            AiChatMessageRepository messageRepository,
+            AiConversationCheckpointRepository checkpointRepository,
+            AiMessageArchiveService archiveService,
+            AiConversationRetentionService retentionService
     ) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.archiveService = archiveService;
+        this.retentionService = retentionService;
     }
 
     @Transactional
@@ -37,14 +60,46 @@ public class AiConversationService {
         return conversationRepository.save(c);
     }
 
+    /**
+     * One keyset page of conversations, newest first. Pass the (updatedAt, id) of the last row of the
+     * previous page as the cursor, or nulls for the first page.
+     */
     @Transactional(readOnly = true)
-    public List<AiConversation> listConversations(Long userId, UserRole userRole, String scopeType, String scopeId) {
-        return conversationRepository.findByUserIdAndUserRoleAndScopeTypeAndScopeIdOrderByUpdatedAtDesc(userId, userRole, scopeType, scopeId);
+    public List<AiConversation> listConversations(
+            Long userId,
+            UserRole userRole,
+            String scopeType,
+            String scopeId,
+            LocalDateTime beforeUpdatedAt,
+            Long beforeId,
+            int limit
+    ) {
+        LocalDateTime cursorUpdatedAt = beforeUpdatedAt == null ? FIRST_PAGE_UPDATED_AT : beforeUpdatedAt;
+        Long cursorId = beforeId == null ? Long.MAX_VALUE : beforeId;
+        Limit pageLimit = Limit.of(clampPageSize(limit));
+        if (scopeId == null) {
+            return conversationRepository.findPageBeforeWithoutScopeId(userId, userRole, scopeType, cursorUpdatedAt, cursorId, pageLimit);
+        }
+        return conversationRepository.findPageBefore(userId, userRole, scopeType, scopeId, cursorUpdatedAt, cursorId, pageLimit);
     }
 
+    /** Full history, oldest first; archived blocks are decompressed and merged in front of the hot rows. */
     @Transactional(readOnly = true)
     public List<AiChatMessage> getMessages(Long conversationId) {
-        return messageRepository.findByConversationIdOrderByIdAsc(conversationId);
+        List<AiChatMessage> hot = messageRepository.findByConversationIdOrderByIdAsc(conversationId);
+        if (!archiveService.hasArchive(conversationId)) return hot;
+        List<AiChatMessage> all = new ArrayList<>(archiveService.loadAll(conversationId));
+        all.addAll(hot);
+        return all;
+    }
+
+    /**
+     * One keyset page of messages in chronological order: the newest {@code limit} messages with id below
+     * {@code beforeId} (or the newest overall when {@code beforeId} is null).
+     */
+    @Transactional(readOnly = true)
+    public List<AiChatMessage> getMessagesPage(Long conversationId, Long beforeId, int limit) {
+        return newestMessages(conversationId, 0L, beforeId, clampPageSize(limit));
     }
 
     @Transactional(readOnly = true)
@@ -72,9 +127,22 @@ public class AiConversationService {
 
     @Transactional(readOnly = true)
     public List<com.zenlink.zenlink.dto.AiMessage> getMessagesForContext(Long conversationId, int maxMessages) {
-        List<AiChatMessage> all = messageRepository.findByConversationIdOrderByIdAsc(conversationId);
-        int from = Math.max(0, all.size() - Math.max(1, maxMessages));
-        return toDtoMessages(all.subList(from, all.size()));
+        return toDtoMessages(newestMessages(conversationId, 0L, null, Math.max(1, maxMessages)));
+    }
+
+    /**
+     * Latest summary checkpoint + up to {@code maxMessages} turns after it. If background compaction
+     * lags behind, turns between the checkpoint and the newest {@code maxMessages} are skipped.
+     */
+    @Transactional(readOnly = true)
+    public ConversationContext getContext(Long conversationId, int maxMessages) {
+        AiConversationCheckpoint checkpoint = checkpointRepository.findFirstByConversationIdOrderByThroughMessageIdDesc(conversationId)
+                .orElse(null);
+        if (checkpoint == null) {
+            return new ConversationContext(null, getMessagesForContext(conversationId, maxMessages));
+        }
+        List<AiChatMessage> recent = newestMessages(conversationId, checkpoint.getThroughMessageId(), null, Math.max(1, maxMessages));
+        return new ConversationContext(checkpoint.getSummary(), toDtoMessages(recent));
     }
 
     @Transactional
@@ -86,7 +154,37 @@ public class AiConversationService {
     @Transactional
     public void deleteConversationScoped(Long conversationId, Long userId, UserRole userRole, String scopeType, String scopeId) {
         AiConversation c = requireConversation(conversationId, userId, userRole, scopeType, scopeId);
-        conversationRepository.delete(c);
+        retentionService.purgeConversations(List.of(c.getId()));
+    }
+
+    /**
+     * The newest {@code limit} messages after {@code afterId} (checkpoint cursor) or before {@code beforeId} (page cursor),
+     * oldest first. Hot rows are read first; the cold archive is only touched when the hot table cannot fill the page.
+     */
+    private List<AiChatMessage> newestMessages(Long conversationId, long afterId, Long beforeId, int limit) {
+        Limit pageLimit = Limit.of(limit);
+        List<AiChatMessage> newestFirst;
+        if (afterId > 0) {
+            newestFirst = messageRepository.findByConversationIdAndIdGreaterThanOrderByIdDesc(conversationId, afterId, pageLimit);
+        } else if (beforeId != null) {
+            newestFirst = messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(conversationId, beforeId, pageLimit);
+        } else {
+            newestFirst = messageRepository.findByConversationIdOrderByIdDesc(conversationId, pageLimit);
+        }
+
+        List<AiChatMessage> out = new ArrayList<>(newestFirst);
+        Collections.reverse(out);
+        if (out.size() < limit && archiveService.hasArchive(conversationId)) {
+            long archiveBefore = out.isEmpty() ? (beforeId == null ? Long.MAX_VALUE : beforeId) : out.get(0).getId();
+            List<AiChatMessage> archived = archiveService.loadNewest(conversationId, afterId, archiveBefore, limit - out.size());
+            out.addAll(0, archived);
+        }
+        return out;
+    }
+
+    public static int clampPageSize(int limit) {
+        if (limit <= 0) return DEFAULT_PAGE_SIZE;
+        return Math.min(limit, MAX_PAGE_SIZE);
     }
 
     public static List<AiMessage> toDtoMessages(List<AiChatMessage> rows) {
@@ -0,0 +1,241 @@
+package com.zenlink.zenlink.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zenlink.zenlink.model.AiChatMessage;
+import com.zenlink.zenlink.model.AiConversation;
+import com.zenlink.zenlink.model.AiMessageArchiveBlock;
+import com.zenlink.zenlink.repository.AiChatMessageRepository;
+import com.zenlink.zenlink.repository.AiConversationRepository;
+import com.zenlink.zenlink.repository.AiMessageArchiveBlockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Moves messages of idle conversations out of the hot ai_messages table into compressed
+ * per-conversation blocks (ai_message_archive_blocks), and reads them back on demand.
+ * Reads go through AiConversationService, which merges archived and hot rows transparently.
+ */
+@Service
+public class AiMessageArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(AiMessageArchiveService.class);
+
+    record ArchivedMessage(Long id, String role, String content, LocalDateTime createdAt) {}
+
+    private static final TypeReference<List<ArchivedMessage>> ARCHIVED_LIST = new TypeReference<>() {};
+
+    private final AiConversationRepository conversationRepository;
+    private final AiChatMessageRepository messageRepository;
+    private final AiMessageArchiveBlockRepository blockRepository;
+    private final AiConversationSearchService searchService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int idleDays;
+    private final int batchConversations;
+    private final int blockMessages;
+
+    public AiMessageArchiveService(
+            AiConversationRepository conversationRepository,
+            AiChatMessageRepository messageRepository,
+            AiMessageArchiveBlockRepository blockRepository,
+            AiConversationSearchService searchService,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${ai.archive.enabled:true}") boolean enabled,
+            @Value("${ai.archive.idle-days:90}") int idleDays,
+            @Value("${ai.archive.batch-conversations:50}") int batchConversations,
+            @Value("${ai.archive.block-messages:500}") int blockMessages
+    ) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.blockRepository = blockRepository;
+        this.searchService = searchService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.idleDays = Math.max(1, idleDays);
+        this.batchConversations = Math.max(1, batchConversations);
+        this.blockMessages = Math.max(10, blockMessages);
+    }
+
+    @Scheduled(cron = "${ai.archive.cron:0 30 3 * * *}")
+    public void archiveIdleConversations() {
+        if (!enabled) return;
+        LocalDateTime idleSince = LocalDateTime.now().minusDays(idleDays);
+        long t0 = System.currentTimeMillis();
+        int conversations = 0;
+        int messages = 0;
+
+        List<Long> ids;
+        int archivedInBatch;
+        do {
+            ids = conversationRepository.findIdleWithHotMessages(idleSince, Limit.of(batchConversations));
+            archivedInBatch = 0;
+            for (Long id : ids) {
+                try {
+                    messages += archiveConversation(id, idleSince);
+                    archivedInBatch++;
+                } catch (Exception e) {
+                    log.warn("Archiving conversation {} failed: {}", id, e.getMessage());
+                }
+            }
+            conversations += archivedInBatch;
+            // A failing conversation would be picked again forever; stop once a batch makes no progress.
+        } while (ids.size() == batchConversations && archivedInBatch > 0);
+
+        if (conversations > 0) {
+            log.info("Archived {} messages from {} idle conversations in {} ms", messages, conversations, System.currentTimeMillis() - t0);
+        }
+    }
+
+    /**
+     * Archives the hot messages of one conversation idle since before {@code idleSince}, one block per transaction.
+     * Only messages that existed when it was picked are moved, and it stops as soon as the conversation is resumed.
+     * @return number of messages moved
+     */
+    public int archiveConversation(Long conversationId, LocalDateTime idleSince) {
+        List<AiChatMessage> newest = messageRepository.findByConversationIdOrderByIdDesc(conversationId, Limit.of(1));
+        if (newest.isEmpty()) return 0;
+        long throughId = newest.get(0).getId();
+        int moved = 0;
+        while (true) {
+            Integer n = transactionTemplate.execute(status -> archiveNextBlock(conversationId, throughId, idleSince));
+            if (n == null || n == 0) return moved;
+            moved += n;
+        }
+    }
+
+    private int archiveNextBlock(Long conversationId, long throughId, LocalDateTime idleSince) {
+        // appendMessage bumps updatedAt in the transaction that adds the row, so a resumed conversation shows here
+        AiConversation conversation = conversationRepository.findById(conversationId).orElse(null);
+        if (conversation == null || conversation.getUpdatedAt() == null || !conversation.getUpdatedAt().isBefore(idleSince)) {
+            return 0;
+        }
+
+        List<AiChatMessage> rows = messageRepository.findByConversationIdAndIdLessThanEqualOrderByIdAsc(
+                conversationId, throughId, Limit.of(blockMessages));
+        if (rows.isEmpty()) return 0;
+
+        List<ArchivedMessage> payload = rows.stream()
+                .map(m -> new ArchivedMessage(m.getId(), m.getRole(), m.getContent(), m.getCreatedAt()))
+                .toList();
+        byte[] raw;
+        try {
+            raw = objectMapper.writeValueAsBytes(payload);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to serialize archive block: " + e.getMessage(), e);
+        }
+
+        Long firstId = rows.get(0).getId();
+        Long lastId = rows.get(rows.size() - 1).getId();
+        AiMessageArchiveBlock block = blockRepository.saveAndFlush(new AiMessageArchiveBlock(
+                conversation, firstId, lastId, rows.size(), AiMessageArchiveBlock.CODEC_DEFLATE_JSON, raw.length, deflate(raw)));
+        // Keep archived text searchable: only its tsvector is stored uncompressed.
+        StringBuilder text = new StringBuilder();
+        for (AiChatMessage m : rows) {
+            if (m.getContent() != null) text.append(m.getContent()).append('\n');
+        }
+        searchService.indexArchiveBlock(block.getId(), text.toString());
+        messageRepository.deleteRange(conversationId, firstId, lastId);
+        return rows.size();
+    }
+
+    public boolean hasArchive(Long conversationId) {
+        return blockRepository.existsByConversationId(conversationId);
+    }
+
+    /** All archived messages of a conversation, oldest first. */
+    public List<AiChatMessage> loadAll(Long conversationId) {
+        List<AiChatMessage> out = new ArrayList<>();
+        for (AiMessageArchiveBlock block : blockRepository.findByConversationIdOrderByFirstMessageIdAsc(conversationId)) {
+            out.addAll(decode(block));
+        }
+        return out;
+    }
+
+    /**
+     * The newest {@code limit} archived messages with {@code afterId < id < beforeId}, oldest first.
+     * Only the blocks overlapping that range are decompressed.
+     */
+    public List<AiChatMessage> loadNewest(Long conversationId, long afterId, long beforeId, int limit) {
+        List<AiChatMessage> newestFirst = new ArrayList<>();
+        for (AiMessageArchiveBlock block : blockRepository.findByConversationIdAndFirstMessageIdLessThanOrderByFirstMessageIdDesc(conversationId, beforeId)) {
+            if (block.getLastMessageId() <= afterId) break;
+            List<AiChatMessage> rows = decode(block);
+            for (int i = rows.size() - 1; i >= 0 && newestFirst.size() < limit; i--) {
+                long id = rows.get(i).getId();
+                if (id < beforeId && id > afterId) newestFirst.add(rows.get(i));
+            }
+            if (newestFirst.size() >= limit) break;
+        }
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    private List<AiChatMessage> decode(AiMessageArchiveBlock block) {
+        if (!AiMessageArchiveBlock.CODEC_DEFLATE_JSON.equals(block.getCodec())) {
+            throw new IllegalStateException("Unknown archive codec: " + block.getCodec());
+        }
+        try {
+            List<ArchivedMessage> rows = objectMapper.readValue(inflate(block.getPayload(), block.getRawBytes()), ARCHIVED_LIST);
+            AiConversation conversation = block.getConversation();
+            return rows.stream()
+                    .map(r -> new AiChatMessage(r.id(), conversation, r.role(), r.content(), r.createdAt()))
+                    .toList();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read archive block " + block.getId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] compressed, int rawBytes) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] out = new byte[rawBytes];
+            int n = 0;
+            while (n < rawBytes && !inflater.finished()) {
+                int read = inflater.inflate(out, n, rawBytes - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            if (n != rawBytes) throw new DataFormatException("Archive block truncated: " + n + "/" + rawBytes + " bytes");
+            return out;
+        } finally {
+            inflater.end();
+        }
+    }
+}
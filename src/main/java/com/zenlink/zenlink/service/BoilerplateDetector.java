@@ -0,0 +1,343 @@
+package com.zenlink.zenlink.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Near-duplicate detection in the chunking stage, on SimHash fingerprints (64 bit, over word unigrams and
+ * bigrams of the accent-folded line).
+ *
+ * Lines: letterheads, footers and disclaimers repeat on every page of scanned letters and lab reports.
+ * A line is boilerplate when near-duplicates of it (Hamming distance &lt;= max-distance, same digits) sit on
+ * min-pages pages of the file, or in min-files files of the same patient. Only lines that mostly sit in a
+ * page's first or last edge-lines lines qualify, so repeated findings in the body stay; within one file a long
+ * line (a disclaimer that wraps past the edge) also qualifies once it sits at an edge on some page. The first occurrence
+ * (the oldest upload holding it, across files) is kept as the canonical copy; the others are blanked in the
+ * text handed to the chunker, with offsets unchanged, so their chunks and embeddings are never produced.
+ * page_text keeps the full page. Fingerprints are kept per file in patient_file_boilerplate.
+ *
+ * Chunks: near-duplicate chunks of a file (same digits) share one embedding call.
+ */
+@Component
+public class BoilerplateDetector {
+
+    /** Page texts as handed to the chunker (trimmed, boilerplate blanked) and the fingerprints found in the file. */
+    public record Plan(List<String> pages, int maskedLines, int maskedChars, Set<Fingerprint> fingerprints) {}
+
+    public record Fingerprint(long simhash, String digits) {}
+
+    /** A fingerprint of another file of the patient. */
+    record Stored(UUID fileId, long simhash, String digits, LocalDateTime uploadedAt) {}
+
+    public record Stats(boolean enabled, long files, long maskedLines, long maskedChars, long chunksSaved, long embeddingsReused) {}
+
+    private record Line(int page, int start, int end, boolean edge, boolean longLine) {}
+
+    private static final class Cluster {
+        final long simhash;
+        final String digits;
+        final List<Line> lines = new ArrayList<>();
+        final Set<Integer> pages = new HashSet<>();
+        int edges;
+        boolean longLine;
+
+        Cluster(long simhash, String digits) {
+            this.simhash = simhash;
+            this.digits = digits;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(BoilerplateDetector.class);
+    // "Pagina 3 din 10", "pag. 3/10", "Page 3 of 10": differs on every page of the same footer
+    private static final Pattern PAGE_NUMBER = Pattern.compile("\\b(pagina|pag|page)\\.?\\s*\\d+(\\s*(din|of|/)\\s*\\d+)?\\b");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9]+");
+    private static final int MAX_FINGERPRINTS_PER_FILE = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int maxDistance;
+    private final int minPages;
+    private final int minFiles;
+    private final int minLineChars;
+    private final int edgeLines;
+    private final int longLineChars;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong maskedLines = new AtomicLong();
+    private final AtomicLong maskedChars = new AtomicLong();
+    private final AtomicLong chunksSaved = new AtomicLong();
+    private final AtomicLong embeddingsReused = new AtomicLong();
+
+    public BoilerplateDetector(
+            JdbcTemplate jdbcTemplate,
+            @Value("${rag.chunking.boilerplate.enabled:true}") boolean enabled,
+            @Value("${rag.chunking.boilerplate.max-distance:3}") int maxDistance,
+            @Value("${rag.chunking.boilerplate.min-pages:3}") int minPages,
+            @Value("${rag.chunking.boilerplate.min-files:3}") int minFiles,
+            @Value("${rag.chunking.boilerplate.min-line-chars:24}") int minLineChars,
+            @Value("${rag.chunking.boilerplate.edge-lines:2}") int edgeLines,
+            @Value("${rag.chunking.boilerplate.long-line-chars:80}") int longLineChars
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 16));
+        this.minPages = Math.max(2, minPages);
+        this.minFiles = Math.max(2, minFiles);
+        this.minLineChars = Math.max(1, minLineChars);
+        this.edgeLines = Math.max(0, edgeLines);
+        this.longLineChars = Math.max(this.minLineChars, longLineChars);
+    }
+
+    /** Plan for one file; fingerprints of the patient's other files are read best effort. */
+    public Plan plan(UUID fileId, Long patientId, List<String> pages) {
+        if (!enabled) return plan(pages, List.of(), null);
+        List<Stored> others = List.of();
+        LocalDateTime uploadedAt = null;
+        try {
+            List<Stored> rows = jdbcTemplate.query(
+                    "SELECT b.file_id, b.simhash, b.digits, pf.uploaded_at FROM patient_file_boilerplate b " +
+                            "JOIN patient_files pf ON pf.id = b.file_id WHERE b.patient_id = ? AND b.file_id <> ?",
+                    (rs, i) -> {
+                        Timestamp t = rs.getTimestamp("uploaded_at");
+                        return new Stored((UUID) rs.getObject("file_id"), rs.getLong("simhash"), rs.getString("digits"),
+                                t == null ? null : t.toLocalDateTime());
+                    },
+                    patientId, fileId);
+            if (rows != null) others = rows;
+            Timestamp own = jdbcTemplate.queryForObject("SELECT uploaded_at FROM patient_files WHERE id = ?", Timestamp.class, fileId);
+            uploadedAt = own == null ? null : own.toLocalDateTime();
+        } catch (Exception e) {
+            log.debug("Boilerplate fingerprints of patient {} unavailable: {}", patientId, e.getMessage());
+        }
+        return plan(pages, others, uploadedAt);
+    }
+
+    Plan plan(List<String> pages, List<Stored> others, LocalDateTime uploadedAt) {
+        List<String> texts = new ArrayList<>(pages.size());
+        for (String p : pages) texts.add(p == null ? "" : p.trim());
+        if (!enabled) return new Plan(texts, 0, 0, Set.of());
+
+        // Cluster candidate lines of the whole file by near-duplicate fingerprint
+        Map<String, List<Cluster>> byDigits = new HashMap<>();
+        List<Cluster> clusters = new ArrayList<>();
+        for (int p = 0; p < texts.size(); p++) {
+            List<int[]> spans = lineSpans(texts.get(p));
+            for (int i = 0; i < spans.size(); i++) {
+                int[] span = spans.get(i);
+                String norm = normalize(texts.get(p).substring(span[0], span[1]));
+                if (norm.length() < minLineChars) continue;
+                Line line = new Line(p, span[0], span[1], i < edgeLines || i >= spans.size() - edgeLines,
+                        norm.length() >= longLineChars);
+                long hash = simhash(norm);
+                String digits = digits(norm);
+                List<Cluster> candidates = byDigits.computeIfAbsent(digits, d -> new ArrayList<>());
+                Cluster cluster = null;
+                for (Cluster c : candidates) {
+                    if (Long.bitCount(c.simhash ^ hash) <= maxDistance) {
+                        cluster = c;
+                        break;
+                    }
+                }
+                if (cluster == null) {
+                    cluster = new Cluster(hash, digits);
+                    candidates.add(cluster);
+                    clusters.add(cluster);
+                }
+                cluster.lines.add(line);
+                cluster.pages.add(p);
+                if (line.edge()) cluster.edges++;
+                cluster.longLine |= line.longLine();
+            }
+        }
+
+        Map<String, List<Stored>> storedByDigits = new HashMap<>();
+        for (Stored s : others) storedByDigits.computeIfAbsent(s.digits(), d -> new ArrayList<>()).add(s);
+
+        int pagesNeeded = Math.max(2, Math.min(minPages, texts.size()));
+        List<Line> masked = new ArrayList<>();
+        List<Cluster> kept = new ArrayList<>();
+        for (Cluster c : clusters) {
+            // Header / footer position on most occurrences; a long line (disclaimer) needs to touch an edge at least once
+            boolean edge = c.edges * 2 >= c.lines.size();
+            if (!edge && !(c.longLine && c.edges > 0)) continue;
+            kept.add(c);
+            Set<UUID> sharedWith = new HashSet<>();
+            boolean olderCopy = false;
+            for (Stored s : storedByDigits.getOrDefault(c.digits, List.of())) {
+                if (Long.bitCount(s.simhash() ^ c.simhash) > maxDistance) continue;
+                sharedWith.add(s.fileId());
+                olderCopy |= uploadedAt == null || s.uploadedAt() == null || s.uploadedAt().isBefore(uploadedAt);
+            }
+            // Across files only header / footer lines: a repeated finding must stay in the newest document
+            if (edge && sharedWith.size() >= minFiles - 1 && olderCopy) {
+                masked.addAll(c.lines);
+            } else if (c.pages.size() >= pagesNeeded) {
+                masked.addAll(c.lines.subList(1, c.lines.size()));
+            }
+        }
+
+        List<char[]> chars = new ArrayList<>(texts.size());
+        for (String t : texts) chars.add(null);
+        int maskedChars = 0;
+        for (Line line : masked) {
+            char[] page = chars.get(line.page());
+            if (page == null) {
+                page = texts.get(line.page()).toCharArray();
+                chars.set(line.page(), page);
+            }
+            for (int i = line.start(); i < line.end(); i++) page[i] = ' ';
+            maskedChars += line.end() - line.start();
+        }
+        List<String> out = new ArrayList<>(texts.size());
+        for (int p = 0; p < texts.size(); p++) out.add(chars.get(p) == null ? texts.get(p) : new String(chars.get(p)));
+
+        kept.sort(Comparator.comparingInt((Cluster c) -> -c.pages.size()));
+        Set<Fingerprint> fingerprints = new LinkedHashSet<>();
+        for (Cluster c : kept.subList(0, Math.min(kept.size(), MAX_FINGERPRINTS_PER_FILE))) {
+            fingerprints.add(new Fingerprint(c.simhash, c.digits));
+        }
+        return new Plan(out, masked.size(), maskedChars, fingerprints);
+    }
+
+    /**
+     * For each chunk text, the index of the first near-duplicate chunk with the same digits (itself when
+     * none); a chunk whose index differs can reuse that chunk's embedding.
+     */
+    public int[] duplicateChunks(List<String> texts) {
+        int[] canonical = new int[texts.size()];
+        Map<String, List<long[]>> byDigits = new HashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            canonical[i] = i;
+            if (!enabled) continue;
+            String norm = normalize(texts.get(i));
+            if (norm.isEmpty()) continue;
+            long hash = simhash(norm);
+            List<long[]> seen = byDigits.computeIfAbsent(digits(norm), d -> new ArrayList<>());
+            for (long[] s : seen) {
+                if (Long.bitCount(s[0] ^ hash) <= maxDistance) {
+                    canonical[i] = (int) s[1];
+                    break;
+                }
+            }
+            if (canonical[i] == i) seen.add(new long[]{hash, i});
+        }
+        return canonical;
+    }
+
+    /** Replaces the file's fingerprints; best effort (a missing table only disables cross-file detection). */
+    public void save(UUID fileId, Long patientId, Plan plan) {
+        if (!enabled) return;
+        try {
+            jdbcTemplate.update("DELETE FROM patient_file_boilerplate WHERE file_id = ?", fileId);
+            if (plan.fingerprints().isEmpty()) return;
+            List<Object[]> rows = new ArrayList<>(plan.fingerprints().size());
+            for (Fingerprint f : plan.fingerprints()) rows.add(new Object[]{fileId, patientId, f.simhash(), f.digits()});
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO patient_file_boilerplate(file_id, patient_id, simhash, digits) VALUES (?, ?, ?, ?) " +
+                            "ON CONFLICT DO NOTHING",
+                    rows);
+        } catch (Exception e) {
+            log.debug("Could not store boilerplate fingerprints of file {}: {}", fileId, e.getMessage());
+        }
+    }
+
+    public void record(Plan plan, int chunksSaved, int embeddingsReused) {
+        if (!enabled) return;
+        files.incrementAndGet();
+        maskedLines.addAndGet(plan.maskedLines());
+        maskedChars.addAndGet(plan.maskedChars());
+        this.chunksSaved.addAndGet(chunksSaved);
+        this.embeddingsReused.addAndGet(embeddingsReused);
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, files.get(), maskedLines.get(), maskedChars.get(), chunksSaved.get(), embeddingsReused.get());
+    }
+
+    /** [start, end) of each non-blank line, trimmed. */
+    private static List<int[]> lineSpans(String text) {
+        List<int[]> spans = new ArrayList<>();
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            int end = text.indexOf('\n', i);
+            if (end < 0) end = n;
+            int s = i;
+            int e = end;
+            while (s < e && Character.isWhitespace(text.charAt(s))) s++;
+            while (e > s && Character.isWhitespace(text.charAt(e - 1))) e--;
+            if (e > s) spans.add(new int[]{s, e});
+            i = end + 1;
+        }
+        return spans;
+    }
+
+    /** Lower case, accents folded, page numbers dropped, words separated by single spaces. */
+    static String normalize(String text) {
+        String s = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        s = PAGE_NUMBER.matcher(s).replaceAll(" ");
+        return NON_WORD.matcher(s).replaceAll(" ").trim();
+    }
+
+    /** The numbers of a normalized text, in order: near-duplicates must agree on them (lab values, dates, teeth). */
+    static String digits(String normalized) {
+        StringBuilder sb = new StringBuilder();
+        for (String word : normalized.split(" ")) {
+            if (!word.isEmpty() && Character.isDigit(word.charAt(0))) sb.append(word).append(',');
+        }
+        return sb.toString();
+    }
+
+    static long simhash(String normalized) {
+        String[] words = normalized.split(" ");
+        int[] votes = new int[64];
+        for (int i = 0; i < words.length; i++) {
+            vote(votes, hash64(words[i]));
+            if (i + 1 < words.length) vote(votes, hash64(words[i] + ' ' + words[i + 1]));
+        }
+        long hash = 0;
+        for (int b = 0; b < 64; b++) {
+            if (votes[b] > 0) hash |= 1L << b;
+        }
+        return hash;
+    }
+
+    private static void vote(int[] votes, long h) {
+        for (int b = 0; b < 64; b++) votes[b] += ((h >>> b) & 1) == 1 ? 1 : -1;
+    }
+
+    /** FNV-1a over the chars, then the murmur3 finalizer to spread the bits. */
+    private static long hash64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,22 @@
+package com.zenlink.zenlink.service;
+
+import java.util.List;
+
+/**
+ * Text embedding backend for RAG. Implementations embed many texts per call; batching across calls
+ * and parallelism are handled by {@link EmbeddingService}.
+ * Select one with {@code rag.embedding.provider} ({@code openai} | {@code local}).
+ */
+public interface EmbeddingProvider {
+
+    /** Stable id of model + dimensions; stored with indexed data so a model change can be detected. */
+    String modelId();
+
+    int dimensions();
+
+    /** Max texts per {@link #embedBatch} call. */
+    int maxBatchSize();
+
+    /** One vector per input text, same order, each of length {@link #dimensions()}. */
+    List<float[]> embedBatch(List<String> texts);
+}
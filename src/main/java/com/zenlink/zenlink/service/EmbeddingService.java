@@ -0,0 +1,93 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.AsyncConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Front door for embeddings: splits input into provider-sized batches and keeps a bounded number of
+ * batches in flight. A 100-page PDF (~300 chunks) becomes a handful of requests instead of one per chunk.
+ */
+@Service
+public class EmbeddingService {
+
+    private final EmbeddingProvider provider;
+    private final Executor executor;
+    private final int batchSize;
+
+    public EmbeddingService(
+            EmbeddingProvider provider,
+            @Qualifier(AsyncConfig.RAG_EMBEDDING_EXECUTOR) Executor executor,
+            @Value("${rag.embedding.batch-size:64}") int batchSize
+    ) {
+        this.provider = provider;
+        this.executor = executor;
+        this.batchSize = Math.max(1, Math.min(batchSize, provider.maxBatchSize()));
+    }
+
+    public String modelId() {
+        return provider.modelId();
+    }
+
+    public int dimensions() {
+        return provider.dimensions();
+    }
+
+    public float[] embed(String text) {
+        return embedAll(List.of(text == null ? "" : text)).get(0);
+    }
+
+    /** One vector per text, in input order. */
+    public List<float[]> embedAll(List<String> texts) {
+        if (texts == null || texts.isEmpty()) return List.of();
+        if (texts.size() <= batchSize) return checked(provider.embedBatch(texts), texts.size());
+
+        List<CompletableFuture<List<float[]>>> futures = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            List<String> batch = texts.subList(from, Math.min(from + batchSize, texts.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> checked(provider.embedBatch(batch), batch.size()), executor));
+        }
+
+        List<float[]> out = new ArrayList<>(texts.size());
+        try {
+            for (CompletableFuture<List<float[]>> f : futures) {
+                out.addAll(f.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+        return out;
+    }
+
+    private List<float[]> checked(List<float[]> vectors, int expected) {
+        if (vectors == null || vectors.size() != expected) {
+            throw new IllegalStateException("Embedding provider " + provider.modelId() + " returned "
+                    + (vectors == null ? 0 : vectors.size()) + " vectors for " + expected + " texts");
+        }
+        for (float[] v : vectors) {
+            if (v == null || v.length != provider.dimensions()) {
+                throw new IllegalStateException("Embedding provider " + provider.modelId() + " returned a vector of wrong size");
+            }
+        }
+        return vectors;
+    }
+
+    public static String toPgvectorLiteral(float[] embedding) {
+        StringBuilder sb = new StringBuilder(embedding.length * 10 + 2);
+        sb.append('[');
+        for (int i = 0; i < embedding.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(embedding[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,380 @@
+package com.zenlink.zenlink.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical navigable small world graph (Malkov &amp; Yashunin) over squared L2 distance, the metric
+ * behind pgvector's {@code <->}. Vectors live in a direct (off-heap) buffer; only adjacency lists are on heap.
+ *
+ * Not thread-safe: callers serialize {@link #add}/{@link #delete} against {@link #search}
+ * (concurrent searches are fine on their own).
+ */
+public class HnswIndex {
+
+    /** Search hit: node id as returned by {@link #add} and its L2 distance (not squared). */
+    public record Hit(int node, float distance) {}
+
+    private final int dims;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelMult;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private FloatBuffer vectors;
+    private int capacity;
+    private int size;
+    private int liveCount;
+    private int[] levels;
+    /** neighbors[node][layer] = {count, n1, n2, ...} */
+    private int[][][] neighbors;
+    private final BitSet deleted = new BitSet();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int dims, int m, int efConstruction, int initialCapacity) {
+        this.dims = dims;
+        this.m = Math.max(4, m);
+        this.m0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMult = 1.0 / Math.log(this.m);
+        this.capacity = Math.max(16, initialCapacity);
+        this.vectors = allocate(capacity);
+        this.levels = new int[capacity];
+        this.neighbors = new int[capacity][][];
+    }
+
+    public int dims() {
+        return dims;
+    }
+
+    /** Nodes ever added (including deleted ones); node ids are 0..size-1. */
+    public int size() {
+        return size;
+    }
+
+    public int liveCount() {
+        return liveCount;
+    }
+
+    /** Off-heap bytes held by vectors. */
+    public long vectorBytes() {
+        return (long) capacity * dims * Float.BYTES;
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    public float[] vector(int node) {
+        float[] v = new float[dims];
+        vectors.get(node * dims, v);
+        return v;
+    }
+
+    /** Marks a node deleted: it still routes searches but is never returned. */
+    public void delete(int node) {
+        if (node >= 0 && node < size && !deleted.get(node)) {
+            deleted.set(node);
+            liveCount--;
+        }
+    }
+
+    public int add(float[] vector) {
+        if (vector.length != dims) throw new IllegalArgumentException("Expected " + dims + " dims, got " + vector.length);
+        ensureCapacity(size + 1);
+        int node = size++;
+        liveCount++;
+        vectors.put(node * dims, vector);
+
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMult);
+        levels[node] = level;
+        neighbors[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            neighbors[node][l] = new int[(l == 0 ? m0 : m) + 1];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int cur = entryPoint;
+        float curDist = distance(vector, cur);
+        for (int l = maxLevel; l > level; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] list = neighbors[cur][l];
+                for (int i = 1; i <= list[0]; i++) {
+                    float d = distance(vector, list[i]);
+                    if (d < curDist) {
+                        curDist = d;
+                        cur = list[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(vector, cur, efConstruction, l, null);
+            int maxConn = l == 0 ? m0 : m;
+            int[] selected = selectNeighbors(candidates, maxConn);
+            int[] own = neighbors[node][l];
+            for (int s : selected) {
+                own[++own[0]] = s;
+                connect(s, node, l, maxConn);
+            }
+            cur = nodeOf(candidates[0]);
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /** Approximate k nearest live nodes, closest first. */
+    public Hit[] search(float[] query, int k, int ef) {
+        if (entryPoint < 0 || liveCount == 0 || k <= 0) return new Hit[0];
+        int cur = entryPoint;
+        float curDist = distance(query, cur);
+        for (int l = maxLevel; l > 0; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] list = neighbors[cur][l];
+                for (int i = 1; i <= list[0]; i++) {
+                    float d = distance(query, list[i]);
+                    if (d < curDist) {
+                        curDist = d;
+                        cur = list[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        // Deleted nodes take slots in the beam; widen it so k live results survive.
+        int beam = Math.max(ef, k) + Math.min(size - liveCount, Math.max(ef, k));
+        long[] found = searchLayer(query, cur, beam, 0, deleted);
+        int n = Math.min(k, found.length);
+        Hit[] hits = new Hit[n];
+        for (int i = 0; i < n; i++) {
+            hits[i] = new Hit(nodeOf(found[i]), (float) Math.sqrt(distOf(found[i])));
+        }
+        return hits;
+    }
+
+    /** Exact k nearest live nodes (brute force), closest first; used for recall measurements. */
+    public Hit[] exactSearch(float[] query, int k) {
+        LongHeap best = new LongHeap(k + 1, true);
+        for (int node = 0; node < size; node++) {
+            if (deleted.get(node)) continue;
+            best.push(key(distance(query, node), node));
+            if (best.size() > k) best.pop();
+        }
+        long[] sorted = best.drainAscending();
+        Hit[] hits = new Hit[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            hits[i] = new Hit(nodeOf(sorted[i]), (float) Math.sqrt(distOf(sorted[i])));
+        }
+        return hits;
+    }
+
+    /**
+     * Beam search on one layer. Returns keys (distance, node) sorted ascending; nodes in
+     * {@code exclude} guide the search but are left out of the result.
+     */
+    private long[] searchLayer(float[] query, int entry, int ef, int layer, BitSet exclude) {
+        BitSet visited = new BitSet(size);
+        LongHeap candidates = new LongHeap(ef * 2, false); // closest first
+        LongHeap results = new LongHeap(ef + 1, true);     // farthest first
+        long entryKey = key(distance(query, entry), entry);
+        visited.set(entry);
+        candidates.push(entryKey);
+        if (exclude == null || !exclude.get(entry)) results.push(entryKey);
+
+        while (candidates.size() > 0) {
+            long c = candidates.pop();
+            if (results.size() >= ef && distOf(c) > distOf(results.peek())) break;
+            int[] list = neighbors[nodeOf(c)][layer];
+            for (int i = 1; i <= list[0]; i++) {
+                int nb = list[i];
+                if (visited.get(nb)) continue;
+                visited.set(nb);
+                float d = distance(query, nb);
+                if (results.size() < ef || d < distOf(results.peek())) {
+                    long k = key(d, nb);
+                    candidates.push(k);
+                    if (exclude == null || !exclude.get(nb)) {
+                        results.push(k);
+                        if (results.size() > ef) results.pop();
+                    }
+                }
+            }
+        }
+        return results.drainAscending();
+    }
+
+    /** Neighbor selection heuristic: keep a candidate only if it is closer to the new node than to any kept one. */
+    private int[] selectNeighbors(long[] candidatesAscending, int maxConn) {
+        int[] out = new int[Math.min(maxConn, candidatesAscending.length)];
+        int n = 0;
+        for (long c : candidatesAscending) {
+            if (n >= maxConn) break;
+            int cand = nodeOf(c);
+            float dq = distOf(c);
+            boolean good = true;
+            for (int i = 0; i < n; i++) {
+                if (distance(cand, out[i]) < dq) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) out[n++] = cand;
+        }
+        // Top up with the closest skipped ones so sparse regions stay connected.
+        for (int i = 0; i < candidatesAscending.length && n < out.length; i++) {
+            int cand = nodeOf(candidatesAscending[i]);
+            boolean present = false;
+            for (int j = 0; j < n; j++) if (out[j] == cand) present = true;
+            if (!present) out[n++] = cand;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private void connect(int from, int to, int layer, int maxConn) {
+        int[] list = neighbors[from][layer];
+        if (list[0] < maxConn) {
+            list[++list[0]] = to;
+            return;
+        }
+        // Full: re-select among existing neighbors plus the new one.
+        long[] cands = new long[list[0] + 1];
+        for (int i = 1; i <= list[0]; i++) cands[i - 1] = key(distance(from, list[i]), list[i]);
+        cands[list[0]] = key(distance(from, to), to);
+        Arrays.sort(cands);
+        int[] selected = selectNeighbors(cands, maxConn);
+        list[0] = selected.length;
+        System.arraycopy(selected, 0, list, 1, selected.length);
+    }
+
+    private float distance(float[] q, int node) {
+        int base = node * dims;
+        float sum = 0f;
+        for (int i = 0; i < dims; i++) {
+            float d = q[i] - vectors.get(base + i);
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    private float distance(int a, int b) {
+        int ba = a * dims;
+        int bb = b * dims;
+        float sum = 0f;
+        for (int i = 0; i < dims; i++) {
+            float d = vectors.get(ba + i) - vectors.get(bb + i);
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= capacity) return;
+        int newCapacity = Math.max(needed, capacity * 2);
+        FloatBuffer grown = allocate(newCapacity);
+        grown.put(0, vectors, 0, size * dims);
+        vectors = grown;
+        levels = Arrays.copyOf(levels, newCapacity);
+        neighbors = Arrays.copyOf(neighbors, newCapacity);
+        capacity = newCapacity;
+    }
+
+    private FloatBuffer allocate(int nodes) {
+        return ByteBuffer.allocateDirect(nodes * dims * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    // Squared distances are >= 0, so their float bits sort like the floats: pack (distance, node) into one long.
+    private static long key(float dist, int node) {
+        return ((long) Float.floatToRawIntBits(dist) << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private static int nodeOf(long key) {
+        return (int) key;
+    }
+
+    private static float distOf(long key) {
+        return Float.intBitsToFloat((int) (key >>> 32));
+    }
+
+    /** Binary heap of primitive longs; max-heap when {@code max}, else min-heap. */
+    private static final class LongHeap {
+        private long[] heap;
+        private int n;
+        private final boolean max;
+
+        LongHeap(int capacity, boolean max) {
+            this.heap = new long[Math.max(4, capacity)];
+            this.max = max;
+        }
+
+        int size() {
+            return n;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void push(long v) {
+            if (n == heap.length) heap = Arrays.copyOf(heap, n * 2);
+            int i = n++;
+            heap[i] = v;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(heap[i], heap[parent])) break;
+                long t = heap[i];
+                heap[i] = heap[parent];
+                heap[parent] = t;
+                i = parent;
+            }
+        }
+
+        long pop() {
+            long top = heap[0];
+            heap[0] = heap[--n];
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= n) break;
+                int c = (l + 1 < n && before(heap[l + 1], heap[l])) ? l + 1 : l;
+                if (!before(heap[c], heap[i])) break;
+                long t = heap[i];
+                heap[i] = heap[c];
+                heap[c] = t;
+                i = c;
+            }
+            return top;
+        }
+
+        long[] drainAscending() {
+            long[] out = Arrays.copyOf(heap, n);
+            Arrays.sort(out);
+            n = 0;
+            return out;
+        }
+
+        private boolean before(long a, long b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.zenlink.zenlink.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Deterministic in-JVM embeddings (feature hashing of words and character trigrams, L2-normalized).
+ * No network, no model: meant for tests, offline benchmarks and local development. Texts sharing
+ * words end up close, which is enough to exercise retrieval end to end, not to judge answer quality.
+ */
+@Component
+@ConditionalOnProperty(name = "rag.embedding.provider", havingValue = "local")
+public class LocalHashEmbeddingProvider implements EmbeddingProvider {
+
+    private static final int WORD_WEIGHT = 3;
+
+    private final int dimensions;
+
+    public LocalHashEmbeddingProvider(@Value("${rag.embedding.dimensions:768}") int dimensions) {
+        this.dimensions = Math.max(8, dimensions);
+    }
+
+    @Override
+    public String modelId() {
+        return "local-hash-v1@" + dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return 1024;
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        List<float[]> out = new ArrayList<>(texts.size());
+        for (String t : texts) out.add(embed(t));
+        return out;
+    }
+
+    public float[] embed(String text) {
+        float[] v = new float[dimensions];
+        String norm = normalize(text);
+        int wordStart = -1;
+        for (int i = 0; i <= norm.length(); i++) {
+            boolean letter = i < norm.length() && Character.isLetterOrDigit(norm.charAt(i));
+            if (letter && wordStart < 0) {
+                wordStart = i;
+            } else if (!letter && wordStart >= 0) {
+                addWord(v, norm, wordStart, i);
+                wordStart = -1;
+            }
+        }
+        double sum = 0;
+        for (float f : v) sum += f * f;
+        if (sum > 0) {
+            float inv = (float) (1.0 / Math.sqrt(sum));
+            for (int i = 0; i < v.length; i++) v[i] *= inv;
+        }
+        return v;
+    }
+
+    private void addWord(float[] v, String s, int from, int to) {
+        add(v, hash(s, from, to, 0x9E3779B9), WORD_WEIGHT);
+        // Padded trigrams make inflected forms ("molar", "molarul") overlap.
+        for (int i = from - 1; i < to - 1; i++) {
+            int a = Math.max(from, i);
+            int b = Math.min(to, i + 3);
+            if (b - a >= 2) add(v, hash(s, a, b, i < from ? 0x7F4A7C15 : 0x85EBCA6B), 1);
+        }
+    }
+
+    private void add(float[] v, int h, int weight) {
+        int idx = Math.floorMod(h, dimensions);
+        v[idx] += ((h >>> 31) == 0 ? weight : -weight);
+    }
+
+    private static int hash(String s, int from, int to, int seed) {
+        int h = seed;
+        for (int i = from; i < to; i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) return "";
+        String d = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(d.length());
+        for (int i = 0; i < d.length(); i++) {
+            char c = d.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) sb.append(c);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,69 @@
+package com.zenlink.zenlink.service;
+
+/**
+ * Maximal marginal relevance: picks k of n ranked candidates one at a time, each maximizing
+ * {@code lambda * relevance - (1 - lambda) * (max cosine similarity to the already picked)}.
+ * lambda = 1 keeps the ranking as is; lower values push near-duplicates (overlapping chunks,
+ * repeated letterheads) down in favour of chunks that add something new.
+ */
+public final class MmrReranker {
+
+    private MmrReranker() {}
+
+    /**
+     * Indexes into the candidates, in pick order. {@code relevance} is in [0, 1]; a null vector (embedding
+     * not available) counts as dissimilar to everything.
+     */
+    public static int[] select(double[] relevance, float[][] vectors, double lambda, int k) {
+        int n = relevance.length;
+        int picks = Math.min(k, n);
+        float[][] unit = new float[n][];
+        for (int i = 0; i < n; i++) unit[i] = normalized(vectors[i]);
+
+        double[] maxSimilarity = new double[n];
+        boolean[] picked = new boolean[n];
+        int[] out = new int[picks];
+        for (int p = 0; p < picks; p++) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (picked[i]) continue;
+                double score = lambda * relevance[i] - (1 - lambda) * maxSimilarity[i];
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            picked[best] = true;
+            out[p] = best;
+            if (unit[best] == null) continue;
+            for (int i = 0; i < n; i++) {
+                if (picked[i] || unit[i] == null) continue;
+                maxSimilarity[i] = Math.max(maxSimilarity[i], dot(unit[best], unit[i]));
+            }
+        }
+        return out;
+    }
+
+    /** Relevance from rank alone: 1 for the first of n candidates, falling linearly to 1/n for the last. */
+    public static double[] rankRelevance(int n) {
+        double[] relevance = new double[n];
+        for (int i = 0; i < n; i++) relevance[i] = 1.0 - i / (double) n;
+        return relevance;
+    }
+
+    private static float[] normalized(float[] v) {
+        if (v == null) return null;
+        double norm = Math.sqrt(dot(v, v));
+        if (norm == 0) return null;
+        float[] u = new float[v.length];
+        for (int i = 0; i < v.length; i++) u[i] = (float) (v[i] / norm);
+        return u;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double s = 0;
+        for (int i = 0; i < a.length; i++) s += a[i] * b[i];
+        return s;
+    }
+}
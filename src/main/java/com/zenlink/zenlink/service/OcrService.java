@@ -1,65 +1,319 @@
 package com.zenlink.zenlink.service;
 
+import com.zenlink.zenlink.config.AsyncConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
+/**
+ * OCR of selected PDF pages with OCRmyPDF (RO+EN), returning sidecar text per page.
+ *
+ * Jobs run on the OCR pool, which has one thread per allowed ocrmypdf process
+ * ({@code rag.ocr.max-processes}). Each process uses {@code -j} Tesseract workers and only OCRs the
+ * requested pages ({@code --pages}), normally the ones without a text layer. A process that runs past
+ * {@code rag.ocr.timeout-seconds}, or is cancelled, is killed together with its children. Results are
+ * cached by content hash and page set, so re-indexing a scanned file after a config change does not OCR
+ * it again. Only the sidecar text is kept; the OCR'd PDF is discarded.
+ */
 @Service
 public class OcrService {
 
+    public record Stats(int queued, int running, long completed, long failed, long timedOut, long cancelled,
+                        long cacheHits, long cacheMisses, long pagesOcred, double avgPageMillis, long maxPageMillis) {}
+
+    private static final Logger log = LoggerFactory.getLogger(OcrService.class);
+    private static final String SKIPPED_MARKER = "[OCR skipped on page";
+
+    /** A queued or running job; the process is only started or killed under the handle's lock. */
+    private static final class Handle {
+        Process process;
+        boolean cancelled;
+    }
+
+    private final Executor executor;
+    private final String command;
+    private final String languages;
+    private final int jobsPerProcess;
+    private final long timeoutSeconds;
+    private final int cacheMaxEntries;
+
+    private final Map<Object, Handle> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong pagesOcred = new AtomicLong();
+    private final AtomicLong pageNanos = new AtomicLong();
+    private final AtomicLong maxPageNanos = new AtomicLong();
+
+    /** contentSha256|languages|pages -> page texts; access-ordered, guarded by itself. */
+    private final LinkedHashMap<String, Map<Integer, String>> cache;
+
+    public OcrService(
+            @Qualifier(AsyncConfig.RAG_OCR_EXECUTOR) Executor executor,
+            @Value("${rag.ocr.command:ocrmypdf}") String command,
+            @Value("${rag.ocr.languages:ron+eng}") String languages,
+            @Value("${rag.ocr.max-processes:1}") int maxProcesses,
+            @Value("${rag.ocr.jobs-per-process:0}") int jobsPerProcess,
+            @Value("${rag.ocr.timeout-seconds:600}") int timeoutSeconds,
+            @Value("${rag.ocr.cache-max-entries:200}") int cacheMaxEntries
+    ) {
+        this.executor = executor;
+        this.command = command;
+        this.languages = languages;
+        this.jobsPerProcess = jobsPerProcess > 0
+                ? jobsPerProcess
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, maxProcesses));
+        this.timeoutSeconds = Math.max(1, timeoutSeconds);
+        this.cacheMaxEntries = Math.max(0, cacheMaxEntries);
+        this.cache = new LinkedHashMap<>(32, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, String>> eldest) {
+                return size() > OcrService.this.cacheMaxEntries;
+            }
+        };
+    }
+
     /**
-     * Runs OCRmyPDF with a sidecar text output (RO+EN). Returns the sidecar text.
-     * This does NOT store the OCR'd PDF; it only extracts text (per your requirement).
+     * OCRs {@code pages} (1-based) of a PDF file, which must exist until the job completes, on the OCR pool.
+     * Returns page number -> text for the requested pages (empty when OCR found nothing). {@code jobKey}
+     * identifies the job for {@link #cancel}; a key can only have one job at a time. Fails with
+     * {@link RejectedExecutionException} when the queue is full.
      */
-    public String ocrToText(byte[] pdfBytes) {
-        if (pdfBytes == null || pdfBytes.length == 0) return "";
+    public CompletableFuture<Map<Integer, String>> ocrPages(Object jobKey, String contentSha256, Path pdf,
+                                                            SortedSet<Integer> pages) {
+        if (pdf == null || pages.isEmpty()) return CompletableFuture.completedFuture(Map.of());
+
+        String cacheKey = contentSha256 == null ? null : contentSha256 + "|" + languages + "|" + pageSpec(pages);
+        if (cacheKey != null && cacheMaxEntries > 0) {
+            Map<Integer, String> hit;
+            synchronized (cache) {
+                hit = cache.get(cacheKey);
+            }
+            if (hit != null) {
+                cacheHits.incrementAndGet();
+                return CompletableFuture.completedFuture(hit);
+            }
+            cacheMisses.incrementAndGet();
+        }
 
+        Handle handle = new Handle();
+        if (jobs.putIfAbsent(jobKey, handle) != null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("OCR already running for " + jobKey));
+        }
+        queued.incrementAndGet();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                queued.decrementAndGet();
+                running.incrementAndGet();
+                try {
+                    Map<Integer, String> texts = run(handle, pdf, pages);
+                    if (cacheKey != null && cacheMaxEntries > 0) {
+                        synchronized (cache) {
+                            cache.put(cacheKey, texts);
+                        }
+                    }
+                    return texts;
+                } finally {
+                    running.decrementAndGet();
+                    jobs.remove(jobKey, handle);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            jobs.remove(jobKey, handle);
+            throw e;
+        }
+    }
+
+    /** Cancels a queued or running job: a running ocrmypdf is killed. Returns false when there is no such job. */
+    public boolean cancel(Object jobKey) {
+        Handle handle = jobs.get(jobKey);
+        if (handle == null) return false;
+        synchronized (handle) {
+            handle.cancelled = true;
+            if (handle.process != null) destroyTree(handle.process);
+        }
+        return true;
+    }
+
+    public Stats stats() {
+        long pages = pagesOcred.get();
+        return new Stats(queued.get(), running.get(), completed.get(), failed.get(), timedOut.get(), cancelled.get(),
+                cacheHits.get(), cacheMisses.get(), pages,
+                pages == 0 ? 0.0 : pageNanos.get() / (double) pages / 1_000_000.0,
+                TimeUnit.NANOSECONDS.toMillis(maxPageNanos.get()));
+    }
+
+    private Map<Integer, String> run(Handle handle, Path pdf, SortedSet<Integer> pages) {
+        Path tmpDir = null;
         try {
-            Path tmpDir = Files.createTempDirectory("zenlink-ocr-");
-            Path inPdf = tmpDir.resolve("input.pdf");
+            tmpDir = Files.createTempDirectory("zenlink-ocr-");
             Path outPdf = tmpDir.resolve("output.pdf");
             Path sidecar = tmpDir.resolve("sidecar.txt");
-
-            Files.write(inPdf, pdfBytes);
+            Path output = tmpDir.resolve("ocrmypdf.log");
 
             ProcessBuilder pb = new ProcessBuilder(
-                    "ocrmypdf",
+                    command,
                     "--force-ocr",
-                    "-l", "ron+eng",
+                    "-l", languages,
+                    "-j", Integer.toString(jobsPerProcess),
+                    "--pages", pageSpec(pages),
                     "--sidecar", sidecar.toString(),
-                    inPdf.toString(),
+                    pdf.toString(),
                     outPdf.toString()
             );
             pb.redirectErrorStream(true);
+            // To a file, not a pipe: nobody reads a pipe while we wait with a timeout
+            pb.redirectOutput(output.toFile());
 
-            Process p = pb.start();
-            String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-            int code = p.waitFor();
-            if (code != 0) {
-                throw new RuntimeException("OCR failed (exit " + code + "): " + output);
+            long started = System.nanoTime();
+            Process p;
+            synchronized (handle) {
+                if (handle.cancelled) throw cancelledFailure();
+                p = pb.start();
+                handle.process = p;
+            }
+            if (!p.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                destroyTree(p);
+                timedOut.incrementAndGet();
+                throw new RuntimeException("OCR timed out after " + timeoutSeconds + " s (" + pages.size() + " pages)");
+            }
+            synchronized (handle) {
+                if (handle.cancelled) throw cancelledFailure();
+            }
+            if (p.exitValue() != 0) {
+                failed.incrementAndGet();
+                throw new RuntimeException("OCR failed (exit " + p.exitValue() + "): " + tail(output));
             }
 
             String text = Files.exists(sidecar) ? Files.readString(sidecar, StandardCharsets.UTF_8) : "";
-
-            // Best-effort cleanup
-            try {
-                Files.deleteIfExists(inPdf);
-                Files.deleteIfExists(outPdf);
-                Files.deleteIfExists(sidecar);
-                Files.deleteIfExists(tmpDir);
-            } catch (Exception ignored) {}
-
-            return text;
+            recordPages(pages.size(), System.nanoTime() - started);
+            completed.incrementAndGet();
+            return parseSidecar(text, pages);
         } catch (IOException e) {
+            failed.incrementAndGet();
             throw new RuntimeException("OCR tool not available or failed to run (is ocrmypdf installed?): " + e.getMessage(), e);
         } catch (InterruptedException e) {
+            synchronized (handle) {
+                if (handle.process != null) destroyTree(handle.process);
+            }
             Thread.currentThread().interrupt();
-            throw new RuntimeException("OCR interrupted");
+            throw cancelledFailure();
+        } finally {
+            deleteQuietly(tmpDir);
+        }
+    }
+
+    private RuntimeException cancelledFailure() {
+        cancelled.incrementAndGet();
+        return new RuntimeException("OCR cancelled");
+    }
+
+    private void recordPages(int pages, long nanos) {
+        long perPage = nanos / Math.max(1, pages);
+        pagesOcred.addAndGet(pages);
+        pageNanos.addAndGet(nanos);
+        maxPageNanos.accumulateAndGet(perPage, Math::max);
+        log.info("OCR of {} page(s) took {} ms", pages, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /** ocrmypdf runs Tesseract in child processes; kill those too, not just the Python parent. */
+    private static void destroyTree(Process p) {
+        p.descendants().forEach(ProcessHandle::destroyForcibly);
+        p.destroyForcibly();
+    }
+
+    /** "1-3,7,9-10" for OCRmyPDF's --pages. */
+    static String pageSpec(SortedSet<Integer> pages) {
+        StringBuilder sb = new StringBuilder();
+        Iterator<Integer> it = pages.iterator();
+        int from = it.next();
+        int to = from;
+        while (true) {
+            Integer next = it.hasNext() ? it.next() : null;
+            if (next != null && next == to + 1) {
+                to = next;
+                continue;
+            }
+            if (sb.length() > 0) sb.append(',');
+            sb.append(from);
+            if (to > from) sb.append('-').append(to);
+            if (next == null) return sb.toString();
+            from = to = next;
         }
     }
-}
 
+    /**
+     * Maps sidecar text to the requested pages. The sidecar has one form-feed separated entry per page of
+     * the document, with a "[OCR skipped on page(s) …]" note for pages outside --pages; when it has fewer
+     * entries than that, the non-empty entries are assigned to the requested pages in order.
+     */
+    static Map<Integer, String> parseSidecar(String sidecar, SortedSet<Integer> pages) {
+        String[] parts = (sidecar == null ? "" : sidecar).split("\f", -1);
+        Map<Integer, String> out = new HashMap<>();
+        if (parts.length >= pages.last()) {
+            for (int page : pages) out.put(page, clean(parts[page - 1]));
+            return out;
+        }
+        Iterator<Integer> it = pages.iterator();
+        for (String part : parts) {
+            String text = clean(part);
+            if (text.isEmpty()) continue;
+            if (!it.hasNext()) break;
+            out.put(it.next(), text);
+        }
+        while (it.hasNext()) out.put(it.next(), "");
+        return out;
+    }
+
+    private static String clean(String part) {
+        String t = part.trim();
+        return t.startsWith(SKIPPED_MARKER) ? "" : t;
+    }
 
+    private static String tail(Path output) {
+        try {
+            String s = Files.readString(output, StandardCharsets.UTF_8);
+            return s.length() > 2000 ? s.substring(s.length() - 2000) : s;
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static void deleteQuietly(Path dir) {
+        if (dir == null) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> {
+                try {
+                    Files.deleteIfExists(f);
+                } catch (IOException ignored) {}
+            });
+        } catch (IOException ignored) {}
+    }
+}
@@ -337,6 +337,53 @@ public class OpenAiChatService {
         return assistantText.toString();
     }
 
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Non-streaming completion for background jobs (summaries, digests): caller-supplied system prompt,
+     * no triage/JSON guardrails. Returns the assistant text.
+     */
+    public String completeText(String systemPrompt, String userPrompt, int maxTokens) throws Exception {
+        if (!enabled) {
+            throw new IllegalStateException("OpenAI service is disabled. Set OPENAI_API_KEY to enable.");
+        }
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("model", model);
+        payload.put("messages", List.of(
+                Map.of("role", "system", "content", systemPrompt),
+                Map.of("role", "user", "content", userPrompt)
+        ));
+        payload.put("max_tokens", maxTokens);
+        payload.put("temperature", 0.2);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(OPENAI_API_BASE + "/chat/completions"))
+                .timeout(Duration.ofMinutes(2))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(payload)))
+                .build();
+
+        long startTime = System.currentTimeMillis();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            String body = response.body() == null ? "" : response.body().replace(apiKey, "***");
+            throw new RuntimeException("OpenAI API returned error: " + response.statusCode() + " - "
+                    + (body.length() > 200 ? body.substring(0, 200) : body));
+        }
+
+        Map<String, Object> json = objectMapper.readValue(response.body(), Map.class);
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) json.get("choices");
+        if (choices == null || choices.isEmpty()) return "";
+        Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
+        Object content = message == null ? null : message.get("content");
+        log.info("OpenAI completion finished in {} ms", System.currentTimeMillis() - startTime);
+        return content == null ? "" : content.toString().trim();
+    }
+
     /**
      * Build system message with healthcare safety guardrails and structured JSON output.
      */
@@ -0,0 +1,135 @@
+package com.zenlink.zenlink.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OpenAI embeddings (/v1/embeddings): many inputs per request, vectors shortened server-side to
+ * {@code rag.embedding.dimensions} so they fit the vector(768) column.
+ */
+@Component
+@ConditionalOnProperty(name = "rag.embedding.provider", havingValue = "openai", matchIfMissing = true)
+public class OpenAiEmbeddingProvider implements EmbeddingProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiEmbeddingProvider.class);
+    private static final String OPENAI_API_BASE = "https://api.openai.com/v1";
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final String apiKey;
+    private final String model;
+    private final int dimensions;
+    private final int maxBatchSize;
+
+    public OpenAiEmbeddingProvider(
+            ObjectMapper objectMapper,
+            @Value("${openai.api-key:${OPENAI_API_KEY:}}") String apiKey,
+            @Value("${rag.embedding.openai-model:text-embedding-3-small}") String model,
+            @Value("${rag.embedding.dimensions:768}") int dimensions,
+            @Value("${rag.embedding.batch-size:64}") int maxBatchSize
+    ) {
+        this.objectMapper = objectMapper;
+        String envApiKey = System.getenv("OPENAI_API_KEY");
+        this.apiKey = (envApiKey != null && !envApiKey.isEmpty()) ? envApiKey : apiKey;
+        this.model = model;
+        this.dimensions = dimensions;
+        // OpenAI accepts up to 2048 inputs per request.
+        this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, 2048));
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @Override
+    public String modelId() {
+        return "openai:" + model + "@" + dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<float[]> embedBatch(List<String> texts) {
+        if (apiKey == null || apiKey.isBlank()) {
+            throw new IllegalStateException("OpenAI embeddings disabled. Set OPENAI_API_KEY or use rag.embedding.provider=local.");
+        }
+        if (texts.isEmpty()) return List.of();
+
+        List<String> input = new ArrayList<>(texts.size());
+        for (String t : texts) {
+            // The API rejects empty strings.
+            input.add(t == null || t.isBlank() ? " " : t);
+        }
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("model", model);
+        payload.put("input", input);
+        payload.put("dimensions", dimensions);
+        payload.put("encoding_format", "float");
+
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(OPENAI_API_BASE + "/embeddings"))
+                    .timeout(Duration.ofMinutes(2))
+                    .header("Authorization", "Bearer " + apiKey)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(payload)))
+                    .build();
+
+            long t0 = System.currentTimeMillis();
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                String body = new String(response.body(), StandardCharsets.UTF_8).replace(apiKey, "***");
+                throw new RuntimeException("OpenAI embeddings error: HTTP " + response.statusCode() + " - "
+                        + (body.length() > 200 ? body.substring(0, 200) : body));
+            }
+
+            Map<String, Object> json = objectMapper.readValue(response.body(), Map.class);
+            List<Map<String, Object>> data = (List<Map<String, Object>>) json.get("data");
+            if (data == null || data.size() != texts.size()) {
+                throw new RuntimeException("OpenAI embeddings returned " + (data == null ? 0 : data.size()) + " vectors for " + texts.size() + " inputs");
+            }
+
+            float[][] out = new float[texts.size()][];
+            for (Map<String, Object> item : data) {
+                int index = ((Number) item.get("index")).intValue();
+                List<Number> values = (List<Number>) item.get("embedding");
+                float[] v = new float[values.size()];
+                for (int i = 0; i < v.length; i++) v[i] = values.get(i).floatValue();
+                out[index] = v;
+            }
+            log.debug("Embedded {} texts in {} ms", texts.size(), System.currentTimeMillis() - t0);
+            return List.of(out);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Embedding request interrupted", e);
+        } catch (Exception e) {
+            throw new RuntimeException("Embedding request failed: " + e.getMessage(), e);
+        }
+    }
+}
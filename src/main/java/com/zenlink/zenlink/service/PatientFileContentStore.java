@@ -0,0 +1,117 @@
+package com.zenlink.zenlink.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Copies patient file content (patient_files.content, bytea) to a scratch file without holding the
+ * document on heap, so PDFBox and OCRmyPDF can read it from disk.
+ *
+ * The PostgreSQL driver materializes a whole bytea value before {@code getBinaryStream} returns, so the
+ * content is read in {@code rag.content.slice-kb} slices with {@code substring(content FROM ? FOR ?)} and
+ * each slice streamed to the file; heap use is one slice. Slicing is cheapest with uncompressed storage
+ * (see ai_rag_bootstrap.sql), where Postgres fetches only the TOAST chunks of the slice.
+ */
+@Component
+public class PatientFileContentStore {
+
+    /** Content on disk with its size and SHA-256 (hex); {@link #close()} deletes the file. */
+    public record ScratchFile(Path path, long size, String sha256) implements AutoCloseable {
+        @Override
+        public void close() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int sliceBytes;
+    private final String scratchDir;
+
+    public PatientFileContentStore(
+            JdbcTemplate jdbcTemplate,
+            @Value("${rag.content.slice-kb:1024}") int sliceKb,
+            @Value("${rag.content.scratch-dir:}") String scratchDir
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sliceBytes = Math.max(64, sliceKb) * 1024;
+        this.scratchDir = scratchDir;
+    }
+
+    /** Copies a file's content to a new scratch file. Returns null when the file does not exist (any more). */
+    public ScratchFile copyToScratch(UUID fileId) {
+        Long length = jdbcTemplate.query(
+                "SELECT octet_length(content) FROM patient_files WHERE id = ?",
+                rs -> rs.next() ? rs.getLong(1) : null,
+                fileId
+        );
+        if (length == null) return null;
+
+        Path path = null;
+        try {
+            path = scratchDir == null || scratchDir.isBlank()
+                    ? Files.createTempFile("zenlink-file-", ".pdf")
+                    : Files.createTempFile(Files.createDirectories(Path.of(scratchDir)), "zenlink-file-", ".pdf");
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            long written;
+            try (DigestOutputStream out = new DigestOutputStream(Files.newOutputStream(path), sha256)) {
+                written = copySlices(fileId, length, out);
+            }
+            if (written != length) {
+                throw new IllegalStateException("File " + fileId + " changed or was deleted while reading (" + written + " of " + length + " bytes)");
+            }
+            return new ScratchFile(path, length, HexFormat.of().formatHex(sha256.digest()));
+        } catch (IOException | UncheckedIOException e) {
+            deleteQuietly(path);
+            throw new RuntimeException("Could not copy file " + fileId + " to scratch: " + e.getMessage(), e);
+        } catch (NoSuchAlgorithmException e) {
+            deleteQuietly(path);
+            throw new IllegalStateException("SHA-256 not available", e);
+        } catch (RuntimeException e) {
+            deleteQuietly(path);
+            throw e;
+        }
+    }
+
+    private long copySlices(UUID fileId, long length, OutputStream out) {
+        long[] written = {0};
+        for (long offset = 0; offset < length; offset += sliceBytes) {
+            long before = written[0];
+            jdbcTemplate.query(
+                    "SELECT substring(content FROM ? FOR ?) FROM patient_files WHERE id = ?",
+                    (RowCallbackHandler) rs -> {
+                        try (InputStream in = rs.getBinaryStream(1)) {
+                            if (in != null) written[0] += in.transferTo(out);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    },
+                    offset + 1, (int) Math.min(sliceBytes, length - offset), fileId
+            );
+            if (written[0] == before) break; // deleted meanwhile
+        }
+        return written[0];
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {}
+    }
+}
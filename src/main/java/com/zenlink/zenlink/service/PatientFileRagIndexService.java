@@ -1,171 +1,627 @@
 package com.zenlink.zenlink.service;
 
+import com.zenlink.zenlink.config.AsyncConfig;
 import com.zenlink.zenlink.model.PatientFile;
 import com.zenlink.zenlink.repository.PatientFileRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
-// RAG features temporarily disabled - require Ollama embeddings
-// @Service
+/**
+ * Background indexing of patient PDFs into patient_file_pages / patient_file_chunks.
+ *
+ * Files are queued (status NEW) on upload or on demand and picked up by a bounded worker pool.
+ * Each file moves through EXTRACTING -> OCR (only pages without a text layer, on the OCR pool) ->
+ * EMBEDDING -> WRITING -> READY; the current stage is kept in patient_file_index.status so callers
+ * can show progress. Extraction, OCR and embedding hold no JDBC connection; only the final write
+ * runs in a (short) transaction. Chat only reads READY files and never waits for indexing.
+ */
+@Service
+@ConditionalOnProperty(name = "rag.enabled", havingValue = "true")
 public class PatientFileRagIndexService {
 
-    public enum IndexStatus { NEW, INDEXING, READY, ERROR }
+    public enum IndexStatus { NEW, EXTRACTING, OCR, EMBEDDING, WRITING, READY, ERROR }
+
+    public record FileIndexStatus(UUID fileId, String status, String errorMessage, LocalDateTime updatedAt) {}
 
     private static final Logger log = LoggerFactory.getLogger(PatientFileRagIndexService.class);
 
+    // INDEXING: rows left behind by the old synchronous indexer.
+    private static final String IN_PROGRESS = "('EXTRACTING','OCR','EMBEDDING','WRITING','INDEXING')";
+    private static final String IS_PDF = "(pf.content_type = 'application/pdf' OR lower(pf.name) LIKE '%.pdf')";
+    // Rough characters per token of Romanian text, for the chunks-saved estimate
+    private static final double CHARS_PER_TOKEN = 4.0;
+
+    /** Working state of one file between stages (only ever touched by one stage at a time). */
+    private static final class Job {
+        final UUID fileId;
+        final Long patientId;
+        final String contentSha256;
+        PatientFileContentStore.ScratchFile content;
+        List<String> pages;
+        SortedSet<Integer> ocrPages = new TreeSet<>();
+        List<RagIndexWriter.PageRow> changedPages;
+        List<Integer> replacedPageNumbers;
+        int unchangedPages;
+        List<RagChunker.Chunk> chunks;
+        List<float[]> embeddings;
+        BoilerplateDetector.Plan boilerplate;
+        int chunksSaved;
+        int embeddingsReused;
+        final long startedAt = System.currentTimeMillis();
+
+        Job(UUID fileId, Long patientId, String contentSha256) {
+            this.fileId = fileId;
+            this.patientId = patientId;
+            this.contentSha256 = contentSha256;
+        }
+    }
+
     private final JdbcTemplate jdbcTemplate;
     private final PatientFileRepository patientFileRepository;
     private final PdfTextExtractor pdfTextExtractor;
+    private final PdfScanClassifier scanClassifier;
+    private final PatientFileContentStore contentStore;
     private final OcrService ocrService;
     private final RagChunker ragChunker;
-    private final OllamaEmbeddingService embeddingService;
+    private final BoilerplateDetector boilerplateDetector;
+    private final EmbeddingService embeddingService;
+    private final RagIndexWriter ragIndexWriter;
+    private final RagIndexConfig indexConfig;
+    private final ObjectProvider<PatientVectorIndex> vectorIndex;
+    private final PatientFileSummaryService summaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor indexingExecutor;
+    private final int maxInFlight;
+    private final int staleMinutes;
+    private final int reindexPerSweep;
+    private final int ocrMinPageChars;
+
+    /** Files currently somewhere in the pipeline; bounds scratch space (each holds a copy of its PDF) and prevents double work. */
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
 
     public PatientFileRagIndexService(
             JdbcTemplate jdbcTemplate,
             PatientFileRepository patientFileRepository,
             PdfTextExtractor pdfTextExtractor,
+            PdfScanClassifier scanClassifier,
+            PatientFileContentStore contentStore,
             OcrService ocrService,
             RagChunker ragChunker,
-            OllamaEmbeddingService embeddingService
+            BoilerplateDetector boilerplateDetector,
+            EmbeddingService embeddingService,
+            RagIndexWriter ragIndexWriter,
+            RagIndexConfig indexConfig,
+            ObjectProvider<PatientVectorIndex> vectorIndex,
+            PatientFileSummaryService summaryService,
+            PlatformTransactionManager transactionManager,
+            @Qualifier(AsyncConfig.RAG_INDEXING_EXECUTOR) Executor indexingExecutor,
+            @Value("${rag.indexing.max-in-flight:6}") int maxInFlight,
+            @Value("${rag.indexing.stale-minutes:30}") int staleMinutes,
+            @Value("${rag.indexing.reindex-per-sweep:2}") int reindexPerSweep,
+            @Value("${rag.ocr.min-page-chars:20}") int ocrMinPageChars
     ) {
         this.jdbcTemplate = jdbcTemplate;
         this.patientFileRepository = patientFileRepository;
         this.pdfTextExtractor = pdfTextExtractor;
+        this.scanClassifier = scanClassifier;
+        this.contentStore = contentStore;
         this.ocrService = ocrService;
         this.ragChunker = ragChunker;
+        this.boilerplateDetector = boilerplateDetector;
         this.embeddingService = embeddingService;
+        this.ragIndexWriter = ragIndexWriter;
+        this.indexConfig = indexConfig;
+        this.vectorIndex = vectorIndex;
+        this.summaryService = summaryService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.indexingExecutor = indexingExecutor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.staleMinutes = Math.max(1, staleMinutes);
+        this.reindexPerSweep = Math.max(0, reindexPerSweep);
+        this.ocrMinPageChars = Math.max(1, ocrMinPageChars);
     }
 
     public boolean isReady(UUID fileId) {
-        String s = jdbcTemplate.query(
+        return IndexStatus.READY.name().equalsIgnoreCase(statusOf(fileId));
+    }
+
+    /**
+     * True when the file has chunks embedded with the current model. This stays true while an outdated
+     * file is re-indexed in the background: its previous chunks keep answering until the new ones replace them.
+     */
+    public boolean isSearchable(UUID fileId) {
+        Boolean searchable = jdbcTemplate.query(
+                "SELECT embedding_model = ? FROM patient_file_index WHERE file_id = ?",
+                rs -> rs.next() && rs.getBoolean(1),
+                indexConfig.embeddingModel(),
+                fileId
+        );
+        return Boolean.TRUE.equals(searchable);
+    }
+
+    /** Current stage of a file, or null when it was never queued. */
+    public String statusOf(UUID fileId) {
+        return jdbcTemplate.query(
                 "SELECT status FROM patient_file_index WHERE file_id = ?",
                 rs -> rs.next() ? rs.getString(1) : null,
                 fileId
         );
-        return "READY".equalsIgnoreCase(s);
     }
 
-    @Transactional
-    public void ensureIndexedFile(UUID fileId) {
-        PatientFile file = patientFileRepository.findById(fileId)
-                .orElseThrow(() -> new RuntimeException("File not found"));
+    public List<FileIndexStatus> statusesForPatient(Long patientId) {
+        return jdbcTemplate.query(
+                "SELECT file_id, status, error_message, updated_at FROM patient_file_index WHERE patient_id = ? ORDER BY updated_at DESC",
+                (rs, rowNum) -> new FileIndexStatus(
+                        (UUID) rs.getObject("file_id"),
+                        rs.getString("status"),
+                        rs.getString("error_message"),
+                        rs.getTimestamp("updated_at").toLocalDateTime()
+                ),
+                patientId
+        );
+    }
 
-        String currentStatus = jdbcTemplate.query(
-                "SELECT status FROM patient_file_index WHERE file_id = ?",
-                rs -> rs.next() ? rs.getString(1) : null,
+    /** Stops OCR of a file that is being deleted; the rest of its pipeline finds the file gone. */
+    public boolean cancelIndexing(UUID fileId) {
+        return ocrService.cancel(fileId);
+    }
+
+    public OcrService.Stats ocrStats() {
+        return ocrService.stats();
+    }
+
+    public BoilerplateDetector.Stats boilerplateStats() {
+        return boilerplateDetector.stats();
+    }
+
+    public PdfScanClassifier.Stats scanClassifierStats() {
+        return scanClassifier.stats();
+    }
+
+    /**
+     * Queues a PDF for indexing unless it is already queued, in progress or READY.
+     * With {@code retryFailed}, files in ERROR are queued again. Returns true if the file is now NEW.
+     */
+    public boolean enqueueFile(UUID fileId, boolean retryFailed) {
+        int n = jdbcTemplate.update(
+                "INSERT INTO patient_file_index(file_id, patient_id, status, error_message, updated_at) " +
+                        "SELECT pf.id, pf.patient_id, 'NEW', NULL, ? FROM patient_files pf WHERE pf.id = ? AND " + IS_PDF + " " +
+                        (retryFailed
+                                ? "ON CONFLICT (file_id) DO UPDATE SET status = 'NEW', error_message = NULL, updated_at = EXCLUDED.updated_at " +
+                                  "WHERE patient_file_index.status = 'ERROR'"
+                                : "ON CONFLICT (file_id) DO NOTHING"),
+                Timestamp.from(Instant.now()),
                 fileId
         );
-        if ("READY".equalsIgnoreCase(currentStatus)) return;
+        if (n > 0) trySubmit(fileId);
+        return n > 0;
+    }
+
+    /** Queues the newest {@code nNewest} PDFs of a patient that were never indexed. Cheap enough to call per chat turn. */
+    public int enqueuePatientTopN(Long patientId, int nNewest) {
+        return enqueuePatient(patientId, Math.max(0, nNewest), false);
+    }
+
+    /** Queues every PDF of a patient that is not indexed yet (including failed ones). */
+    public int enqueuePatientAll(Long patientId) {
+        return enqueuePatient(patientId, Integer.MAX_VALUE, true);
+    }
 
-        upsertIndexRow(fileId, file.getPatientId(), IndexStatus.INDEXING, null);
+    private int enqueuePatient(Long patientId, int limit, boolean retryFailed) {
+        if (limit == 0) return 0;
+        List<UUID> queued = jdbcTemplate.query(
+                "INSERT INTO patient_file_index(file_id, patient_id, status, error_message, updated_at) " +
+                        "SELECT id, patient_id, 'NEW', NULL, ? FROM (" +
+                        "  SELECT pf.id, pf.patient_id FROM patient_files pf WHERE pf.patient_id = ? AND " + IS_PDF +
+                        "  ORDER BY pf.sort_rank DESC, pf.uploaded_at DESC LIMIT ?" +
+                        ") newest " +
+                        (retryFailed
+                                ? "ON CONFLICT (file_id) DO UPDATE SET status = 'NEW', error_message = NULL, updated_at = EXCLUDED.updated_at " +
+                                  "WHERE patient_file_index.status = 'ERROR' "
+                                : "ON CONFLICT (file_id) DO NOTHING ") +
+                        "RETURNING file_id",
+                (rs, rowNum) -> (UUID) rs.getObject(1),
+                Timestamp.from(Instant.now()),
+                patientId,
+                limit
+        );
+        for (UUID fileId : queued) trySubmit(fileId);
+        return queued.size();
+    }
 
+    /**
+     * Picks up queued files that did not fit into the pipeline when they were enqueued, re-queues files
+     * stuck in a stage (e.g. after a restart), and re-queues a few files indexed under an older
+     * {@link RagIndexConfig#version()} so a chunking/model change is rolled out gradually.
+     */
+    @Scheduled(initialDelayString = "${rag.indexing.sweep-initial-delay-millis:15000}",
+            fixedDelayString = "${rag.indexing.sweep-millis:30000}")
+    public void sweep() {
         try {
-            log.info("Indexing file {} (patient {}, name={}, size={})", fileId, file.getPatientId(), file.getName(), file.getSize());
-            // Clear any previous index artifacts
-            jdbcTemplate.update("DELETE FROM patient_file_chunks WHERE file_id = ?", fileId);
-            jdbcTemplate.update("DELETE FROM patient_file_pages WHERE file_id = ?", fileId);
+            Timestamp staleBefore = Timestamp.from(Instant.now().minusSeconds(staleMinutes * 60L));
+            List<UUID> stale = jdbcTemplate.query(
+                    "SELECT file_id FROM patient_file_index WHERE status IN " + IN_PROGRESS + " AND updated_at < ?",
+                    (rs, rowNum) -> (UUID) rs.getObject(1),
+                    staleBefore
+            );
+            for (UUID fileId : stale) {
+                if (inFlight.contains(fileId)) continue;
+                log.warn("Re-queueing file {} stuck in indexing since before {}", fileId, staleBefore);
+                jdbcTemplate.update(
+                        "UPDATE patient_file_index SET status = 'NEW', updated_at = ? WHERE file_id = ? AND status IN " + IN_PROGRESS,
+                        Timestamp.from(Instant.now()), fileId);
+            }
 
-            List<String> pages = pdfTextExtractor.extractPages(file.getContent());
-            if (PdfTextExtractor.looksScanned(pages)) {
-                log.info("File {} looks scanned, running OCR...", fileId);
-                String ocrText = ocrService.ocrToText(file.getContent());
-                pages = splitOcrIntoPages(ocrText);
+            int free = maxInFlight - inFlight.size();
+            if (free <= 0) return;
+            if (reindexPerSweep > 0) {
+                int outdated = jdbcTemplate.update(
+                        "UPDATE patient_file_index SET status = 'NEW', updated_at = ? WHERE file_id IN (" +
+                                "SELECT file_id FROM patient_file_index WHERE status = 'READY' AND index_config IS DISTINCT FROM ? " +
+                                "ORDER BY updated_at LIMIT ?)",
+                        Timestamp.from(Instant.now()), indexConfig.version(), Math.min(free, reindexPerSweep));
+                if (outdated > 0) log.info("Re-queued {} file(s) indexed under an older config (now {})", outdated, indexConfig.version());
             }
+            List<UUID> queued = jdbcTemplate.query(
+                    "SELECT file_id FROM patient_file_index WHERE status = 'NEW' ORDER BY updated_at LIMIT ?",
+                    (rs, rowNum) -> (UUID) rs.getObject(1),
+                    free
+            );
+            for (UUID fileId : queued) trySubmit(fileId);
+        } catch (Exception e) {
+            log.warn("RAG indexing sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean trySubmit(UUID fileId) {
+        if (inFlight.size() >= maxInFlight || !inFlight.add(fileId)) return false;
+        try {
+            // Lets the last step delete the scratch copy of the PDF whichever stage failed
+            Job[] current = new Job[1];
+            CompletableFuture.supplyAsync(() -> current[0] = extractStage(fileId), indexingExecutor)
+                    .thenCompose(job -> job != null && !job.ocrPages.isEmpty()
+                            ? ocrService.ocrPages(job.fileId, job.contentSha256, job.content.path(), job.ocrPages)
+                                    .thenApply(texts -> ocrStage(job, texts))
+                            : CompletableFuture.completedFuture(job))
+                    .thenApplyAsync(this::embedStage, indexingExecutor)
+                    .thenAcceptAsync(this::writeStage, indexingExecutor)
+                    .whenComplete((ignored, error) -> {
+                        if (current[0] != null) releaseContent(current[0]);
+                        inFlight.remove(fileId);
+                        if (error != null) onFailure(fileId, error);
+                    });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Pool saturated: the file stays NEW and the sweep picks it up later.
+            inFlight.remove(fileId);
+            return false;
+        }
+    }
 
-            if (pages.isEmpty()) {
-                throw new RuntimeException("No text extracted");
+    /**
+     * Claims a NEW file and extracts per-page text. Returns null when there is nothing left to do:
+     * the file is gone, or an identical file (same SHA-256) was already indexed and its artifacts were reused.
+     */
+    private Job extractStage(UUID fileId) {
+        if (!claim(fileId)) return null;
+        PatientFileRepository.Fingerprint fingerprint = patientFileRepository.findFingerprintById(fileId).orElse(null);
+        if (fingerprint == null) return null; // deleted meanwhile; the index row went with it
+        if (fingerprint.getContentSha256() != null
+                && reuseIdenticalFile(fileId, fingerprint.getPatientId(), fingerprint.getContentSha256())) {
+            return null;
+        }
+
+        PatientFileContentStore.ScratchFile content = contentStore.copyToScratch(fileId);
+        if (content == null) return null;
+        Job job;
+        try {
+            String sha256 = fingerprint.getContentSha256();
+            if (sha256 == null) {
+                // Uploaded before hashes were recorded
+                sha256 = content.sha256();
+                jdbcTemplate.update("UPDATE patient_files SET content_sha256 = ? WHERE id = ?", sha256, fileId);
+                if (reuseIdenticalFile(fileId, fingerprint.getPatientId(), sha256)) {
+                    content.close();
+                    return null;
+                }
             }
 
-            // Store pages
-            for (int i = 0; i < pages.size(); i++) {
-                String pageText = pages.get(i) == null ? "" : pages.get(i).trim();
-                if (pageText.isEmpty()) continue;
-                jdbcTemplate.update(
-                        "INSERT INTO patient_file_pages(file_id, patient_id, page_number, page_text) VALUES(?,?,?,?) " +
-                                "ON CONFLICT (file_id, page_number) DO UPDATE SET page_text = EXCLUDED.page_text",
-                        fileId,
-                        file.getPatientId(),
-                        i + 1,
-                        pageText
-                );
+            log.info("Indexing file {} (patient {}, name={}, size={})", fileId, fingerprint.getPatientId(), fingerprint.getName(), content.size());
+            job = new Job(fileId, fingerprint.getPatientId(), sha256);
+            job.content = content;
+            PdfScanClassifier.Classification scan = scanClassifier.classify(content.path());
+            if (scanClassifier.skipsExtraction(scan)) {
+                // Every sampled page is an image without text: OCR the whole document
+                log.info("File {}: classified as scanned ({} page(s)), skipping text extraction", fileId, scan.pageCount());
+                job.pages = new ArrayList<>(Collections.nCopies(scan.pageCount(), ""));
+            } else {
+                long started = System.nanoTime();
+                job.pages = pdfTextExtractor.extractPages(content.path());
+                scanClassifier.recordExtraction(scan, job.pages, System.nanoTime() - started);
             }
+        } catch (RuntimeException e) {
+            content.close();
+            throw e;
+        }
+        job.ocrPages = PdfTextExtractor.blankPages(job.pages, ocrMinPageChars);
+        if (!job.ocrPages.isEmpty()) {
+            log.info("File {}: {} of {} page(s) have no text layer, queued for OCR", fileId, job.ocrPages.size(), job.pages.size());
+            setStage(fileId, IndexStatus.OCR);
+        } else {
+            releaseContent(job);
+        }
+        return job;
+    }
 
-            // Chunk + embed
-            List<RagChunker.Chunk> chunks = ragChunker.chunkPages(pages, 1200, 200);
-            for (RagChunker.Chunk c : chunks) {
-                List<Double> emb = embeddingService.embed(c.text());
-                String vec = OllamaEmbeddingService.toPgvectorLiteral(emb);
-                jdbcTemplate.update(
-                        "INSERT INTO patient_file_chunks(file_id, patient_id, page_number, chunk_index, chunk_text, embedding) " +
-                                "VALUES(?,?,?,?,?,?::vector) " +
-                                "ON CONFLICT (file_id, page_number, chunk_index) DO UPDATE SET chunk_text = EXCLUDED.chunk_text, embedding = EXCLUDED.embedding",
-                        fileId,
-                        file.getPatientId(),
-                        c.pageNumber(),
-                        c.chunkIndex(),
-                        c.text(),
-                        vec
-                );
+    /**
+     * Indexing for duplicates: copies the page rows (incl. OCR text) and chunk rows, vectors included, of a READY
+     * file with the same content hash and index config, inside the database. Nothing is extracted, OCR'd or
+     * embedded, but each copy stores its own embedding / embedding_bits and adds to the vector indexes: chunks
+     * stay per file and per patient, which is what retrieval filters and deletes by. Returns false when there
+     * is no usable donor.
+     */
+    private boolean reuseIdenticalFile(UUID fileId, Long patientId, String sha256) {
+        String config = indexConfig.version();
+        Boolean reused = transactionTemplate.execute(status -> {
+            UUID donor = jdbcTemplate.query(
+                    "SELECT file_id FROM patient_file_index " +
+                            "WHERE content_sha256 = ? AND index_config = ? AND status = 'READY' AND file_id <> ? " +
+                            "ORDER BY updated_at DESC LIMIT 1 FOR SHARE",
+                    rs -> rs.next() ? (UUID) rs.getObject(1) : null,
+                    sha256, config, fileId
+            );
+            if (donor == null) return false;
+
+            jdbcTemplate.update("DELETE FROM patient_file_chunks WHERE file_id = ?", fileId);
+            jdbcTemplate.update("DELETE FROM patient_file_pages WHERE file_id = ?", fileId);
+            int pages = jdbcTemplate.update(
+                    "INSERT INTO patient_file_pages(file_id, patient_id, page_number, page_text, text_sha256, index_config) " +
+                            "SELECT ?, ?, page_number, page_text, text_sha256, index_config FROM patient_file_pages WHERE file_id = ?",
+                    fileId, patientId, donor);
+            int chunks = jdbcTemplate.update(
+                    "INSERT INTO patient_file_chunks(file_id, patient_id, page_number, chunk_index, char_start, char_end, chunk_text, embedding, embedding_bits) " +
+                            "SELECT ?, ?, page_number, chunk_index, char_start, char_end, chunk_text, embedding, embedding_bits " +
+                            "FROM patient_file_chunks WHERE file_id = ?",
+                    fileId, patientId, donor);
+            upsertIndexRow(fileId, patientId, IndexStatus.READY, null, sha256);
+            log.info("Indexing DONE for file {}: copied {} pages, {} chunks (with embeddings) of identical file {}", fileId, pages, chunks, donor);
+            return true;
+        });
+        if (Boolean.TRUE.equals(reused)) notifyIndexed(patientId, fileId);
+        return Boolean.TRUE.equals(reused);
+    }
+
+    /** Replaces the text of OCR'd pages; a page OCR found nothing on keeps whatever text it had. */
+    private Job ocrStage(Job job, Map<Integer, String> ocrTexts) {
+        releaseContent(job);
+        List<String> pages = new ArrayList<>(job.pages);
+        for (int pageNumber : job.ocrPages) {
+            String text = ocrTexts.get(pageNumber);
+            if (text != null && !text.isBlank()) pages.set(pageNumber - 1, text);
+        }
+        job.pages = pages;
+        return job;
+    }
+
+    /** Deletes the job's scratch copy of the PDF once nothing reads it any more. */
+    private static void releaseContent(Job job) {
+        PatientFileContentStore.ScratchFile content = job.content;
+        job.content = null;
+        if (content != null) content.close();
+    }
+
+    /** Re-chunks and re-embeds only pages whose text, index config or boilerplate mask differ from what is stored. */
+    private Job embedStage(Job job) {
+        if (job == null) return null;
+        if (job.pages.isEmpty()) {
+            throw new RuntimeException("No text extracted");
+        }
+        if (!setStage(job.fileId, IndexStatus.EMBEDDING)) return null;
+
+        String config = indexConfig.version();
+        RagChunker.Profile textProfile = indexConfig.profile(RagIndexConfig.TYPE_TEXT);
+        RagChunker.Profile ocrProfile = indexConfig.profile(RagIndexConfig.TYPE_OCR);
+        Map<Integer, String> stored = storedPageVersions(job.fileId);
+        // Repeated letterheads / footers are blanked in what the chunker sees; page_text keeps them
+        job.boilerplate = boilerplateDetector.plan(job.fileId, job.patientId, job.pages);
+        Set<Integer> present = new HashSet<>();
+        job.changedPages = new ArrayList<>();
+        job.replacedPageNumbers = new ArrayList<>();
+        job.chunks = new ArrayList<>();
+        double chunksSaved = 0;
+        for (int i = 0; i < job.pages.size(); i++) {
+            String pageText = job.pages.get(i) == null ? "" : job.pages.get(i).trim();
+            if (pageText.isEmpty()) continue;
+            int pageNumber = i + 1;
+            present.add(pageNumber);
+            String sha256 = PatientFile.sha256Hex(pageText.getBytes(StandardCharsets.UTF_8));
+            String chunkSource = job.boilerplate.pages().get(i);
+            // The mask depends on the patient's other files, so it can change while the page text does not
+            String pageConfig = pageConfig(config, pageText, chunkSource);
+            if ((sha256 + "|" + pageConfig).equals(stored.get(pageNumber))) {
+                job.unchangedPages++;
+                continue;
+            }
+            job.changedPages.add(new RagIndexWriter.PageRow(pageNumber, pageText, sha256, pageConfig));
+            RagChunker.Profile profile = job.ocrPages.contains(pageNumber) ? ocrProfile : textProfile;
+            job.chunks.addAll(ragChunker.chunkPage(pageNumber, chunkSource, profile));
+            if (!chunkSource.equals(pageText)) {
+                // Estimated from the blanked characters rather than by chunking the page a second time
+                chunksSaved += (double) (nonSpaceChars(pageText) - nonSpaceChars(chunkSource))
+                        / (CHARS_PER_TOKEN * (profile.maxTokens() - profile.overlapTokens()));
             }
+            if (stored.containsKey(pageNumber)) job.replacedPageNumbers.add(pageNumber);
+        }
+        if (present.isEmpty()) {
+            // Only blank pages, even after OCR: keep whatever was indexed before rather than an empty READY file
+            throw new RuntimeException("No text extracted");
+        }
+        for (Integer pageNumber : stored.keySet()) {
+            if (!present.contains(pageNumber)) job.replacedPageNumbers.add(pageNumber);
+        }
 
-            upsertIndexRow(fileId, file.getPatientId(), IndexStatus.READY, null);
-            log.info("Indexing DONE for file {}", fileId);
-        } catch (Exception e) {
-            log.error("Indexing FAILED for file {}: {}", fileId, e.getMessage(), e);
-            upsertIndexRow(fileId, file.getPatientId(), IndexStatus.ERROR, e.getMessage());
-            throw e instanceof RuntimeException re ? re : new RuntimeException(e);
+        // Near-duplicate chunks share the embedding of their first occurrence
+        List<String> texts = new ArrayList<>(job.chunks.size());
+        for (RagChunker.Chunk c : job.chunks) texts.add(c.text());
+        int[] duplicateOf = boilerplateDetector.duplicateChunks(texts);
+        List<String> unique = new ArrayList<>(texts.size());
+        int[] slot = new int[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            if (duplicateOf[i] == i) {
+                slot[i] = unique.size();
+                unique.add(texts.get(i));
+            } else {
+                slot[i] = slot[duplicateOf[i]];
+            }
         }
+        List<float[]> vectors = embeddingService.embedAll(unique);
+        job.embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) job.embeddings.add(vectors.get(slot[i]));
+        job.embeddingsReused = texts.size() - unique.size();
+        job.chunksSaved = (int) Math.round(chunksSaved);
+        return job;
+    }
+
+    /**
+     * index_config stored for a page: the index config version, plus a hash of the text the chunker saw when
+     * boilerplate lines were blanked in it.
+     */
+    static String pageConfig(String config, String pageText, String chunkSource) {
+        if (chunkSource.equals(pageText)) return config;
+        return config + "|mask=" + PatientFile.sha256Hex(chunkSource.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
     }
 
-    @Transactional
-    public void ensureIndexedPatientTopN(Long patientId, int nNewest) {
-        List<PatientFile> files = patientFileRepository.findByPatientIdOrderBySortRankDescUploadedAtDesc(patientId);
-        int n = Math.max(0, Math.min(nNewest, files.size()));
-        for (int i = 0; i < n; i++) {
-            ensureIndexedFile(files.get(i).getId());
+    private static int nonSpaceChars(String text) {
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) n++;
         }
+        return n;
     }
 
-    @Transactional
-    public void ensureIndexedPatientAll(Long patientId) {
-        List<PatientFile> files = patientFileRepository.findByPatientIdOrderBySortRankDescUploadedAtDesc(patientId);
-        for (PatientFile f : files) {
-            ensureIndexedFile(f.getId());
+    private void writeStage(Job job) {
+        if (job == null) return;
+        if (!setStage(job.fileId, IndexStatus.WRITING)) return;
+        long tw = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            // Drop artifacts of changed and vanished pages only; unchanged pages keep their chunks
+            if (!job.replacedPageNumbers.isEmpty()) {
+                deletePages("patient_file_chunks", job.fileId, job.replacedPageNumbers);
+                deletePages("patient_file_pages", job.fileId, job.replacedPageNumbers);
+            }
+            ragIndexWriter.writePages(job.fileId, job.patientId, job.changedPages);
+            ragIndexWriter.writeChunks(job.fileId, job.patientId, job.chunks, job.embeddings);
+            upsertIndexRow(job.fileId, job.patientId, IndexStatus.READY, null, job.contentSha256);
+        });
+        boilerplateDetector.save(job.fileId, job.patientId, job.boilerplate);
+        boilerplateDetector.record(job.boilerplate, job.chunksSaved, job.embeddingsReused);
+        notifyIndexed(job.patientId, job.fileId);
+        log.info("Indexing DONE for file {}: {} pages re-indexed ({} chunks), {} unchanged; boilerplate: {} lines blanked, "
+                        + "{} chunks and {} embeddings saved (write {} ms, total {} ms)",
+                job.fileId, job.changedPages.size(), job.chunks.size(), job.unchangedPages, job.boilerplate.maskedLines(),
+                job.chunksSaved, job.embeddingsReused, System.currentTimeMillis() - tw, System.currentTimeMillis() - job.startedAt);
+    }
+
+    private void notifyIndexed(Long patientId, UUID fileId) {
+        vectorIndex.ifAvailable(index -> index.onFileIndexed(patientId, fileId));
+        summaryService.refreshPatientAsync(patientId);
+    }
+
+    /** page_number -> "text_sha256|index_config" of what is currently stored for the file. */
+    private Map<Integer, String> storedPageVersions(UUID fileId) {
+        Map<Integer, String> stored = jdbcTemplate.query(
+                "SELECT page_number, text_sha256, index_config FROM patient_file_pages WHERE file_id = ?",
+                rs -> {
+                    Map<Integer, String> m = new HashMap<>();
+                    while (rs.next()) m.put(rs.getInt(1), rs.getString(2) + "|" + rs.getString(3));
+                    return m;
+                },
+                fileId
+        );
+        return stored == null ? Map.of() : stored;
+    }
+
+    private void deletePages(String table, UUID fileId, List<Integer> pageNumbers) {
+        jdbcTemplate.update("DELETE FROM " + table + " WHERE file_id = ? AND page_number = ANY(?)", ps -> {
+            ps.setObject(1, fileId);
+            ps.setArray(2, ps.getConnection().createArrayOf("int4", pageNumbers.toArray()));
+        });
+    }
+
+    private void onFailure(UUID fileId, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        try {
+            if (cause instanceof RejectedExecutionException) {
+                jdbcTemplate.update("UPDATE patient_file_index SET status = 'NEW', updated_at = ? WHERE file_id = ?",
+                        Timestamp.from(Instant.now()), fileId);
+                return;
+            }
+            log.error("Indexing FAILED for file {}: {}", fileId, cause.getMessage(), cause);
+            String msg = cause.getMessage() == null ? cause.toString() : cause.getMessage();
+            jdbcTemplate.update("UPDATE patient_file_index SET status = 'ERROR', error_message = ?, updated_at = ? WHERE file_id = ?",
+                    msg.length() > 1000 ? msg.substring(0, 1000) : msg, Timestamp.from(Instant.now()), fileId);
+        } catch (Exception e) {
+            log.warn("Could not record indexing failure for file {}: {}", fileId, e.getMessage());
         }
     }
 
-    private void upsertIndexRow(UUID fileId, Long patientId, IndexStatus status, String errorMessage) {
+    private boolean claim(UUID fileId) {
+        return jdbcTemplate.update(
+                "UPDATE patient_file_index SET status = ?, error_message = NULL, updated_at = ? WHERE file_id = ? AND status = 'NEW'",
+                IndexStatus.EXTRACTING.name(), Timestamp.from(Instant.now()), fileId) > 0;
+    }
+
+    /** Moves an in-progress file to the next stage; false when the row is gone (file deleted). */
+    private boolean setStage(UUID fileId, IndexStatus stage) {
+        return jdbcTemplate.update(
+                "UPDATE patient_file_index SET status = ?, updated_at = ? WHERE file_id = ?",
+                stage.name(), Timestamp.from(Instant.now()), fileId) > 0;
+    }
+
+    private void upsertIndexRow(UUID fileId, Long patientId, IndexStatus status, String errorMessage, String contentSha256) {
         jdbcTemplate.update(
-                "INSERT INTO patient_file_index(file_id, patient_id, status, error_message, updated_at) " +
-                        "VALUES(?,?,?,?,?) " +
-                        "ON CONFLICT (file_id) DO UPDATE SET status = EXCLUDED.status, error_message = EXCLUDED.error_message, updated_at = EXCLUDED.updated_at",
+                "INSERT INTO patient_file_index(file_id, patient_id, status, error_message, updated_at, content_sha256, embedding_model, index_config) " +
+                        "VALUES(?,?,?,?,?,?,?,?) " +
+                        "ON CONFLICT (file_id) DO UPDATE SET status = EXCLUDED.status, error_message = EXCLUDED.error_message, " +
+                        "updated_at = EXCLUDED.updated_at, content_sha256 = EXCLUDED.content_sha256, " +
+                        "embedding_model = EXCLUDED.embedding_model, index_config = EXCLUDED.index_config",
                 fileId,
                 patientId,
                 status.name(),
                 errorMessage,
-                Timestamp.from(Instant.now())
+                Timestamp.from(Instant.now()),
+                contentSha256,
+                indexConfig.embeddingModel(),
+                indexConfig.version()
         );
     }
-
-    private static List<String> splitOcrIntoPages(String ocrText) {
-        String t = ocrText == null ? "" : ocrText;
-        String[] parts = t.split("\\f");
-        List<String> pages = new ArrayList<>();
-        for (String p : parts) {
-            String s = p == null ? "" : p.trim();
-            if (!s.isEmpty()) pages.add(s);
-        }
-        return pages;
-    }
 }
-
-
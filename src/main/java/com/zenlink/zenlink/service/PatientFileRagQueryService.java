@@ -1,112 +1,449 @@
 package com.zenlink.zenlink.service;
 
+import com.zenlink.zenlink.config.AsyncConfig;
+import com.zenlink.zenlink.config.RagMmrProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-// RAG features temporarily disabled - require Ollama embeddings  
-// @Service
+/**
+ * Retrieval over indexed patient files.
+ *
+ * With rag.retrieval.hybrid (default) every query runs two rankings: full-text search over
+ * patient_file_chunks.chunk_tsv (Romanian stemming, accents folded) on the query pool, while the caller
+ * embeds the question and runs the vector search. They are merged by reciprocal rank fusion, so chunks that
+ * contain the exact drug name, tooth number or lab value surface even when their embedding is not the closest.
+ *
+ * Question embeddings come from {@link QueryEmbeddingCache}; each query binds its vector literal once
+ * and orders by the selected distance, so the server parses 768 floats once per query.
+ *
+ * With rag.retrieval.mmr.enabled (default) both rankings over-fetch, and the fused candidates are re-ranked
+ * by maximal marginal relevance over their stored embeddings ({@link MmrReranker}), so overlapping chunks
+ * and repeated headers do not fill the top k with the same paragraph.
+ *
+ * Patient-scope vector search tries, in order: the in-JVM HNSW partition, a pgvector ANN index kept by
+ * {@link PgVectorIndexManager} (ef_search derived from k), the Hamming two-pass search (a sequential scan of the
+ * patient's sign-bit codes, then exact rescoring of the candidates), an exact scan.
+ */
+@Service
+@ConditionalOnProperty(name = "rag.enabled", havingValue = "true")
 public class PatientFileRagQueryService {
 
-    public record RagHit(UUID fileId, String fileName, int pageNumber, String chunkText, double distance) {}
+    /**
+     * {@code distance} is the L2 embedding distance, NaN for chunks found only by the lexical search.
+     * {@code [charStart, charEnd)} locates the chunk in its page's text; -1 for chunks indexed before offsets were stored.
+     */
+    public record RagHit(long chunkId, UUID fileId, String fileName, int pageNumber, int charStart, int charEnd,
+                         String chunkText, double distance) {}
+
+    public static final String SCOPE_FILE = "file";
+    public static final String SCOPE_PATIENT = "patient";
+
+    private static final Logger log = LoggerFactory.getLogger(PatientFileRagQueryService.class);
+
+    private static final RowMapper<RagHit> RAG_HIT_MAPPER = (rs, rowNum) -> new RagHit(
+            rs.getLong("chunk_id"),
+            (UUID) rs.getObject("file_id"),
+            rs.getString("file_name"),
+            rs.getInt("page_number"),
+            offset(rs, "char_start"),
+            offset(rs, "char_end"),
+            rs.getString("chunk_text"),
+            rs.getDouble("distance")
+    );
+
+    // Any query term may match (see anyTermQuery); ts_rank_cd normalized by log(length) ranks.
+    private static final Pattern QUERY_TERM = Pattern.compile("[\\p{L}\\p{M}\\p{N}]+");
+    private static final int MAX_QUERY_TERMS = 32;
+    private static final String LEXICAL_SQL =
+            """
+            WITH q AS (SELECT to_tsquery('zenlink_ro', ?) AS tsq)
+            SELECT c.id AS chunk_id,
+                   c.file_id,
+                   pf.name AS file_name,
+                   c.page_number,
+                   c.char_start,
+                   c.char_end,
+                   c.chunk_text,
+                   'NaN'::float8 AS distance
+            FROM q, patient_file_chunks c
+            JOIN patient_files pf ON pf.id = c.file_id
+            JOIN patient_file_index i ON i.file_id = c.file_id
+            WHERE %s
+              AND i.embedding_model = ?
+              AND c.chunk_tsv @@ q.tsq
+            ORDER BY ts_rank_cd(c.chunk_tsv, q.tsq, 1) DESC, c.id
+            LIMIT ?
+            """;
 
     private final JdbcTemplate jdbcTemplate;
-    private final OllamaEmbeddingService embeddingService;
+    private final EmbeddingService embeddingService;
+    private final QueryEmbeddingCache queryEmbeddings;
+    private final ObjectProvider<PatientVectorIndex> vectorIndex;
+    private final ObjectProvider<PgVectorIndexManager> pgIndexes;
+    private final TransactionTemplate readOnlyTx;
+    private final Executor queryExecutor;
+    private final RagMmrProperties mmr;
+    private final int rescoreCandidates;
+    private final boolean hybrid;
+    private final int fusionDepth;
+    private final int rrfK;
 
-    public PatientFileRagQueryService(JdbcTemplate jdbcTemplate, OllamaEmbeddingService embeddingService) {
+    public PatientFileRagQueryService(JdbcTemplate jdbcTemplate, EmbeddingService embeddingService,
+                                      QueryEmbeddingCache queryEmbeddings,
+                                      ObjectProvider<PatientVectorIndex> vectorIndex,
+                                      ObjectProvider<PgVectorIndexManager> pgIndexes,
+                                      PlatformTransactionManager transactionManager,
+                                      @Qualifier(AsyncConfig.RAG_QUERY_EXECUTOR) Executor queryExecutor,
+                                      RagMmrProperties mmr,
+                                      @Value("${rag.retrieval.rescore-candidates:200}") int rescoreCandidates,
+                                      @Value("${rag.retrieval.hybrid:true}") boolean hybrid,
+                                      @Value("${rag.retrieval.fusion-depth:30}") int fusionDepth,
+                                      @Value("${rag.retrieval.rrf-k:60}") int rrfK) {
         this.jdbcTemplate = jdbcTemplate;
         this.embeddingService = embeddingService;
+        this.queryEmbeddings = queryEmbeddings;
+        this.vectorIndex = vectorIndex;
+        this.pgIndexes = pgIndexes;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.queryExecutor = queryExecutor;
+        this.mmr = mmr;
+        this.rescoreCandidates = Math.max(0, rescoreCandidates);
+        this.hybrid = hybrid;
+        this.fusionDepth = Math.max(1, fusionDepth);
+        this.rrfK = Math.max(1, rrfK);
     }
 
     public List<RagHit> retrieveForFile(UUID fileId, String query, int k) {
-        String vec = OllamaEmbeddingService.toPgvectorLiteral(embeddingService.embed(query));
         int limit = Math.max(1, Math.min(k, 30));
+        int candidates = candidates(limit);
+        int depth = hybrid ? Math.max(candidates, fusionDepth) : candidates;
+        String terms = anyTermQuery(query);
+        CompletableFuture<List<RagHit>> lexical = lexicalAsync(terms, () -> jdbcTemplate.query(
+                LEXICAL_SQL.formatted("c.file_id = ?"), RAG_HIT_MAPPER,
+                terms, fileId, embeddingService.modelId(), depth));
 
-        return jdbcTemplate.query(
+        String vec = EmbeddingService.toPgvectorLiteral(queryEmbeddings.embed(query));
+        List<RagHit> vector = jdbcTemplate.query(
                 """
-                SELECT c.file_id,
+                SELECT c.id AS chunk_id,
+                       c.file_id,
                        pf.name AS file_name,
                        c.page_number,
+                       c.char_start,
+                       c.char_end,
                        c.chunk_text,
                        (c.embedding <-> ?::vector) AS distance
                 FROM patient_file_chunks c
                 JOIN patient_files pf ON pf.id = c.file_id
                 JOIN patient_file_index i ON i.file_id = c.file_id
                 WHERE c.file_id = ?
-                  AND i.status = 'READY'
-                ORDER BY c.embedding <-> ?::vector
+                  AND i.embedding_model = ?
+                ORDER BY distance
                 LIMIT ?
                 """,
-                (rs, rowNum) -> new RagHit(
-                        (UUID) rs.getObject("file_id"),
-                        rs.getString("file_name"),
-                        rs.getInt("page_number"),
-                        rs.getString("chunk_text"),
-                        rs.getDouble("distance")
-                ),
+                RAG_HIT_MAPPER,
                 vec,
                 fileId,
-                vec,
-                limit
+                embeddingService.modelId(),
+                depth
         );
+        return diversify(merge(vector, lexical, candidates), SCOPE_FILE, limit);
     }
 
     public List<RagHit> retrieveForPatient(Long patientId, String query, int k) {
-        String vec = OllamaEmbeddingService.toPgvectorLiteral(embeddingService.embed(query));
         int limit = Math.max(1, Math.min(k, 40));
+        int candidates = candidates(limit);
+        int depth = hybrid ? Math.max(candidates, fusionDepth) : candidates;
+        String terms = anyTermQuery(query);
+        CompletableFuture<List<RagHit>> lexical = lexicalAsync(terms, () -> jdbcTemplate.query(
+                LEXICAL_SQL.formatted("c.patient_id = ?"), RAG_HIT_MAPPER,
+                terms, patientId, embeddingService.modelId(), depth));
+
+        List<RagHit> vector = vectorForPatient(patientId, queryEmbeddings.embed(query), depth);
+        return diversify(merge(vector, lexical, candidates), SCOPE_PATIENT, limit);
+    }
+
+    private List<RagHit> vectorForPatient(Long patientId, float[] embedding, int limit) {
+        // In-memory HNSW partition when enabled and loaded; pgvector otherwise (and while it loads)
+        PatientVectorIndex index = vectorIndex.getIfAvailable();
+        if (index != null) {
+            List<RagHit> hits = index.search(patientId, embedding, limit);
+            if (hits != null) return hits;
+        }
+
+        String vec = EmbeddingService.toPgvectorLiteral(embedding);
+        PgVectorIndexManager indexes = pgIndexes.getIfAvailable();
+        PgVectorIndexManager.AnnSearch ann = indexes == null ? null : indexes.annFor(SCOPE_PATIENT, patientId, limit);
+        if (ann != null) {
+            List<RagHit> hits = annSearch(ann, patientId, vec, limit);
+            if (hits != null) return hits;
+        }
+        if (rescoreCandidates == 0) {
+            return jdbcTemplate.query(
+                    """
+                    SELECT c.id AS chunk_id,
+                           c.file_id,
+                           pf.name AS file_name,
+                           c.page_number,
+                           c.char_start,
+                           c.char_end,
+                           c.chunk_text,
+                           (c.embedding <-> ?::vector) AS distance
+                    FROM patient_file_chunks c
+                    JOIN patient_files pf ON pf.id = c.file_id
+                    JOIN patient_file_index i ON i.file_id = c.file_id
+                    WHERE c.patient_id = ?
+                      AND i.embedding_model = ?
+                    ORDER BY distance
+                    LIMIT ?
+                    """,
+                    RAG_HIT_MAPPER,
+                    vec,
+                    patientId,
+                    embeddingService.modelId(),
+                    limit
+            );
+        }
 
+        // Two passes: Hamming distance over the 96-byte sign-bit codes (in the main tuple) picks candidates,
+        // exact L2 over the full vectors (detoasted for those rows only) ranks them. No index serves the first
+        // pass: it still computes a distance for every chunk of the patient, it just reads the small code
+        // instead of the 3 KB out-of-line vector. Chunks without a code yet
+        // (written before embedding_bits existed, or copied from such a file) are always rescored, so they
+        // are never pushed out of the candidates by the NULLs-last Hamming order.
         return jdbcTemplate.query(
                 """
-                SELECT c.file_id,
+                SELECT c.id AS chunk_id,
+                       c.file_id,
                        pf.name AS file_name,
                        c.page_number,
+                       c.char_start,
+                       c.char_end,
                        c.chunk_text,
                        (c.embedding <-> ?::vector) AS distance
-                FROM patient_file_chunks c
+                FROM (
+                    (SELECT c.id
+                     FROM patient_file_chunks c
+                     JOIN patient_file_index i ON i.file_id = c.file_id
+                     WHERE c.patient_id = ?
+                       AND i.embedding_model = ?
+                       AND c.embedding_bits IS NOT NULL
+                     ORDER BY c.embedding_bits <~> ?::varbit
+                     LIMIT ?)
+                    UNION ALL
+                    SELECT c.id
+                    FROM patient_file_chunks c
+                    JOIN patient_file_index i ON i.file_id = c.file_id
+                    WHERE c.patient_id = ?
+                      AND i.embedding_model = ?
+                      AND c.embedding_bits IS NULL
+                ) candidates
+                JOIN patient_file_chunks c ON c.id = candidates.id
                 JOIN patient_files pf ON pf.id = c.file_id
-                JOIN patient_file_index i ON i.file_id = c.file_id
-                WHERE c.patient_id = ?
-                  AND i.status = 'READY'
-                ORDER BY c.embedding <-> ?::vector
+                ORDER BY distance
                 LIMIT ?
                 """,
-                (rs, rowNum) -> new RagHit(
-                        (UUID) rs.getObject("file_id"),
-                        rs.getString("file_name"),
-                        rs.getInt("page_number"),
-                        rs.getString("chunk_text"),
-                        rs.getDouble("distance")
-                ),
+                RAG_HIT_MAPPER,
                 vec,
                 patientId,
-                vec,
+                embeddingService.modelId(),
+                VectorQuantizer.signBitLiteral(embedding),
+                Math.max(rescoreCandidates, limit),
+                patientId,
+                embeddingService.modelId(),
                 limit
         );
     }
 
-    public static String buildRagContext(List<RagHit> hits) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("FRAGMENTE DIN DOCUMENTE (folosește DOAR acestea și citează cu nume fișier + pagină + citat):\n\n");
-        for (int i = 0; i < hits.size(); i++) {
-            RagHit h = hits.get(i);
-            sb.append("[").append(i + 1).append("] Fișier: ").append(h.fileName())
-                    .append(" (").append(h.fileId()).append(")")
-                    .append(", pag. ").append(h.pageNumber()).append("\n");
-            sb.append("Citat:\n\"\"\"\n");
-            sb.append(safeTrim(h.chunkText(), 1200));
-            sb.append("\n\"\"\"\n\n");
+    /**
+     * pgvector ANN scan with the manager's ef_search / probes, set for this transaction only. A partial
+     * per-patient index is matched only by a literal patient_id (a generic plan with a parameter cannot use it).
+     * Null when the search failed, e.g. the index was dropped meanwhile.
+     */
+    private List<RagHit> annSearch(PgVectorIndexManager.AnnSearch ann, Long patientId, String vec, int limit) {
+        String sql = """
+                SELECT c.id AS chunk_id,
+                       c.file_id,
+                       pf.name AS file_name,
+                       c.page_number,
+                       c.char_start,
+                       c.char_end,
+                       c.chunk_text,
+                       (c.embedding <-> ?::vector) AS distance
+                FROM patient_file_chunks c
+                JOIN patient_files pf ON pf.id = c.file_id
+                JOIN patient_file_index i ON i.file_id = c.file_id
+                WHERE c.patient_id = %s
+                  AND i.embedding_model = ?
+                ORDER BY distance
+                LIMIT ?
+                """.formatted(ann.partial() ? patientId.toString() : "?");
+        Object[] args = ann.partial()
+                ? new Object[]{vec, embeddingService.modelId(), limit}
+                : new Object[]{vec, patientId, embeddingService.modelId(), limit};
+        try {
+            List<RagHit> hits = readOnlyTx.execute(status -> {
+                ann.settings().forEach(jdbcTemplate::execute);
+                return jdbcTemplate.query(sql, RAG_HIT_MAPPER, args);
+            });
+            if (hits == null) return null;
+            // iterative scans may return rows slightly out of order
+            List<RagHit> sorted = new ArrayList<>(hits);
+            sorted.sort(Comparator.comparingDouble(RagHit::distance));
+            return sorted;
+        } catch (RuntimeException e) {
+            log.warn("pgvector index search on {} failed, falling back: {}", ann.indexName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private int candidates(int limit) {
+        return mmr.isEnabled() ? Math.min(limit * Math.max(1, mmr.getOverFetch()), 100) : limit;
+    }
+
+    /**
+     * MMR over the fused candidates. Relevance is the candidate's position in the fused ranking (so lexical
+     * and vector evidence keep the weight fusion gave them); similarity is the cosine of the stored embeddings.
+     */
+    private List<RagHit> diversify(List<RagHit> ranked, String scope, int limit) {
+        if (ranked.size() <= limit) return ranked;
+        if (!mmr.isEnabled()) return ranked.subList(0, limit);
+        double lambda = mmr.lambdaFor(scope);
+        if (lambda >= 1.0) return ranked.subList(0, limit);
+
+        Map<Long, float[]> embeddings;
+        try {
+            embeddings = storedEmbeddings(ranked);
+        } catch (Exception e) {
+            log.warn("MMR re-ranking skipped, could not load chunk embeddings: {}", e.getMessage());
+            return ranked.subList(0, limit);
+        }
+        float[][] vectors = new float[ranked.size()][];
+        for (int i = 0; i < vectors.length; i++) vectors[i] = embeddings.get(ranked.get(i).chunkId());
+        int[] picks = MmrReranker.select(MmrReranker.rankRelevance(ranked.size()), vectors, lambda, limit);
+        List<RagHit> out = new ArrayList<>(picks.length);
+        for (int i : picks) out.add(ranked.get(i));
+        return out;
+    }
+
+    private Map<Long, float[]> storedEmbeddings(List<RagHit> hits) {
+        Long[] ids = new Long[hits.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = hits.get(i).chunkId();
+        Map<Long, float[]> out = jdbcTemplate.query(
+                "SELECT id, embedding::real[] AS embedding FROM patient_file_chunks WHERE id = ANY(?)",
+                rs -> {
+                    Map<Long, float[]> m = new HashMap<>();
+                    while (rs.next()) {
+                        Array arr = rs.getArray("embedding");
+                        Object[] values = (Object[]) arr.getArray();
+                        float[] v = new float[values.length];
+                        for (int i = 0; i < v.length; i++) v[i] = ((Number) values[i]).floatValue();
+                        arr.free();
+                        m.put(rs.getLong("id"), v);
+                    }
+                    return m;
+                },
+                (Object) ids
+        );
+        return out == null ? Map.of() : out;
+    }
+
+    /**
+     * to_tsquery input matching any word or number of the question ("dinte | 36 | amoxicilina"), null when it has
+     * none. Operands are runs of letters and digits only, so nothing in the question is read as tsquery syntax;
+     * to_tsquery stems them and drops stop words.
+     */
+    static String anyTermQuery(String question) {
+        if (question == null) return null;
+        Set<String> terms = new LinkedHashSet<>();
+        Matcher m = QUERY_TERM.matcher(question.toLowerCase(Locale.ROOT));
+        while (m.find() && terms.size() < MAX_QUERY_TERMS) terms.add(m.group());
+        return terms.isEmpty() ? null : String.join(" | ", terms);
+    }
+
+    /** Starts the lexical ranking on the query pool; an empty ranking when hybrid search is off, the question has no terms or the pool is full. */
+    private CompletableFuture<List<RagHit>> lexicalAsync(String terms, Supplier<List<RagHit>> search) {
+        if (!hybrid || terms == null) return CompletableFuture.completedFuture(List.of());
+        try {
+            return CompletableFuture.supplyAsync(search, queryExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(List.of());
         }
-        return sb.toString();
     }
 
-    private static String safeTrim(String s, int max) {
-        if (s == null) return "";
-        String t = s.trim();
-        if (t.length() <= max) return t;
-        return t.substring(0, max) + "…";
+    /** Vector results alone when the lexical search found nothing or failed; their fusion otherwise. */
+    private List<RagHit> merge(List<RagHit> vector, CompletableFuture<List<RagHit>> lexicalFuture, int limit) {
+        List<RagHit> lexical;
+        try {
+            lexical = lexicalFuture.join();
+        } catch (Exception e) {
+            // Usually a database without the chunk_tsv column / zenlink_ro config yet
+            log.warn("Lexical RAG search failed, using vector results only: {}", e.getMessage());
+            lexical = List.of();
+        }
+        if (lexical.isEmpty()) return vector.size() > limit ? vector.subList(0, limit) : vector;
+        return fuse(List.of(vector, lexical), rrfK, limit);
     }
-}
 
+    /**
+     * Reciprocal rank fusion: a chunk scores sum(1 / (rrfK + rank)) over the rankings it appears in (rank from 1).
+     * Ties keep first-seen order; a chunk found by several rankings keeps the first hit that carries a distance.
+     */
+    static List<RagHit> fuse(List<List<RagHit>> rankings, int rrfK, int limit) {
+        Map<Long, Double> scores = new HashMap<>();
+        Map<Long, RagHit> hits = new HashMap<>();
+        List<Long> order = new ArrayList<>();
+        for (List<RagHit> ranking : rankings) {
+            for (int i = 0; i < ranking.size(); i++) {
+                RagHit h = ranking.get(i);
+                double s = 1.0 / (rrfK + i + 1);
+                if (!scores.containsKey(h.chunkId())) order.add(h.chunkId());
+                scores.merge(h.chunkId(), s, Double::sum);
+                hits.merge(h.chunkId(), h, (a, b) -> Double.isNaN(a.distance()) ? b : a);
+            }
+        }
+        List<Long> ranked = new ArrayList<>(order);
+        ranked.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        List<RagHit> out = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) out.add(hits.get(ranked.get(i)));
+        return out;
+    }
+
+    public QueryEmbeddingCache.Stats queryEmbeddingCacheStats() {
+        return queryEmbeddings.stats();
+    }
 
+    private static int offset(ResultSet rs, String column) throws SQLException {
+        int v = rs.getInt(column);
+        return rs.wasNull() ? -1 : v;
+    }
+}
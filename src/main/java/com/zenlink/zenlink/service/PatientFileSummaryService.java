@@ -0,0 +1,369 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.AsyncConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
+/**
+ * Precomputed summaries for PATIENT-scope chat: a short summary per indexed file
+ * (patient_file_summaries) and a digest of all of a patient's files (patient_digests).
+ *
+ * Both are refreshed in the background after a file is indexed. A file is summarized again only when
+ * its content hash changes. The digest is rolling: new file summaries are folded into the previous
+ * digest, and it is rebuilt from all summaries only when a file it covered changed or was deleted.
+ * Broad questions ("istoricul pacientului") are answered from the digest and file summaries instead of
+ * raw chunks; specific questions still go to chunk retrieval.
+ */
+@Service
+@ConditionalOnProperty(name = "rag.enabled", havingValue = "true")
+public class PatientFileSummaryService {
+
+    public record FileSummary(UUID fileId, String fileName, String summary, Instant updatedAt) {}
+
+    /** Digest plus the file summaries it was built from, newest file first. */
+    public record PatientSummaries(String digest, List<FileSummary> files) {}
+
+    record Digest(String text, Set<UUID> sourceFiles, Instant updatedAt) {}
+
+    /** How the digest is brought up to date: fold {@code newFiles} into the previous digest, or rebuild it. */
+    record DigestPlan(boolean rebuild, List<FileSummary> newFiles) {}
+
+    /** Digest prompt and the file summaries that fit into it; the rest are folded in by a follow-up run. */
+    record DigestInput(String prompt, List<FileSummary> included) {}
+
+    private static final Logger log = LoggerFactory.getLogger(PatientFileSummaryService.class);
+
+    // Files summarized per refresh run; a backlog (e.g. files indexed before summaries existed) takes several runs
+    private static final int MAX_FILES_PER_RUN = 10;
+
+    static final String HEADER = "REZUMATE DOCUMENTE PACIENT (folosește-le pentru întrebări generale; citează cu nume fișier; "
+            + "pentru valori exacte spune că pot fi căutate în documentul respectiv):\n\n";
+
+    private static final String FILE_PROMPT =
+            "You summarize one medical/dental document of a patient for later question answering.\n" +
+            "- Keep: document type and date, diagnoses, procedures, teeth/locations, medications, allergies, key results with values, recommendations.\n" +
+            "- Drop: letterheads, addresses, boilerplate, repeated headers.\n" +
+            "- Write concise bullet points in Romanian. Output ONLY the summary.";
+
+    private static final String DIGEST_PROMPT =
+            "You maintain a digest of a patient's medical history from summaries of their documents.\n" +
+            "Merge the PREVIOUS DIGEST (if any) with the DOCUMENT SUMMARIES into one updated digest.\n" +
+            "- Organize by topic (diagnoses, treatments, medications/allergies, results, open issues), most recent first.\n" +
+            "- Mention the source file name for each fact.\n" +
+            "- Write concise bullet points in Romanian. Output ONLY the digest.";
+
+    // Questions about the whole record rather than a specific value or document
+    private static final Pattern BROAD_QUESTION = Pattern.compile(
+            "\\b(istoric\\w*|rezum\\w*|sintez\\w*|overview|history|summar\\w*|per ansamblu|în general|in general|" +
+            "ce (afecțiuni|afectiuni|boli|diagnostic\\w*|tratament\\w*) (are|a avut)|" +
+            "toate (documentele|fișierele|fisierele|analizele)|evoluți\\w*|evoluti\\w*)\\b", Pattern.UNICODE_CHARACTER_CLASS);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OpenAiChatService openAiChatService;
+    private final Executor executor;
+    private final boolean enabled;
+    private final int fileMaxTokens;
+    private final int digestMaxTokens;
+    private final int inputMaxChars;
+    private final int contextMaxTokens;
+
+    /** Patients with a refresh running; a request arriving meanwhile marks the patient dirty for one more run. */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    public PatientFileSummaryService(
+            JdbcTemplate jdbcTemplate,
+            OpenAiChatService openAiChatService,
+            @Qualifier(AsyncConfig.RAG_SUMMARY_EXECUTOR) Executor executor,
+            @Value("${rag.summary.enabled:true}") boolean enabled,
+            @Value("${rag.summary.file-max-tokens:300}") int fileMaxTokens,
+            @Value("${rag.summary.digest-max-tokens:700}") int digestMaxTokens,
+            @Value("${rag.summary.input-max-chars:24000}") int inputMaxChars,
+            @Value("${rag.context.max-tokens:2000}") int contextMaxTokens
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.openAiChatService = openAiChatService;
+        this.executor = executor;
+        this.enabled = enabled;
+        this.fileMaxTokens = Math.max(50, fileMaxTokens);
+        this.digestMaxTokens = Math.max(100, digestMaxTokens);
+        this.inputMaxChars = Math.max(2000, inputMaxChars);
+        this.contextMaxTokens = Math.max(100, contextMaxTokens);
+    }
+
+    public static boolean isBroadQuestion(String question) {
+        return question != null && BROAD_QUESTION.matcher(question.toLowerCase(Locale.ROOT)).find();
+    }
+
+    /**
+     * Prompt context for a broad PATIENT-scope question, or null when there is no usable digest (the caller
+     * then retrieves chunks). Missing or outdated summaries are queued for refresh either way. A digest
+     * that still covers a deleted file is not served.
+     */
+    public String contextForPatient(Long patientId) {
+        if (!isActive()) return null;
+        List<FileSummary> files = loadFileSummaries(patientId);
+        Digest digest = loadDigest(patientId);
+        if (hasUnsummarizedFiles(patientId) || (files.isEmpty() ? digest != null : planDigest(digest, files) != null)) {
+            refreshPatientAsync(patientId);
+        }
+        if (digest == null || files.isEmpty() || !coversOnlyExisting(digest, files)) return null;
+        return render(new PatientSummaries(digest.text(), files), contextMaxTokens);
+    }
+
+    /** Fire-and-forget refresh of a patient's file summaries and digest; concurrent calls collapse into one run. */
+    public void refreshPatientAsync(Long patientId) {
+        if (patientId == null || !isActive()) return;
+        if (!inFlight.add(patientId)) {
+            dirty.add(patientId);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                dirty.remove(patientId);
+                try {
+                    refreshPatient(patientId);
+                } catch (Exception e) {
+                    log.warn("Summary refresh failed for patient {}: {}", patientId, e.getMessage());
+                } finally {
+                    inFlight.remove(patientId);
+                    // Files indexed during the run, or a backlog left for the next one
+                    if (dirty.remove(patientId)) refreshPatientAsync(patientId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool saturated: the next PATIENT-scope question finds the summaries stale and queues again
+            inFlight.remove(patientId);
+        }
+    }
+
+    /** Summarizes READY files whose summary is missing or outdated, then brings the digest up to date. */
+    void refreshPatient(Long patientId) throws Exception {
+        List<UUID> pending = jdbcTemplate.query(
+                "SELECT i.file_id FROM patient_file_index i " +
+                        "LEFT JOIN patient_file_summaries s ON s.file_id = i.file_id AND s.content_sha256 = i.content_sha256 " +
+                        "WHERE i.patient_id = ? AND i.status = 'READY' AND i.content_sha256 IS NOT NULL AND s.file_id IS NULL " +
+                        "ORDER BY i.updated_at DESC LIMIT " + MAX_FILES_PER_RUN,
+                (rs, i) -> (UUID) rs.getObject(1),
+                patientId
+        );
+        int summarized = 0;
+        for (UUID fileId : pending) {
+            if (summarizeFile(fileId)) summarized++;
+        }
+        if (pending.size() == MAX_FILES_PER_RUN && summarized > 0) dirty.add(patientId);
+        refreshDigest(patientId);
+    }
+
+    /** Returns false when the file was not summarized (no longer READY, no text, or an empty answer). */
+    private boolean summarizeFile(UUID fileId) throws Exception {
+        String sha256 = jdbcTemplate.query(
+                "SELECT content_sha256 FROM patient_file_index WHERE file_id = ? AND status = 'READY'",
+                rs -> rs.next() ? rs.getString(1) : null,
+                fileId
+        );
+        if (sha256 == null) return false;
+
+        // Same content already summarized for another file (re-uploads, copies): no model call
+        int copied = jdbcTemplate.update(
+                "INSERT INTO patient_file_summaries(file_id, patient_id, content_sha256, summary, updated_at) " +
+                        "SELECT i.file_id, i.patient_id, s.content_sha256, s.summary, ? FROM patient_file_index i " +
+                        "JOIN patient_file_summaries s ON s.content_sha256 = i.content_sha256 AND s.file_id <> i.file_id " +
+                        "WHERE i.file_id = ? LIMIT 1 " +
+                        "ON CONFLICT (file_id) DO UPDATE SET content_sha256 = EXCLUDED.content_sha256, " +
+                        "summary = EXCLUDED.summary, updated_at = EXCLUDED.updated_at",
+                Timestamp.from(Instant.now()), fileId
+        );
+        if (copied > 0) return true;
+
+        List<String> pages = jdbcTemplate.query(
+                "SELECT page_text FROM patient_file_pages WHERE file_id = ? ORDER BY page_number",
+                (rs, i) -> rs.getString(1),
+                fileId
+        );
+        if (pages.isEmpty()) return false;
+
+        long t0 = System.currentTimeMillis();
+        String summary = openAiChatService.completeText(FILE_PROMPT, summaryInput(pages, inputMaxChars), fileMaxTokens);
+        if (summary == null || summary.isBlank()) {
+            log.warn("Summary of file {} came back empty; will retry on the next refresh", fileId);
+            return false;
+        }
+        jdbcTemplate.update(
+                "INSERT INTO patient_file_summaries(file_id, patient_id, content_sha256, summary, updated_at) " +
+                        "SELECT file_id, patient_id, ?, ?, ? FROM patient_file_index WHERE file_id = ? " +
+                        "ON CONFLICT (file_id) DO UPDATE SET content_sha256 = EXCLUDED.content_sha256, " +
+                        "summary = EXCLUDED.summary, updated_at = EXCLUDED.updated_at",
+                sha256, summary.trim(), Timestamp.from(Instant.now()), fileId
+        );
+        log.info("File {} summarized: {} page(s) in {} ms", fileId, pages.size(), System.currentTimeMillis() - t0);
+        return true;
+    }
+
+    private void refreshDigest(Long patientId) throws Exception {
+        List<FileSummary> files = loadFileSummaries(patientId);
+        if (files.isEmpty()) {
+            jdbcTemplate.update("DELETE FROM patient_digests WHERE patient_id = ?", patientId);
+            return;
+        }
+        Digest previous = loadDigest(patientId);
+        DigestPlan plan = planDigest(previous, files);
+        if (plan == null) return; // up to date
+
+        List<FileSummary> input = plan.rebuild() ? files : plan.newFiles();
+        DigestInput prompt = digestInput(plan.rebuild() ? null : previous.text(), input, inputMaxChars);
+        long t0 = System.currentTimeMillis();
+        String digest = openAiChatService.completeText(DIGEST_PROMPT, prompt.prompt(), digestMaxTokens);
+        if (digest == null || digest.isBlank()) {
+            log.warn("Digest for patient {} came back empty; keeping the previous one", patientId);
+            return;
+        }
+
+        // Only files whose summaries went into the prompt count as covered; the next run folds in the rest
+        Set<UUID> covered = new LinkedHashSet<>();
+        if (!plan.rebuild()) covered.addAll(previous.sourceFiles());
+        for (FileSummary f : prompt.included()) covered.add(f.fileId());
+        Object[] sources = covered.toArray();
+        jdbcTemplate.update(
+                "INSERT INTO patient_digests(patient_id, digest, source_files, updated_at) VALUES (?, ?, ?, ?) " +
+                        "ON CONFLICT (patient_id) DO UPDATE SET digest = EXCLUDED.digest, " +
+                        "source_files = EXCLUDED.source_files, updated_at = EXCLUDED.updated_at",
+                ps -> {
+                    ps.setLong(1, patientId);
+                    ps.setString(2, digest.trim());
+                    ps.setArray(3, ps.getConnection().createArrayOf("uuid", sources));
+                    ps.setTimestamp(4, Timestamp.from(Instant.now()));
+                });
+        log.info("Digest for patient {} {} from {} of {} file summary(ies) in {} ms",
+                patientId, plan.rebuild() ? "rebuilt" : "updated", prompt.included().size(), input.size(),
+                System.currentTimeMillis() - t0);
+        if (prompt.included().size() < input.size()) dirty.add(patientId);
+    }
+
+    /** What the digest needs; null when it already covers exactly the current summaries. */
+    static DigestPlan planDigest(Digest previous, List<FileSummary> current) {
+        if (previous == null) return new DigestPlan(true, current);
+        // A covered file was deleted: its facts cannot be taken out of a folded digest
+        if (!coversOnlyExisting(previous, current)) return new DigestPlan(true, current);
+
+        List<FileSummary> added = new ArrayList<>();
+        for (FileSummary f : current) {
+            if (!previous.sourceFiles().contains(f.fileId())) {
+                added.add(f);
+            } else if (f.updatedAt().isAfter(previous.updatedAt())) {
+                return new DigestPlan(true, current); // a covered file changed
+            }
+        }
+        return added.isEmpty() ? null : new DigestPlan(false, added);
+    }
+
+    private boolean hasUnsummarizedFiles(Long patientId) {
+        Integer n = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM patient_file_index i " +
+                        "LEFT JOIN patient_file_summaries s ON s.file_id = i.file_id AND s.content_sha256 = i.content_sha256 " +
+                        "WHERE i.patient_id = ? AND i.status = 'READY' AND i.content_sha256 IS NOT NULL AND s.file_id IS NULL",
+                Integer.class,
+                patientId
+        );
+        return n != null && n > 0;
+    }
+
+    static boolean coversOnlyExisting(Digest digest, List<FileSummary> files) {
+        Set<UUID> ids = new HashSet<>();
+        for (FileSummary f : files) ids.add(f.fileId());
+        return ids.containsAll(digest.sourceFiles());
+    }
+
+    private List<FileSummary> loadFileSummaries(Long patientId) {
+        return jdbcTemplate.query(
+                "SELECT s.file_id, pf.name, s.summary, s.updated_at FROM patient_file_summaries s " +
+                        "JOIN patient_files pf ON pf.id = s.file_id WHERE s.patient_id = ? ORDER BY pf.uploaded_at DESC",
+                (rs, i) -> new FileSummary((UUID) rs.getObject(1), rs.getString(2), rs.getString(3), rs.getTimestamp(4).toInstant()),
+                patientId
+        );
+    }
+
+    private Digest loadDigest(Long patientId) {
+        return jdbcTemplate.query(
+                "SELECT digest, source_files, updated_at FROM patient_digests WHERE patient_id = ?",
+                rs -> {
+                    if (!rs.next()) return null;
+                    Set<UUID> sources = new HashSet<>();
+                    Array array = rs.getArray(2);
+                    if (array != null) {
+                        for (Object id : (Object[]) array.getArray()) sources.add((UUID) id);
+                    }
+                    return new Digest(rs.getString(1), sources, rs.getTimestamp(3).toInstant());
+                },
+                patientId
+        );
+    }
+
+    private boolean isActive() {
+        return enabled && openAiChatService.isEnabled();
+    }
+
+    /** Page texts for the file prompt; over {@code maxChars}, every page keeps an equal share from its start. */
+    static String summaryInput(List<String> pages, int maxChars) {
+        int total = 0;
+        for (String p : pages) total += p == null ? 0 : p.trim().length();
+        int perPage = total <= maxChars ? Integer.MAX_VALUE : Math.max(200, maxChars / pages.size());
+        StringBuilder sb = new StringBuilder("DOCUMENT:\n");
+        for (int i = 0; i < pages.size() && sb.length() < maxChars + 100; i++) {
+            String text = pages.get(i) == null ? "" : pages.get(i).trim();
+            if (text.isEmpty()) continue;
+            sb.append("[pag. ").append(i + 1).append("]\n");
+            sb.append(text.length() > perPage ? text.substring(0, perPage) + "…" : text).append("\n");
+        }
+        return sb.toString();
+    }
+
+    static DigestInput digestInput(String previousDigest, List<FileSummary> files, int maxChars) {
+        StringBuilder sb = new StringBuilder("PREVIOUS DIGEST:\n");
+        sb.append(previousDigest == null || previousDigest.isBlank() ? "(none)" : previousDigest.trim());
+        sb.append("\n\nDOCUMENT SUMMARIES (newest first):\n");
+        List<FileSummary> included = new ArrayList<>();
+        for (FileSummary f : files) {
+            // Oldest files fall off first when everything does not fit; one always goes in so every run progresses
+            if (!included.isEmpty() && sb.length() + f.summary().length() > maxChars) break;
+            sb.append("Fișier: ").append(f.fileName()).append("\n").append(f.summary().trim()).append("\n\n");
+            included.add(f);
+        }
+        return new DigestInput(sb.toString(), included);
+    }
+
+    /** Digest first, then file summaries (newest first) while they fit in {@code maxTokens}. */
+    static String render(PatientSummaries summaries, int maxTokens) {
+        StringBuilder sb = new StringBuilder(HEADER);
+        sb.append("ISTORIC (sinteză):\n").append(summaries.digest().trim()).append("\n\n");
+        int used = RagChunker.estimateTokens(sb);
+        for (FileSummary f : summaries.files()) {
+            String block = "Fișier: " + f.fileName() + " (" + f.fileId() + ")\n" + f.summary().trim() + "\n\n";
+            int tokens = RagChunker.estimateTokens(block);
+            if (used + tokens > maxTokens) continue;
+            sb.append(block);
+            used += tokens;
+        }
+        return sb.toString();
+    }
+}
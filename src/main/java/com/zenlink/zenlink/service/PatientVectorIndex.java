@@ -0,0 +1,395 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.AsyncConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional in-process ANN engine for patient-scope retrieval (rag.ann.enabled=true).
+ *
+ * One {@link HnswIndex} per patient, built from patient_file_chunks on the first query (in the background;
+ * that query still goes to pgvector) and kept in sync as files are indexed, renamed or deleted.
+ * Vectors and chunk texts are stored off-heap; partitions are evicted least-recently-used once
+ * rag.ann.max-memory-mb is exceeded. A loaded partition answers without a database round trip.
+ * Patients over rag.ann.max-chunks-per-patient stay on pgvector until one of their files is deleted or the
+ * patient is invalidated; a failed load is retried after rag.ann.load-retry-seconds.
+ */
+@Service
+@ConditionalOnProperty(name = "rag.ann.enabled", havingValue = "true")
+public class PatientVectorIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientVectorIndex.class);
+
+    private static final String CHUNKS_SQL =
+            "SELECT c.id, c.file_id, pf.name, c.page_number, c.char_start, c.char_end, c.chunk_text, c.embedding::real[] AS embedding " +
+            "FROM patient_file_chunks c " +
+            "JOIN patient_files pf ON pf.id = c.file_id " +
+            "JOIN patient_file_index i ON i.file_id = c.file_id " +
+            "WHERE c.patient_id = ? AND i.embedding_model = ? ";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingService embeddingService;
+    private final Executor executor;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final long maxMemoryBytes;
+    private final int maxChunksPerPatient;
+    private final long loadRetryMillis;
+
+    /** Access-ordered: iteration starts at the least recently used partition. Guarded by itself. */
+    private final LinkedHashMap<Long, Partition> partitions = new LinkedHashMap<>(16, 0.75f, true);
+    /** Patients being loaded -> files indexed meanwhile (refreshed once the load finishes). */
+    private final Map<Long, Set<UUID>> loading = new HashMap<>();
+    /** Patients not to load before the given epoch millis: Long.MAX_VALUE when over the chunk limit. Guarded by partitions. */
+    private final Map<Long, Long> skipLoadUntil = new HashMap<>();
+
+    public PatientVectorIndex(
+            JdbcTemplate jdbcTemplate,
+            EmbeddingService embeddingService,
+            @Qualifier(AsyncConfig.RAG_ANN_EXECUTOR) Executor executor,
+            @Value("${rag.ann.m:16}") int m,
+            @Value("${rag.ann.ef-construction:100}") int efConstruction,
+            @Value("${rag.ann.ef-search:64}") int efSearch,
+            @Value("${rag.ann.max-memory-mb:256}") int maxMemoryMb,
+            @Value("${rag.ann.max-chunks-per-patient:50000}") int maxChunksPerPatient,
+            @Value("${rag.ann.load-retry-seconds:300}") long loadRetrySeconds
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingService = embeddingService;
+        this.executor = executor;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = Math.max(1, efSearch);
+        this.maxMemoryBytes = Math.max(1, maxMemoryMb) * 1024L * 1024L;
+        this.maxChunksPerPatient = Math.max(1, maxChunksPerPatient);
+        this.loadRetryMillis = Math.max(0, loadRetrySeconds) * 1000L;
+    }
+
+    /**
+     * k nearest chunks of a patient, or null when the patient's partition is not loaded yet
+     * (a background load is started; the caller should fall back to pgvector).
+     */
+    public List<PatientFileRagQueryService.RagHit> search(Long patientId, float[] query, int k) {
+        Partition p;
+        synchronized (partitions) {
+            p = partitions.get(patientId);
+        }
+        if (p == null) {
+            scheduleLoad(patientId);
+            return null;
+        }
+        return p.search(query, k, efSearch);
+    }
+
+    /** Called after a file's chunks were (re)written. */
+    public void onFileIndexed(Long patientId, UUID fileId) {
+        synchronized (partitions) {
+            Set<UUID> pending = loading.get(patientId);
+            if (pending != null) {
+                pending.add(fileId);
+                return;
+            }
+            if (!partitions.containsKey(patientId)) return;
+        }
+        submit(() -> refreshFiles(patientId, Set.of(fileId)), () -> invalidatePatient(patientId));
+    }
+
+    public void onFileDeleted(Long patientId, UUID fileId) {
+        Partition p;
+        synchronized (partitions) {
+            // Fewer chunks now: a patient that was over the limit may fit
+            skipLoadUntil.remove(patientId);
+            Set<UUID> pending = loading.get(patientId);
+            if (pending != null) pending.add(fileId);
+            p = partitions.get(patientId);
+        }
+        if (p != null) p.removeFile(fileId);
+    }
+
+    public void onFileRenamed(Long patientId, UUID fileId, String name) {
+        Partition p;
+        synchronized (partitions) {
+            p = partitions.get(patientId);
+        }
+        if (p != null) p.renameFile(fileId, name);
+    }
+
+    public void invalidatePatient(Long patientId) {
+        synchronized (partitions) {
+            partitions.remove(patientId);
+            skipLoadUntil.remove(patientId);
+        }
+    }
+
+    public int loadedPatients() {
+        synchronized (partitions) {
+            return partitions.size();
+        }
+    }
+
+    public long memoryBytes() {
+        synchronized (partitions) {
+            long sum = 0;
+            for (Partition p : partitions.values()) sum += p.bytes();
+            return sum;
+        }
+    }
+
+    private void scheduleLoad(Long patientId) {
+        synchronized (partitions) {
+            if (loading.containsKey(patientId) || partitions.containsKey(patientId)) return;
+            Long skipUntil = skipLoadUntil.get(patientId);
+            if (skipUntil != null) {
+                if (System.currentTimeMillis() < skipUntil) return;
+                skipLoadUntil.remove(patientId);
+            }
+            loading.put(patientId, new HashSet<>());
+        }
+        submit(() -> load(patientId), () -> {
+            synchronized (partitions) {
+                loading.remove(patientId);
+            }
+        });
+    }
+
+    private void submit(Runnable task, Runnable onReject) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            onReject.run();
+        }
+    }
+
+    private void load(Long patientId) {
+        long t0 = System.currentTimeMillis();
+        Partition p = null;
+        Long skipUntil = null;
+        try {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM patient_file_chunks WHERE patient_id = ?", Integer.class, patientId);
+            if (count != null && count > maxChunksPerPatient) {
+                log.info("ANN: patient {} has {} chunks (> {}), staying on pgvector", patientId, count, maxChunksPerPatient);
+                skipUntil = Long.MAX_VALUE;
+                return;
+            }
+            Partition built = new Partition(new HnswIndex(embeddingService.dimensions(), m, efConstruction,
+                    Math.max(16, count == null ? 16 : count)));
+            jdbcTemplate.query(CHUNKS_SQL + "ORDER BY c.id", (RowCallbackHandler) rs -> built.addRow(rs),
+                    patientId, embeddingService.modelId());
+            p = built;
+            log.info("ANN: loaded patient {} ({} chunks, {} KB off-heap) in {} ms",
+                    patientId, p.graph.liveCount(), p.bytes() / 1024, System.currentTimeMillis() - t0);
+        } catch (Exception e) {
+            log.warn("ANN: could not load patient {} (retry in {} s): {}", patientId, loadRetryMillis / 1000, e.getMessage());
+            skipUntil = System.currentTimeMillis() + loadRetryMillis;
+        } finally {
+            Set<UUID> pending;
+            synchronized (partitions) {
+                pending = loading.remove(patientId);
+                if (skipUntil != null) skipLoadUntil.put(patientId, skipUntil);
+                if (p != null) {
+                    partitions.put(patientId, p);
+                    evictIfNeeded();
+                }
+            }
+            if (p != null && pending != null && !pending.isEmpty()) {
+                refreshFiles(patientId, pending);
+            }
+        }
+    }
+
+    /** Replaces the given files' nodes with their current chunks. */
+    private void refreshFiles(Long patientId, Set<UUID> fileIds) {
+        Partition p;
+        synchronized (partitions) {
+            p = partitions.get(patientId);
+        }
+        if (p == null) return;
+        try {
+            List<Row> rows = new ArrayList<>();
+            jdbcTemplate.query(CHUNKS_SQL + "AND c.file_id = ANY(?) ORDER BY c.id",
+                    (RowCallbackHandler) rs -> rows.add(Row.of(rs)),
+                    patientId, embeddingService.modelId(), fileIds.toArray(new UUID[0]));
+            if (!p.replaceFiles(fileIds, rows)) {
+                // Mostly tombstones by now: drop and rebuild on the next query.
+                invalidatePatient(patientId);
+            }
+            synchronized (partitions) {
+                evictIfNeeded();
+            }
+        } catch (Exception e) {
+            log.warn("ANN: refresh of patient {} failed, dropping partition: {}", patientId, e.getMessage());
+            invalidatePatient(patientId);
+        }
+    }
+
+    private void evictIfNeeded() {
+        long total = 0;
+        for (Partition p : partitions.values()) total += p.bytes();
+        Iterator<Map.Entry<Long, Partition>> it = partitions.entrySet().iterator();
+        while (total > maxMemoryBytes && it.hasNext() && partitions.size() > 1) {
+            Map.Entry<Long, Partition> eldest = it.next();
+            total -= eldest.getValue().bytes();
+            it.remove();
+            log.debug("ANN: evicted patient {}", eldest.getKey());
+        }
+    }
+
+    private record Row(long chunkId, UUID fileId, String fileName, int pageNumber, int charStart, int charEnd,
+                       String text, float[] vector) {
+        static Row of(ResultSet rs) throws SQLException {
+            Array arr = rs.getArray("embedding");
+            Object[] values = (Object[]) arr.getArray();
+            float[] v = new float[values.length];
+            for (int i = 0; i < v.length; i++) v[i] = ((Number) values[i]).floatValue();
+            arr.free();
+            int charStart = rs.getInt("char_start");
+            if (rs.wasNull()) charStart = -1;
+            int charEnd = rs.getInt("char_end");
+            if (rs.wasNull()) charEnd = -1;
+            return new Row(rs.getLong("id"), (UUID) rs.getObject("file_id"), rs.getString("name"),
+                    rs.getInt("page_number"), charStart, charEnd, rs.getString("chunk_text"), v);
+        }
+    }
+
+    /** One patient's graph plus per-node metadata; chunk texts are UTF-8 in a direct buffer. */
+    private static final class Partition {
+        private static final double MAX_DELETED_RATIO = 0.3;
+
+        final HnswIndex graph;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private long[] chunkIds = new long[16];
+        private UUID[] fileIds = new UUID[16];
+        private int[] pageNumbers = new int[16];
+        private int[] charStarts = new int[16];
+        private int[] charEnds = new int[16];
+        private int[] textOffsets = new int[16];
+        private int[] textLengths = new int[16];
+        private ByteBuffer texts = ByteBuffer.allocateDirect(64 * 1024);
+        private final Map<UUID, String> fileNames = new HashMap<>();
+        private final Map<UUID, List<Integer>> nodesByFile = new HashMap<>();
+
+        Partition(HnswIndex graph) {
+            this.graph = graph;
+        }
+
+        long bytes() {
+            return graph.vectorBytes() + texts.capacity();
+        }
+
+        void addRow(ResultSet rs) throws SQLException {
+            add(Row.of(rs));
+        }
+
+        List<PatientFileRagQueryService.RagHit> search(float[] query, int k, int ef) {
+            lock.readLock().lock();
+            try {
+                HnswIndex.Hit[] hits = graph.search(query, k, Math.max(ef, k));
+                List<PatientFileRagQueryService.RagHit> out = new ArrayList<>(hits.length);
+                for (HnswIndex.Hit h : hits) {
+                    int n = h.node();
+                    byte[] b = new byte[textLengths[n]];
+                    texts.get(textOffsets[n], b);
+                    out.add(new PatientFileRagQueryService.RagHit(chunkIds[n], fileIds[n], fileNames.get(fileIds[n]), pageNumbers[n],
+                            charStarts[n], charEnds[n], new String(b, StandardCharsets.UTF_8), h.distance()));
+                }
+                return out;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /** Returns false when the partition should be rebuilt instead. */
+        boolean replaceFiles(Set<UUID> fileIdsToReplace, List<Row> rows) {
+            lock.writeLock().lock();
+            try {
+                for (UUID f : fileIdsToReplace) deleteFileNodes(f);
+                for (Row r : rows) add(r);
+                return graph.size() == 0 || (graph.size() - graph.liveCount()) <= graph.size() * MAX_DELETED_RATIO;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void removeFile(UUID fileId) {
+            lock.writeLock().lock();
+            try {
+                deleteFileNodes(fileId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void renameFile(UUID fileId, String name) {
+            lock.writeLock().lock();
+            try {
+                if (fileNames.containsKey(fileId)) fileNames.put(fileId, name);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void deleteFileNodes(UUID fileId) {
+            List<Integer> nodes = nodesByFile.remove(fileId);
+            if (nodes != null) for (int n : nodes) graph.delete(n);
+            fileNames.remove(fileId);
+        }
+
+        private void add(Row r) {
+            byte[] textBytes = r.text().getBytes(StandardCharsets.UTF_8);
+            int node = graph.add(r.vector());
+            if (node >= fileIds.length) {
+                int cap = Math.max(node + 1, fileIds.length * 2);
+                chunkIds = Arrays.copyOf(chunkIds, cap);
+                fileIds = Arrays.copyOf(fileIds, cap);
+                pageNumbers = Arrays.copyOf(pageNumbers, cap);
+                charStarts = Arrays.copyOf(charStarts, cap);
+                charEnds = Arrays.copyOf(charEnds, cap);
+                textOffsets = Arrays.copyOf(textOffsets, cap);
+                textLengths = Arrays.copyOf(textLengths, cap);
+            }
+            if (texts.remaining() < textBytes.length) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(texts.capacity() * 2, texts.position() + textBytes.length));
+                texts.flip();
+                grown.put(texts);
+                texts = grown;
+            }
+            chunkIds[node] = r.chunkId();
+            fileIds[node] = r.fileId();
+            pageNumbers[node] = r.pageNumber();
+            charStarts[node] = r.charStart();
+            charEnds[node] = r.charEnd();
+            textOffsets[node] = texts.position();
+            textLengths[node] = textBytes.length;
+            texts.put(textBytes);
+            fileNames.put(r.fileId(), r.fileName());
+            nodesByFile.computeIfAbsent(r.fileId(), f -> new ArrayList<>()).add(node);
+        }
+    }
+}
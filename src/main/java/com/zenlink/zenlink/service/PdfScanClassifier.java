@@ -0,0 +1,254 @@
+package com.zenlink.zenlink.service;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.util.Matrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides how a PDF should be indexed before its text is extracted, from a few sampled pages.
+ *
+ * Sampled pages are run through the content stream without decoding fonts or images: bytes shown by
+ * text operators (Tj, TJ, ', ") are counted, and images drawn (Do, inline images) are measured by the
+ * area their transformation covers on the page. A page with text is TEXT, one without text but mostly
+ * covered by images is SCANNED, anything else is BLANK. Scanned PDFs that were OCR'd before upload carry
+ * an invisible text layer and count as TEXT.
+ *
+ * A document whose sampled pages are all SCANNED skips text extraction and goes to OCR whole; all TEXT
+ * goes to extraction; anything else gets per-page handling (extraction, then OCR of blank pages). Every
+ * {@code rag.ocr.classifier.verify-every}-th SCANNED document is extracted anyway to measure how often
+ * that shortcut is wrong; TEXT and mixed documents are checked for free against their extraction.
+ */
+@Component
+public class PdfScanClassifier {
+
+    public enum Route { TEXT, SCANNED, MIXED }
+
+    public enum PageKind { TEXT, SCANNED, BLANK }
+
+    /** {@code sampled} maps 1-based page numbers to their kind; empty when the classifier is off or failed. */
+    public record Classification(Route route, int pageCount, Map<Integer, PageKind> sampled) {}
+
+    /**
+     * {@code pagesChecked}/{@code pagesMispredicted}: sampled pages whose kind was compared with their extracted
+     * text. {@code estimatedMillisSaved}: extraction time avoided on skipped documents (at the measured
+     * per-page cost) minus the time spent classifying.
+     */
+    public record Stats(long text, long scanned, long mixed, long failed, long pagesSampled, double avgClassifyMillis,
+                        long extractionsSkipped, long scannedVerified, long scannedMispredicted,
+                        long pagesChecked, long pagesMispredicted, long estimatedMillisSaved) {}
+
+    private static final Logger log = LoggerFactory.getLogger(PdfScanClassifier.class);
+
+    private final boolean enabled;
+    private final int samplePages;
+    private final double minImageCoverage;
+    private final int verifyEvery;
+    private final int minPageChars;
+
+    private final AtomicLong text = new AtomicLong();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong mixed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong pagesSampled = new AtomicLong();
+    private final AtomicLong classifyNanos = new AtomicLong();
+    private final AtomicLong scannedRouted = new AtomicLong();
+    private final AtomicLong extractionsSkipped = new AtomicLong();
+    private final AtomicLong scannedVerified = new AtomicLong();
+    private final AtomicLong scannedMispredicted = new AtomicLong();
+    private final AtomicLong pagesChecked = new AtomicLong();
+    private final AtomicLong pagesMispredicted = new AtomicLong();
+    private final AtomicLong extractedPages = new AtomicLong();
+    private final AtomicLong extractionNanos = new AtomicLong();
+    private final AtomicLong skippedNanos = new AtomicLong();
+
+    public PdfScanClassifier(
+            @Value("${rag.ocr.classifier.enabled:true}") boolean enabled,
+            @Value("${rag.ocr.classifier.sample-pages:3}") int samplePages,
+            @Value("${rag.ocr.classifier.min-image-coverage:0.5}") double minImageCoverage,
+            @Value("${rag.ocr.classifier.verify-every:20}") int verifyEvery,
+            @Value("${rag.ocr.min-page-chars:20}") int minPageChars
+    ) {
+        this.enabled = enabled;
+        this.samplePages = Math.max(1, samplePages);
+        this.minImageCoverage = Math.max(0.0, Math.min(1.0, minImageCoverage));
+        this.verifyEvery = Math.max(0, verifyEvery);
+        this.minPageChars = Math.max(1, minPageChars);
+    }
+
+    public Classification classify(Path pdfFile) {
+        if (!enabled) return new Classification(Route.MIXED, 0, Map.of());
+        long started = System.nanoTime();
+        try (PDDocument doc = Loader.loadPDF(new RandomAccessReadBufferedFile(pdfFile.toFile()))) {
+            int pageCount = doc.getNumberOfPages();
+            Map<Integer, PageKind> sampled = new TreeMap<>();
+            for (int pageNumber : samplePageNumbers(pageCount, samplePages)) {
+                PageScan scan = new PageScan(doc.getPage(pageNumber - 1));
+                scan.run();
+                sampled.put(pageNumber, scan.textBytes >= minPageChars ? PageKind.TEXT
+                        : scan.imageCoverage() >= minImageCoverage ? PageKind.SCANNED : PageKind.BLANK);
+            }
+            Route route = route(sampled);
+            (route == Route.TEXT ? text : route == Route.SCANNED ? scanned : mixed).incrementAndGet();
+            pagesSampled.addAndGet(sampled.size());
+            return new Classification(route, pageCount, sampled);
+        } catch (IOException | RuntimeException e) {
+            // Extraction will report the actual problem
+            log.debug("Could not classify {}: {}", pdfFile, e.getMessage());
+            failed.incrementAndGet();
+            return new Classification(Route.MIXED, 0, Map.of());
+        } finally {
+            classifyNanos.addAndGet(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * True when the document can go to OCR without text extraction: a SCANNED route, except for the
+     * documents picked for verification.
+     */
+    public boolean skipsExtraction(Classification c) {
+        if (c.route() != Route.SCANNED) return false;
+        if (verifyEvery > 0 && scannedRouted.getAndIncrement() % verifyEvery == 0) return false;
+        extractionsSkipped.incrementAndGet();
+        long pages = extractedPages.get();
+        if (pages > 0) skippedNanos.addAndGet(extractionNanos.get() / pages * c.pageCount());
+        return true;
+    }
+
+    /** Records an extraction: its per-page cost, and whether the sampled pages were classified right. */
+    public void recordExtraction(Classification c, List<String> pages, long nanos) {
+        extractedPages.addAndGet(pages.size());
+        extractionNanos.addAndGet(nanos);
+        int wrong = 0;
+        for (Map.Entry<Integer, PageKind> e : c.sampled().entrySet()) {
+            if (e.getKey() > pages.size()) continue;
+            String page = pages.get(e.getKey() - 1);
+            boolean hasText = page != null && page.trim().length() >= minPageChars;
+            if (hasText != (e.getValue() == PageKind.TEXT)) wrong++;
+            pagesChecked.incrementAndGet();
+        }
+        pagesMispredicted.addAndGet(wrong);
+        if (c.route() == Route.SCANNED) {
+            scannedVerified.incrementAndGet();
+            if (PdfTextExtractor.blankPages(pages, minPageChars).size() < pages.size()) scannedMispredicted.incrementAndGet();
+        }
+    }
+
+    public Stats stats() {
+        long classified = text.get() + scanned.get() + mixed.get() + failed.get();
+        long nanos = classifyNanos.get();
+        return new Stats(text.get(), scanned.get(), mixed.get(), failed.get(), pagesSampled.get(),
+                classified == 0 ? 0.0 : nanos / (double) classified / 1_000_000.0,
+                extractionsSkipped.get(), scannedVerified.get(), scannedMispredicted.get(),
+                pagesChecked.get(), pagesMispredicted.get(),
+                (skippedNanos.get() - nanos) / 1_000_000);
+    }
+
+    /** Up to {@code samples} 1-based page numbers spread evenly over the document, first and last included. */
+    static int[] samplePageNumbers(int pageCount, int samples) {
+        int n = Math.min(pageCount, samples);
+        int[] pages = new int[n];
+        for (int i = 0; i < n; i++) {
+            pages[i] = n == 1 ? 1 : 1 + (int) Math.round(i * (pageCount - 1) / (double) (n - 1));
+        }
+        return pages;
+    }
+
+    static Route route(Map<Integer, PageKind> sampled) {
+        if (sampled.isEmpty()) return Route.MIXED;
+        if (sampled.values().stream().allMatch(k -> k == PageKind.SCANNED)) return Route.SCANNED;
+        if (sampled.values().stream().allMatch(k -> k == PageKind.TEXT)) return Route.TEXT;
+        return Route.MIXED;
+    }
+
+    /** Walks one page's content stream; text is counted, not decoded, and images are never decoded. */
+    private static final class PageScan extends PDFGraphicsStreamEngine {
+        private final PDRectangle box;
+        private long textBytes;
+        private double imageArea;
+
+        PageScan(PDPage page) {
+            super(page);
+            this.box = page.getCropBox();
+        }
+
+        void run() throws IOException {
+            processPage(getPage());
+        }
+
+        double imageCoverage() {
+            double pageArea = (double) box.getWidth() * box.getHeight();
+            return pageArea <= 0 ? 0.0 : Math.min(1.0, imageArea / pageArea);
+        }
+
+        @Override
+        public void showTextString(byte[] string) {
+            count(string);
+        }
+
+        @Override
+        public void showTextStrings(COSArray array) {
+            for (COSBase item : array) {
+                if (item instanceof COSString s) count(s.getBytes());
+            }
+        }
+
+        private void count(byte[] string) {
+            for (byte b : string) {
+                if (b != ' ' && b != 0) textBytes++;
+            }
+        }
+
+        @Override
+        public void drawImage(PDImage image) {
+            if (image.isStencil()) return; // masks painted in a colour, e.g. glyph-like shapes
+            // Images are drawn into the unit square, mapped onto the page by the CTM
+            Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int corner = 0; corner < 4; corner++) {
+                Point2D.Float p = ctm.transformPoint(corner & 1, corner >> 1);
+                minX = Math.min(minX, p.x);
+                maxX = Math.max(maxX, p.x);
+                minY = Math.min(minY, p.y);
+                maxY = Math.max(maxY, p.y);
+            }
+            double w = Math.min(maxX, box.getUpperRightX()) - Math.max(minX, box.getLowerLeftX());
+            double h = Math.min(maxY, box.getUpperRightY()) - Math.max(minY, box.getLowerLeftY());
+            if (w > 0 && h > 0) imageArea += w * h;
+        }
+
+        // Paths, clipping and shading do not matter for classification
+        @Override public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) {}
+        @Override public void clip(int windingRule) {}
+        @Override public void moveTo(float x, float y) {}
+        @Override public void lineTo(float x, float y) {}
+        @Override public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) {}
+        @Override public Point2D getCurrentPoint() { return new Point2D.Float(); }
+        @Override public void closePath() {}
+        @Override public void endPath() {}
+        @Override public void strokePath() {}
+        @Override public void fillPath(int windingRule) {}
+        @Override public void fillAndStrokePath(int windingRule) {}
+        @Override public void shadingFill(COSName shadingName) {}
+    }
+}
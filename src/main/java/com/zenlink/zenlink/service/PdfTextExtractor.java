@@ -1,53 +1,180 @@
 package com.zenlink.zenlink.service;
 
+import com.zenlink.zenlink.config.AsyncConfig;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Per-page PDF text extraction.
+ *
+ * Documents are read straight from the caller's bytes (or a file) without copying, and PDFBox keeps at
+ * most {@code rag.pdf.max-main-memory-mb} of decoded streams per handle on heap before spilling to a
+ * scratch file. Large documents are split into page ranges that run on the shared PDF pool, each
+ * with its own document handle and stripper (neither is thread-safe); the pool size caps how many
+ * handles exist at once across all files.
+ */
 @Service
 public class PdfTextExtractor {
 
+    /** Receives page texts as ranges finish: not in page order, but never concurrently. */
+    @FunctionalInterface
+    public interface PageSink {
+        void accept(int pageNumber, String text);
+    }
+
+    private interface Source {
+        PDDocument open(RandomAccessStreamCache.StreamCacheCreateFunction cache) throws IOException;
+    }
+
+    private final Executor executor;
+    private final int workers;
+    private final int minPagesPerRange;
+    private final long maxMainMemoryBytes;
+
+    public PdfTextExtractor(
+            @Qualifier(AsyncConfig.RAG_PDF_EXECUTOR) Executor executor,
+            @Value("${rag.pdf.extract-workers:0}") int workers,
+            @Value("${rag.pdf.min-pages-per-range:16}") int minPagesPerRange,
+            @Value("${rag.pdf.max-main-memory-mb:16}") int maxMainMemoryMb
+    ) {
+        this.executor = executor;
+        this.workers = resolveWorkers(workers);
+        this.minPagesPerRange = Math.max(1, minPagesPerRange);
+        this.maxMainMemoryBytes = Math.max(1, maxMainMemoryMb) * 1024L * 1024L;
+    }
+
     /**
      * Returns per-page extracted text. For scanned PDFs this will likely be empty/low-quality.
      */
     public List<String> extractPages(byte[] pdfBytes) {
         if (pdfBytes == null || pdfBytes.length == 0) return List.of();
-        try (ByteArrayInputStream in = new ByteArrayInputStream(pdfBytes);
-             PDDocument doc = org.apache.pdfbox.Loader.loadPDF(in.readAllBytes())) {
-            int pages = doc.getNumberOfPages();
-            PDFTextStripper stripper = new PDFTextStripper();
-
-            List<String> out = new ArrayList<>(Math.max(0, pages));
-            for (int i = 1; i <= pages; i++) {
-                stripper.setStartPage(i);
-                stripper.setEndPage(i);
-                String text = stripper.getText(doc);
-                out.add(text == null ? "" : text);
+        List<String> pages = new ArrayList<>();
+        extract(cache -> Loader.loadPDF(new RandomAccessReadBuffer(pdfBytes), cache), (page, text) -> {
+            while (pages.size() < page) pages.add("");
+            pages.set(page - 1, text);
+        });
+        return pages;
+    }
+
+    /** Per-page text of a PDF on disk, read through a small buffer. */
+    public List<String> extractPages(Path pdfFile) {
+        List<String> pages = new ArrayList<>();
+        extractPages(pdfFile, (page, text) -> {
+            while (pages.size() < page) pages.add("");
+            pages.set(page - 1, text);
+        });
+        return pages;
+    }
+
+    /** Streams page texts of a PDF held in memory. Returns the page count. */
+    public int extractPages(byte[] pdfBytes, PageSink sink) {
+        if (pdfBytes == null || pdfBytes.length == 0) return 0;
+        return extract(cache -> Loader.loadPDF(new RandomAccessReadBuffer(pdfBytes), cache), sink);
+    }
+
+    /** Streams page texts of a PDF on disk (read through a small buffer, never fully loaded). Returns the page count. */
+    public int extractPages(Path pdfFile, PageSink sink) {
+        return extract(cache -> Loader.loadPDF(new RandomAccessReadBufferedFile(pdfFile.toFile()), cache), sink);
+    }
+
+    private int extract(Source source, PageSink sink) {
+        Object sinkLock = new Object();
+        PageSink serialized = (page, text) -> {
+            synchronized (sinkLock) {
+                sink.accept(page, text);
+            }
+        };
+
+        try (PDDocument doc = source.open(memoryPolicy())) {
+            int pageCount = doc.getNumberOfPages();
+            int ranges = Math.min(workers, Math.max(1, pageCount / minPagesPerRange));
+            if (ranges <= 1) {
+                stripRange(doc, 1, pageCount, serialized, null);
+                return pageCount;
             }
 
-            return out;
+            // Range 0 runs here on the already opened handle; the rest open their own.
+            int perRange = (pageCount + ranges - 1) / ranges;
+            AtomicBoolean failed = new AtomicBoolean();
+            List<CompletableFuture<Void>> futures = new ArrayList<>(ranges - 1);
+            for (int r = 1; r < ranges; r++) {
+                int from = r * perRange + 1;
+                int to = Math.min(pageCount, (r + 1) * perRange);
+                if (from > to) break;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try (PDDocument own = source.open(memoryPolicy())) {
+                        stripRange(own, from, to, serialized, failed);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            try {
+                stripRange(doc, 1, Math.min(pageCount, perRange), serialized, failed);
+                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            } catch (RuntimeException | IOException e) {
+                failed.set(true);
+                throw e;
+            }
+            return pageCount;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            throw new RuntimeException("Failed to extract PDF text: " + cause.getMessage(), cause);
         } catch (Exception e) {
             throw new RuntimeException("Failed to extract PDF text: " + e.getMessage(), e);
         }
     }
 
-    public static boolean looksScanned(List<String> pages) {
-        if (pages == null || pages.isEmpty()) return true;
-        int nonEmpty = 0;
-        int totalChars = 0;
-        for (String p : pages) {
-            if (p == null) continue;
-            String t = p.trim();
-            if (!t.isEmpty()) nonEmpty++;
-            totalChars += t.length();
+    private static void stripRange(PDDocument doc, int from, int to, PageSink sink, AtomicBoolean failed) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        for (int i = from; i <= to; i++) {
+            if (failed != null && failed.get()) return;
+            stripper.setStartPage(i);
+            stripper.setEndPage(i);
+            String text = stripper.getText(doc);
+            sink.accept(i, text == null ? "" : text);
         }
-        // Heuristic: very low text usually means scanned
-        return nonEmpty == 0 || totalChars < 200;
     }
-}
 
+    private RandomAccessStreamCache.StreamCacheCreateFunction memoryPolicy() {
+        return MemoryUsageSetting.setupMixed(maxMainMemoryBytes).streamCache;
+    }
+
+    /** Configured worker count, or half the cores when not set (<= 0): on 1-2 cores ranges only add overhead. */
+    public static int resolveWorkers(int configured) {
+        return configured > 0 ? configured : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
 
+    /**
+     * 1-based numbers of pages whose extracted text is shorter than {@code minChars} (after trimming):
+     * pages without a usable text layer, i.e. scans or scanned inserts in an otherwise digital PDF.
+     */
+    public static SortedSet<Integer> blankPages(List<String> pages, int minChars) {
+        SortedSet<Integer> blank = new TreeSet<>();
+        if (pages == null) return blank;
+        for (int i = 0; i < pages.size(); i++) {
+            String p = pages.get(i);
+            if (p == null || p.trim().length() < minChars) blank.add(i + 1);
+        }
+        return blank;
+    }
+}
@@ -0,0 +1,354 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.AsyncConfig;
+import com.zenlink.zenlink.config.RagVectorIndexProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lifecycle of pgvector ANN indexes (HNSW or IVFFlat) on patient_file_chunks.embedding.
+ *
+ * A periodic check compares row counts with rag.vector-index thresholds: a table-wide index once the
+ * table is large, and a partial index (WHERE patient_id = ..) per patient with many chunks, so those
+ * patients get an unfiltered graph of their own. Indexes are built with CREATE INDEX CONCURRENTLY, one
+ * at a time on their own thread; a build that failed leaves an INVALID index, which is dropped and
+ * planned again. Partial indexes of patients that shrank below half the threshold are dropped.
+ *
+ * Queries ask {@link #annFor} how to search a patient: which index applies and the SET LOCAL settings
+ * (hnsw.ef_search / ivfflat.probes from k and scope). A table-wide index is only used for one patient
+ * with pgvector 0.8+ iterative scans, which keep scanning until k rows pass the patient filter.
+ */
+@Service
+@ConditionalOnProperty(name = "rag.enabled", havingValue = "true")
+public class PgVectorIndexManager {
+
+    static final String TABLE = "patient_file_chunks";
+    static final String GLOBAL_INDEX = "idx_patient_file_chunks_embedding_ann";
+    static final String PATIENT_INDEX_PREFIX = "idx_patient_file_chunks_embedding_p";
+
+    /** An ANN index on the embedding column; {@code patientId} is set for partial per-patient indexes. */
+    public record AnnIndex(String name, String method, Long patientId, boolean valid, int lists, long bytes, long scans) {}
+
+    /** How to run one ANN query: the index, whether its patient predicate must be matched literally, and SET LOCAL statements. */
+    public record AnnSearch(String indexName, boolean partial, List<String> settings) {}
+
+    record Action(boolean create, String indexName, Long patientId, long rows) {}
+
+    public record Stats(boolean enabled, String pgvectorVersion, long chunkRows, List<AnnIndex> indexes,
+                        String building, String buildProgress, long builds, long buildFailures, long drops,
+                        String lastError, Instant lastCheck) {}
+
+    private record State(String pgvectorVersion, boolean iterativeScans, long chunkRows,
+                         AnnIndex global, Map<Long, AnnIndex> patients, List<AnnIndex> all, Instant checkedAt) {}
+
+    private static final Logger log = LoggerFactory.getLogger(PgVectorIndexManager.class);
+    private static final Pattern PATIENT_PREDICATE = Pattern.compile("patient_id\\s*=\\s*'?(\\d+)");
+    private static final Pattern LISTS_OPTION = Pattern.compile("lists=(\\d+)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RagVectorIndexProperties props;
+    private final Executor executor;
+
+    private volatile State state;
+    private volatile String building;
+    private volatile String lastError;
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong buildFailures = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+
+    public PgVectorIndexManager(
+            JdbcTemplate jdbcTemplate,
+            RagVectorIndexProperties props,
+            @Qualifier(AsyncConfig.RAG_VECTOR_INDEX_EXECUTOR) Executor executor
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.props = props;
+        this.executor = executor;
+    }
+
+    /** Search plan for one patient's chunks, or null when no valid ANN index covers them (exact / two-pass search then). */
+    public AnnSearch annFor(String scope, Long patientId, int k) {
+        State s = state;
+        if (s == null || !props.isEnabled() || patientId == null) return null;
+        AnnIndex own = s.patients().get(patientId);
+        if (own != null && own.valid()) {
+            return new AnnSearch(own.name(), true, settings(own, scope, k, false));
+        }
+        if (s.global() != null && s.global().valid() && s.iterativeScans()) {
+            return new AnnSearch(s.global().name(), false, settings(s.global(), scope, k, true));
+        }
+        return null;
+    }
+
+    private List<String> settings(AnnIndex index, String scope, int k, boolean filtered) {
+        int ef = props.getEfSearch().forQuery(scope, k, filtered);
+        List<String> out = new ArrayList<>(2);
+        if ("ivfflat".equals(index.method())) {
+            // probes ~ a quarter of ef_search: each probe scans a whole list
+            out.add("SET LOCAL ivfflat.probes = " + Math.max(1, Math.min(index.lists(), ef / 4)));
+            if (filtered) out.add("SET LOCAL ivfflat.iterative_scan = relaxed_order");
+        } else {
+            out.add("SET LOCAL hnsw.ef_search = " + ef);
+            if (filtered) out.add("SET LOCAL hnsw.iterative_scan = strict_order");
+        }
+        return out;
+    }
+
+    @Scheduled(initialDelayString = "${rag.vector-index.check-initial-delay-millis:60000}",
+            fixedDelayString = "${rag.vector-index.check-interval-millis:3600000}")
+    public void check() {
+        if (!props.isEnabled()) return;
+        try {
+            State s = loadState();
+            state = s;
+            // Also covers builds started by another instance: their index is INVALID until done
+            if (s == null || building != null || buildInProgress()) return;
+            List<Action> actions = plan(props, s.iterativeScans(), s.chunkRows(), patientRows(), s.all());
+            for (Action a : actions) {
+                if (!a.create()) drop(a.indexName());
+            }
+            actions.stream().filter(Action::create).findFirst().ifPresent(this::submitBuild);
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            log.warn("pgvector index check failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drops first (invalid indexes, partial indexes of patients that shrank below half the threshold),
+     * then creates: the table-wide index, then partial indexes for the largest patients without one.
+     * The table-wide index is only built when iterative scans are available: without them a patient-filtered
+     * scan stops after ef_search rows of all patients and can return fewer than k chunks.
+     */
+    static List<Action> plan(RagVectorIndexProperties props, boolean iterativeScans, long chunkRows,
+                             Map<Long, Long> patientRows, List<AnnIndex> existing) {
+        List<Action> drops = new ArrayList<>();
+        List<Action> creates = new ArrayList<>();
+        boolean hasGlobal = false;
+        Map<Long, AnnIndex> partial = new HashMap<>();
+        for (AnnIndex index : existing) {
+            if (!index.valid()) {
+                drops.add(new Action(false, index.name(), index.patientId(), 0));
+            } else if (index.patientId() == null) {
+                hasGlobal = true;
+            } else if (patientRows.getOrDefault(index.patientId(), 0L) < props.getPatientMinRows() / 2) {
+                drops.add(new Action(false, index.name(), index.patientId(), 0));
+            } else {
+                partial.put(index.patientId(), index);
+            }
+        }
+        if (!hasGlobal && iterativeScans && props.getMinRows() > 0 && chunkRows >= props.getMinRows()) {
+            creates.add(new Action(true, GLOBAL_INDEX, null, chunkRows));
+        }
+        if (props.getPatientMinRows() > 0) {
+            List<Map.Entry<Long, Long>> largest = new ArrayList<>(patientRows.entrySet());
+            largest.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            int slots = props.getMaxPatientIndexes() - partial.size();
+            for (Map.Entry<Long, Long> e : largest) {
+                if (slots <= 0 || e.getValue() < props.getPatientMinRows()) break;
+                if (partial.containsKey(e.getKey())) continue;
+                creates.add(new Action(true, PATIENT_INDEX_PREFIX + e.getKey(), e.getKey(), e.getValue()));
+                slots--;
+            }
+        }
+        List<Action> out = new ArrayList<>(drops);
+        out.addAll(creates);
+        return out;
+    }
+
+    /** CREATE INDEX CONCURRENTLY statement for an action; the patient id is a number, so it is inlined. */
+    static String createSql(RagVectorIndexProperties props, Action a) {
+        String using = props.getType() == RagVectorIndexProperties.Type.IVFFLAT
+                ? "ivfflat (embedding vector_l2_ops) WITH (lists = " + lists(props, a.rows()) + ")"
+                : "hnsw (embedding vector_l2_ops) WITH (m = " + Math.max(2, props.getM())
+                        + ", ef_construction = " + Math.max(4, props.getEfConstruction()) + ")";
+        return "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + a.indexName() + " ON " + TABLE + " USING " + using
+                + (a.patientId() == null ? "" : " WHERE patient_id = " + a.patientId());
+    }
+
+    /** pgvector's guidance: rows / 1000 up to a million rows, sqrt(rows) above. */
+    static int lists(RagVectorIndexProperties props, long rows) {
+        if (props.getLists() > 0) return props.getLists();
+        long lists = rows <= 1_000_000 ? rows / 1000 : (long) Math.sqrt(rows);
+        return (int) Math.max(10, Math.min(32_768, lists));
+    }
+
+    private void submitBuild(Action a) {
+        building = a.indexName();
+        try {
+            executor.execute(() -> build(a));
+        } catch (RejectedExecutionException e) {
+            building = null;
+        }
+    }
+
+    private void build(Action a) {
+        String sql = createSql(props, a);
+        long t0 = System.currentTimeMillis();
+        log.info("Building pgvector index {} over ~{} rows: {}", a.indexName(), a.rows(), sql);
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                // CONCURRENTLY cannot run in a transaction: needs an autocommit connection
+                boolean autoCommit = con.getAutoCommit();
+                con.setAutoCommit(true);
+                try (Statement st = con.createStatement()) {
+                    st.execute("SET maintenance_work_mem = '" + Math.max(64, props.getMaintenanceWorkMemMb()) + "MB'");
+                    try {
+                        st.execute(sql);
+                    } finally {
+                        st.execute("RESET maintenance_work_mem");
+                    }
+                } finally {
+                    con.setAutoCommit(autoCommit);
+                }
+                return null;
+            });
+            builds.incrementAndGet();
+            log.info("pgvector index {} built in {} ms", a.indexName(), System.currentTimeMillis() - t0);
+        } catch (Exception e) {
+            // The INVALID leftover is dropped by the next check
+            buildFailures.incrementAndGet();
+            lastError = a.indexName() + ": " + e.getMessage();
+            log.warn("pgvector index {} failed after {} ms: {}", a.indexName(), System.currentTimeMillis() - t0, e.getMessage());
+        } finally {
+            building = null;
+            try {
+                state = loadState();
+            } catch (Exception e) {
+                log.debug("Could not reload pgvector index state: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void drop(String indexName) {
+        try {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+            drops.incrementAndGet();
+            log.info("Dropped pgvector index {}", indexName);
+        } catch (Exception e) {
+            lastError = indexName + ": " + e.getMessage();
+            log.warn("Could not drop pgvector index {}: {}", indexName, e.getMessage());
+        }
+    }
+
+    /** Null when pgvector is not installed. */
+    private State loadState() {
+        String version = jdbcTemplate.query("SELECT extversion FROM pg_extension WHERE extname = 'vector'",
+                rs -> rs.next() ? rs.getString(1) : null);
+        if (version == null) return null;
+        Long rows = jdbcTemplate.queryForObject(
+                "SELECT greatest(reltuples, 0)::bigint FROM pg_class WHERE oid = 'patient_file_chunks'::regclass", Long.class);
+        List<AnnIndex> indexes = jdbcTemplate.query(
+                """
+                SELECT c.relname, am.amname, x.indisvalid, pg_get_expr(x.indpred, x.indrelid) AS predicate,
+                       array_to_string(c.reloptions, ',') AS options, pg_relation_size(c.oid) AS bytes,
+                       coalesce(s.idx_scan, 0) AS scans
+                FROM pg_index x
+                JOIN pg_class c ON c.oid = x.indexrelid
+                JOIN pg_am am ON am.oid = c.relam
+                LEFT JOIN pg_stat_user_indexes s ON s.indexrelid = x.indexrelid
+                WHERE x.indrelid = 'patient_file_chunks'::regclass AND am.amname IN ('hnsw', 'ivfflat')
+                ORDER BY c.relname
+                """,
+                (rs, i) -> new AnnIndex(rs.getString("relname"), rs.getString("amname"),
+                        patientOf(rs.getString("predicate")), rs.getBoolean("indisvalid"),
+                        listsOf(rs.getString("options")), rs.getLong("bytes"), rs.getLong("scans"))
+        );
+        AnnIndex global = null;
+        Map<Long, AnnIndex> patients = new HashMap<>();
+        for (AnnIndex index : indexes) {
+            if (index.patientId() != null) {
+                patients.put(index.patientId(), index);
+            } else if (global == null || (index.valid() && !global.valid())) {
+                global = index;
+            }
+        }
+        return new State(version, supportsIterativeScans(version), rows == null ? 0 : rows,
+                global, patients, indexes, Instant.now());
+    }
+
+    private boolean buildInProgress() {
+        Integer n = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_stat_progress_create_index WHERE relid = 'patient_file_chunks'::regclass", Integer.class);
+        return n != null && n > 0;
+    }
+
+    private Map<Long, Long> patientRows() {
+        if (props.getPatientMinRows() <= 0) return Map.of();
+        Map<Long, Long> rows = new LinkedHashMap<>();
+        // Patients at or above half the threshold: candidates for a partial index, and those keeping theirs
+        jdbcTemplate.query(
+                "SELECT patient_id, count(*) FROM patient_file_chunks GROUP BY patient_id HAVING count(*) >= ?",
+                (RowCallbackHandler) rs -> rows.put(rs.getLong(1), rs.getLong(2)),
+                Math.max(1, props.getPatientMinRows() / 2)
+        );
+        return rows;
+    }
+
+    static Long patientOf(String predicate) {
+        if (predicate == null) return null;
+        Matcher m = PATIENT_PREDICATE.matcher(predicate);
+        return m.find() ? Long.valueOf(m.group(1)) : null;
+    }
+
+    private static int listsOf(String options) {
+        if (options == null) return 100; // pgvector's default
+        Matcher m = LISTS_OPTION.matcher(options);
+        return m.find() ? Integer.parseInt(m.group(1)) : 100;
+    }
+
+    /** Iterative index scans (hnsw.iterative_scan / ivfflat.iterative_scan) arrived in pgvector 0.8.0. */
+    static boolean supportsIterativeScans(String version) {
+        if (version == null) return false;
+        String[] parts = version.split("\\.");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1].replaceAll("\\D.*", "")) : 0;
+            return major > 0 || minor >= 8;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public Stats stats() {
+        State s = state;
+        String current = building;
+        String progress = null;
+        if (current != null) {
+            try {
+                progress = jdbcTemplate.query(
+                        "SELECT phase, blocks_done, blocks_total, tuples_done, tuples_total FROM pg_stat_progress_create_index " +
+                                "WHERE relid = 'patient_file_chunks'::regclass",
+                        rs -> rs.next()
+                                ? rs.getString(1) + " (blocks " + rs.getLong(2) + "/" + rs.getLong(3)
+                                        + ", tuples " + rs.getLong(4) + "/" + rs.getLong(5) + ")"
+                                : null);
+            } catch (Exception e) {
+                progress = "unknown: " + e.getMessage();
+            }
+        }
+        return new Stats(props.isEnabled(), s == null ? null : s.pgvectorVersion(), s == null ? 0 : s.chunkRows(),
+                s == null ? List.of() : s.all(), current, progress, builds.get(), buildFailures.get(), drops.get(),
+                lastError, s == null ? null : s.checkedAt());
+    }
+}
@@ -0,0 +1,108 @@
+package com.zenlink.zenlink.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU cache of question embeddings with a TTL. Questions are keyed after normalization
+ * (case, whitespace, trailing punctuation) together with the embedding model, so "Ce tratament are?"
+ * asked again about another file or patient skips the embedding call. Returned vectors are shared:
+ * callers must not modify them.
+ */
+@Component
+public class QueryEmbeddingCache {
+
+    public record Stats(long hits, long misses, long evictions, int size, double hitRate) {}
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s?!.;:,…]+$");
+
+    private record Entry(float[] vector, long expiresAtNanos) {}
+
+    private final EmbeddingService embeddingService;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Access-ordered; guarded by itself. */
+    private final LinkedHashMap<String, Entry> entries;
+
+    @Autowired
+    public QueryEmbeddingCache(
+            EmbeddingService embeddingService,
+            @Value("${rag.query-cache.max-entries:2000}") int maxEntries,
+            @Value("${rag.query-cache.ttl-minutes:60}") int ttlMinutes
+    ) {
+        this(embeddingService, maxEntries, TimeUnit.MINUTES.toNanos(Math.max(1, ttlMinutes)), System::nanoTime);
+    }
+
+    QueryEmbeddingCache(EmbeddingService embeddingService, int maxEntries, long ttlNanos, LongSupplier clock) {
+        this.embeddingService = embeddingService;
+        this.maxEntries = Math.max(0, maxEntries);
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= QueryEmbeddingCache.this.maxEntries) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    public float[] embed(String query) {
+        if (maxEntries == 0) return embeddingService.embed(query);
+        String key = embeddingService.modelId() + "\n" + normalize(query);
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e != null && now - e.expiresAtNanos() < 0) {
+                hits.incrementAndGet();
+                return e.vector();
+            }
+            if (e != null) entries.remove(key);
+        }
+        // Not under the lock: a concurrent miss on the same question just embeds it twice
+        misses.incrementAndGet();
+        float[] vector = embeddingService.embed(query);
+        synchronized (entries) {
+            entries.put(key, new Entry(vector, now + ttlNanos));
+        }
+        return vector;
+    }
+
+    public Stats stats() {
+        long h = hits.get();
+        long m = misses.get();
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(h, m, evictions.get(), size, h + m == 0 ? 0.0 : h / (double) (h + m));
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    static String normalize(String query) {
+        if (query == null) return "";
+        String t = WHITESPACE.matcher(query.toLowerCase(Locale.ROOT)).replaceAll(" ");
+        return TRAILING_PUNCTUATION.matcher(t).replaceAll("").trim();
+    }
+}
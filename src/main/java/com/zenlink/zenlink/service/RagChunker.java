@@ -3,43 +3,330 @@ package com.zenlink.zenlink.service;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
+/**
+ * Sentence-aware chunking.
+ *
+ * One pass over a page builds a boundary table: every whitespace run is a candidate break, classified as
+ * word, line, sentence or paragraph break, together with the running token estimate. Chunks then end at the
+ * strongest break in the last half of their token budget, and the next chunk starts at the strongest break
+ * inside the overlap window, so sentences are only split when a single sentence exceeds the budget.
+ * Sentence ends skip common Romanian (medical) abbreviations, initials and decimals.
+ *
+ * The scan runs over a char[] copy of the page: pages with diacritics are UTF-16 strings, and
+ * {@code String.charAt} on those costs several times an array read. Each chunk is one substring of the page,
+ * as the indexer embeds and stores every chunk's text anyway.
+ */
 @Service
 public class RagChunker {
 
-    public record Chunk(int pageNumber, int chunkIndex, String text) {}
+    /** Bump when chunk boundaries change for the same input, so indexed pages get re-chunked. */
+    public static final int VERSION = 2;
 
-    /**
-     * Simple per-page chunking by characters with overlap.
-     */
-    public List<Chunk> chunkPages(List<String> pages, int chunkSizeChars, int overlapChars) {
+    /** Chunk budget in approximate tokens (see {@link #estimateTokens}). */
+    public record Profile(int maxTokens, int overlapTokens) {
+        public Profile {
+            maxTokens = Math.max(16, maxTokens);
+            overlapTokens = Math.max(0, Math.min(overlapTokens, maxTokens / 2));
+        }
+    }
+
+    /** A chunk of a page: {@code text} is {@code [charStart, charEnd)} of the page text it was cut from. */
+    public record Chunk(int pageNumber, int chunkIndex, String text, int charStart, int charEnd) {
+        public Chunk(int pageNumber, int chunkIndex, String text) {
+            this(pageNumber, chunkIndex, text, 0, text.length());
+        }
+    }
+
+    // Break strength, weakest first
+    static final byte WORD = 1;
+    static final byte LINE = 2;
+    static final byte SENTENCE = 3;
+    static final byte PARAGRAPH = 4;
+
+    // Character classes, precomputed for Latin-1 + Latin Extended-A/B (covers ă â î ș ț and the cedilla ş ţ)
+    private static final int SPACE = 1;
+    private static final int WORD_CHAR = 2;
+    private static final int UPPER = 4;
+    private static final int WIDE = 8;          // non-ASCII letter: usually 2+ BPE tokens' worth of bytes
+    private static final int TERMINATOR = 16;   // . ! ? …
+    private static final int CLOSER = 32;       // ) ] " ' » ” after a terminator
+    private static final int SENTENCE_START = 64;
+    private static final int TABLE_SIZE = 0x250;
+    private static final byte[] CLASSES = new byte[TABLE_SIZE];
+
+    static {
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            int cls = 0;
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) cls |= SPACE;
+            if (Character.isLetterOrDigit(c)) cls |= WORD_CHAR;
+            if (Character.isUpperCase(c) || Character.isDigit(c)) cls |= UPPER | SENTENCE_START;
+            if (c > 0x7F && Character.isLetter(c)) cls |= WIDE;
+            CLASSES[c] = (byte) cls;
+        }
+        for (char c : new char[]{'.', '!', '?'}) CLASSES[c] |= TERMINATOR;
+        for (char c : new char[]{')', ']', '"', '\'', '»'}) CLASSES[c] |= CLOSER;
+        for (char c : new char[]{'-', '*', '(', '"', '«'}) CLASSES[c] |= SENTENCE_START;
+    }
+
+    /** Lower-case abbreviations (without the dot) that do not end a sentence; units ("mg", "zi") do, so they are not listed. */
+    private static final Set<String> ABBREVIATIONS = Set.of(
+            "dr", "prof", "conf", "asist", "med", "sp", "d", "dl", "dna", "dra", "dnei", "dlui", "sf",
+            "nr", "str", "bl", "sc", "ap", "et", "jud", "loc", "mun", "com", "tel", "fax", "cnp",
+            "pag", "p", "pp", "vol", "cap", "art", "alin", "lit", "pct", "fig", "tab", "anexa",
+            "ex", "cf", "vs", "cca", "aprox", "max", "min", "resp", "obs", "rec", "diag", "dg",
+            "trat", "cp", "cps", "fl", "sol", "inj", "supp", "caps", "gtt", "ung", "sir", "amp",
+            "ian", "feb", "mar", "apr", "iun", "iul", "aug", "sept", "oct", "noi", "nov", "dec", "buc"
+    );
+    /** {@link #ABBREVIATIONS} packed by {@link #abbreviationKey} in an open-addressing table: no allocation per word. */
+    private static final long[] ABBREVIATION_KEYS = new long[256];
+
+    static {
+        for (String a : ABBREVIATIONS) {
+            long key = abbreviationKey(a.toCharArray(), 0, a.length());
+            int slot = abbreviationSlot(key);
+            while (ABBREVIATION_KEYS[slot] != 0) slot = (slot + 1) & 0xFF;
+            ABBREVIATION_KEYS[slot] = key;
+        }
+    }
+
+    public List<Chunk> chunkPages(List<String> pages, Profile profile) {
         List<Chunk> out = new ArrayList<>();
         if (pages == null || pages.isEmpty()) return out;
+        for (int p = 0; p < pages.size(); p++) {
+            out.addAll(chunkPage(p + 1, pages.get(p), profile));
+        }
+        return out;
+    }
 
-        int cs = Math.max(200, chunkSizeChars);
-        int ov = Math.max(0, Math.min(overlapChars, cs - 50));
+    /** Chunks a single page; chunk indexes restart at 0 per page. */
+    public List<Chunk> chunkPage(int pageNumber, CharSequence text, Profile profile) {
+        List<Chunk> out = new ArrayList<>();
+        if (text == null) return out;
+        String page = text.toString();
+        char[] chars = page.toCharArray();
+        Boundaries b = Boundaries.of(chars);
+        if (b.count < 2) return out;
 
-        for (int p = 0; p < pages.size(); p++) {
-            String raw = pages.get(p);
-            String t = raw == null ? "" : raw.trim();
-            if (t.isEmpty()) continue;
-
-            int idx = 0;
-            int chunkIndex = 0;
-            while (idx < t.length()) {
-                int end = Math.min(t.length(), idx + cs);
-                String part = t.substring(idx, end).trim();
-                if (!part.isEmpty()) {
-                    out.add(new Chunk(p + 1, chunkIndex++, part));
+        int max = profile.maxTokens();
+        int overlap = profile.overlapTokens();
+        int last = b.count - 1;
+        int s = 0;
+        while (s < last) {
+            int startTokens = b.tokens[s];
+            int e = s;
+            while (e < last && b.tokens[e + 1] - startTokens <= max) e++;
+
+            int end;
+            if (e == s) {
+                // One "word" over budget (e.g. OCR garbage without spaces): hard split by characters
+                int hardEnd = Math.min(b.offsets[s + 1], b.offsets[s] + max * 4);
+                addChunk(out, pageNumber, page, chars, b.offsets[s], hardEnd);
+                if (hardEnd < b.offsets[s + 1]) {
+                    b.offsets[s] = hardEnd;
+                    b.tokens[s] = startTokens + max;
+                    continue;
                 }
-                if (end >= t.length()) break;
-                idx = Math.max(0, end - ov);
+                s++;
+                continue;
+            } else if (e == last) {
+                end = last;
+            } else {
+                end = strongestBreak(b, s, e, startTokens + max / 2, true);
             }
-        }
+            addChunk(out, pageNumber, page, chars, b.offsets[s], b.offsets[end]);
+            if (end == last) break;
 
+            // Overlap: back up at most overlap tokens, but only to a break as strong as this chunk's end,
+            // so a chunk that ended on a sentence never starts mid-sentence
+            int next = end;
+            if (overlap > 0) {
+                int j = end;
+                while (j - 1 > s && b.tokens[end] - b.tokens[j - 1] <= overlap) j--;
+                if (j < end) {
+                    int candidate = strongestBreak(b, j, end - 1, Integer.MIN_VALUE, false);
+                    if (b.kinds[candidate] >= Math.min(b.kinds[end], SENTENCE)) next = candidate;
+                }
+            }
+            s = Math.max(next, s + 1);
+        }
         return out;
     }
-}
 
+    /**
+     * Index of the strongest break in {@code [from, to]} whose running token count is at least {@code minTokens}
+     * (the whole range when none is); ties go to the latest break when {@code preferLate}, else the earliest.
+     */
+    private static int strongestBreak(Boundaries b, int from, int to, int minTokens, boolean preferLate) {
+        int lo = from;
+        while (lo < to && b.tokens[lo] < minTokens) lo++;
+        int best = preferLate ? to : lo;
+        for (int i = lo; i <= to; i++) {
+            if (b.kinds[i] > b.kinds[best] || (preferLate && b.kinds[i] == b.kinds[best])) best = i;
+        }
+        return best;
+    }
+
+    private static void addChunk(List<Chunk> out, int pageNumber, String page, char[] chars, int start, int end) {
+        while (end > start && isSpace(chars[end - 1])) end--;
+        while (start < end && isSpace(chars[start])) start++;
+        if (end > start) out.add(new Chunk(pageNumber, out.size(), page.substring(start, end), start, end));
+    }
+
+    /**
+     * Rough BPE token count: word characters in groups of 4 (non-ASCII letters count double: they are
+     * multi-byte in UTF-8 and split into more tokens), plus one token per punctuation mark.
+     */
+    public static int estimateTokens(CharSequence text) {
+        return Boundaries.of(text.toString().toCharArray()).totalTokens();
+    }
+
+    /** Candidate breaks of one text: offsets where a segment starts after whitespace, their kind and running tokens. */
+    static final class Boundaries {
+        int[] offsets;
+        int[] tokens;
+        byte[] kinds;
+        int count;
+
+        private Boundaries(int capacity) {
+            offsets = new int[capacity];
+            tokens = new int[capacity];
+            kinds = new byte[capacity];
+        }
+
+        int totalTokens() {
+            return count == 0 ? 0 : tokens[count - 1];
+        }
+
+        private void add(int offset, byte kind, int tokenCount) {
+            if (count == offsets.length) {
+                int cap = count * 2;
+                offsets = Arrays.copyOf(offsets, cap);
+                tokens = Arrays.copyOf(tokens, cap);
+                kinds = Arrays.copyOf(kinds, cap);
+            }
+            offsets[count] = offset;
+            tokens[count] = tokenCount;
+            kinds[count] = kind;
+            count++;
+        }
 
+        static Boundaries of(char[] text) {
+            int n = text.length;
+            Boundaries b = new Boundaries(Math.max(16, n / 6));
+            int i = 0;
+            while (i < n && isSpace(text[i])) i++;
+            if (i == n) return b;
+            b.add(i, PARAGRAPH, 0);
+
+            int tokenCount = 0;
+            while (i < n) {
+                // Word: up to the next whitespace
+                int wordStart = i;
+                int weight = 0;
+                while (i < n) {
+                    char c = text[i];
+                    int cls = classOf(c);
+                    if ((cls & SPACE) != 0) break;
+                    if ((cls & WORD_CHAR) != 0) {
+                        weight += (cls & WIDE) != 0 ? 2 : 1;
+                    } else {
+                        tokenCount += (weight + 3) >> 2;
+                        weight = 0;
+                        tokenCount++;
+                    }
+                    i++;
+                }
+                tokenCount += (weight + 3) >> 2;
+                boolean terminated = endsSentence(text, wordStart, i);
+
+                // Whitespace run: its newlines decide the break kind
+                int newlines = 0;
+                while (i < n) {
+                    char c = text[i];
+                    if (!isSpace(c)) break;
+                    if (c == '\n') newlines++;
+                    i++;
+                }
+                byte kind = newlines >= 2 ? PARAGRAPH : newlines == 1 ? LINE : WORD;
+                if (terminated && kind < SENTENCE && (i == n || (classOf(text[i]) & SENTENCE_START) != 0)) {
+                    kind = SENTENCE;
+                }
+                b.add(i, i == n ? PARAGRAPH : kind, tokenCount);
+            }
+            return b;
+        }
+
+        /** Does the word {@code [from, to)} end a sentence? */
+        private static boolean endsSentence(char[] text, int from, int to) {
+            int end = to;
+            while (end > from && (classOf(text[end - 1]) & CLOSER) != 0) end--;
+            if (end == from) return false;
+            char last = text[end - 1];
+            if (last == '!' || last == '?' || last == '…') return true;
+            if (last != '.') return false;
+            int dots = end - 1;
+            while (dots > from && text[dots - 1] == '.') dots--;
+            if (dots < end - 1) return true; // "..." ellipsis
+            int wordEnd = dots;
+            int wordStart = from;
+            while (wordStart < wordEnd && (classOf(text[wordStart]) & WORD_CHAR) == 0) wordStart++;
+            int len = wordEnd - wordStart;
+            if (len == 0) return true;
+            // Initials ("I. Popescu") and abbreviations ("Dr.", "nr.", "tab.") do not end sentences
+            if (len == 1 && (classOf(text[wordStart]) & UPPER) != 0 && !Character.isDigit(text[wordStart])) {
+                return false;
+            }
+            if (len <= 6) {
+                return !isAbbreviation(abbreviationKey(text, wordStart, wordEnd));
+            }
+            return true;
+        }
+    }
+
+    /** Lower-cased ASCII letters of {@code [from, to)} (at most 7) packed one per byte; -1 for anything else. */
+    private static long abbreviationKey(char[] text, int from, int to) {
+        long key = 0;
+        for (int k = from; k < to; k++) {
+            int c = text[k] | 0x20;
+            if (c < 'a' || c > 'z') return -1;
+            key = (key << 8) | c;
+        }
+        return key;
+    }
+
+    private static int abbreviationSlot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 56);
+    }
+
+    private static boolean isAbbreviation(long key) {
+        if (key <= 0) return false;
+        for (int slot = abbreviationSlot(key); ABBREVIATION_KEYS[slot] != 0; slot = (slot + 1) & 0xFF) {
+            if (ABBREVIATION_KEYS[slot] == key) return true;
+        }
+        return false;
+    }
+
+    private static int classOf(char c) {
+        // Table hit kept apart from the rest so it stays small enough to inline into the scan loop
+        return c < TABLE_SIZE ? CLASSES[c] : classOfOther(c);
+    }
+
+    private static int classOfOther(char c) {
+        if (c == '…') return TERMINATOR;
+        if (c == '”' || c == '’') return CLOSER;
+        if (c == '„' || c == '“' || c == '•') return SENTENCE_START;
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) return SPACE;
+        int cls = 0;
+        if (Character.isLetterOrDigit(c)) cls |= WORD_CHAR | (Character.isLetter(c) ? WIDE : 0);
+        if (Character.isUpperCase(c)) cls |= UPPER | SENTENCE_START;
+        return cls;
+    }
+
+    private static boolean isSpace(char c) {
+        return (classOf(c) & SPACE) != 0;
+    }
+}
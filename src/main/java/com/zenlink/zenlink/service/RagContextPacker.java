@@ -0,0 +1,130 @@
+package com.zenlink.zenlink.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Turns retrieved chunks into the document part of the prompt, within {@code rag.context.max-tokens}.
+ *
+ * Hits are grouped by file and page; chunks whose offsets overlap or touch (neighbouring chunks share
+ * their overlap window) are merged into one passage, so the shared text is sent once. Passages are
+ * emitted in the order of their best-ranked hit until the budget is full; the passage that crosses it is
+ * cut at a word boundary when a useful part still fits. Each passage keeps its file name, id and page
+ * for citations.
+ */
+@Component
+public class RagContextPacker {
+
+    static final String HEADER = "FRAGMENTE DIN DOCUMENTE (folosește DOAR acestea și citează cu nume fișier + pagină + citat):\n\n";
+
+    // A cut passage shorter than this is not worth its citation header
+    private static final int MIN_PARTIAL_TOKENS = 40;
+
+    /** A contiguous span of one page; {@code rank} is the position of its best hit in the retrieval order. */
+    record Passage(UUID fileId, String fileName, int pageNumber, int charStart, int charEnd, String text, int rank) {}
+
+    private final int maxTokens;
+
+    public RagContextPacker(@Value("${rag.context.max-tokens:2000}") int maxTokens) {
+        this.maxTokens = Math.max(100, maxTokens);
+    }
+
+    public String pack(List<PatientFileRagQueryService.RagHit> hits) {
+        return render(passages(hits), maxTokens);
+    }
+
+    /** Merges overlapping hits of the same page; passages come back ordered by rank. */
+    static List<Passage> passages(List<PatientFileRagQueryService.RagHit> hits) {
+        Map<String, List<Passage>> byPage = new LinkedHashMap<>();
+        for (int rank = 0; rank < hits.size(); rank++) {
+            PatientFileRagQueryService.RagHit h = hits.get(rank);
+            String text = h.chunkText() == null ? "" : h.chunkText();
+            byPage.computeIfAbsent(h.fileId() + "#" + h.pageNumber(), k -> new ArrayList<>())
+                    .add(new Passage(h.fileId(), h.fileName(), h.pageNumber(), h.charStart(), h.charEnd(), text, rank));
+        }
+
+        List<Passage> out = new ArrayList<>();
+        for (List<Passage> page : byPage.values()) {
+            List<Passage> located = new ArrayList<>();
+            for (Passage p : page) {
+                // Offsets must describe the text exactly, otherwise they cannot be used to splice it
+                if (p.charStart() >= 0 && p.charEnd() - p.charStart() == p.text().length()) {
+                    located.add(p);
+                } else if (out.stream().noneMatch(o -> o.fileId().equals(p.fileId()) && o.text().equals(p.text()))) {
+                    out.add(p);
+                }
+            }
+            located.sort(Comparator.comparingInt(Passage::charStart));
+            Passage current = null;
+            for (Passage p : located) {
+                if (current == null) {
+                    current = p;
+                } else if (p.charStart() <= current.charEnd()) {
+                    current = merge(current, p);
+                } else {
+                    out.add(current);
+                    current = p;
+                }
+            }
+            if (current != null) out.add(current);
+        }
+        out.sort(Comparator.comparingInt(Passage::rank));
+        return out;
+    }
+
+    private static Passage merge(Passage a, Passage b) {
+        int rank = Math.min(a.rank(), b.rank());
+        if (b.charEnd() <= a.charEnd()) {
+            return new Passage(a.fileId(), a.fileName(), a.pageNumber(), a.charStart(), a.charEnd(), a.text(), rank);
+        }
+        String text = a.text() + b.text().substring(a.charEnd() - b.charStart());
+        return new Passage(a.fileId(), a.fileName(), a.pageNumber(), a.charStart(), b.charEnd(), text, rank);
+    }
+
+    static String render(List<Passage> passages, int maxTokens) {
+        StringBuilder sb = new StringBuilder(HEADER);
+        int used = RagChunker.estimateTokens(HEADER);
+        int n = 0;
+        for (Passage p : passages) {
+            String head = "[" + (n + 1) + "] Fișier: " + p.fileName() + " (" + p.fileId() + ")"
+                    + ", pag. " + p.pageNumber() + "\nCitat:\n\"\"\"\n";
+            String tail = "\n\"\"\"\n\n";
+            int overhead = RagChunker.estimateTokens(head) + RagChunker.estimateTokens(tail);
+            String text = p.text().trim();
+            int tokens = RagChunker.estimateTokens(text);
+            int left = maxTokens - used - overhead;
+            if (tokens > left) {
+                // Smaller passages further down may still fit whole
+                if (left < MIN_PARTIAL_TOKENS) continue;
+                text = cut(text, left - 1) + "…";
+                tokens = RagChunker.estimateTokens(text);
+            }
+            sb.append(head).append(text).append(tail);
+            used += overhead + tokens;
+            n++;
+        }
+        return sb.toString();
+    }
+
+    /** Longest prefix ending at a word boundary that fits in {@code tokens}. */
+    private static String cut(String text, int tokens) {
+        int lo = 0;
+        int hi = text.length();
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (RagChunker.estimateTokens(text.subSequence(0, mid)) <= tokens) lo = mid;
+            else hi = mid - 1;
+        }
+        int end = lo;
+        while (end > 0 && end < text.length() && !Character.isWhitespace(text.charAt(end))) end--;
+        if (end == 0) end = lo;
+        return text.substring(0, end).trim();
+    }
+}
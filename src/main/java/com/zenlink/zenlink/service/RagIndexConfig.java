@@ -0,0 +1,52 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.RagChunkingProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Versioned chunking + embedding settings. {@link #version()} is stored with every indexed page and file;
+ * pages indexed under another version are re-chunked and re-embedded the next time their file is indexed,
+ * and the indexer's sweep re-queues outdated files a few at a time.
+ */
+@Component
+public class RagIndexConfig {
+
+    /** Document types with their own chunk sizes (rag.chunking.types.&lt;type&gt;.*). */
+    public static final String TYPE_TEXT = "text";
+    public static final String TYPE_OCR = "ocr";
+
+    private final EmbeddingService embeddingService;
+    private final RagChunkingProperties chunking;
+
+    public RagIndexConfig(EmbeddingService embeddingService, RagChunkingProperties chunking) {
+        this.embeddingService = embeddingService;
+        this.chunking = chunking;
+    }
+
+    /** Chunk budget for a document type; unknown types and unset fields fall back to the defaults. */
+    public RagChunker.Profile profile(String documentType) {
+        RagChunkingProperties.TypeSettings t = documentType == null ? null : chunking.getTypes().get(documentType);
+        int max = t != null && t.getMaxTokens() != null ? t.getMaxTokens() : chunking.getMaxTokens();
+        int overlap = t != null && t.getOverlapTokens() != null ? t.getOverlapTokens() : chunking.getOverlapTokens();
+        return new RagChunker.Profile(max, overlap);
+    }
+
+    public String embeddingModel() {
+        return embeddingService.modelId();
+    }
+
+    /** e.g. "chunker-v2:300/50,ocr=200/30|openai:text-embedding-3-small@768" */
+    public String version() {
+        RagChunker.Profile base = profile(null);
+        StringBuilder sb = new StringBuilder("chunker-v").append(RagChunker.VERSION).append(':')
+                .append(base.maxTokens()).append('/').append(base.overlapTokens());
+        for (Map.Entry<String, RagChunkingProperties.TypeSettings> e : new TreeMap<>(chunking.getTypes()).entrySet()) {
+            RagChunker.Profile p = profile(e.getKey());
+            if (!p.equals(base)) sb.append(',').append(e.getKey()).append('=').append(p.maxTokens()).append('/').append(p.overlapTokens());
+        }
+        return sb.append('|').append(embeddingService.modelId()).toString();
+    }
+}
@@ -0,0 +1,248 @@
+package com.zenlink.zenlink.service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Bulk writes of RAG pages and chunks for one file. Callers delete the file's previous rows first
+ * (inside the same transaction), so plain inserts are enough.
+ *
+ * <ul>
+ *   <li>{@code copy} (default): Postgres binary COPY; embeddings go over the wire as raw float4s
+ *       in pgvector's binary format instead of "[0.1,0.2,...]" text that the server has to parse.</li>
+ *   <li>{@code batch}: JDBC batchUpdate with the textual vector literal; used when the connection is not Postgres.</li>
+ * </ul>
+ */
+@Component
+public class RagIndexWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(RagIndexWriter.class);
+
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int FLUSH_BYTES = 256 * 1024;
+
+    /** One page to store; {@code textSha256} + {@code indexConfig} let a later re-index skip unchanged pages. */
+    public record PageRow(int pageNumber, String text, String textSha256, String indexConfig) {}
+
+    static final String COPY_PAGES_SQL =
+            "COPY patient_file_pages(file_id, patient_id, page_number, page_text, text_sha256, index_config) FROM STDIN (FORMAT binary)";
+    static final String COPY_CHUNKS_SQL =
+            "COPY patient_file_chunks(file_id, patient_id, page_number, chunk_index, char_start, char_end, chunk_text, embedding, embedding_bits) " +
+            "FROM STDIN (FORMAT binary)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean useCopy;
+
+    public RagIndexWriter(JdbcTemplate jdbcTemplate, @Value("${rag.index.write-mode:copy}") String writeMode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.useCopy = !"batch".equalsIgnoreCase(writeMode);
+    }
+
+    /** Writes the given pages. Returns rows written. */
+    public int writePages(UUID fileId, Long patientId, List<PageRow> pages) {
+        if (pages.isEmpty()) return 0;
+
+        if (copyAvailable()) {
+            long n = copy(COPY_PAGES_SQL, out -> {
+                for (PageRow p : pages) {
+                    out.writeShort(6);
+                    writeUuid(out, fileId);
+                    writeInt8(out, patientId);
+                    writeInt4(out, p.pageNumber());
+                    writeText(out, p.text());
+                    writeText(out, p.textSha256());
+                    writeText(out, p.indexConfig());
+                }
+            });
+            return (int) n;
+        }
+
+        List<Object[]> rows = new ArrayList<>(pages.size());
+        for (PageRow p : pages) {
+            rows.add(new Object[]{fileId, patientId, p.pageNumber(), p.text(), p.textSha256(), p.indexConfig()});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO patient_file_pages(file_id, patient_id, page_number, page_text, text_sha256, index_config) VALUES(?,?,?,?,?,?)",
+                rows
+        );
+        return rows.size();
+    }
+
+    /** Writes chunks with their embeddings ({@code embeddings.get(i)} belongs to {@code chunks.get(i)}). Returns rows written. */
+    public int writeChunks(UUID fileId, Long patientId, List<RagChunker.Chunk> chunks, List<float[]> embeddings) {
+        if (chunks.size() != embeddings.size()) {
+            throw new IllegalArgumentException("chunks and embeddings differ in size");
+        }
+        if (chunks.isEmpty()) return 0;
+
+        if (copyAvailable()) {
+            long n = copy(COPY_CHUNKS_SQL, out -> {
+                for (int i = 0; i < chunks.size(); i++) {
+                    RagChunker.Chunk c = chunks.get(i);
+                    out.writeShort(9);
+                    writeUuid(out, fileId);
+                    writeInt8(out, patientId);
+                    writeInt4(out, c.pageNumber());
+                    writeInt4(out, c.chunkIndex());
+                    writeInt4(out, c.charStart());
+                    writeInt4(out, c.charEnd());
+                    writeText(out, c.text());
+                    writeVector(out, embeddings.get(i));
+                    writeSignBits(out, embeddings.get(i));
+                }
+            });
+            return (int) n;
+        }
+
+        List<Object[]> rows = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            RagChunker.Chunk c = chunks.get(i);
+            rows.add(new Object[]{fileId, patientId, c.pageNumber(), c.chunkIndex(), c.charStart(), c.charEnd(), c.text(),
+                    EmbeddingService.toPgvectorLiteral(embeddings.get(i)), VectorQuantizer.signBitLiteral(embeddings.get(i))});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO patient_file_chunks(file_id, patient_id, page_number, chunk_index, char_start, char_end, chunk_text, embedding, embedding_bits) " +
+                        "VALUES(?,?,?,?,?,?,?,?::vector,?::varbit)",
+                rows
+        );
+        return rows.size();
+    }
+
+    private boolean copyAvailable() {
+        if (!useCopy) return false;
+        Boolean pg = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> con.isWrapperFor(PGConnection.class));
+        return Boolean.TRUE.equals(pg);
+    }
+
+    private long copy(String sql, RowWriter rows) {
+        Long n = jdbcTemplate.execute((ConnectionCallback<Long>) con -> copy(con, sql, rows));
+        return n == null ? 0 : n;
+    }
+
+    /** Streams one binary COPY on an existing connection (also used by the write benchmark). */
+    static long copy(Connection con, String sql, RowWriter rows) throws SQLException {
+        CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(FLUSH_BYTES + 64 * 1024);
+            DataOutputStream out = new DataOutputStream(new FlushingStream(buf, copyIn));
+            out.write(COPY_SIGNATURE);
+            out.writeInt(0); // flags
+            out.writeInt(0); // header extension length
+            rows.write(out);
+            out.writeShort(-1); // trailer
+            out.flush();
+            if (buf.size() > 0) copyIn.writeToCopy(buf.toByteArray(), 0, buf.size());
+            return copyIn.endCopy();
+        } catch (IOException e) {
+            throw new SQLException("COPY failed: " + e.getMessage(), e);
+        } finally {
+            if (copyIn.isActive()) {
+                try {
+                    copyIn.cancelCopy();
+                } catch (SQLException e) {
+                    log.debug("cancelCopy failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface RowWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static void writeUuid(DataOutputStream out, UUID v) throws IOException {
+        out.writeInt(16);
+        out.writeLong(v.getMostSignificantBits());
+        out.writeLong(v.getLeastSignificantBits());
+    }
+
+    static void writeInt8(DataOutputStream out, Long v) throws IOException {
+        if (v == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(8);
+        out.writeLong(v);
+    }
+
+    static void writeInt4(DataOutputStream out, int v) throws IOException {
+        out.writeInt(4);
+        out.writeInt(v);
+    }
+
+    static void writeText(DataOutputStream out, String v) throws IOException {
+        if (v == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = v.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** pgvector binary format: int16 dim, int16 unused, dim x float4 (big endian). */
+    static void writeVector(DataOutputStream out, float[] v) throws IOException {
+        out.writeInt(4 + 4 * v.length);
+        out.writeShort(v.length);
+        out.writeShort(0);
+        for (float f : v) out.writeFloat(f);
+    }
+
+    /** Postgres bit(n) binary format: int32 bit length, then the bits packed MSB first. */
+    static void writeSignBits(DataOutputStream out, float[] v) throws IOException {
+        byte[] bits = VectorQuantizer.signBitBytes(v);
+        out.writeInt(4 + bits.length);
+        out.writeInt(v.length);
+        out.write(bits);
+    }
+
+    /** Buffers locally and hands full blocks to the COPY stream. */
+    private static final class FlushingStream extends java.io.OutputStream {
+        private final ByteArrayOutputStream buf;
+        private final CopyIn copyIn;
+
+        FlushingStream(ByteArrayOutputStream buf, CopyIn copyIn) {
+            this.buf = buf;
+            this.copyIn = copyIn;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            buf.write(b);
+            maybeFlush();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            buf.write(b, off, len);
+            maybeFlush();
+        }
+
+        private void maybeFlush() throws IOException {
+            if (buf.size() < FLUSH_BYTES) return;
+            try {
+                copyIn.writeToCopy(buf.toByteArray(), 0, buf.size());
+            } catch (SQLException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            buf.reset();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.zenlink.zenlink.service;
+
+/**
+ * Sign-bit codes of embeddings (one bit per dimension, 32x smaller than float4) for the Hamming first pass of
+ * patient-scope retrieval. Same layout as pgvector's {@code binary_quantize(embedding)} / Postgres {@code bit(n)}:
+ * bit set when > 0, first dimension in the most significant bit of the first byte.
+ */
+public final class VectorQuantizer {
+
+    private VectorQuantizer() {}
+
+    /** Sign bits in Postgres bit(n) byte order (what varbit_send / varbit_recv expect after the length). */
+    public static byte[] signBitBytes(float[] v) {
+        byte[] bytes = new byte[(v.length + 7) >>> 3];
+        for (int i = 0; i < v.length; i++) {
+            if (v[i] > 0f) bytes[i >>> 3] |= (byte) (0x80 >>> (i & 7));
+        }
+        return bytes;
+    }
+
+    /** Sign bits as a bit string literal ("0110..."), castable with {@code ?::bit(n)}. */
+    public static String signBitLiteral(float[] v) {
+        char[] chars = new char[v.length];
+        for (int i = 0; i < v.length; i++) chars[i] = v[i] > 0f ? '1' : '0';
+        return new String(chars);
+    }
+}
@@ -0,0 +1,165 @@
+package com.zenlink.zenlink.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * Sidebar and history paging at 10k+ conversations for one user: unbounded list (old behaviour)
+ * vs OFFSET paging vs keyset paging over idx_ai_conversations_owner_scope_updated.
+ */
+@Tag("benchmark")
+class AiConversationKeysetBenchmark {
+
+    private static final String SCHEMA = "bench_ai_keyset";
+    private static final int HEAVY_USER_CONVERSATIONS = 12_000;
+    private static final int OTHER_USERS = 2_000;
+    private static final int OTHER_USER_CONVERSATIONS = 20;
+    private static final int HISTORY_MESSAGES = 10_000;
+    private static final int PAGE = 50;
+    private static final int RUNS = 7;
+
+    private static final String PAGE_SQL =
+            "SELECT id, title, updated_at FROM ai_conversations " +
+            "WHERE user_id = ? AND user_role = 'DOCTOR' AND scope_type = 'PATIENT' AND scope_id = '42' " +
+            "AND (updated_at < ? OR (updated_at = ? AND id < ?)) " +
+            "ORDER BY updated_at DESC, id DESC LIMIT ?";
+
+    @Test
+    void conversationAndMessagePaging() throws Exception {
+        try (Connection conn = BenchmarkDatabase.connectOrSkip()) {
+            BenchmarkDatabase.recreateSchema(conn, SCHEMA);
+            try {
+                seed(conn);
+
+                report("unbounded list (old)", () -> drain(conn,
+                        "SELECT id, title, updated_at FROM ai_conversations " +
+                        "WHERE user_id = 1 AND user_role = 'DOCTOR' AND scope_type = 'PATIENT' AND scope_id = '42' " +
+                        "ORDER BY updated_at DESC"));
+                report("first page, keyset", () -> keysetPages(conn, 1));
+                report("page 200, OFFSET", () -> drain(conn,
+                        "SELECT id, title, updated_at FROM ai_conversations " +
+                        "WHERE user_id = 1 AND user_role = 'DOCTOR' AND scope_type = 'PATIENT' AND scope_id = '42' " +
+                        "ORDER BY updated_at DESC, id DESC LIMIT " + PAGE + " OFFSET " + (PAGE * 199)));
+                report("all " + (HEAVY_USER_CONVERSATIONS / PAGE) + " pages, keyset (total)",
+                        () -> keysetPages(conn, Integer.MAX_VALUE));
+                report("history: all " + HISTORY_MESSAGES + " messages (old)", () -> drain(conn,
+                        "SELECT id, role, content FROM ai_messages WHERE conversation_id = 1 ORDER BY id ASC"));
+                report("history: newest page, keyset", () -> drain(conn,
+                        "SELECT id, role, content FROM ai_messages WHERE conversation_id = 1 ORDER BY id DESC LIMIT " + PAGE));
+                report("history: older page, keyset", () -> drain(conn,
+                        "SELECT id, role, content FROM ai_messages WHERE conversation_id = 1 AND id < " + (HISTORY_MESSAGES / 2) +
+                        " ORDER BY id DESC LIMIT " + PAGE));
+
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery("EXPLAIN " + PAGE_SQL
+                             .replaceFirst("\\?", "1")
+                             .replaceFirst("\\?", "'9999-12-31'")
+                             .replaceFirst("\\?", "'9999-12-31'")
+                             .replaceFirst("\\?", String.valueOf(Long.MAX_VALUE))
+                             .replaceFirst("\\?", String.valueOf(PAGE)))) {
+                    System.out.println("[keyset] plan:");
+                    while (rs.next()) System.out.println("  " + rs.getString(1));
+                }
+            } finally {
+                BenchmarkDatabase.dropSchema(conn, SCHEMA);
+            }
+        }
+    }
+
+    private static void seed(Connection conn) throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TABLE ai_conversations (
+                      id BIGSERIAL PRIMARY KEY,
+                      user_id BIGINT NOT NULL,
+                      user_role TEXT NOT NULL,
+                      title TEXT,
+                      scope_type TEXT,
+                      scope_id TEXT,
+                      created_at TIMESTAMP NOT NULL,
+                      updated_at TIMESTAMP
+                    )""");
+            st.execute("""
+                    CREATE TABLE ai_messages (
+                      id BIGSERIAL PRIMARY KEY,
+                      conversation_id BIGINT NOT NULL,
+                      role TEXT NOT NULL,
+                      content TEXT NOT NULL,
+                      created_at TIMESTAMP NOT NULL
+                    )""");
+            st.execute("INSERT INTO ai_conversations(user_id, user_role, title, scope_type, scope_id, created_at, updated_at) " +
+                    "SELECT 1, 'DOCTOR', 'Conversatie ' || g, 'PATIENT', '42', now(), now() - (g || ' minutes')::interval " +
+                    "FROM generate_series(1, " + HEAVY_USER_CONVERSATIONS + ") g");
+            st.execute("INSERT INTO ai_conversations(user_id, user_role, title, scope_type, scope_id, created_at, updated_at) " +
+                    "SELECT 2 + (g % " + OTHER_USERS + "), 'DOCTOR', 'Alt utilizator ' || g, 'PATIENT', (g % 500)::text, now(), " +
+                    "now() - (g || ' seconds')::interval FROM generate_series(1, " + (OTHER_USERS * OTHER_USER_CONVERSATIONS) + ") g");
+            st.execute("INSERT INTO ai_messages(conversation_id, role, content, created_at) " +
+                    "SELECT 1 + (g % 3), CASE WHEN g % 2 = 0 THEN 'user' ELSE 'assistant' END, repeat('text ', 60), now() " +
+                    "FROM generate_series(1, " + (HISTORY_MESSAGES * 3) + ") g");
+            st.execute("CREATE INDEX idx_ai_conversations_owner_scope_updated " +
+                    "ON ai_conversations(user_id, user_role, scope_type, scope_id, updated_at, id)");
+            st.execute("CREATE INDEX idx_ai_messages_conversation_id_id ON ai_messages(conversation_id, id)");
+            st.execute("ANALYZE ai_conversations");
+            st.execute("ANALYZE ai_messages");
+        }
+    }
+
+    private static int keysetPages(Connection conn, int maxPages) throws Exception {
+        Timestamp cursorTs = Timestamp.valueOf("9999-12-31 00:00:00");
+        long cursorId = Long.MAX_VALUE;
+        int rows = 0;
+        try (PreparedStatement ps = conn.prepareStatement(PAGE_SQL)) {
+            for (int page = 0; page < maxPages; page++) {
+                ps.setLong(1, 1L);
+                ps.setTimestamp(2, cursorTs);
+                ps.setTimestamp(3, cursorTs);
+                ps.setLong(4, cursorId);
+                ps.setInt(5, PAGE);
+                int n = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        cursorId = rs.getLong(1);
+                        cursorTs = rs.getTimestamp(3);
+                        n++;
+                    }
+                }
+                rows += n;
+                if (n < PAGE) break;
+            }
+        }
+        return rows;
+    }
+
+    private static int drain(Connection conn, String sql) throws Exception {
+        int rows = 0;
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) rows++;
+        }
+        return rows;
+    }
+
+    private static void report(String label, Measured body) throws Exception {
+        body.run(); // warm-up
+        long[] micros = new long[RUNS];
+        int rows = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long t0 = System.nanoTime();
+            rows = body.run();
+            micros[i] = (System.nanoTime() - t0) / 1_000;
+        }
+        Arrays.sort(micros);
+        System.out.printf("[keyset] %-45s rows=%6d median=%8d us  min=%8d us%n", label, rows, micros[RUNS / 2], micros[0]);
+    }
+
+    @FunctionalInterface
+    private interface Measured {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,41 @@
+package com.zenlink.zenlink.benchmark;
+
+import org.junit.jupiter.api.Assumptions;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Connection helper for database benchmarks. Benchmarks using it are skipped unless
+ * -Dbench.jdbc.url is set; each benchmark works inside its own throwaway schema.
+ */
+final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {}
+
+    static Connection connectOrSkip() throws SQLException {
+        String url = System.getProperty("bench.jdbc.url");
+        Assumptions.assumeTrue(url != null && !url.isBlank(), "bench.jdbc.url not set - skipping database benchmark");
+        return DriverManager.getConnection(
+                url,
+                System.getProperty("bench.jdbc.user", "zenlink_user"),
+                System.getProperty("bench.jdbc.password", "zenlink")
+        );
+    }
+
+    static void recreateSchema(Connection conn, String schema) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+            st.execute("CREATE SCHEMA " + schema);
+            st.execute("SET search_path TO " + schema + ", public");
+        }
+    }
+
+    static void dropSchema(Connection conn, String schema) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.zenlink.zenlink.benchmark;
+
+import com.zenlink.zenlink.service.RagChunker;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH: chunking a 40-page Romanian medical document with the old character chunker
+ * (1200/200 chars, substring + trim per chunk) vs the sentence-aware chunker (300/50 tokens).
+ * Reports throughput and, via the GC profiler, bytes allocated per document (gc.alloc.rate.norm).
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkerBenchmark {
+
+    private static final RagChunker.Profile PROFILE = new RagChunker.Profile(300, 50);
+
+    private final RagChunker chunker = new RagChunker();
+    private List<String> pages;
+
+    @Test
+    void run() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ChunkerBenchmark.class.getName() + "\\.")
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup
+    public void setUp() {
+        pages = syntheticPages(40);
+    }
+
+    @Benchmark
+    public void oldCharChunker(Blackhole bh) {
+        for (int p = 0; p < pages.size(); p++) {
+            bh.consume(oldChunkPage(pages.get(p), 1200, 200));
+        }
+    }
+
+    @Benchmark
+    public void sentenceChunker(Blackhole bh) {
+        for (int p = 0; p < pages.size(); p++) {
+            bh.consume(chunker.chunkPage(p + 1, pages.get(p), PROFILE));
+        }
+    }
+
+    /** The chunker as it was before sentence-aware chunking. */
+    private static List<String> oldChunkPage(String raw, int chunkSizeChars, int overlapChars) {
+        List<String> out = new ArrayList<>();
+        int cs = Math.max(200, chunkSizeChars);
+        int ov = Math.max(0, Math.min(overlapChars, cs - 50));
+        String t = raw == null ? "" : raw.trim();
+        if (t.isEmpty()) return out;
+        int idx = 0;
+        while (idx < t.length()) {
+            int end = Math.min(t.length(), idx + cs);
+            String part = t.substring(idx, end).trim();
+            if (!part.isEmpty()) out.add(part);
+            if (end >= t.length()) break;
+            idx = Math.max(0, end - ov);
+        }
+        return out;
+    }
+
+    private static List<String> syntheticPages(int count) {
+        String[] sentences = {
+                "Pacientul prezintă durere la nivelul dintelui 36, cu sensibilitate la rece și la percuție.",
+                "S-a recomandat amoxicilină 500 mg, 1 cp. la 8 ore, timp de 7 zile.",
+                "Consult efectuat de Dr. I. Popescu, str. Mihai Eminescu nr. 5, tel. 0740 000 000.",
+                "Hemoglobina 13.5 g/dl, leucocite 6000/mm3, trombocite 250000/mm3.",
+                "Se repetă radiografia retroalveolară peste 6 luni!",
+                "Diagnostic: pulpită acută seroasă parțială; tratament endodontic în două ședințe.",
+                "Obs. pacientul nu tolerează anestezicele cu adrenalină?"
+        };
+        Random random = new Random(17);
+        List<String> out = new ArrayList<>(count);
+        for (int p = 0; p < count; p++) {
+            StringBuilder sb = new StringBuilder();
+            while (sb.length() < 3500) {
+                sb.append(sentences[random.nextInt(sentences.length)]);
+                sb.append(random.nextInt(8) == 0 ? "\n\n" : random.nextInt(4) == 0 ? "\n" : " ");
+            }
+            out.add(sb.toString());
+        }
+        return out;
+    }
+}
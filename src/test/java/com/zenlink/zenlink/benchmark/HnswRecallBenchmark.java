@@ -0,0 +1,148 @@
+package com.zenlink.zenlink.benchmark;
+
+import com.zenlink.zenlink.service.EmbeddingService;
+import com.zenlink.zenlink.service.HnswIndex;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Patient-scope nearest neighbours over one patient's chunks (clustered 768-dim vectors, like a handful
+ * of documents): in-JVM HNSW at several ef values vs exact brute force (recall@10 and per-query latency),
+ * and the current pgvector scan ({@code ORDER BY embedding <-> ?::vector}) when -Dbench.jdbc.url is set.
+ */
+@Tag("benchmark")
+class HnswRecallBenchmark {
+
+    private static final int DIMS = 768;
+    private static final int CHUNKS = 5_000;
+    private static final int CLUSTERS = 40;
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+    private static final String SCHEMA = "bench_hnsw";
+
+    private static float[][] data;
+    private static float[][] queries;
+
+    @BeforeAll
+    static void generate() {
+        Random random = new Random(11);
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) centers[c] = gaussian(random, 1.0f);
+        data = new float[CHUNKS][];
+        for (int i = 0; i < CHUNKS; i++) data[i] = around(centers[random.nextInt(CLUSTERS)], random, 0.35f);
+        queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) queries[q] = around(centers[random.nextInt(CLUSTERS)], random, 0.35f);
+    }
+
+    @Test
+    void hnswVersusExact() {
+        long t0 = System.nanoTime();
+        HnswIndex index = new HnswIndex(DIMS, 16, 100, CHUNKS);
+        for (float[] v : data) index.add(v);
+        System.out.printf("[ann] build %d x %d: %d ms, %d KB off-heap%n",
+                CHUNKS, DIMS, (System.nanoTime() - t0) / 1_000_000, index.vectorBytes() / 1024);
+
+        int[][] truth = new int[QUERIES][];
+        long exactNanos = 0;
+        for (int round = 0; round < 2; round++) { // first round warms up
+            exactNanos = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                long s = System.nanoTime();
+                HnswIndex.Hit[] hits = index.exactSearch(queries[q], K);
+                exactNanos += System.nanoTime() - s;
+                truth[q] = Arrays.stream(hits).mapToInt(HnswIndex.Hit::node).toArray();
+            }
+        }
+        System.out.printf("[ann] %-22s recall@%d=1.000  %8.3f ms/query%n", "exact (brute force)", K, exactNanos / 1e6 / QUERIES);
+
+        for (int ef : new int[]{16, 32, 64, 128}) {
+            int found = 0;
+            long nanos = 0;
+            for (int round = 0; round < 2; round++) {
+                found = 0;
+                nanos = 0;
+                for (int q = 0; q < QUERIES; q++) {
+                    long s = System.nanoTime();
+                    HnswIndex.Hit[] hits = index.search(queries[q], K, ef);
+                    nanos += System.nanoTime() - s;
+                    Set<Integer> expected = new HashSet<>();
+                    for (int n : truth[q]) expected.add(n);
+                    for (HnswIndex.Hit h : hits) if (expected.contains(h.node())) found++;
+                }
+            }
+            System.out.printf("[ann] %-22s recall@%d=%.3f  %8.3f ms/query%n",
+                    "hnsw ef=" + ef, K, found / (double) (QUERIES * K), nanos / 1e6 / QUERIES);
+        }
+    }
+
+    @Test
+    void pgvectorScan() throws Exception {
+        try (Connection conn = BenchmarkDatabase.connectOrSkip()) {
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT count(*) FROM pg_extension WHERE extname = 'vector'")) {
+                rs.next();
+                Assumptions.assumeTrue(rs.getInt(1) > 0, "pgvector not installed - skipping");
+            }
+            BenchmarkDatabase.recreateSchema(conn, SCHEMA);
+            try {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("CREATE TABLE chunks(id bigserial PRIMARY KEY, patient_id bigint NOT NULL, embedding vector(768) NOT NULL)");
+                    st.execute("CREATE INDEX ON chunks(patient_id)");
+                }
+                try (PreparedStatement ps = conn.prepareStatement("INSERT INTO chunks(patient_id, embedding) VALUES(1, ?::vector)")) {
+                    for (float[] v : data) {
+                        ps.setString(1, EmbeddingService.toPgvectorLiteral(v));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                try (Statement st = conn.createStatement()) {
+                    st.execute("ANALYZE chunks");
+                }
+
+                long nanos = 0;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT id FROM chunks WHERE patient_id = 1 ORDER BY embedding <-> ?::vector LIMIT " + K)) {
+                    for (int round = 0; round < 2; round++) {
+                        nanos = 0;
+                        for (float[] q : queries) {
+                            long s = System.nanoTime();
+                            ps.setString(1, EmbeddingService.toPgvectorLiteral(q));
+                            try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) rs.getLong(1);
+                            }
+                            nanos += System.nanoTime() - s;
+                        }
+                    }
+                }
+                System.out.printf("[ann] %-22s recall@%d=1.000  %8.3f ms/query (incl. round trip)%n",
+                        "pgvector scan", K, nanos / 1e6 / QUERIES);
+            } finally {
+                BenchmarkDatabase.dropSchema(conn, SCHEMA);
+            }
+        }
+    }
+
+    private static float[] gaussian(Random random, float sigma) {
+        float[] v = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) v[i] = (float) random.nextGaussian() * sigma;
+        return v;
+    }
+
+    private static float[] around(float[] center, Random random, float sigma) {
+        float[] v = gaussian(random, sigma);
+        for (int i = 0; i < DIMS; i++) v[i] += center[i];
+        return v;
+    }
+}
@@ -0,0 +1,144 @@
+package com.zenlink.zenlink.benchmark;
+
+import com.zenlink.zenlink.service.PdfTextExtractor;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PDF text extraction on large multi-page documents: the old single-stripper extractor vs the
+ * range-parallel extractor with 1/2/4 workers, per document and with 4 documents at once
+ * (wall time and sampled peak heap).
+ */
+@Tag("benchmark")
+class PdfExtractionBenchmark {
+
+    private static final int PAGES = 300;
+    private static final int CONCURRENT_DOCS = 4;
+    private static final int RUNS = 5;
+
+    @Test
+    void extraction() throws Exception {
+        byte[] pdf = syntheticPdf(PAGES);
+        System.out.printf("[pdf] document: %d pages, %d KB%n", PAGES, pdf.length / 1024);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ExecutorService callers = Executors.newFixedThreadPool(CONCURRENT_DOCS);
+        try {
+            report("old single stripper", () -> oldExtract(pdf).size());
+            for (int workers : new int[]{1, 2, 4}) {
+                PdfTextExtractor extractor = new PdfTextExtractor(pool, workers, 16, 16);
+                report("parallel, " + workers + " worker(s)", () -> extractor.extractPages(pdf).size());
+            }
+
+            report(CONCURRENT_DOCS + " docs at once, old", () -> concurrently(callers, () -> oldExtract(pdf).size()));
+            PdfTextExtractor extractor = new PdfTextExtractor(pool, 4, 16, 16);
+            report(CONCURRENT_DOCS + " docs at once, parallel (shared pool of 4)",
+                    () -> concurrently(callers, () -> extractor.extractPages(pdf).size()));
+        } finally {
+            pool.shutdownNow();
+            callers.shutdownNow();
+        }
+    }
+
+    /** Extraction as it was: extra copy of the bytes, whole document on heap, one stripper. */
+    private static List<String> oldExtract(byte[] pdfBytes) throws Exception {
+        try (ByteArrayInputStream in = new ByteArrayInputStream(pdfBytes);
+             PDDocument doc = Loader.loadPDF(in.readAllBytes())) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            List<String> out = new ArrayList<>();
+            for (int i = 1; i <= doc.getNumberOfPages(); i++) {
+                stripper.setStartPage(i);
+                stripper.setEndPage(i);
+                out.add(stripper.getText(doc));
+            }
+            return out;
+        }
+    }
+
+    private static int concurrently(ExecutorService callers, Measured body) throws Exception {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_DOCS; i++) futures.add(callers.submit(body::run));
+        int pages = 0;
+        for (Future<Integer> f : futures) pages += f.get();
+        return pages;
+    }
+
+    private static byte[] syntheticPdf(int pages) throws Exception {
+        try (PDDocument doc = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int p = 1; p <= pages; p++) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    cs.beginText();
+                    cs.setFont(font, 9);
+                    cs.newLineAtOffset(40, 760);
+                    for (int line = 0; line < 60; line++) {
+                        cs.showText("Pag. " + p + " rand " + line + ": pacientul prezinta durere la nivelul molarului inferior, control la 6 luni.");
+                        cs.newLineAtOffset(0, -12);
+                    }
+                    cs.endText();
+                }
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void report(String label, Measured body) throws Exception {
+        body.run(); // warm-up
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long[] millis = new long[RUNS];
+        long peak = 0;
+        for (int i = 0; i < RUNS; i++) {
+            System.gc();
+            long base = memory.getHeapMemoryUsage().getUsed();
+            AtomicLong max = new AtomicLong(base);
+            Thread sampler = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    max.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            sampler.setDaemon(true);
+            sampler.start();
+            long t0 = System.nanoTime();
+            body.run();
+            millis[i] = (System.nanoTime() - t0) / 1_000_000;
+            sampler.interrupt();
+            sampler.join();
+            peak = Math.max(peak, max.get() - base);
+        }
+        Arrays.sort(millis);
+        System.out.printf("[pdf] %-45s median=%6d ms  min=%6d ms  peak heap +%5d MB%n",
+                label, millis[RUNS / 2], millis[0], peak / (1024 * 1024));
+    }
+
+    @FunctionalInterface
+    private interface Measured {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,199 @@
+package com.zenlink.zenlink.benchmark;
+
+import com.zenlink.zenlink.service.EmbeddingService;
+import com.zenlink.zenlink.service.RagChunker;
+import com.zenlink.zenlink.service.RagIndexWriter;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * pgvector ANN indexes as PgVectorIndexManager builds them, on one patient's chunks (768 dims, unit-normalized,
+ * clustered by document) at growing sizes: build time and size of an HNSW and an IVFFlat index, then recall@10
+ * against the exact scan and latency per hnsw.ef_search / ivfflat.probes value. Needs -Dbench.jdbc.url.
+ */
+@Tag("benchmark")
+class PgVectorIndexBenchmark {
+
+    private static final int DIMS = 768;
+    private static final int[] SIZES = {10_000, 40_000};
+    private static final int DOCUMENTS = 400;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+    private static final int[] EF_SEARCH = {20, 40, 80, 160};
+    private static final int[] PROBES = {1, 4, 10, 20};
+    private static final String SCHEMA = "bench_pgvector_index";
+
+    @Test
+    void postgres() throws Exception {
+        try (Connection conn = BenchmarkDatabase.connectOrSkip()) {
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT count(*) FROM pg_extension WHERE extname = 'vector'")) {
+                rs.next();
+                Assumptions.assumeTrue(rs.getInt(1) > 0, "pgvector not installed - skipping");
+            }
+            Random random = new Random(17);
+            float[][] centers = new float[DOCUMENTS][];
+            for (int d = 0; d < DOCUMENTS; d++) centers[d] = gaussian(random, 1f);
+            float[][] queries = new float[QUERIES][];
+            for (int q = 0; q < QUERIES; q++) queries[q] = normalize(around(centers[random.nextInt(DOCUMENTS)], random, 0.8f));
+
+            BenchmarkDatabase.recreateSchema(conn, SCHEMA);
+            try {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("""
+                            CREATE TABLE patient_file_chunks (
+                              id BIGSERIAL PRIMARY KEY,
+                              file_id UUID NOT NULL,
+                              patient_id BIGINT NOT NULL,
+                              page_number INT NOT NULL,
+                              chunk_index INT NOT NULL,
+                              chunk_text TEXT NOT NULL,
+                              embedding vector(768) NOT NULL,
+                              embedding_bits bit(768),
+                              created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                              UNIQUE(file_id, page_number, chunk_index)
+                            )""");
+                    st.execute("CREATE INDEX ON patient_file_chunks(patient_id)");
+                    st.execute("SET maintenance_work_mem = '256MB'");
+                }
+                RagIndexWriter writer = new RagIndexWriter(new JdbcTemplate(new SingleConnectionDataSource(conn, true)), "copy");
+                int rows = 0;
+                for (int size : SIZES) {
+                    // Grow the table in one-file batches of fresh chunks up to the next size
+                    while (rows < size) {
+                        int n = Math.min(5_000, size - rows);
+                        List<RagChunker.Chunk> chunks = new ArrayList<>(n);
+                        List<float[]> embeddings = new ArrayList<>(n);
+                        for (int i = 0; i < n; i++) {
+                            chunks.add(new RagChunker.Chunk(i + 1, 0, "chunk " + (rows + i)));
+                            embeddings.add(normalize(around(centers[random.nextInt(DOCUMENTS)], random, 0.8f)));
+                        }
+                        writer.writeChunks(UUID.randomUUID(), 1L, chunks, embeddings);
+                        rows += n;
+                    }
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("VACUUM ANALYZE patient_file_chunks");
+                    }
+                    measureSize(conn, rows, queries);
+                }
+            } finally {
+                BenchmarkDatabase.dropSchema(conn, SCHEMA);
+            }
+        }
+    }
+
+    private static void measureSize(Connection conn, int rows, float[][] queries) throws Exception {
+        String sql = "SELECT id FROM patient_file_chunks WHERE patient_id = 1 ORDER BY embedding <-> ?::vector LIMIT " + K;
+        List<Set<Long>> truth = new ArrayList<>();
+        setIndexScans(conn, false);
+        double exactMs = run(conn, sql, queries, truth, null);
+        System.out.printf("[pgvector] %6d rows  %-22s recall@%d=1.000  %7.3f ms/query%n", rows, "exact", K, exactMs);
+        setIndexScans(conn, true);
+
+        build(conn, rows, "hnsw (embedding vector_l2_ops) WITH (m = 16, ef_construction = 64)");
+        for (int ef : EF_SEARCH) {
+            execute(conn, "SET hnsw.ef_search = " + ef);
+            report(conn, rows, "hnsw ef_search=" + ef, sql, queries, truth);
+        }
+        execute(conn, "DROP INDEX bench_ann");
+
+        int lists = Math.max(10, rows / 1000);
+        build(conn, rows, "ivfflat (embedding vector_l2_ops) WITH (lists = " + lists + ")");
+        for (int probes : PROBES) {
+            execute(conn, "SET ivfflat.probes = " + Math.min(probes, lists));
+            report(conn, rows, "ivfflat probes=" + probes, sql, queries, truth);
+        }
+        execute(conn, "DROP INDEX bench_ann");
+    }
+
+    private static void build(Connection conn, int rows, String using) throws Exception {
+        long s = System.nanoTime();
+        execute(conn, "CREATE INDEX bench_ann ON patient_file_chunks USING " + using);
+        long ms = (System.nanoTime() - s) / 1_000_000;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT pg_relation_size('bench_ann')")) {
+            rs.next();
+            System.out.printf("[pgvector] %6d rows  built %s in %d ms, %d KB%n", rows, using, ms, rs.getLong(1) / 1024);
+        }
+    }
+
+    private static void report(Connection conn, int rows, String label, String sql, float[][] queries, List<Set<Long>> truth)
+            throws Exception {
+        double[] recall = new double[1];
+        double ms = run(conn, sql, queries, truth, recall);
+        System.out.printf("[pgvector] %6d rows  %-22s recall@%d=%.3f  %7.3f ms/query%n", rows, label, K, recall[0], ms);
+    }
+
+    /** Average of the second of two rounds (the first warms caches); fills {@code truth} or measures recall against it. */
+    private static double run(Connection conn, String sql, float[][] queries, List<Set<Long>> truth, double[] recall)
+            throws Exception {
+        long nanos = 0;
+        int found = 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int round = 0; round < 2; round++) {
+                nanos = 0;
+                found = 0;
+                for (int q = 0; q < QUERIES; q++) {
+                    long s = System.nanoTime();
+                    ps.setString(1, EmbeddingService.toPgvectorLiteral(queries[q]));
+                    Set<Long> ids = new HashSet<>();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) ids.add(rs.getLong(1));
+                    }
+                    nanos += System.nanoTime() - s;
+                    if (recall == null) {
+                        if (round == 0) truth.add(ids);
+                    } else {
+                        for (Long id : ids) if (truth.get(q).contains(id)) found++;
+                    }
+                }
+            }
+        }
+        if (recall != null) recall[0] = found / (double) (QUERIES * K);
+        return nanos / 1e6 / QUERIES;
+    }
+
+    private static void setIndexScans(Connection conn, boolean on) throws Exception {
+        execute(conn, "SET enable_indexscan = " + on);
+    }
+
+    private static void execute(Connection conn, String sql) throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private static float[] gaussian(Random random, float sigma) {
+        float[] v = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) v[i] = (float) random.nextGaussian() * sigma;
+        return v;
+    }
+
+    private static float[] around(float[] center, Random random, float sigma) {
+        float[] v = gaussian(random, sigma);
+        for (int i = 0; i < DIMS; i++) v[i] += center[i];
+        return v;
+    }
+
+    private static float[] normalize(float[] v) {
+        double norm = 0;
+        for (float f : v) norm += f * f;
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < v.length; i++) v[i] *= inv;
+        return v;
+    }
+}
@@ -0,0 +1,294 @@
+package com.zenlink.zenlink.benchmark;
+
+import com.zenlink.zenlink.service.EmbeddingService;
+import com.zenlink.zenlink.service.RagChunker;
+import com.zenlink.zenlink.service.RagIndexWriter;
+import com.zenlink.zenlink.service.VectorQuantizer;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * One patient with years of records (20k chunks x 768 dims, unit-normalized and clustered by document):
+ * exact L2 over float4 vs a binary (sign bit, Hamming) or int8 first pass over the top candidates, rescored
+ * exactly. Reports memory per code, recall@10 against the exact result and per-query latency; with
+ * -Dbench.jdbc.url also the exact and two-pass SQL used by PatientFileRagQueryService.
+ */
+@Tag("benchmark")
+class QuantizedSearchBenchmark {
+
+    private static final int DIMS = 768;
+    private static final int CHUNKS = 20_000;
+    private static final int DOCUMENTS = 200;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+    private static final int[] CANDIDATES = {50, 100, 200, 400};
+    private static final String SCHEMA = "bench_quantized";
+
+    private static float[][] data;
+    private static float[][] queries;
+
+    /** int8 code of one vector: {@code v[i] ~= codes[i] * scale}. */
+    record Int8Vector(byte[] codes, float scale) {}
+
+    @BeforeAll
+    static void generate() {
+        Random random = new Random(13);
+        float[][] centers = new float[DOCUMENTS][];
+        for (int d = 0; d < DOCUMENTS; d++) centers[d] = gaussian(random, 1f);
+        data = new float[CHUNKS][];
+        for (int i = 0; i < CHUNKS; i++) data[i] = normalize(around(centers[random.nextInt(DOCUMENTS)], random, 0.8f));
+        queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) queries[q] = normalize(around(centers[random.nextInt(DOCUMENTS)], random, 0.8f));
+    }
+
+    @Test
+    void inMemory() {
+        long[][] bits = new long[CHUNKS][];
+        Int8Vector[] int8 = new Int8Vector[CHUNKS];
+        for (int i = 0; i < CHUNKS; i++) {
+            bits[i] = signBits(data[i]);
+            int8[i] = toInt8(data[i]);
+        }
+        System.out.printf("[quant] %d chunks: float4 %d KB, int8 %d KB, binary %d KB%n", CHUNKS,
+                CHUNKS * (long) DIMS * 4 / 1024, CHUNKS * (long) (DIMS + 4) / 1024, CHUNKS * (long) bits[0].length * 8 / 1024);
+
+        int[][] truth = new int[QUERIES][];
+        long exactNanos = 0;
+        for (int round = 0; round < 2; round++) {
+            exactNanos = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                float[] query = queries[q];
+                long s = System.nanoTime();
+                truth[q] = topK(CHUNKS, i -> squaredL2(query, data[i]), K);
+                exactNanos += System.nanoTime() - s;
+            }
+        }
+        System.out.printf("[quant] %-26s recall@%d=1.000  %7.3f ms/query%n", "exact float4", K, exactNanos / 1e6 / QUERIES);
+
+        for (int candidates : CANDIDATES) {
+            measure("binary top " + candidates + " + rescore", truth, candidates, bits, null);
+            measure("int8 top " + candidates + " + rescore", truth, candidates, null, int8);
+        }
+    }
+
+    @Test
+    void postgres() throws Exception {
+        try (Connection conn = BenchmarkDatabase.connectOrSkip()) {
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT count(*) FROM pg_extension WHERE extname = 'vector'")) {
+                rs.next();
+                Assumptions.assumeTrue(rs.getInt(1) > 0, "pgvector not installed - skipping");
+            }
+            BenchmarkDatabase.recreateSchema(conn, SCHEMA);
+            try {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("""
+                            CREATE TABLE patient_file_chunks (
+                              id BIGSERIAL PRIMARY KEY,
+                              file_id UUID NOT NULL,
+                              patient_id BIGINT NOT NULL,
+                              page_number INT NOT NULL,
+                              chunk_index INT NOT NULL,
+                              chunk_text TEXT NOT NULL,
+                              embedding vector(768) NOT NULL,
+                              embedding_bits bit(768),
+                              created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                              UNIQUE(file_id, page_number, chunk_index)
+                            )""");
+                    st.execute("CREATE INDEX ON patient_file_chunks(patient_id)");
+                }
+                List<RagChunker.Chunk> chunks = new ArrayList<>(CHUNKS);
+                List<float[]> embeddings = new ArrayList<>(CHUNKS);
+                for (int i = 0; i < CHUNKS; i++) {
+                    chunks.add(new RagChunker.Chunk(i + 1, 0, "chunk " + i));
+                    embeddings.add(data[i]);
+                }
+                new RagIndexWriter(new JdbcTemplate(new SingleConnectionDataSource(conn, true)), "copy")
+                        .writeChunks(UUID.randomUUID(), 1L, chunks, embeddings);
+                try (Statement st = conn.createStatement()) {
+                    st.execute("VACUUM ANALYZE patient_file_chunks");
+                }
+
+                List<Set<Long>> truth = new ArrayList<>();
+                String exactSql = "SELECT id FROM patient_file_chunks WHERE patient_id = 1 ORDER BY embedding <-> ?::vector LIMIT " + K;
+                double exactMs = sql(conn, exactSql, 0, truth, null);
+                System.out.printf("[quant] %-26s recall@%d=1.000  %7.3f ms/query%n", "pg exact", K, exactMs);
+                for (int candidates : CANDIDATES) {
+                    String twoPass = "SELECT c.id FROM (SELECT id FROM patient_file_chunks WHERE patient_id = 1 " +
+                            "ORDER BY embedding_bits <~> ?::varbit LIMIT " + candidates + ") cand " +
+                            "JOIN patient_file_chunks c ON c.id = cand.id ORDER BY c.embedding <-> ?::vector LIMIT " + K;
+                    double[] recall = new double[1];
+                    double ms = sql(conn, twoPass, candidates, truth, recall);
+                    System.out.printf("[quant] %-26s recall@%d=%.3f  %7.3f ms/query%n",
+                            "pg binary top " + candidates, K, recall[0], ms);
+                }
+            } finally {
+                BenchmarkDatabase.dropSchema(conn, SCHEMA);
+            }
+        }
+    }
+
+    /** Average of the second of two rounds (the first warms caches); fills {@code truth} or measures recall against it. */
+    private static double sql(Connection conn, String sql, int candidates, List<Set<Long>> truth, double[] recall) throws Exception {
+        long nanos = 0;
+        int found = 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int round = 0; round < 2; round++) {
+                nanos = 0;
+                found = 0;
+                for (int q = 0; q < QUERIES; q++) {
+                    long s = System.nanoTime();
+                    if (candidates == 0) {
+                        ps.setString(1, EmbeddingService.toPgvectorLiteral(queries[q]));
+                    } else {
+                        ps.setString(1, VectorQuantizer.signBitLiteral(queries[q]));
+                        ps.setString(2, EmbeddingService.toPgvectorLiteral(queries[q]));
+                    }
+                    Set<Long> ids = new HashSet<>();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) ids.add(rs.getLong(1));
+                    }
+                    nanos += System.nanoTime() - s;
+                    if (recall == null) {
+                        if (round == 0) truth.add(ids);
+                    } else {
+                        for (Long id : ids) if (truth.get(q).contains(id)) found++;
+                    }
+                }
+            }
+        }
+        if (recall != null) recall[0] = found / (double) (QUERIES * K);
+        return nanos / 1e6 / QUERIES;
+    }
+
+    /** First pass over binary codes (when {@code bits} is set) or int8 codes, then exact rescoring. */
+    private static void measure(String label, int[][] truth, int candidates, long[][] bits, Int8Vector[] int8) {
+        int found = 0;
+        long nanos = 0;
+        for (int round = 0; round < 2; round++) {
+            found = 0;
+            nanos = 0;
+            for (int q = 0; q < QUERIES; q++) {
+                float[] query = queries[q];
+                long s = System.nanoTime();
+                int[] first;
+                if (bits != null) {
+                    long[] qb = signBits(query);
+                    first = topK(CHUNKS, i -> hamming(qb, bits[i]), candidates);
+                } else {
+                    first = topK(CHUNKS, i -> squaredL2(query, int8[i]), candidates);
+                }
+                int[] rescored = topK(first.length, j -> squaredL2(query, data[first[j]]), K);
+                nanos += System.nanoTime() - s;
+                Set<Integer> expected = new HashSet<>();
+                for (int n : truth[q]) expected.add(n);
+                for (int j : rescored) if (expected.contains(first[j])) found++;
+            }
+        }
+        System.out.printf("[quant] %-26s recall@%d=%.3f  %7.3f ms/query%n",
+                label, K, found / (double) (QUERIES * K), nanos / 1e6 / QUERIES);
+    }
+
+    /** Indices 0..n-1 with the k smallest scores, closest first. */
+    private static int[] topK(int n, IntToDoubleFunction score, int k) {
+        int m = Math.min(k, n);
+        int[] idx = new int[m];
+        double[] best = new double[m];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            double s = score.applyAsDouble(i);
+            if (size == m && s >= best[m - 1]) continue;
+            int pos = size == m ? m - 1 : size++;
+            while (pos > 0 && best[pos - 1] > s) {
+                best[pos] = best[pos - 1];
+                idx[pos] = idx[pos - 1];
+                pos--;
+            }
+            best[pos] = s;
+            idx[pos] = i;
+        }
+        return idx;
+    }
+
+    private static float squaredL2(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            float d = a[i] - b[i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /** Sign bits packed into longs (dimension 0 = highest bit of word 0), as VectorQuantizer lays out bit(n). */
+    private static long[] signBits(float[] v) {
+        long[] words = new long[(v.length + 63) >>> 6];
+        for (int i = 0; i < v.length; i++) {
+            if (v[i] > 0f) words[i >>> 6] |= 1L << (63 - (i & 63));
+        }
+        return words;
+    }
+
+    private static int hamming(long[] a, long[] b) {
+        int d = 0;
+        for (int i = 0; i < a.length; i++) d += Long.bitCount(a[i] ^ b[i]);
+        return d;
+    }
+
+    /** Symmetric scalar quantization with one scale per vector (4x smaller than float4). */
+    private static Int8Vector toInt8(float[] v) {
+        float maxAbs = 0f;
+        for (float f : v) maxAbs = Math.max(maxAbs, Math.abs(f));
+        float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+        byte[] codes = new byte[v.length];
+        for (int i = 0; i < v.length; i++) codes[i] = (byte) Math.round(v[i] / scale);
+        return new Int8Vector(codes, scale);
+    }
+
+    /** Squared L2 distance between a full-precision query and an int8-coded vector. */
+    private static float squaredL2(float[] query, Int8Vector code) {
+        byte[] c = code.codes();
+        float scale = code.scale();
+        float sum = 0f;
+        for (int i = 0; i < query.length; i++) {
+            float d = query[i] - c[i] * scale;
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    private static float[] gaussian(Random random, float sigma) {
+        float[] v = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) v[i] = (float) random.nextGaussian() * sigma;
+        return v;
+    }
+
+    private static float[] around(float[] center, Random random, float sigma) {
+        float[] v = gaussian(random, sigma);
+        for (int i = 0; i < DIMS; i++) v[i] += center[i];
+        return v;
+    }
+
+    private static float[] normalize(float[] v) {
+        double norm = 0;
+        for (float f : v) norm += f * f;
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < v.length; i++) v[i] *= inv;
+        return v;
+    }
+}
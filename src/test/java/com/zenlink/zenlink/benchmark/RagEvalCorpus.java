@@ -0,0 +1,185 @@
+package com.zenlink.zenlink.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Labelled corpus for {@link RagRetrievalBenchmark}: patients' documents as page texts, and questions each
+ * answered by one page. {@link #generate} builds Romanian dental records (consultation sheets, lab results,
+ * X-ray reports) where every page carries one fact (tooth + procedure, lab values of a date)
+ * padded with the boilerplate real records repeat (clinic letterhead, footer, standard phrases), so
+ * retrieval must find the page by its specifics.
+ * The JSON form ({@link #save} / {@link #load}) lets a hand-made or anonymized corpus replace it.
+ */
+record RagEvalCorpus(List<Document> documents, List<Question> questions) {
+
+    record Document(String name, long patientId, List<String> pages) {}
+
+    /** {@code page} is 1-based, as in patient_file_pages.page_number. */
+    record Question(long patientId, String document, int page, String question) {}
+
+    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static final int[] TEETH = {
+            11, 12, 13, 14, 15, 16, 17, 18, 21, 22, 23, 24, 25, 26, 27, 28,
+            31, 32, 33, 34, 35, 36, 37, 38, 41, 42, 43, 44, 45, 46, 47, 48};
+    private static final String[] CLINICS = {
+            "Clinica Dentară Zenlink SRL, Str. Lungă 12, Brașov, tel. 0268 123 456",
+            "Centrul Medical Dent Estet, Bd. Eroilor 5, Cluj-Napoca, tel. 0264 987 654"};
+    private static final String FOOTER = "Document generat electronic, valabil fără semnătură olografă.";
+    private static final String[] DOCTORS = {"Dr. Popescu Ana", "Dr. Ionescu Mihai", "Dr. Stan Elena", "Dr. Dumitru Radu"};
+
+    /** diagnosis, treatment as written on the sheet, question about it (%s = tooth). */
+    private static final String[][] PROCEDURES = {
+            {"carie profundă ocluzală", "obturație din compozit fotopolimerizabil, culoarea A2",
+                    "Ce obturație s-a pus la dintele %s?"},
+            {"pulpită ireversibilă", "tratament endodontic: extirpare vitală, obturație de canal cu gutapercă și sigilant",
+                    "S-a făcut tratament de canal la dintele %s?"},
+            {"parodontită apicală cronică fără indicație de conservare", "extracție sub anestezie locală cu articaină 4%",
+                    "De ce a fost extras dintele %s?"},
+            {"fractură coronară extinsă", "coroană metalo-ceramică cimentată definitiv",
+                    "Ce lucrare protetică are dintele %s?"},
+            {"edentație unidentară", "inserare implant dentar 4.1 x 10 mm, vindecare submucoasă",
+                    "Ce dimensiune are implantul din poziția %s?"},
+            {"hipersensibilitate dentinară la rece", "aplicare de lac fluorurat și sigilare colet",
+                    "Ce s-a aplicat pentru sensibilitatea dintelui %s?"}
+    };
+    private static final String[] MEDICATION = {
+            "amoxicilină 500 mg de 3 ori pe zi, 7 zile", "ibuprofen 400 mg la nevoie, maxim 3 pe zi",
+            "clorhexidină 0,12% apă de gură, de 2 ori pe zi", "paracetamol 500 mg la nevoie"};
+    /** name, unit, low, high */
+    private static final String[][] LABS = {
+            {"Hemoglobină", "g/dL", "11.0", "16.5"}, {"Glicemie", "mg/dL", "70", "160"},
+            {"INR", "", "0.9", "3.2"}, {"Leucocite", "/mm3", "3800", "12000"},
+            {"Trombocite", "/mm3", "140000", "420000"}, {"Creatinină", "mg/dL", "0.5", "1.6"}};
+    private static final String[] FINDINGS = {
+            "radiotransparență periapicală de %d mm", "resorbție osoasă orizontală de %d mm",
+            "rest radicular cu leziune periapicală de %d mm", "carie secundară sub obturație, adâncime %d mm"};
+    private static final String[] BOILERPLATE = {
+            "Pacientul a fost informat asupra riscurilor și alternativelor de tratament și și-a dat consimțământul.",
+            "Igiena orală este satisfăcătoare, se recomandă periaj de două ori pe zi și folosirea aței dentare.",
+            "Nu se constată modificări ale mucoasei orale, ale limbii sau ale planșeului bucal.",
+            "Antecedente personale patologice: nesemnificative pentru tratamentul stomatologic.",
+            "Se recomandă control periodic la 6 luni și detartraj profesional anual.",
+            "Ocluzie normală, fără semne de bruxism sau disfuncție a articulației temporo-mandibulare.",
+            "Pacientul nu declară alergii medicamentoase cunoscute.",
+            "Tensiunea arterială la prezentare a fost în limite normale.",
+            "Documentul a fost semnat electronic și arhivat în dosarul pacientului.",
+            "Clinica își rezervă dreptul de a reprograma ședințele în funcție de evoluția clinică."};
+
+    static RagEvalCorpus generate(long seed, int patients, int documentsPerPatient, int maxPages) {
+        Random random = new Random(seed);
+        List<Document> documents = new ArrayList<>();
+        List<Question> questions = new ArrayList<>();
+        for (int p = 1; p <= patients; p++) {
+            long patientId = 1000 + p;
+            // A fact is asked about once per patient: (kind, tooth) or the lab date
+            Set<String> used = new HashSet<>();
+            for (int d = 1; d <= documentsPerPatient; d++) {
+                int kind = random.nextInt(3);
+                String name = switch (kind) {
+                    case 0 -> "fisa_consultatie_" + d + ".pdf";
+                    case 1 -> "buletin_analize_" + d + ".pdf";
+                    default -> "radiografie_" + d + ".pdf";
+                };
+                String clinic = CLINICS[random.nextInt(CLINICS.length)];
+                int pageCount = 1 + random.nextInt(Math.max(1, maxPages));
+                List<String> pages = new ArrayList<>(pageCount);
+                for (int page = 1; page <= pageCount; page++) {
+                    String[] fact = switch (kind) {
+                        case 0 -> consultation(random, used);
+                        case 1 -> labs(random, used);
+                        default -> xray(random, used);
+                    };
+                    if (fact == null) break;
+                    pages.add(clinic + "\n" + fact[0] + "\n" + boilerplate(random) + "\n"
+                            + FOOTER + " Pagina " + page + " din " + pageCount);
+                    questions.add(new Question(patientId, name, page, fact[1]));
+                }
+                if (!pages.isEmpty()) documents.add(new Document(name, patientId, pages));
+            }
+        }
+        return new RagEvalCorpus(documents, questions);
+    }
+
+    /** {page fact, question}, or null when the patient's teeth are used up for this kind. */
+    private static String[] consultation(Random random, Set<String> used) {
+        String[] procedure = PROCEDURES[random.nextInt(PROCEDURES.length)];
+        Integer tooth = freeTooth(random, used, "c" + procedure[0]);
+        if (tooth == null) return null;
+        String text = "Fișă de consultație din " + date(random) + ", medic " + DOCTORS[random.nextInt(DOCTORS.length)] + ".\n"
+                + "Motivul prezentării: durere și disconfort în zona dintelui " + tooth + ".\n"
+                + "Diagnostic: dinte " + tooth + " - " + procedure[0] + ".\n"
+                + "Tratament efectuat: " + procedure[1] + ".\n"
+                + "Medicație prescrisă: " + MEDICATION[random.nextInt(MEDICATION.length)] + ".";
+        return new String[]{text, procedure[2].formatted(tooth)};
+    }
+
+    private static String[] labs(Random random, Set<String> used) {
+        String date = date(random);
+        if (!used.add("l" + date)) return null;
+        StringBuilder text = new StringBuilder("Buletin de analize medicale, recoltat în data de ").append(date).append(".\n");
+        String[] asked = LABS[random.nextInt(LABS.length)];
+        for (String[] lab : LABS) {
+            double low = Double.parseDouble(lab[2]);
+            double high = Double.parseDouble(lab[3]);
+            double value = low + random.nextDouble() * (high - low);
+            String formatted = high >= 1000 ? String.valueOf(Math.round(value / 100) * 100) : String.format(Locale.ROOT, "%.1f", value);
+            text.append(lab[0]).append(": ").append(formatted).append(' ').append(lab[1]).append('\n');
+        }
+        return new String[]{text.toString().trim(), "Ce valoare a avut " + asked[0].toLowerCase(Locale.ROOT)
+                + " la analizele din " + date + "?"};
+    }
+
+    private static String[] xray(Random random, Set<String> used) {
+        Integer tooth = freeTooth(random, used, "x");
+        if (tooth == null) return null;
+        String finding = FINDINGS[random.nextInt(FINDINGS.length)].formatted(2 + random.nextInt(6));
+        String text = "Radiografie retroalveolară efectuată la " + date(random) + ".\n"
+                + "Dinte " + tooth + ": " + finding + ".\n"
+                + "Concluzie: se recomandă reevaluare clinică a dintelui " + tooth + " și corelare cu examenul clinic.";
+        return new String[]{text, "Ce a arătat radiografia dintelui " + tooth + "?"};
+    }
+
+    private static Integer freeTooth(Random random, Set<String> used, String kind) {
+        for (int attempt = 0; attempt < TEETH.length * 2; attempt++) {
+            int tooth = TEETH[random.nextInt(TEETH.length)];
+            if (used.add(kind + tooth)) return tooth;
+        }
+        return null;
+    }
+
+    private static String date(Random random) {
+        return String.format(Locale.ROOT, "%02d.%02d.%d", 1 + random.nextInt(28), 1 + random.nextInt(12), 2018 + random.nextInt(8));
+    }
+
+    private static String boilerplate(Random random) {
+        List<String> sentences = new ArrayList<>(List.of(BOILERPLATE));
+        Collections.shuffle(sentences, random);
+        return String.join(" ", sentences.subList(0, 4 + random.nextInt(5)));
+    }
+
+    static RagEvalCorpus load(Path file) throws IOException {
+        return JSON.readValue(file.toFile(), RagEvalCorpus.class);
+    }
+
+    void save(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        JSON.writeValue(file.toFile(), this);
+    }
+
+    int pageCount() {
+        return documents.stream().mapToInt(d -> d.pages().size()).sum();
+    }
+}
@@ -0,0 +1,178 @@
+package com.zenlink.zenlink.benchmark;
+
+import com.zenlink.zenlink.service.EmbeddingService;
+import com.zenlink.zenlink.service.LocalHashEmbeddingProvider;
+import com.zenlink.zenlink.service.RagChunker;
+import com.zenlink.zenlink.service.RagIndexWriter;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Per-file index write time for large documents (pages + 768-d chunk embeddings):
+ * one INSERT per row (old) vs JDBC batch with text vector literals vs binary COPY.
+ * Embeddings come from the local hashing provider and are computed up front; only writes are timed.
+ */
+@Tag("benchmark")
+class RagIndexWriteBenchmark {
+
+    private static final String SCHEMA = "bench_rag_write";
+    private static final int[] PAGE_COUNTS = {100, 400};
+    private static final int RUNS = 5;
+
+    @Test
+    void pageAndChunkWrites() throws Exception {
+        try (Connection conn = BenchmarkDatabase.connectOrSkip()) {
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT count(*) FROM pg_extension WHERE extname = 'vector'")) {
+                rs.next();
+                Assumptions.assumeTrue(rs.getInt(1) > 0, "pgvector not installed - skipping");
+            }
+            BenchmarkDatabase.recreateSchema(conn, SCHEMA);
+            try {
+                createTables(conn);
+                JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(conn, true));
+                RagIndexWriter copyWriter = new RagIndexWriter(jdbc, "copy");
+                RagIndexWriter batchWriter = new RagIndexWriter(jdbc, "batch");
+                LocalHashEmbeddingProvider provider = new LocalHashEmbeddingProvider(768);
+                RagChunker chunker = new RagChunker();
+
+                for (int pageCount : PAGE_COUNTS) {
+                    List<String> pages = syntheticPages(pageCount);
+                    List<RagChunker.Chunk> chunks = chunker.chunkPages(pages, new RagChunker.Profile(300, 50));
+                    List<String> texts = new ArrayList<>(chunks.size());
+                    for (RagChunker.Chunk c : chunks) texts.add(c.text());
+                    List<float[]> embeddings = provider.embedBatch(texts);
+                    List<RagIndexWriter.PageRow> pageRows = new ArrayList<>(pages.size());
+                    for (int i = 0; i < pages.size(); i++) {
+                        pageRows.add(new RagIndexWriter.PageRow(i + 1, pages.get(i), "sha-" + i, "bench"));
+                    }
+                    String label = pageCount + " pages / " + chunks.size() + " chunks";
+
+                    report(conn, label + ", row-by-row (old)", () -> rowByRow(conn, pages, chunks, embeddings));
+                    report(conn, label + ", batchUpdate", () -> {
+                        batchWriter.writePages(UUID.randomUUID(), 1L, pageRows);
+                        batchWriter.writeChunks(UUID.randomUUID(), 1L, chunks, embeddings);
+                    });
+                    report(conn, label + ", binary COPY", () -> {
+                        copyWriter.writePages(UUID.randomUUID(), 1L, pageRows);
+                        copyWriter.writeChunks(UUID.randomUUID(), 1L, chunks, embeddings);
+                    });
+                }
+            } finally {
+                BenchmarkDatabase.dropSchema(conn, SCHEMA);
+            }
+        }
+    }
+
+    private static void createTables(Connection conn) throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TABLE patient_file_pages (
+                      id BIGSERIAL PRIMARY KEY,
+                      file_id UUID NOT NULL,
+                      patient_id BIGINT NOT NULL,
+                      page_number INT NOT NULL,
+                      page_text TEXT NOT NULL,
+                      text_sha256 TEXT,
+                      index_config TEXT,
+                      created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                      UNIQUE(file_id, page_number)
+                    )""");
+            st.execute("""
+                    CREATE TABLE patient_file_chunks (
+                      id BIGSERIAL PRIMARY KEY,
+                      file_id UUID NOT NULL,
+                      patient_id BIGINT NOT NULL,
+                      page_number INT NOT NULL,
+                      chunk_index INT NOT NULL,
+                      char_start INT,
+                      char_end INT,
+                      chunk_text TEXT NOT NULL,
+                      embedding vector(768) NOT NULL,
+                      embedding_bits bit(768),
+                      created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                      UNIQUE(file_id, page_number, chunk_index)
+                    )""");
+            st.execute("CREATE INDEX ON patient_file_chunks(patient_id)");
+            st.execute("CREATE INDEX ON patient_file_chunks(file_id)");
+        }
+    }
+
+    private static void rowByRow(Connection conn, List<String> pages, List<RagChunker.Chunk> chunks, List<float[]> embeddings) throws Exception {
+        UUID fileId = UUID.randomUUID();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO patient_file_pages(file_id, patient_id, page_number, page_text) VALUES(?,?,?,?) " +
+                        "ON CONFLICT (file_id, page_number) DO UPDATE SET page_text = EXCLUDED.page_text")) {
+            for (int i = 0; i < pages.size(); i++) {
+                ps.setObject(1, fileId);
+                ps.setLong(2, 1L);
+                ps.setInt(3, i + 1);
+                ps.setString(4, pages.get(i));
+                ps.executeUpdate();
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO patient_file_chunks(file_id, patient_id, page_number, chunk_index, chunk_text, embedding) " +
+                        "VALUES(?,?,?,?,?,?::vector) " +
+                        "ON CONFLICT (file_id, page_number, chunk_index) DO UPDATE SET chunk_text = EXCLUDED.chunk_text, embedding = EXCLUDED.embedding")) {
+            for (int i = 0; i < chunks.size(); i++) {
+                RagChunker.Chunk c = chunks.get(i);
+                ps.setObject(1, fileId);
+                ps.setLong(2, 1L);
+                ps.setInt(3, c.pageNumber());
+                ps.setInt(4, c.chunkIndex());
+                ps.setString(5, c.text());
+                ps.setString(6, EmbeddingService.toPgvectorLiteral(embeddings.get(i)));
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private static List<String> syntheticPages(int count) {
+        String para = "Pacientul prezinta durere la nivelul molarului inferior drept, cu sensibilitate la rece. " +
+                "Radiografia panoramica arata o leziune periapicala. Se recomanda tratament endodontic si control. ";
+        List<String> pages = new ArrayList<>(count);
+        for (int p = 0; p < count; p++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 24; i++) sb.append("(").append(p).append('.').append(i).append(") ").append(para);
+            pages.add(sb.toString());
+        }
+        return pages;
+    }
+
+    private static void report(Connection conn, String label, Measured body) throws Exception {
+        conn.setAutoCommit(false);
+        try {
+            body.run(); // warm-up
+            conn.rollback();
+            long[] millis = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                long t0 = System.nanoTime();
+                body.run();
+                conn.commit();
+                millis[i] = (System.nanoTime() - t0) / 1_000_000;
+            }
+            Arrays.sort(millis);
+            System.out.printf("[rag-write] %-50s median=%6d ms  min=%6d ms%n", label, millis[RUNS / 2], millis[0]);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Measured {
+        void run() throws Exception;
+    }
+}
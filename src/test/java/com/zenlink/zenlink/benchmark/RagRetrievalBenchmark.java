@@ -0,0 +1,270 @@
+package com.zenlink.zenlink.benchmark;
+
+import com.zenlink.zenlink.config.RagChunkingProperties;
+import com.zenlink.zenlink.config.RagMmrProperties;
+import com.zenlink.zenlink.model.PatientFile;
+import com.zenlink.zenlink.service.BoilerplateDetector;
+import com.zenlink.zenlink.service.EmbeddingService;
+import com.zenlink.zenlink.service.LocalHashEmbeddingProvider;
+import com.zenlink.zenlink.service.PatientFileRagQueryService;
+import com.zenlink.zenlink.service.PatientFileRagQueryService.RagHit;
+import com.zenlink.zenlink.service.PatientVectorIndex;
+import com.zenlink.zenlink.service.PgVectorIndexManager;
+import com.zenlink.zenlink.service.QueryEmbeddingCache;
+import com.zenlink.zenlink.service.RagChunker;
+import com.zenlink.zenlink.service.RagIndexConfig;
+import com.zenlink.zenlink.service.RagIndexWriter;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * End-to-end retrieval evaluation: indexes a labelled corpus ({@link RagEvalCorpus}, generated or loaded with
+ * -Drag.eval.corpus=file.json) through the production chunker, embedding service (deterministic local hashing
+ * provider), boilerplate detector and index writer into the bootstrap schema, then asks every question through
+ * {@link PatientFileRagQueryService} in patient and file scope. Reports indexing throughput, query latency
+ * p50/p99 and recall@1/@5/@k (the labelled page among the top hits) with MRR, per retrieval configuration.
+ * <pre>
+ * mvn -Prag-eval test -Dbench.jdbc.url=jdbc:postgresql://localhost:5432/zenlink_bench
+ *     [-Drag.eval.patients=20 -Drag.eval.documents=6 -Drag.eval.max-pages=8 -Drag.eval.seed=42 -Drag.eval.k=10
+ *      -Drag.eval.boilerplate=false]
+ * </pre>
+ * Compare runs before and after a change to the chunker, the embeddings or the query service.
+ */
+@Tag("rag-eval")
+class RagRetrievalBenchmark {
+
+    private static final String SCHEMA = "bench_rag_eval";
+    private static final Path BOOTSTRAP = Path.of("db/postgres/ai_rag_bootstrap.sql");
+    private static final Path TEXT_SEARCH = Path.of("db/postgres/zenlink_ro_text_search.sql");
+    private static final Path GENERATED = Path.of("target/rag-eval/corpus.json");
+    private static final int WARMUP_QUERIES = 50;
+
+    /** Query service settings under comparison: vector-only exact, vector-only two-pass, the defaults. */
+    private record Config(String label, int rescoreCandidates, boolean hybrid, boolean mmr) {}
+
+    private static final List<Config> CONFIGS = List.of(
+            new Config("vector exact", 0, false, false),
+            new Config("vector two-pass", 200, false, false),
+            new Config("hybrid + mmr", 200, true, true));
+
+    private record Outcome(double recall1, double recall5, double recallK, double mrr, double p50Ms, double p99Ms) {}
+
+    @Test
+    void indexAndRetrieve() throws Exception {
+        int k = Integer.getInteger("rag.eval.k", 10);
+        RagEvalCorpus corpus = corpus();
+        System.out.printf("[rag-eval] corpus: %d documents, %d pages, %d questions%n",
+                corpus.documents().size(), corpus.pageCount(), corpus.questions().size());
+
+        try (Connection conn = BenchmarkDatabase.connectOrSkip()) {
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT count(*) FROM pg_extension WHERE extname = 'vector'")) {
+                rs.next();
+                Assumptions.assumeTrue(rs.getInt(1) > 0, "pgvector not installed - skipping");
+            }
+            BenchmarkDatabase.recreateSchema(conn, SCHEMA);
+            try {
+                createSchema(conn);
+                SingleConnectionDataSource dataSource = new SingleConnectionDataSource(conn, true);
+                JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+                Executor direct = Runnable::run;
+                EmbeddingService embeddings = new EmbeddingService(new LocalHashEmbeddingProvider(768), direct, 64);
+                RagIndexConfig indexConfig = new RagIndexConfig(embeddings, new RagChunkingProperties());
+
+                Map<String, UUID> fileIds = index(jdbc, embeddings, indexConfig, corpus);
+                try (Statement st = conn.createStatement()) {
+                    st.execute("VACUUM ANALYZE");
+                }
+
+                StaticListableBeanFactory beans = new StaticListableBeanFactory();
+                for (Config config : CONFIGS) {
+                    RagMmrProperties mmr = new RagMmrProperties();
+                    mmr.setEnabled(config.mmr());
+                    // No query cache: every question pays for its embedding, as a first ask does
+                    PatientFileRagQueryService service = new PatientFileRagQueryService(jdbc, embeddings,
+                            new QueryEmbeddingCache(embeddings, 0, 60),
+                            beans.getBeanProvider(PatientVectorIndex.class), beans.getBeanProvider(PgVectorIndexManager.class),
+                            new DataSourceTransactionManager(dataSource), direct, mmr,
+                            config.rescoreCandidates(), config.hybrid(), 30, 60);
+                    report(config.label() + ", patient", k, evaluate(corpus, fileIds, k,
+                            q -> service.retrieveForPatient(q.patientId(), q.question(), k)));
+                    report(config.label() + ", file", k, evaluate(corpus, fileIds, k,
+                            q -> service.retrieveForFile(fileIds.get(key(q.patientId(), q.document())), q.question(), k)));
+                }
+            } finally {
+                BenchmarkDatabase.dropSchema(conn, SCHEMA);
+            }
+        }
+    }
+
+    private static RagEvalCorpus corpus() throws Exception {
+        String file = System.getProperty("rag.eval.corpus");
+        if (file != null && !file.isBlank()) return RagEvalCorpus.load(Path.of(file));
+        RagEvalCorpus corpus = RagEvalCorpus.generate(Long.getLong("rag.eval.seed", 42L),
+                Integer.getInteger("rag.eval.patients", 20), Integer.getInteger("rag.eval.documents", 6),
+                Integer.getInteger("rag.eval.max-pages", 8));
+        // Kept for inspection, or to edit and load back with -Drag.eval.corpus
+        corpus.save(GENERATED);
+        return corpus;
+    }
+
+    /** patient_files stand-in (the app creates it through JPA), then the RAG bootstrap as deployed. */
+    private static void createSchema(Connection conn) throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TABLE patient_files (
+                      id UUID PRIMARY KEY,
+                      patient_id BIGINT NOT NULL,
+                      name TEXT NOT NULL,
+                      content BYTEA,
+                      content_sha256 TEXT,
+                      uploaded_at TIMESTAMP NOT NULL DEFAULT clock_timestamp()
+                    )""");
+            // psql's \ir include is not SQL: run the included file first, then the rest
+            st.execute(Files.readString(TEXT_SEARCH, StandardCharsets.UTF_8));
+            st.execute(Files.readString(BOOTSTRAP, StandardCharsets.UTF_8).replaceAll("(?m)^\\\\ir .*$", ""));
+        }
+    }
+
+    /**
+     * The embed and write stages of PatientFileRagIndexService for text pages, boilerplate detection included;
+     * returns file ids by patient + name.
+     */
+    private static Map<String, UUID> index(JdbcTemplate jdbc, EmbeddingService embeddings, RagIndexConfig indexConfig,
+                                           RagEvalCorpus corpus) {
+        RagChunker chunker = new RagChunker();
+        RagIndexWriter writer = new RagIndexWriter(jdbc, "copy");
+        BoilerplateDetector boilerplate = new BoilerplateDetector(jdbc,
+                Boolean.parseBoolean(System.getProperty("rag.eval.boilerplate", "true")), 3, 3, 3, 24, 2, 80);
+        RagChunker.Profile profile = indexConfig.profile(RagIndexConfig.TYPE_TEXT);
+        String version = indexConfig.version();
+        Map<String, UUID> fileIds = new HashMap<>();
+        long chunkNanos = 0, embedNanos = 0, writeNanos = 0;
+        int pages = 0, chunkCount = 0, embedded = 0;
+        for (RagEvalCorpus.Document doc : corpus.documents()) {
+            UUID fileId = UUID.randomUUID();
+            fileIds.put(key(doc.patientId(), doc.name()), fileId);
+            jdbc.update("INSERT INTO patient_files(id, patient_id, name) VALUES (?, ?, ?)", fileId, doc.patientId(), doc.name());
+
+            long t0 = System.nanoTime();
+            List<RagIndexWriter.PageRow> rows = new ArrayList<>();
+            List<RagChunker.Chunk> chunks = new ArrayList<>();
+            BoilerplateDetector.Plan plan = boilerplate.plan(fileId, doc.patientId(), doc.pages());
+            for (int i = 0; i < doc.pages().size(); i++) {
+                String text = plan.pages().get(i);
+                if (text.isBlank()) continue;
+                String pageText = doc.pages().get(i).trim();
+                rows.add(new RagIndexWriter.PageRow(i + 1, pageText,
+                        PatientFile.sha256Hex(pageText.getBytes(StandardCharsets.UTF_8)), version));
+                chunks.addAll(chunker.chunkPage(i + 1, text, profile));
+            }
+            List<String> texts = new ArrayList<>(chunks.size());
+            for (RagChunker.Chunk c : chunks) texts.add(c.text());
+            int[] duplicateOf = boilerplate.duplicateChunks(texts);
+            List<String> unique = new ArrayList<>();
+            for (int i = 0; i < texts.size(); i++) if (duplicateOf[i] == i) unique.add(texts.get(i));
+            long t1 = System.nanoTime();
+            List<float[]> uniqueVectors = embeddings.embedAll(unique);
+            List<float[]> vectors = new ArrayList<>(texts.size());
+            Map<Integer, float[]> byCanonical = new HashMap<>();
+            for (int i = 0, u = 0; i < texts.size(); i++) {
+                if (duplicateOf[i] == i) byCanonical.put(i, uniqueVectors.get(u++));
+                vectors.add(byCanonical.get(duplicateOf[i]));
+            }
+            long t2 = System.nanoTime();
+            writer.writePages(fileId, doc.patientId(), rows);
+            writer.writeChunks(fileId, doc.patientId(), chunks, vectors);
+            jdbc.update("INSERT INTO patient_file_index(file_id, patient_id, status, embedding_model, index_config) "
+                    + "VALUES (?, ?, 'READY', ?, ?)", fileId, doc.patientId(), indexConfig.embeddingModel(), version);
+            boilerplate.save(fileId, doc.patientId(), plan);
+            boilerplate.record(plan, 0, texts.size() - unique.size());
+            long t3 = System.nanoTime();
+
+            chunkNanos += t1 - t0;
+            embedNanos += t2 - t1;
+            writeNanos += t3 - t2;
+            pages += rows.size();
+            chunkCount += chunks.size();
+            embedded += unique.size();
+        }
+        double seconds = (chunkNanos + embedNanos + writeNanos) / 1e9;
+        System.out.printf("[rag-eval] indexed %d pages / %d chunks in %.2f s: %.0f pages/s, %.0f chunks/s "
+                        + "(chunk %d ms, embed %d ms, write %d ms)%n",
+                pages, chunkCount, seconds, pages / seconds, chunkCount / seconds,
+                chunkNanos / 1_000_000, embedNanos / 1_000_000, writeNanos / 1_000_000);
+        BoilerplateDetector.Stats stats = boilerplate.stats();
+        System.out.printf("[rag-eval] boilerplate: %d lines (%d chars) left out of chunking, %d embedding calls for %d chunks%n",
+                stats.maskedLines(), stats.maskedChars(), embedded, chunkCount);
+        return fileIds;
+    }
+
+    private static Outcome evaluate(RagEvalCorpus corpus, Map<String, UUID> fileIds, int k,
+                                    Function<RagEvalCorpus.Question, List<RagHit>> retrieve) {
+        List<RagEvalCorpus.Question> questions = corpus.questions();
+        for (int i = 0; i < Math.min(WARMUP_QUERIES, questions.size()); i++) retrieve.apply(questions.get(i));
+
+        long[] nanos = new long[questions.size()];
+        int at1 = 0, at5 = 0, atK = 0;
+        double reciprocalRanks = 0;
+        for (int i = 0; i < questions.size(); i++) {
+            RagEvalCorpus.Question q = questions.get(i);
+            long s = System.nanoTime();
+            List<RagHit> hits = retrieve.apply(q);
+            nanos[i] = System.nanoTime() - s;
+            int rank = rank(hits, fileIds.get(key(q.patientId(), q.document())), q.page(), k);
+            if (rank == 0) continue;
+            if (rank <= 1) at1++;
+            if (rank <= 5) at5++;
+            atK++;
+            reciprocalRanks += 1.0 / rank;
+        }
+        Arrays.sort(nanos);
+        double n = Math.max(1, questions.size());
+        return new Outcome(at1 / n, at5 / n, atK / n, reciprocalRanks / n, percentile(nanos, 0.50), percentile(nanos, 0.99));
+    }
+
+    /** 1-based position of the first hit on the labelled page within the top k, 0 when absent. */
+    private static int rank(List<RagHit> hits, UUID fileId, int page, int k) {
+        for (int i = 0; i < Math.min(k, hits.size()); i++) {
+            RagHit hit = hits.get(i);
+            if (hit.fileId().equals(fileId) && hit.pageNumber() == page) return i + 1;
+        }
+        return 0;
+    }
+
+    /** Nearest-rank percentile of sorted nanosecond samples, in milliseconds. */
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static void report(String label, int k, Outcome o) {
+        System.out.printf("[rag-eval] %-26s recall@1=%.3f recall@5=%.3f recall@%d=%.3f mrr=%.3f  p50 %7.3f ms  p99 %7.3f ms%n",
+                label, o.recall1(), o.recall5(), k, o.recallK(), o.mrr(), o.p50Ms(), o.p99Ms());
+    }
+
+    private static String key(long patientId, String document) {
+        return patientId + "/" + document;
+    }
+}
@@ -0,0 +1,102 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.model.AiChatMessage;
+import com.zenlink.zenlink.model.AiConversation;
+import com.zenlink.zenlink.model.AiConversationCheckpoint;
+import com.zenlink.zenlink.repository.AiChatMessageRepository;
+import com.zenlink.zenlink.repository.AiConversationCheckpointRepository;
+import com.zenlink.zenlink.repository.AiConversationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AiConversationCompactionServiceTest {
+    private AiConversationRepository conversationRepository;
+    private AiChatMessageRepository messageRepository;
+    private AiConversationCheckpointRepository checkpointRepository;
+    private OpenAiChatService openAiChatService;
+    private AiConversationCompactionService service;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(AiConversationRepository.class);
+        messageRepository = mock(AiChatMessageRepository.class);
+        checkpointRepository = mock(AiConversationCheckpointRepository.class);
+        openAiChatService = mock(OpenAiChatService.class);
+        service = new AiConversationCompactionService(
+                conversationRepository, messageRepository, checkpointRepository, openAiChatService, 20, 10, 4, 500);
+        when(conversationRepository.getReferenceById(1L)).thenReturn(new AiConversation());
+    }
+
+    @Test
+    void belowThresholdDoesNothing() throws Exception {
+        when(checkpointRepository.findFirstByConversationIdOrderByThroughMessageIdDesc(1L)).thenReturn(Optional.empty());
+        when(messageRepository.countByConversationIdAndIdGreaterThan(1L, 0L)).thenReturn(9L);
+
+        assertFalse(service.compact(1L));
+        verifyNoInteractions(openAiChatService);
+        verify(checkpointRepository, never()).save(any());
+    }
+
+    @Test
+    void foldsOnlyTurnsSincePreviousCheckpointAndKeepsRecent() throws Exception {
+        AiConversationCheckpoint previous = new AiConversationCheckpoint(new AiConversation(), "- durere molar 36", 1L, 20L, 20);
+        when(checkpointRepository.findFirstByConversationIdOrderByThroughMessageIdDesc(1L)).thenReturn(Optional.of(previous));
+        when(messageRepository.countByConversationIdAndIdGreaterThan(1L, 20L)).thenReturn(12L);
+        when(messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(eq(1L), eq(20L), eq(Limit.of(8))))
+                .thenReturn(messages(21, 8));
+        when(openAiChatService.completeText(anyString(), anyString(), eq(500))).thenReturn("- durere molar 36\n- radiografie programată");
+
+        assertTrue(service.compact(1L));
+
+        ArgumentCaptor<String> prompt = ArgumentCaptor.forClass(String.class);
+        verify(openAiChatService).completeText(anyString(), prompt.capture(), eq(500));
+        assertTrue(prompt.getValue().contains("- durere molar 36"));
+        assertTrue(prompt.getValue().contains("mesaj 21"));
+        assertFalse(prompt.getValue().contains("mesaj 20"));
+
+        ArgumentCaptor<AiConversationCheckpoint> saved = ArgumentCaptor.forClass(AiConversationCheckpoint.class);
+        verify(checkpointRepository).save(saved.capture());
+        assertEquals(21L, saved.getValue().getFromMessageId());
+        assertEquals(28L, saved.getValue().getThroughMessageId());
+        assertEquals(8, saved.getValue().getFoldedMessages());
+    }
+
+    @Test
+    void triggerNeverExceedsTheContextWindow() throws Exception {
+        // Configured to compact at 24 pending turns, but the prompt only carries the newest 20
+        service = new AiConversationCompactionService(
+                conversationRepository, messageRepository, checkpointRepository, openAiChatService, 20, 24, 8, 500);
+        when(checkpointRepository.findFirstByConversationIdOrderByThroughMessageIdDesc(1L)).thenReturn(Optional.empty());
+
+        // Just under the trigger: the next user turn still fits in the window together with every pending one
+        when(messageRepository.countByConversationIdAndIdGreaterThan(1L, 0L)).thenReturn(19L);
+        assertFalse(service.compact(1L));
+        assertTrue(19 + 1 <= service.contextMessages());
+
+        when(messageRepository.countByConversationIdAndIdGreaterThan(1L, 0L)).thenReturn(20L);
+        when(messageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(1L, 0L, Limit.of(12))).thenReturn(messages(1, 12));
+        when(openAiChatService.completeText(anyString(), anyString(), eq(500))).thenReturn("- carie 36");
+        assertTrue(service.compact(1L));
+    }
+
+    private static List<AiChatMessage> messages(long firstId, int count) {
+        List<AiChatMessage> out = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AiChatMessage m = new AiChatMessage(null, i % 2 == 0 ? "user" : "assistant", "mesaj " + (firstId + i));
+            ReflectionTestUtils.setField(m, "id", firstId + i);
+            out.add(m);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,128 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.AiRetentionProperties;
+import com.zenlink.zenlink.model.UserRole;
+import com.zenlink.zenlink.repository.AiChatMessageRepository;
+import com.zenlink.zenlink.repository.AiConversationCheckpointRepository;
+import com.zenlink.zenlink.repository.AiConversationRepository;
+import com.zenlink.zenlink.repository.AiMessageArchiveBlockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AiConversationRetentionServiceTest {
+    private AiConversationRepository conversationRepository;
+    private AiChatMessageRepository messageRepository;
+    private AiConversationCheckpointRepository checkpointRepository;
+    private AiMessageArchiveBlockRepository archiveBlockRepository;
+    private AiRetentionProperties properties;
+    private AiConversationRetentionService service;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(AiConversationRepository.class);
+        messageRepository = mock(AiChatMessageRepository.class);
+        checkpointRepository = mock(AiConversationCheckpointRepository.class);
+        archiveBlockRepository = mock(AiMessageArchiveBlockRepository.class);
+        properties = new AiRetentionProperties();
+        properties.setBatchSize(2);
+        properties.setPauseMillis(0);
+        service = new AiConversationRetentionService(conversationRepository, messageRepository, checkpointRepository,
+                archiveBlockRepository, properties, mock(PlatformTransactionManager.class));
+        when(conversationRepository.findExpiredIds(any(), anyString(), any(), any())).thenReturn(List.of());
+    }
+
+    @Test
+    void childrenAreDeletedBeforeTheConversations() {
+        List<Long> ids = List.of(3L, 4L);
+
+        assertEquals(0, service.purgeConversations(ids));
+
+        InOrder order = inOrder(messageRepository, checkpointRepository, archiveBlockRepository, conversationRepository);
+        order.verify(messageRepository).deleteByConversationIds(ids);
+        order.verify(checkpointRepository).deleteByConversationIds(ids);
+        order.verify(archiveBlockRepository).deleteByConversationIds(ids);
+        order.verify(conversationRepository).deleteByIds(ids);
+    }
+
+    @Test
+    void emptyBatchIssuesNoDeletes() {
+        assertEquals(0, service.purgeConversations(List.of()));
+        assertEquals(0, service.purgeConversations(null));
+
+        verifyNoInteractions(messageRepository, checkpointRepository, archiveBlockRepository, conversationRepository);
+    }
+
+    @Test
+    void cutoffsFollowEachRoleAndScopeRule() {
+        properties.setDays(Map.of(
+                "patient", Map.of("general", 180),
+                "DOCTOR", Map.of("FILE", 730, "PATIENT", 0),
+                "NOBODY", Map.of("GENERAL", 1)));
+        LocalDateTime now = LocalDateTime.now();
+
+        service.purgeExpired();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(conversationRepository).findExpiredIds(eq(UserRole.PATIENT), eq("GENERAL"), cutoff.capture(), eq(Limit.of(2)));
+        assertTrue(Duration.between(now.minusDays(180), cutoff.getValue()).abs().getSeconds() < 5);
+        verify(conversationRepository).findExpiredIds(eq(UserRole.DOCTOR), eq("FILE"), cutoff.capture(), eq(Limit.of(2)));
+        assertTrue(Duration.between(now.minusDays(730), cutoff.getValue()).abs().getSeconds() < 5);
+        // days <= 0 keeps the scope forever; unknown roles are skipped
+        verify(conversationRepository, times(2)).findExpiredIds(any(), anyString(), any(), any());
+    }
+
+    @Test
+    void fullBatchesRepeatUntilAShortOneWithinTheRunBudget() {
+        properties.setDays(Map.of("PATIENT", Map.of("GENERAL", 30)));
+        when(conversationRepository.findExpiredIds(eq(UserRole.PATIENT), eq("GENERAL"), any(), any()))
+                .thenReturn(List.of(1L, 2L), List.of(3L, 4L), List.of(5L), List.of());
+
+        service.purgeExpired();
+
+        verify(conversationRepository).deleteByIds(List.of(1L, 2L));
+        verify(conversationRepository).deleteByIds(List.of(3L, 4L));
+        verify(conversationRepository).deleteByIds(List.of(5L));
+        verify(conversationRepository, times(3)).findExpiredIds(any(), anyString(), any(), any());
+    }
+
+    @Test
+    void runStopsForAllRulesOnceTheBatchBudgetIsSpent() {
+        Map<String, Map<String, Integer>> days = new LinkedHashMap<>();
+        days.put("PATIENT", Map.of("GENERAL", 30));
+        days.put("DOCTOR", Map.of("GENERAL", 30));
+        properties.setDays(days);
+        properties.setMaxBatchesPerRun(2);
+        when(conversationRepository.findExpiredIds(eq(UserRole.PATIENT), eq("GENERAL"), any(), any()))
+                .thenAnswer(inv -> LongStream.rangeClosed(1, 2).boxed().toList());
+
+        service.purgeExpired();
+
+        verify(conversationRepository, times(2)).findExpiredIds(eq(UserRole.PATIENT), anyString(), any(), any());
+        verify(conversationRepository, never()).findExpiredIds(eq(UserRole.DOCTOR), anyString(), any(), any());
+    }
+
+    @Test
+    void disabledOrUnconfiguredRetentionDeletesNothing() {
+        service.purgeExpired();
+        properties.setDays(Map.of("PATIENT", Map.of("GENERAL", 30)));
+        properties.setEnabled(false);
+        service.purgeExpired();
+
+        verifyNoInteractions(conversationRepository, messageRepository);
+    }
+}
@@ -0,0 +1,120 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.model.UserRole;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AiConversationSearchServiceTest {
+    private JdbcTemplate jdbcTemplate;
+    private AiConversationSearchService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        service = new AiConversationSearchService(jdbcTemplate, 0);
+        when(jdbcTemplate.queryForObject(contains("information_schema.columns"), eq(Integer.class))).thenReturn(1);
+    }
+
+    @Test
+    void missingSchemaIsCheckedAgainUntilItAppears() {
+        when(jdbcTemplate.queryForObject(contains("information_schema.columns"), eq(Integer.class))).thenReturn(0, 0, 1);
+
+        assertFalse(service.isAvailable());
+        assertThrows(IllegalStateException.class,
+                () -> service.search(1L, UserRole.DOCTOR, null, null, "carie", 10));
+        assertTrue(service.isAvailable());
+        assertTrue(service.isAvailable());
+
+        // Only the negative answers were re-checked; the schema check is limited to the current schema
+        verify(jdbcTemplate, times(3)).queryForObject(contains("table_schema = current_schema()"), eq(Integer.class));
+    }
+
+    @Test
+    void negativeAnswerIsCachedForTheRecheckInterval() {
+        service = new AiConversationSearchService(jdbcTemplate, 60);
+        when(jdbcTemplate.queryForObject(contains("information_schema.columns"), eq(Integer.class))).thenReturn(0, 1);
+
+        assertFalse(service.isAvailable());
+        assertFalse(service.isAvailable());
+        service.indexArchiveBlock(5L, "extracție 48");
+
+        verify(jdbcTemplate, times(1)).queryForObject(anyString(), eq(Integer.class));
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void searchUnionsTitlesHotMessagesAndArchivedBlocksOfTheOwnersScope() {
+        service.search(7L, UserRole.PATIENT, "PATIENT", "42", "  durere măsea  ", 10);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate).query(sql.capture(), any(RowMapper.class), args.capture());
+
+        assertTrue(sql.getValue().contains("websearch_to_tsquery('zenlink_ro', ?)"));
+        assertTrue(sql.getValue().contains("m.content_tsv @@ q.query"));
+        assertTrue(sql.getValue().contains("c.title_tsv @@ q.query"));
+        assertTrue(sql.getValue().contains("b.content_tsv @@ q.query"));
+        // The owner + scope predicate guards each of the three sources
+        String owner = "c.user_id = ? AND c.user_role = ? AND c.scope_type = ? AND c.scope_id = ?";
+        assertEquals(3, sql.getValue().split(Pattern.quote(owner), -1).length - 1);
+        assertArrayEquals(new Object[]{"durere măsea",
+                7L, "PATIENT", "PATIENT", "42",
+                7L, "PATIENT", "PATIENT", "42",
+                7L, "PATIENT", "PATIENT", "42",
+                10}, args.getValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void scopeIsOptionalAndGeneralScopeMatchesMissingScopeId() {
+        service.search(7L, UserRole.DOCTOR, null, null, "radiografie", 500);
+        service.search(7L, UserRole.DOCTOR, "GENERAL", null, "radiografie", 0);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).query(sql.capture(), any(RowMapper.class), args.capture());
+
+        assertFalse(sql.getAllValues().get(0).contains("c.scope_type = ?"));
+        assertArrayEquals(new Object[]{"radiografie", 7L, "DOCTOR", 7L, "DOCTOR", 7L, "DOCTOR", 50}, args.getAllValues().get(0));
+        assertTrue(sql.getAllValues().get(1).contains("c.scope_type = ? AND c.scope_id IS NULL"));
+        assertArrayEquals(new Object[]{"radiografie", 7L, "DOCTOR", "GENERAL", 7L, "DOCTOR", "GENERAL", 7L, "DOCTOR", "GENERAL", 1},
+                args.getAllValues().get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void blankQueriesReturnNothingAndLongOnesAreTruncated() {
+        assertEquals(List.of(), service.search(7L, UserRole.DOCTOR, null, null, "   ", 10));
+        verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), any(Object[].class));
+
+        service.search(7L, UserRole.DOCTOR, null, null, "a".repeat(500), 10);
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), args.capture());
+        assertEquals(200, ((String) args.getValue()[0]).length());
+    }
+
+    @Test
+    void archivedTextIsCappedBelowTheTsvectorLimit() {
+        String block = "ț".repeat(AiConversationSearchService.MAX_INDEXED_BYTES); // 2 bytes each
+        service.indexArchiveBlock(5L, block);
+
+        ArgumentCaptor<Object> text = ArgumentCaptor.forClass(Object.class);
+        verify(jdbcTemplate).update(contains("to_tsvector('zenlink_ro'"), text.capture(), eq(5L));
+        assertEquals(AiConversationSearchService.MAX_INDEXED_BYTES / 2, ((String) text.getValue()).length());
+
+        // A code point is never split
+        assertEquals("ab", AiConversationSearchService.capUtf8("ab😀", 5));
+        assertEquals("scurt", AiConversationSearchService.capUtf8("scurt", 5));
+    }
+}
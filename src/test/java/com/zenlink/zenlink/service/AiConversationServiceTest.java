@@ -0,0 +1,127 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.dto.AiMessage;
+import com.zenlink.zenlink.model.AiChatMessage;
+import com.zenlink.zenlink.model.AiConversation;
+import com.zenlink.zenlink.model.AiConversationCheckpoint;
+import com.zenlink.zenlink.model.UserRole;
+import com.zenlink.zenlink.repository.AiChatMessageRepository;
+import com.zenlink.zenlink.repository.AiConversationCheckpointRepository;
+import com.zenlink.zenlink.repository.AiConversationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AiConversationServiceTest {
+    private AiConversationRepository conversationRepository;
+    private AiChatMessageRepository messageRepository;
+    private AiConversationCheckpointRepository checkpointRepository;
+    private AiMessageArchiveService archiveService;
+    private AiConversationRetentionService retentionService;
+    private AiConversationService service;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(AiConversationRepository.class);
+        messageRepository = mock(AiChatMessageRepository.class);
+        checkpointRepository = mock(AiConversationCheckpointRepository.class);
+        archiveService = mock(AiMessageArchiveService.class);
+        retentionService = mock(AiConversationRetentionService.class);
+        service = new AiConversationService(
+                conversationRepository, messageRepository, checkpointRepository, archiveService, retentionService);
+    }
+
+    @Test
+    void pageAcrossTheArchiveBoundaryIsFilledFromColdBlocks() {
+        // Hot rows start at 26; 1..25 were archived
+        when(messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(1L, 30L, Limit.of(10)))
+                .thenReturn(newestFirst(26, 29));
+        when(archiveService.hasArchive(1L)).thenReturn(true);
+        when(archiveService.loadNewest(1L, 0L, 26L, 6)).thenReturn(messages(20, 25));
+
+        List<AiChatMessage> page = service.getMessagesPage(1L, 30L, 10);
+
+        assertEquals(List.of(20L, 21L, 22L, 23L, 24L, 25L, 26L, 27L, 28L, 29L), ids(page));
+    }
+
+    @Test
+    void fullHotPageNeverTouchesTheArchive() {
+        when(messageRepository.findByConversationIdOrderByIdDesc(1L, Limit.of(3))).thenReturn(newestFirst(40, 42));
+
+        assertEquals(List.of(40L, 41L, 42L), ids(service.getMessagesPage(1L, null, 3)));
+        verifyNoInteractions(archiveService);
+    }
+
+    @Test
+    void pagesOlderThanTheHotRowsComeFromTheArchiveAlone() {
+        when(messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(1L, 20L, Limit.of(5))).thenReturn(List.of());
+        when(archiveService.hasArchive(1L)).thenReturn(true);
+        when(archiveService.loadNewest(1L, 0L, 20L, 5)).thenReturn(messages(15, 19));
+
+        assertEquals(List.of(15L, 16L, 17L, 18L, 19L), ids(service.getMessagesPage(1L, 20L, 5)));
+
+        // No cursor and no hot rows: the whole archive is eligible
+        when(messageRepository.findByConversationIdOrderByIdDesc(1L, Limit.of(5))).thenReturn(List.of());
+        service.getMessagesPage(1L, null, 5);
+        verify(archiveService).loadNewest(1L, 0L, Long.MAX_VALUE, 5);
+    }
+
+    @Test
+    void contextAfterCheckpointReadsOnlyNewerArchivedTurns() {
+        AiConversationCheckpoint checkpoint = new AiConversationCheckpoint(new AiConversation(), "- carie 36", 1L, 22L, 22);
+        when(checkpointRepository.findFirstByConversationIdOrderByThroughMessageIdDesc(1L)).thenReturn(Optional.of(checkpoint));
+        when(messageRepository.findByConversationIdAndIdGreaterThanOrderByIdDesc(1L, 22L, Limit.of(8))).thenReturn(newestFirst(26, 27));
+        when(archiveService.hasArchive(1L)).thenReturn(true);
+        when(archiveService.loadNewest(1L, 22L, 26L, 6)).thenReturn(messages(23, 25));
+
+        AiConversationService.ConversationContext context = service.getContext(1L, 8);
+
+        assertEquals("- carie 36", context.summary());
+        assertEquals(List.of("mesaj 23", "mesaj 24", "mesaj 25", "mesaj 26", "mesaj 27"),
+                context.recentMessages().stream().map(AiMessage::getContent).toList());
+    }
+
+    @Test
+    void scopedDeletePurgesThroughRetentionOnlyAfterTheOwnerCheck() {
+        AiConversation c = new AiConversation();
+        ReflectionTestUtils.setField(c, "id", 5L);
+        when(conversationRepository.findByIdAndUserIdAndUserRoleAndScopeTypeAndScopeId(5L, 7L, UserRole.DOCTOR, "PATIENT", "42"))
+                .thenReturn(Optional.of(c));
+
+        service.deleteConversationScoped(5L, 7L, UserRole.DOCTOR, "PATIENT", "42");
+        assertThrows(RuntimeException.class, () -> service.deleteConversationScoped(6L, 7L, UserRole.DOCTOR, "PATIENT", "42"));
+
+        verify(retentionService).purgeConversations(List.of(5L));
+        verifyNoMoreInteractions(retentionService);
+    }
+
+    private static List<AiChatMessage> newestFirst(int from, int through) {
+        List<AiChatMessage> out = new ArrayList<>(messages(from, through));
+        Collections.reverse(out);
+        return out;
+    }
+
+    private static List<AiChatMessage> messages(int from, int through) {
+        List<AiChatMessage> out = new ArrayList<>();
+        for (long id = from; id <= through; id++) {
+            out.add(new AiChatMessage(id, null, id % 2 == 1 ? "user" : "assistant", "mesaj " + id,
+                    LocalDateTime.of(2026, 1, 1, 10, 0).plusMinutes(id)));
+        }
+        return out;
+    }
+
+    private static List<Long> ids(List<AiChatMessage> rows) {
+        return rows.stream().map(AiChatMessage::getId).toList();
+    }
+}
@@ -0,0 +1,145 @@
+package com.zenlink.zenlink.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.zenlink.zenlink.model.AiChatMessage;
+import com.zenlink.zenlink.model.AiConversation;
+import com.zenlink.zenlink.model.AiMessageArchiveBlock;
+import com.zenlink.zenlink.repository.AiChatMessageRepository;
+import com.zenlink.zenlink.repository.AiConversationRepository;
+import com.zenlink.zenlink.repository.AiMessageArchiveBlockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AiMessageArchiveServiceTest {
+    private static final LocalDateTime IDLE_SINCE = LocalDateTime.of(2026, 7, 1, 0, 0);
+
+    private AiConversationRepository conversationRepository;
+    private AiChatMessageRepository messageRepository;
+    private AiMessageArchiveBlockRepository blockRepository;
+    private AiConversationSearchService searchService;
+    private AiMessageArchiveService service;
+    private AiConversation conversation;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(AiConversationRepository.class);
+        messageRepository = mock(AiChatMessageRepository.class);
+        blockRepository = mock(AiMessageArchiveBlockRepository.class);
+        searchService = mock(AiConversationSearchService.class);
+        ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+        service = new AiMessageArchiveService(conversationRepository, messageRepository, blockRepository, searchService,
+                objectMapper, mock(PlatformTransactionManager.class), true, 90, 50, 10);
+
+        conversation = new AiConversation();
+        conversation.setUpdatedAt(IDLE_SINCE.minusDays(5));
+        when(conversationRepository.findById(1L)).thenReturn(Optional.of(conversation));
+        when(blockRepository.saveAndFlush(any(AiMessageArchiveBlock.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    @Test
+    void deflateRoundTripsAndDetectsTruncation() throws Exception {
+        byte[] raw = "[{\"role\":\"user\",\"content\":\"Mă doare măseaua 36 de trei zile.\"}]".repeat(50)
+                .getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = AiMessageArchiveService.deflate(raw);
+
+        assertTrue(compressed.length < raw.length / 4);
+        assertArrayEquals(raw, AiMessageArchiveService.inflate(compressed, raw.length));
+        assertThrows(DataFormatException.class,
+                () -> AiMessageArchiveService.inflate(Arrays.copyOf(compressed, compressed.length / 2), raw.length));
+        assertArrayEquals(new byte[0], AiMessageArchiveService.inflate(AiMessageArchiveService.deflate(new byte[0]), 0));
+    }
+
+    @Test
+    void archivesContiguousBlocksAndReadsThemBack() {
+        List<AiChatMessage> hot = messages(1, 25);
+        stubHot(hot);
+
+        assertEquals(25, service.archiveConversation(1L, IDLE_SINCE));
+
+        ArgumentCaptor<AiMessageArchiveBlock> saved = ArgumentCaptor.forClass(AiMessageArchiveBlock.class);
+        verify(blockRepository, times(3)).saveAndFlush(saved.capture());
+        List<AiMessageArchiveBlock> blocks = saved.getAllValues();
+        assertEquals(List.of(1L, 11L, 21L), blocks.stream().map(AiMessageArchiveBlock::getFirstMessageId).toList());
+        assertEquals(List.of(10L, 20L, 25L), blocks.stream().map(AiMessageArchiveBlock::getLastMessageId).toList());
+        verify(messageRepository).deleteRange(1L, 1L, 10L);
+        verify(messageRepository).deleteRange(1L, 11L, 20L);
+        verify(messageRepository).deleteRange(1L, 21L, 25L);
+        verify(searchService, times(3)).indexArchiveBlock(any(), contains("mesaj"));
+
+        // Reading back: only the blocks overlapping (afterId, beforeId) matter, newest block first
+        List<AiMessageArchiveBlock> newestFirst = new ArrayList<>(blocks);
+        Collections.reverse(newestFirst);
+        when(blockRepository.findByConversationIdAndFirstMessageIdLessThanOrderByFirstMessageIdDesc(1L, 14L))
+                .thenReturn(newestFirst.subList(1, 3));
+        List<AiChatMessage> page = service.loadNewest(1L, 0L, 14L, 5);
+        assertEquals(List.of(9L, 10L, 11L, 12L, 13L), page.stream().map(AiChatMessage::getId).toList());
+        assertEquals("mesaj 12", page.get(3).getContent());
+        assertEquals(hot.get(11).getCreatedAt(), page.get(3).getCreatedAt());
+    }
+
+    @Test
+    void resumedConversationKeepsItsNewMessagesHot() {
+        stubHot(messages(1, 25));
+        // Resumed after the first block: updatedAt moves past the idle cutoff
+        AiConversation resumed = new AiConversation();
+        resumed.setUpdatedAt(IDLE_SINCE.plusDays(100));
+        when(conversationRepository.findById(1L)).thenReturn(Optional.of(conversation), Optional.of(resumed));
+
+        assertEquals(10, service.archiveConversation(1L, IDLE_SINCE));
+
+        verify(messageRepository).deleteRange(1L, 1L, 10L);
+        verify(messageRepository, times(1)).deleteRange(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void onlyMessagesPresentWhenPickedAreArchived() {
+        when(messageRepository.findByConversationIdOrderByIdDesc(1L, Limit.of(1))).thenReturn(List.of(message(12)));
+        when(messageRepository.findByConversationIdAndIdLessThanEqualOrderByIdAsc(1L, 12L, Limit.of(10)))
+                .thenReturn(messages(1, 10), messages(11, 12), List.of());
+
+        assertEquals(12, service.archiveConversation(1L, IDLE_SINCE));
+
+        verify(messageRepository, never()).findByConversationIdAndIdLessThanEqualOrderByIdAsc(eq(1L), longThat(id -> id != 12L), any());
+    }
+
+    /** The newest hot id is {@code hot}'s last; blocks come back in order, then nothing. */
+    private void stubHot(List<AiChatMessage> hot) {
+        long through = hot.get(hot.size() - 1).getId();
+        when(messageRepository.findByConversationIdOrderByIdDesc(1L, Limit.of(1))).thenReturn(List.of(hot.get(hot.size() - 1)));
+        List<List<AiChatMessage>> blocks = new ArrayList<>();
+        for (int i = 0; i < hot.size(); i += 10) blocks.add(hot.subList(i, Math.min(hot.size(), i + 10)));
+        var stubbing = when(messageRepository.findByConversationIdAndIdLessThanEqualOrderByIdAsc(1L, through, Limit.of(10)))
+                .thenReturn(blocks.get(0));
+        for (int i = 1; i < blocks.size(); i++) stubbing = stubbing.thenReturn(blocks.get(i));
+        stubbing.thenReturn(List.of());
+    }
+
+    private List<AiChatMessage> messages(int from, int through) {
+        List<AiChatMessage> out = new ArrayList<>();
+        for (int id = from; id <= through; id++) out.add(message(id));
+        return out;
+    }
+
+    private AiChatMessage message(long id) {
+        return new AiChatMessage(id, conversation, id % 2 == 1 ? "user" : "assistant", "mesaj " + id,
+                LocalDateTime.of(2026, 1, 1, 10, 0).plusMinutes(id));
+    }
+}
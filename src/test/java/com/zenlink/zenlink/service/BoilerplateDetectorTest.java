@@ -0,0 +1,122 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class BoilerplateDetectorTest {
+
+    private static final String LETTERHEAD = "Clinica Dentară Zenlink SRL, Str. Lungă 12, Brașov, tel. 0268 123 456";
+    private static final LocalDateTime UPLOADED = LocalDateTime.of(2026, 3, 1, 10, 0);
+
+    private final BoilerplateDetector detector = new BoilerplateDetector(mock(JdbcTemplate.class), true, 3, 3, 3, 24, 2, 80);
+
+    @Test
+    void nearDuplicatesNeedTheSameNumbers() {
+        String a = BoilerplateDetector.normalize("Document confidențial, destinat exclusiv pacientului. Pagina 1 din 4");
+        String b = BoilerplateDetector.normalize("Document confidential, destinat exclusiv pacientului.  Pag. 3/4");
+
+        assertEquals(a, b);
+        assertEquals(BoilerplateDetector.digits(BoilerplateDetector.normalize("Hemoglobina 13.5 g/dl")), "13,5,");
+        assertNotEquals(BoilerplateDetector.digits(BoilerplateDetector.normalize("Hemoglobina 13.5 g/dl")),
+                BoilerplateDetector.digits(BoilerplateDetector.normalize("Hemoglobina 12.1 g/dl")));
+        assertTrue(Long.bitCount(BoilerplateDetector.simhash(a) ^ BoilerplateDetector.simhash("radiografie panoramica dinte 36")) > 3);
+    }
+
+    @Test
+    void headerRepeatedOnPagesIsBlankedAfterItsFirstOccurrence() {
+        List<String> pages = List.of(
+                LETTERHEAD + "\nDiagnostic: carie profundă dinte 36, obturație compozit.\nSemnătura medicului",
+                LETTERHEAD + "\nDiagnostic: pulpită dinte 46, tratament endodontic.\nSemnătura medicului",
+                "  " + LETTERHEAD + "\nDiagnostic: carie profundă dinte 36, obturație compozit.\nSemnătura medicului");
+
+        BoilerplateDetector.Plan plan = detector.plan(pages, List.of(), UPLOADED);
+
+        assertTrue(plan.pages().get(0).startsWith(LETTERHEAD));
+        assertTrue(plan.pages().get(1).startsWith(" ".repeat(LETTERHEAD.length())));
+        assertEquals(pages.get(2).trim().length(), plan.pages().get(2).length());
+        assertFalse(plan.pages().get(2).contains("Clinica"));
+        // A body line repeated on two pages of three is not boilerplate
+        assertTrue(plan.pages().get(2).contains("carie profundă dinte 36"));
+        assertEquals(2, plan.maskedLines());
+        assertFalse(plan.fingerprints().isEmpty());
+    }
+
+    @Test
+    void headerSeenInOlderFilesIsBlankedEverywhere() {
+        BoilerplateDetector.Plan first = detector.plan(List.of(LETTERHEAD + "\nScrisoare medicală: extracție 48."), List.of(), UPLOADED);
+        BoilerplateDetector.Fingerprint f = first.fingerprints().stream()
+                .filter(fp -> fp.digits().equals("12,0268,123,456,")).findFirst().orElseThrow();
+        List<BoilerplateDetector.Stored> older = List.of(
+                new BoilerplateDetector.Stored(UUID.randomUUID(), f.simhash(), f.digits(), UPLOADED.minusDays(30)),
+                new BoilerplateDetector.Stored(UUID.randomUUID(), f.simhash(), f.digits(), UPLOADED.minusDays(10)));
+
+        BoilerplateDetector.Plan plan = detector.plan(List.of(LETTERHEAD + "\nScrisoare medicală: detartraj."), older, UPLOADED);
+        assertFalse(plan.pages().get(0).contains("Clinica"));
+        assertTrue(plan.pages().get(0).contains("detartraj"));
+
+        // The oldest file holding it keeps its copy, and one other file is not enough
+        assertTrue(detector.plan(List.of(LETTERHEAD), older, UPLOADED.minusDays(60)).pages().get(0).contains("Clinica"));
+        assertTrue(detector.plan(List.of(LETTERHEAD), older.subList(0, 1), UPLOADED).pages().get(0).contains("Clinica"));
+    }
+
+    @Test
+    void longFindingRepeatedInTheBodyIsNeverBlanked() {
+        String finding = "Radiografie retroalveolară: leziune periapicală dinte 36, recomandat tratament endodontic și control.";
+        String page = LETTERHEAD + "\nPacient: Ion Popescu\n" + finding + "\nMedic: Dr. Ana Ionescu\nSemnătura medicului";
+        BoilerplateDetector.Fingerprint f = detector.plan(List.of(page, page, page), List.of(), UPLOADED).fingerprints().stream()
+                .filter(fp -> fp.digits().equals("12,0268,123,456,")).findFirst().orElseThrow();
+        long findingHash = BoilerplateDetector.simhash(BoilerplateDetector.normalize(finding));
+        String findingDigits = BoilerplateDetector.digits(BoilerplateDetector.normalize(finding));
+        List<BoilerplateDetector.Stored> older = List.of(
+                new BoilerplateDetector.Stored(UUID.randomUUID(), f.simhash(), f.digits(), UPLOADED.minusDays(30)),
+                new BoilerplateDetector.Stored(UUID.randomUUID(), f.simhash(), f.digits(), UPLOADED.minusDays(10)),
+                new BoilerplateDetector.Stored(UUID.randomUUID(), findingHash, findingDigits, UPLOADED.minusDays(30)),
+                new BoilerplateDetector.Stored(UUID.randomUUID(), findingHash, findingDigits, UPLOADED.minusDays(10)));
+
+        BoilerplateDetector.Plan plan = detector.plan(List.of(page, page, page), older, UPLOADED);
+
+        // The letterhead goes everywhere, the finding stays on every page
+        for (String p : plan.pages()) {
+            assertFalse(p.contains("Clinica"));
+            assertTrue(p.contains(finding));
+        }
+
+        // A long disclaimer that reaches the footer on some pages is still chunked once within the file
+        String disclaimer = "Rezultatele se interpretează de medicul curant în context clinic, împreună cu istoricul pacientului.";
+        BoilerplateDetector.Plan withDisclaimer = detector.plan(List.of(
+                "Hemoglobina 13.5 g/dl, leucocite 6000/mm3.\n" + disclaimer + "\nValori de referință conform laboratorului.\nPagina 1",
+                "Glicemie 98 mg/dl, creatinina 0.9 mg/dl.\nColesterol total 180 mg/dl.\nTrigliceride 120 mg/dl.\n" + disclaimer,
+                "INR 1.1, trombocite 250000/mm3.\nFibrinogen 300 mg/dl.\nTimp Quick 12 s.\n" + disclaimer), List.of(), UPLOADED);
+        assertEquals(1, withDisclaimer.pages().stream().filter(p -> p.contains(disclaimer)).count());
+    }
+
+    @Test
+    void nearDuplicateChunksShareTheFirstEmbedding() {
+        String disclaimer = "Rezultatele se interpretează de medicul curant în context clinic, împreună cu istoricul pacientului. ";
+        int[] canonical = detector.duplicateChunks(List.of(
+                disclaimer + "Hemoglobina 13.5 g/dl.",
+                "Radiografie panoramică: rest radicular 48.",
+                disclaimer + "Hemoglobina 13.5 g/dl",
+                disclaimer + "Hemoglobina 12.1 g/dl."));
+
+        assertArrayEquals(new int[]{0, 1, 0, 3}, canonical);
+    }
+
+    @Test
+    void disabledDetectorOnlyTrims() {
+        BoilerplateDetector off = new BoilerplateDetector(mock(JdbcTemplate.class), false, 3, 3, 3, 24, 2, 80);
+        List<String> pages = List.of(" " + LETTERHEAD + "\n", LETTERHEAD, LETTERHEAD);
+
+        BoilerplateDetector.Plan plan = off.plan(pages, List.of(), UPLOADED);
+
+        assertEquals(List.of(LETTERHEAD, LETTERHEAD, LETTERHEAD), plan.pages());
+        assertArrayEquals(new int[]{0, 1}, off.duplicateChunks(List.of("a b c", "a b c")));
+    }
+}
@@ -0,0 +1,86 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingServiceTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void embedAllSplitsIntoBatchesAndKeepsOrder() {
+        LocalHashEmbeddingProvider local = new LocalHashEmbeddingProvider(64);
+        AtomicInteger calls = new AtomicInteger();
+        EmbeddingProvider counting = new EmbeddingProvider() {
+            public String modelId() { return local.modelId(); }
+            public int dimensions() { return local.dimensions(); }
+            public int maxBatchSize() { return 1024; }
+            public List<float[]> embedBatch(List<String> texts) {
+                calls.incrementAndGet();
+                return local.embedBatch(texts);
+            }
+        };
+        EmbeddingService service = new EmbeddingService(counting, executor, 16);
+
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) texts.add("pagina " + i + " analize sange hemoglobina " + (i * 7));
+
+        List<float[]> out = service.embedAll(texts);
+
+        assertEquals(7, calls.get());
+        assertEquals(100, out.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertArrayEquals(local.embed(texts.get(i)), out.get(i));
+        }
+    }
+
+    @Test
+    void localProviderIsDeterministicAndNormalized() {
+        LocalHashEmbeddingProvider provider = new LocalHashEmbeddingProvider(768);
+
+        float[] a = provider.embed("Extracție molar inferior");
+        float[] b = provider.embed("extractie MOLAR inferior");
+        float[] c = provider.embed("tensiune arteriala crescuta");
+
+        assertArrayEquals(a, b);
+        assertEquals(1.0, dot(a, a), 1e-4);
+        assertTrue(dot(a, provider.embed("extractia molarului")) > dot(a, c));
+    }
+
+    @Test
+    void wrongVectorCountFails() {
+        EmbeddingProvider broken = new EmbeddingProvider() {
+            public String modelId() { return "broken"; }
+            public int dimensions() { return 4; }
+            public int maxBatchSize() { return 8; }
+            public List<float[]> embedBatch(List<String> texts) { return List.of(new float[4]); }
+        };
+        EmbeddingService service = new EmbeddingService(broken, executor, 8);
+
+        assertThrows(IllegalStateException.class, () -> service.embedAll(List.of("a", "b")));
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double s = 0;
+        for (int i = 0; i < a.length; i++) s += a[i] * b[i];
+        return s;
+    }
+}
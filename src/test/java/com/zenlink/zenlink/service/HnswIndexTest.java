@@ -0,0 +1,65 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    @Test
+    void approximateSearchHasHighRecall() {
+        Random random = new Random(7);
+        HnswIndex index = new HnswIndex(32, 16, 100, 64);
+        for (int i = 0; i < 2000; i++) index.add(randomVector(random, 32));
+
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random, 32);
+            Set<Integer> exact = new HashSet<>();
+            for (HnswIndex.Hit h : index.exactSearch(query, 10)) exact.add(h.node());
+            for (HnswIndex.Hit h : index.search(query, 10, 64)) if (exact.contains(h.node())) found++;
+        }
+
+        assertTrue(found / (double) (queries * 10) > 0.9, "recall@10 was " + found / (double) (queries * 10));
+    }
+
+    @Test
+    void resultsAreSortedAndDistancesMatchL2() {
+        HnswIndex index = new HnswIndex(2, 8, 32, 4);
+        index.add(new float[]{0, 0});
+        index.add(new float[]{3, 4});
+        index.add(new float[]{1, 0});
+
+        HnswIndex.Hit[] hits = index.search(new float[]{0, 0}, 3, 10);
+
+        assertEquals(3, hits.length);
+        assertEquals(0, hits[0].node());
+        assertEquals(2, hits[1].node());
+        assertEquals(5f, hits[2].distance(), 1e-6);
+    }
+
+    @Test
+    void deletedNodesAreNeverReturned() {
+        Random random = new Random(3);
+        HnswIndex index = new HnswIndex(8, 8, 50, 16);
+        for (int i = 0; i < 300; i++) index.add(randomVector(random, 8));
+        for (int i = 0; i < 300; i += 2) index.delete(i);
+
+        HnswIndex.Hit[] hits = index.search(index.vector(0), 20, 40);
+
+        assertEquals(20, hits.length);
+        for (HnswIndex.Hit h : hits) assertEquals(1, h.node() % 2);
+        assertEquals(150, index.liveCount());
+    }
+
+    private static float[] randomVector(Random random, int dims) {
+        float[] v = new float[dims];
+        for (int i = 0; i < dims; i++) v[i] = (float) random.nextGaussian();
+        return v;
+    }
+}
@@ -0,0 +1,33 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MmrRerankerTest {
+
+    private static final float[][] VECTORS = {
+            {1f, 0f, 0f},
+            {1f, 0.05f, 0f},   // near-duplicate of 0
+            {0.9f, 0.1f, 0f},  // near-duplicate of 0
+            {0f, 1f, 0f},
+            {0f, 0f, 1f}
+    };
+
+    @Test
+    void lambdaOneKeepsTheRanking() {
+        assertArrayEquals(new int[]{0, 1, 2}, MmrReranker.select(MmrReranker.rankRelevance(5), VECTORS, 1.0, 3));
+    }
+
+    @Test
+    void nearDuplicatesArePushedDown() {
+        assertArrayEquals(new int[]{0, 3, 4}, MmrReranker.select(MmrReranker.rankRelevance(5), VECTORS, 0.5, 3));
+    }
+
+    @Test
+    void missingEmbeddingsFallBackToRelevanceOrder() {
+        float[][] vectors = {VECTORS[0], null, VECTORS[1]};
+
+        assertArrayEquals(new int[]{0, 1, 2}, MmrReranker.select(MmrReranker.rankRelevance(3), vectors, 0.5, 5));
+    }
+}
@@ -0,0 +1,120 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private Path pdf;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pdf = Files.write(dir.resolve("input.pdf"), new byte[]{1, 2, 3});
+    }
+
+    @Test
+    void pageSpecCollapsesRuns() {
+        assertEquals("1-3,7,9-10", OcrService.pageSpec(new TreeSet<>(Set.of(1, 2, 3, 7, 9, 10))));
+        assertEquals("4", OcrService.pageSpec(new TreeSet<>(Set.of(4))));
+    }
+
+    @Test
+    void sidecarEntriesMapToRequestedPages() {
+        String sidecar = "[OCR skipped on page(s) 1]\fPagina doi\n\f[OCR skipped on page(s) 3]\fPagina patru";
+
+        Map<Integer, String> texts = OcrService.parseSidecar(sidecar, new TreeSet<>(Set.of(2, 4)));
+
+        assertEquals(Map.of(2, "Pagina doi", 4, "Pagina patru"), texts);
+        // Older ocrmypdf without per-page entries: non-empty text in order
+        assertEquals(Map.of(2, "unu", 4, ""), OcrService.parseSidecar("unu\f\f", new TreeSet<>(Set.of(2, 4))));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void onlyRequestedPagesAreOcredAndResultsAreCached() throws Exception {
+        Path script = script("""
+                while [ $# -gt 0 ]; do
+                  case "$1" in
+                    --sidecar) sidecar="$2"; shift ;;
+                    --pages) pages="$2"; shift ;;
+                  esac
+                  shift
+                done
+                echo run >> "%s"
+                printf '[OCR skipped on page(s) 1]\\fPagini %%s\\f[OCR skipped on page(s) 3]' "$pages" > "$sidecar"
+                """.formatted(dir.resolve("runs")));
+        OcrService ocr = new OcrService(Runnable::run, script.toString(), "ron+eng", 1, 1, 30, 10);
+
+        Map<Integer, String> first = ocr.ocrPages("job", "ab12", pdf, new TreeSet<>(Set.of(2))).get();
+        Map<Integer, String> second = ocr.ocrPages("job", "ab12", pdf, new TreeSet<>(Set.of(2))).get();
+
+        assertEquals(Map.of(2, "Pagini 2"), first);
+        assertSame(first, second);
+        assertEquals(1, Files.readAllLines(dir.resolve("runs")).size());
+        OcrService.Stats stats = ocr.stats();
+        assertEquals(1, stats.cacheHits());
+        assertEquals(1, stats.pagesOcred());
+        assertEquals(1, stats.completed());
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void slowJobsAreKilledAfterTheTimeout() throws Exception {
+        OcrService ocr = new OcrService(Runnable::run, script("sleep 30").toString(), "ron+eng", 1, 1, 1, 10);
+
+        long started = System.nanoTime();
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> ocr.ocrPages("job", null, pdf, new TreeSet<>(Set.of(1))).get());
+
+        assertTrue(e.getCause().getMessage().contains("timed out"), e.getCause().getMessage());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1, ocr.stats().timedOut());
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void runningJobCanBeCancelled() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            OcrService ocr = new OcrService(pool, script("sleep 30").toString(), "ron+eng", 1, 1, 60, 10);
+
+            CompletableFuture<Map<Integer, String>> job = ocr.ocrPages("file-1", null, pdf, new TreeSet<>(Set.of(1)));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (ocr.stats().running() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+            Thread.sleep(100); // let the process start
+
+            assertTrue(ocr.cancel("file-1"));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> job.get(10, TimeUnit.SECONDS));
+            assertEquals("OCR cancelled", e.getCause().getMessage());
+            assertFalse(ocr.cancel("file-1"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Path script(String body) throws Exception {
+        Path script = dir.resolve("fake-ocrmypdf-" + System.nanoTime() + ".sh");
+        Files.writeString(script, "#!/bin/sh\n" + body + "\n");
+        assertTrue(script.toFile().setExecutable(true));
+        return script;
+    }
+}
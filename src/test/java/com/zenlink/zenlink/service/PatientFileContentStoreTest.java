@@ -0,0 +1,94 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.model.PatientFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PatientFileContentStoreTest {
+    private static final UUID FILE_ID = UUID.randomUUID();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void contentIsCopiedInSlices() throws Exception {
+        byte[] content = new byte[150 * 1024 + 17];
+        new Random(1).nextBytes(content);
+        JdbcTemplate jdbc = database(content);
+        PatientFileContentStore store = new PatientFileContentStore(jdbc, 64, dir.toString());
+
+        try (PatientFileContentStore.ScratchFile scratch = store.copyToScratch(FILE_ID)) {
+            assertArrayEquals(content, Files.readAllBytes(scratch.path()));
+            assertEquals(content.length, scratch.size());
+            assertEquals(PatientFile.sha256Hex(content), scratch.sha256());
+            assertTrue(scratch.path().startsWith(dir));
+        }
+        // 64 + 64 + 22 KB
+        verify(jdbc, times(3)).query(startsWith("SELECT substring"), any(RowCallbackHandler.class), any(Object[].class));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void missingFileGivesNull() {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+
+        assertNull(new PatientFileContentStore(jdbc, 64, dir.toString()).copyToScratch(FILE_ID));
+    }
+
+    @Test
+    void contentShrinkingWhileReadingFailsAndLeavesNoFile() throws Exception {
+        byte[] content = new byte[100 * 1024];
+        JdbcTemplate jdbc = database(content);
+        // Rows come back empty after the first slice, as if the file were deleted
+        doAnswer(inv -> {
+            int from = inv.getArgument(2, Long.class).intValue() - 1;
+            if (from == 0) inv.getArgument(1, RowCallbackHandler.class).processRow(row(Arrays.copyOf(content, 64 * 1024)));
+            return null;
+        }).when(jdbc).query(startsWith("SELECT substring"), any(RowCallbackHandler.class), any(Object[].class));
+
+        PatientFileContentStore store = new PatientFileContentStore(jdbc, 64, dir.toString());
+
+        assertThrows(IllegalStateException.class, () -> store.copyToScratch(FILE_ID));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JdbcTemplate database(byte[] content) {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.query(startsWith("SELECT octet_length"), any(ResultSetExtractor.class), eq(FILE_ID)))
+                .thenReturn((long) content.length);
+        doAnswer(inv -> {
+            int from = inv.getArgument(2, Long.class).intValue() - 1;
+            int length = inv.getArgument(3, Integer.class);
+            inv.getArgument(1, RowCallbackHandler.class)
+                    .processRow(row(Arrays.copyOfRange(content, from, Math.min(content.length, from + length))));
+            return null;
+        }).when(jdbc).query(startsWith("SELECT substring"), any(RowCallbackHandler.class), any(Object[].class));
+        return jdbc;
+    }
+
+    private static ResultSet row(byte[] slice) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getBinaryStream(1)).thenReturn(new ByteArrayInputStream(slice));
+        return rs;
+    }
+}
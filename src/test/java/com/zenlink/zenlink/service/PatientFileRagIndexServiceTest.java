@@ -0,0 +1,253 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.RagChunkingProperties;
+import com.zenlink.zenlink.model.PatientFile;
+import com.zenlink.zenlink.repository.PatientFileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PatientFileRagIndexServiceTest {
+    private static final UUID FILE_ID = UUID.randomUUID();
+    private static final String CONTENT_SHA = PatientFile.sha256Hex(new byte[]{1, 2, 3});
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbcTemplate;
+    private PatientFileRepository patientFileRepository;
+    private PdfTextExtractor pdfTextExtractor;
+    private PdfScanClassifier scanClassifier;
+    private PatientFileContentStore contentStore;
+    private Path scratch;
+    private OcrService ocrService;
+    private RagIndexWriter ragIndexWriter;
+    private RagIndexConfig indexConfig;
+    private PatientFileRagIndexService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        patientFileRepository = mock(PatientFileRepository.class);
+        pdfTextExtractor = mock(PdfTextExtractor.class);
+        scanClassifier = mock(PdfScanClassifier.class);
+        when(scanClassifier.classify(any())).thenReturn(new PdfScanClassifier.Classification(PdfScanClassifier.Route.MIXED, 0, Map.of()));
+        contentStore = mock(PatientFileContentStore.class);
+        ocrService = mock(OcrService.class);
+        ragIndexWriter = mock(RagIndexWriter.class);
+        Executor direct = Runnable::run;
+        EmbeddingService embeddingService = new EmbeddingService(new LocalHashEmbeddingProvider(32), direct, 16);
+        indexConfig = new RagIndexConfig(embeddingService, new RagChunkingProperties());
+        service = new PatientFileRagIndexService(jdbcTemplate, patientFileRepository, pdfTextExtractor, scanClassifier,
+                contentStore, ocrService, new RagChunker(), new BoilerplateDetector(jdbcTemplate, true, 3, 3, 3, 24, 2, 80),
+                embeddingService, ragIndexWriter, indexConfig, mock(ObjectProvider.class),
+                mock(PatientFileSummaryService.class), mock(PlatformTransactionManager.class), direct, 4, 30, 2, 20);
+
+        scratch = Files.write(dir.resolve("scratch.pdf"), new byte[]{1, 2, 3});
+        when(contentStore.copyToScratch(FILE_ID)).thenReturn(new PatientFileContentStore.ScratchFile(scratch, 3, CONTENT_SHA));
+        fingerprint(null);
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(1);
+    }
+
+    @Test
+    void queuedTextPdfRunsAllStagesAndSkipsOcr() {
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenReturn(List.of("Hemoglobina 13.5 g/dl. ".repeat(40), "Leucocite 6000/mm3. ".repeat(40)));
+
+        assertTrue(service.enqueueFile(FILE_ID, false));
+
+        verifyNoInteractions(ocrService);
+        verify(ragIndexWriter).writePages(eq(FILE_ID), eq(7L), anyList());
+        verify(ragIndexWriter).writeChunks(eq(FILE_ID), eq(7L), argThat(c -> !c.isEmpty()), argThat(e -> !e.isEmpty()));
+        verify(jdbcTemplate, atLeastOnce()).update(contains("status = ?"), eq("EMBEDDING"), any(), eq(FILE_ID));
+        assertFalse(Files.exists(scratch));
+    }
+
+    @Test
+    void scannedPdfGoesThroughOcr() {
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenReturn(List.of("", ""));
+        when(ocrService.ocrPages(eq(FILE_ID), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(
+                Map.of(1, "Pagina unu " + "text ".repeat(100), 2, "Pagina doi " + "text ".repeat(100))));
+
+        service.enqueueFile(FILE_ID, false);
+
+        verify(ocrService).ocrPages(eq(FILE_ID), any(), eq(scratch), eq(new TreeSet<>(Set.of(1, 2))));
+        verify(ragIndexWriter).writePages(eq(FILE_ID), eq(7L), argThat(p -> p.size() == 2));
+        assertFalse(Files.exists(scratch));
+    }
+
+    @Test
+    void fileWithOnlyBlankPagesFailsWithoutTouchingStoredPages() {
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenReturn(List.of("", " "));
+        when(ocrService.ocrPages(eq(FILE_ID), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(Map.of()));
+        when(jdbcTemplate.query(startsWith("SELECT page_number, text_sha256"), any(ResultSetExtractor.class), eq(FILE_ID)))
+                .thenReturn(Map.of(1, "old|" + indexConfig.version()));
+
+        service.enqueueFile(FILE_ID, false);
+
+        verifyNoInteractions(ragIndexWriter);
+        verify(jdbcTemplate, never()).update(startsWith("DELETE FROM patient_file_"), any(PreparedStatementSetter.class));
+        verify(jdbcTemplate, never()).update(contains("embedding_model"), any(Object[].class));
+        verify(jdbcTemplate).update(contains("status = 'ERROR'"), eq("No text extracted"), any(), eq(FILE_ID));
+    }
+
+    @Test
+    void documentClassifiedAsScannedSkipsExtraction() {
+        PdfScanClassifier.Classification scan = new PdfScanClassifier.Classification(PdfScanClassifier.Route.SCANNED, 3,
+                Map.of(1, PdfScanClassifier.PageKind.SCANNED, 3, PdfScanClassifier.PageKind.SCANNED));
+        when(scanClassifier.classify(scratch)).thenReturn(scan);
+        when(scanClassifier.skipsExtraction(scan)).thenReturn(true);
+        when(ocrService.ocrPages(eq(FILE_ID), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(
+                Map.of(1, "Pagina unu " + "text ".repeat(100), 2, "Pagina doi " + "text ".repeat(100), 3, "Pagina trei " + "text ".repeat(100))));
+
+        service.enqueueFile(FILE_ID, false);
+
+        verifyNoInteractions(pdfTextExtractor);
+        verify(ocrService).ocrPages(eq(FILE_ID), any(), eq(scratch), eq(new TreeSet<>(Set.of(1, 2, 3))));
+        verify(ragIndexWriter).writePages(eq(FILE_ID), eq(7L), argThat(p -> p.size() == 3));
+    }
+
+    @Test
+    void onlyPagesWithoutTextLayerAreOcred() {
+        String page1 = "Hemoglobina 13.5 g/dl. ".repeat(40);
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenReturn(List.of(page1, " 2 ", page1));
+        when(ocrService.ocrPages(eq(FILE_ID), any(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(Map.of(2, "Scrisoare medicală " + "text ".repeat(50))));
+
+        service.enqueueFile(FILE_ID, false);
+
+        verify(ocrService).ocrPages(eq(FILE_ID), any(), any(), eq(new TreeSet<>(Set.of(2))));
+        verify(ragIndexWriter).writePages(eq(FILE_ID), eq(7L), argThat(p -> p.size() == 3
+                && p.get(1).pageNumber() == 2 && p.get(1).text().startsWith("Scrisoare")));
+    }
+
+    @Test
+    void identicalContentReusesIndexedFileWithoutExtracting() {
+        UUID donor = UUID.randomUUID();
+        fingerprint("ab12");
+        when(jdbcTemplate.query(contains("content_sha256 = ?"), any(ResultSetExtractor.class), any(Object[].class))).thenReturn(donor);
+
+        service.enqueueFile(FILE_ID, false);
+
+        verifyNoInteractions(contentStore, scanClassifier, pdfTextExtractor, ocrService, ragIndexWriter);
+        verify(jdbcTemplate).update(startsWith("INSERT INTO patient_file_chunks"), eq(FILE_ID), eq(7L), eq(donor));
+        verify(jdbcTemplate).update(startsWith("INSERT INTO patient_file_index"),
+                eq(FILE_ID), eq(7L), eq("READY"), isNull(), any(), eq("ab12"), eq("local-hash-v1@32"), eq(indexConfig.version()));
+    }
+
+    @Test
+    void missingHashIsComputedAndStored() {
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenReturn(List.of("Hemoglobina 13.5 g/dl. ".repeat(40)));
+
+        service.enqueueFile(FILE_ID, false);
+
+        verify(jdbcTemplate).update("UPDATE patient_files SET content_sha256 = ? WHERE id = ?", CONTENT_SHA, FILE_ID);
+    }
+
+    @Test
+    void reindexOnlyTouchesChangedPages() {
+        String page1 = "Hemoglobina 13.5 g/dl. ".repeat(40);
+        String page2 = "Leucocite 6000/mm3. ".repeat(40);
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenReturn(List.of(page1, page2));
+        // Page 1 is stored with the same text and config, page 2 with older text, page 3 no longer exists
+        when(jdbcTemplate.query(startsWith("SELECT page_number, text_sha256"), any(ResultSetExtractor.class), eq(FILE_ID)))
+                .thenReturn(Map.of(
+                        1, PatientFile.sha256Hex(page1.trim().getBytes(StandardCharsets.UTF_8)) + "|" + indexConfig.version(),
+                        2, "old|" + indexConfig.version(),
+                        3, "gone|" + indexConfig.version()));
+
+        service.enqueueFile(FILE_ID, false);
+
+        verify(ragIndexWriter).writePages(eq(FILE_ID), eq(7L), argThat(p -> p.size() == 1 && p.get(0).pageNumber() == 2));
+        verify(ragIndexWriter).writeChunks(eq(FILE_ID), eq(7L), argThat(c -> c.stream().allMatch(ch -> ch.pageNumber() == 2)), anyList());
+        verify(jdbcTemplate).update(eq("DELETE FROM patient_file_chunks WHERE file_id = ? AND page_number = ANY(?)"), any(PreparedStatementSetter.class));
+    }
+
+    @Test
+    void repeatedLetterheadIsChunkedOnceButKeptInPageText() {
+        String letterhead = "Clinica Dentară Zenlink SRL, Str. Lungă 12, Brașov, tel. 0268 123 456";
+        String footer = "Document confidențial, destinat exclusiv pacientului și medicului curant.";
+        List<String> pages = List.of(
+                letterhead + "\nHemoglobina 13.5 g/dl, leucocite 6000/mm3.\n" + footer + " Pagina 1 din 3",
+                letterhead + "\nGlicemie 98 mg/dl, creatinina 0.9 mg/dl.\n" + footer + " Pagina 2 din 3",
+                letterhead + "\nINR 1.1, trombocite 250000/mm3.\n" + footer + " Pagina 3 din 3");
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenReturn(pages);
+
+        service.enqueueFile(FILE_ID, false);
+
+        verify(ragIndexWriter).writePages(eq(FILE_ID), eq(7L), argThat(p -> p.size() == 3
+                && p.stream().allMatch(page -> page.text().startsWith(letterhead))));
+        verify(ragIndexWriter).writeChunks(eq(FILE_ID), eq(7L), argThat(c -> c.size() == 3
+                && c.stream().filter(ch -> ch.text().contains("Clinica Dentară")).count() == 1
+                && c.stream().filter(ch -> ch.text().contains("Document confidențial")).count() == 1
+                && c.get(2).text().contains("INR 1.1")), anyList());
+        assertEquals(4, service.boilerplateStats().maskedLines());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pageWhoseBoilerplateMaskChangedIsReindexed() {
+        String letterhead = "Clinica Dentară Zenlink SRL, Str. Lungă 12, Brașov, tel. 0268 123 456";
+        List<String> pages = List.of(
+                letterhead + "\nHemoglobina 13.5 g/dl, leucocite 6000/mm3.",
+                letterhead + "\nGlicemie 98 mg/dl, creatinina 0.9 mg/dl.",
+                letterhead + "\nINR 1.1, trombocite 250000/mm3.");
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenReturn(pages);
+        // All three were stored before the letterhead was recognized; only page 1 keeps it in its chunks
+        Map<Integer, String> stored = new HashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            stored.put(i + 1, PatientFile.sha256Hex(pages.get(i).getBytes(StandardCharsets.UTF_8)) + "|" + indexConfig.version());
+        }
+        when(jdbcTemplate.query(startsWith("SELECT page_number, text_sha256"), any(ResultSetExtractor.class), eq(FILE_ID)))
+                .thenReturn(stored);
+
+        service.enqueueFile(FILE_ID, false);
+
+        verify(ragIndexWriter).writePages(eq(FILE_ID), eq(7L), argThat(p -> p.size() == 2
+                && p.get(0).pageNumber() == 2 && p.get(1).pageNumber() == 3
+                && p.stream().allMatch(page -> page.indexConfig().startsWith(indexConfig.version() + "|mask="))));
+        verify(ragIndexWriter).writeChunks(eq(FILE_ID), eq(7L),
+                argThat(c -> c.stream().noneMatch(ch -> ch.text().contains("Clinica Dentară"))), anyList());
+    }
+
+    @Test
+    void failureIsRecordedAsError() {
+        when(pdfTextExtractor.extractPages(any(Path.class))).thenThrow(new RuntimeException("Failed to extract PDF text: broken"));
+
+        service.enqueueFile(FILE_ID, false);
+
+        verify(jdbcTemplate).update(contains("status = 'ERROR'"), eq("Failed to extract PDF text: broken"), any(), eq(FILE_ID));
+        verifyNoInteractions(ragIndexWriter);
+        assertFalse(Files.exists(scratch));
+    }
+
+    private void fingerprint(String sha256) {
+        when(patientFileRepository.findFingerprintById(FILE_ID)).thenReturn(Optional.of(new PatientFileRepository.Fingerprint() {
+            public Long getPatientId() { return 7L; }
+            public String getName() { return "analize.pdf"; }
+            public Long getSize() { return 3L; }
+            public String getContentSha256() { return sha256; }
+        }));
+    }
+}
@@ -0,0 +1,160 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.RagMmrProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.and;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PatientFileRagQueryServiceTest {
+
+    private static final UUID FILE_ID = UUID.fromString("00000000-0000-0000-0000-0000000000aa");
+
+    private JdbcTemplate jdbcTemplate;
+    private QueryEmbeddingCache queryEmbeddings;
+    private PatientFileRagQueryService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        Executor direct = Runnable::run;
+        EmbeddingService embeddingService = new EmbeddingService(new LocalHashEmbeddingProvider(32), direct, 16);
+        queryEmbeddings = new QueryEmbeddingCache(embeddingService, 100, 60);
+        service = new PatientFileRagQueryService(jdbcTemplate, embeddingService, queryEmbeddings, mock(ObjectProvider.class),
+                mock(ObjectProvider.class), mock(PlatformTransactionManager.class), direct,
+                new RagMmrProperties(), 200, true, 30, 60);
+    }
+
+    @Test
+    void fusionRewardsChunksFoundByBothRankings() {
+        List<PatientFileRagQueryService.RagHit> vector = List.of(hit(1, 0.1), hit(2, 0.2), hit(3, 0.3));
+        List<PatientFileRagQueryService.RagHit> lexical = List.of(hit(4, Double.NaN), hit(3, Double.NaN), hit(5, Double.NaN));
+
+        List<PatientFileRagQueryService.RagHit> fused = PatientFileRagQueryService.fuse(List.of(vector, lexical), 60, 4);
+
+        assertEquals(List.of(3L, 1L, 4L, 2L), fused.stream().map(PatientFileRagQueryService.RagHit::chunkId).toList());
+        assertEquals(0.3, fused.get(0).distance(), 1e-9); // keeps the hit that carries a distance
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lexicalHitsAreMergedIntoPatientResults() {
+        when(jdbcTemplate.query(contains("chunk_tsv @@"), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.of(hit(9, Double.NaN), hit(2, Double.NaN)));
+        when(jdbcTemplate.query(contains("embedding_bits <~>"), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.of(hit(1, 0.1), hit(2, 0.2)));
+
+        List<PatientFileRagQueryService.RagHit> hits = service.retrieveForPatient(7L, "dinte 36 amoxicilina", 3);
+
+        assertEquals(List.of(2L, 1L, 9L), hits.stream().map(PatientFileRagQueryService.RagHit::chunkId).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lexicalSearchMatchesAnyTermWithoutParsingTheQuestionAsSyntax() {
+        assertEquals("durere | dinte | 36 | amoxicilină | 500 | mg | s | a",
+                PatientFileRagQueryService.anyTermQuery("Durere dinte 36 & (amoxicilină 500 mg)?! 'S-a' | dinte:*"));
+        assertNull(PatientFileRagQueryService.anyTermQuery(" !?& | "));
+
+        service.retrieveForPatient(7L, "  ?! ", 3);
+        verify(jdbcTemplate, never()).query(contains("chunk_tsv @@"), any(RowMapper.class), any(Object[].class));
+
+        service.retrieveForPatient(7L, "carie dinte 36", 3);
+        verify(jdbcTemplate).query(contains("to_tsquery('zenlink_ro', ?)"), any(RowMapper.class),
+                eq("carie | dinte | 36"), eq(7L), anyString(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void chunksWithoutSignBitsAreAlwaysRescored() {
+        service.retrieveForPatient(7L, "radiografie dinte 36", 3);
+
+        // Hamming top 200 among coded chunks, plus every chunk of the patient still missing its code
+        verify(jdbcTemplate).query(and(contains("c.embedding_bits IS NOT NULL"), contains("c.embedding_bits IS NULL")),
+                any(RowMapper.class), anyString(), eq(7L), anyString(), anyString(), eq(200), eq(7L), anyString(), eq(30));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failingLexicalSearchFallsBackToVectorResults() {
+        when(jdbcTemplate.query(contains("chunk_tsv @@"), any(RowMapper.class), any(Object[].class)))
+                .thenThrow(new BadSqlGrammarException("lexical", "sql", new SQLException("column c.chunk_tsv does not exist")));
+        when(jdbcTemplate.query(contains("WHERE c.file_id = ?"), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.of(hit(1, 0.1), hit(2, 0.2)));
+
+        List<PatientFileRagQueryService.RagHit> hits = service.retrieveForFile(FILE_ID, "hemoglobina", 1);
+
+        assertEquals(List.of(1L), hits.stream().map(PatientFileRagQueryService.RagHit::chunkId).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void vectorLiteralIsBoundOnceAndRepeatedQuestionsHitTheCache() {
+        when(jdbcTemplate.query(contains("WHERE c.file_id = ?"), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.of(hit(1, 0.1)));
+
+        service.retrieveForFile(FILE_ID, "Ce tratament are pacientul?", 5);
+        service.retrieveForFile(FILE_ID, "ce tratament  are pacientul", 5);
+
+        verify(jdbcTemplate, times(2)).query(contains("ORDER BY distance"), any(RowMapper.class),
+                argThat((Object arg) -> arg instanceof String s && s.startsWith("[")), eq(FILE_ID), anyString(), eq(30));
+        assertEquals(1, queryEmbeddings.stats().hits());
+        assertEquals(1, queryEmbeddings.stats().misses());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void annSearchBindsTheVectorLiteralOnce() {
+        PgVectorIndexManager indexes = mock(PgVectorIndexManager.class);
+        when(indexes.annFor(PatientFileRagQueryService.SCOPE_PATIENT, 7L, 30)).thenReturn(new PgVectorIndexManager.AnnSearch("idx_chunks_p7", true, List.of()));
+        ObjectProvider<PgVectorIndexManager> pgIndexes = mock(ObjectProvider.class);
+        when(pgIndexes.getIfAvailable()).thenReturn(indexes);
+        EmbeddingService embeddingService = new EmbeddingService(new LocalHashEmbeddingProvider(32), Runnable::run, 16);
+        service = new PatientFileRagQueryService(jdbcTemplate, embeddingService, queryEmbeddings, mock(ObjectProvider.class),
+                pgIndexes, mock(PlatformTransactionManager.class), Runnable::run,
+                new RagMmrProperties(), 200, true, 30, 60);
+
+        service.retrieveForPatient(7L, "radiografie dinte 36", 3);
+
+        verify(jdbcTemplate).query(and(contains("WHERE c.patient_id = 7"), contains("ORDER BY distance")), any(RowMapper.class),
+                argThat((Object arg) -> arg instanceof String s && s.startsWith("[")), anyString(), eq(30));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void nearDuplicateChunksAreDiversifiedAway() {
+        when(jdbcTemplate.query(contains("WHERE c.file_id = ?"), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.of(hit(1, 0.10), hit(2, 0.11), hit(3, 0.30), hit(4, 0.40)));
+        // 1 and 2 are the same paragraph (overlapping chunks); 3 and 4 say something else
+        when(jdbcTemplate.query(contains("embedding::real[]"), any(ResultSetExtractor.class), any(Object[].class)))
+                .thenReturn(Map.of(
+                        1L, new float[]{1f, 0f, 0f},
+                        2L, new float[]{0.99f, 0.1f, 0f},
+                        3L, new float[]{0f, 1f, 0f},
+                        4L, new float[]{0f, 0f, 1f}));
+
+        List<PatientFileRagQueryService.RagHit> hits = service.retrieveForFile(FILE_ID, "hemoglobina", 2);
+
+        assertEquals(List.of(1L, 3L), hits.stream().map(PatientFileRagQueryService.RagHit::chunkId).toList());
+    }
+
+    private static PatientFileRagQueryService.RagHit hit(long chunkId, double distance) {
+        return new PatientFileRagQueryService.RagHit(chunkId, FILE_ID, "analize.pdf", 1, -1, -1, "text " + chunkId, distance);
+    }
+}
@@ -0,0 +1,106 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatientFileSummaryServiceTest {
+    private static final Instant DIGESTED = Instant.parse("2026-03-01T10:00:00Z");
+
+    private final UUID a = UUID.randomUUID();
+    private final UUID b = UUID.randomUUID();
+    private final UUID c = UUID.randomUUID();
+
+    @Test
+    void broadQuestionsAreRecognized() {
+        assertTrue(PatientFileSummaryService.isBroadQuestion("Care este istoricul pacientului?"));
+        assertTrue(PatientFileSummaryService.isBroadQuestion("Fă-mi un rezumat al documentelor"));
+        assertTrue(PatientFileSummaryService.isBroadQuestion("Ce afecțiuni are pacientul?"));
+        assertTrue(PatientFileSummaryService.isBroadQuestion("What's this patient's history?"));
+        assertFalse(PatientFileSummaryService.isBroadQuestion("Cât este hemoglobina din 12 martie?"));
+        assertFalse(PatientFileSummaryService.isBroadQuestion(null));
+    }
+
+    @Test
+    void newFilesAreFoldedIntoTheDigest() {
+        PatientFileSummaryService.Digest digest = new PatientFileSummaryService.Digest("- sinteza", Set.of(a, b), DIGESTED);
+
+        PatientFileSummaryService.DigestPlan plan = PatientFileSummaryService.planDigest(digest,
+                List.of(summary(c, DIGESTED.plusSeconds(60)), summary(a, DIGESTED.minusSeconds(60)), summary(b, DIGESTED)));
+
+        assertFalse(plan.rebuild());
+        assertEquals(List.of(c), plan.newFiles().stream().map(PatientFileSummaryService.FileSummary::fileId).toList());
+        assertNull(PatientFileSummaryService.planDigest(digest, List.of(summary(a, DIGESTED), summary(b, DIGESTED))));
+    }
+
+    @Test
+    void changedOrDeletedFilesRebuildTheDigest() {
+        PatientFileSummaryService.Digest digest = new PatientFileSummaryService.Digest("- sinteza", Set.of(a, b), DIGESTED);
+
+        // b was re-summarized after the digest
+        assertTrue(PatientFileSummaryService.planDigest(digest,
+                List.of(summary(a, DIGESTED), summary(b, DIGESTED.plusSeconds(1)))).rebuild());
+        // b was deleted
+        List<PatientFileSummaryService.FileSummary> withoutB = List.of(summary(a, DIGESTED), summary(c, DIGESTED));
+        assertTrue(PatientFileSummaryService.planDigest(digest, withoutB).rebuild());
+        assertFalse(PatientFileSummaryService.coversOnlyExisting(digest, withoutB));
+        assertTrue(PatientFileSummaryService.planDigest(null, withoutB).rebuild());
+    }
+
+    @Test
+    void summariesLeftOutOfTheDigestPromptAreFoldedInNext() {
+        List<PatientFileSummaryService.FileSummary> files = List.of(
+                new PatientFileSummaryService.FileSummary(a, "scrisoare.pdf", "- extracție 36 ".repeat(40), DIGESTED),
+                new PatientFileSummaryService.FileSummary(b, "analize.pdf", "- hemoleucogramă ".repeat(40), DIGESTED),
+                new PatientFileSummaryService.FileSummary(c, "radiografie.pdf", "- carie 26 ".repeat(40), DIGESTED));
+
+        PatientFileSummaryService.DigestInput input = PatientFileSummaryService.digestInput(null, files, 1400);
+
+        assertEquals(List.of(a, b), input.included().stream().map(PatientFileSummaryService.FileSummary::fileId).toList());
+        assertFalse(input.prompt().contains("radiografie.pdf"));
+        // Recorded as covering only a and b, the digest picks c up as a new file
+        PatientFileSummaryService.DigestPlan next = PatientFileSummaryService.planDigest(
+                new PatientFileSummaryService.Digest("- sinteza", Set.of(a, b), DIGESTED), files);
+        assertFalse(next.rebuild());
+        assertEquals(List.of(c), next.newFiles().stream().map(PatientFileSummaryService.FileSummary::fileId).toList());
+        // A summary longer than the budget still goes in alone, so every run makes progress
+        assertEquals(1, PatientFileSummaryService.digestInput("- sinteza", files, 10).included().size());
+    }
+
+    @Test
+    void contextKeepsTheDigestAndFitsSummariesInTheBudget() {
+        List<PatientFileSummaryService.FileSummary> files = List.of(
+                new PatientFileSummaryService.FileSummary(a, "scrisoare.pdf", "- extracție 36, 2026", DIGESTED),
+                new PatientFileSummaryService.FileSummary(b, "analize.pdf", "- hemoleucogramă ".repeat(400), DIGESTED),
+                new PatientFileSummaryService.FileSummary(c, "radiografie.pdf", "- carie 26", DIGESTED));
+
+        String context = PatientFileSummaryService.render(new PatientFileSummaryService.PatientSummaries("- istoric dentar", files), 300);
+
+        assertTrue(context.startsWith(PatientFileSummaryService.HEADER));
+        assertTrue(context.contains("- istoric dentar"));
+        assertTrue(context.contains("scrisoare.pdf (" + a + ")"));
+        assertFalse(context.contains("analize.pdf"));
+        assertTrue(context.contains("radiografie.pdf"));
+    }
+
+    @Test
+    void longDocumentsKeepTheStartOfEveryPage() {
+        List<String> pages = List.of("Pagina unu " + "a".repeat(5000), "", "Pagina trei " + "b".repeat(5000));
+
+        String input = PatientFileSummaryService.summaryInput(pages, 2000);
+
+        assertTrue(input.contains("[pag. 1]\nPagina unu"));
+        assertTrue(input.contains("[pag. 3]\nPagina trei"));
+        assertFalse(input.contains("[pag. 2]"));
+        assertTrue(input.length() < 2300, "length " + input.length());
+    }
+
+    private static PatientFileSummaryService.FileSummary summary(UUID id, Instant updatedAt) {
+        return new PatientFileSummaryService.FileSummary(id, id + ".pdf", "- rezumat", updatedAt);
+    }
+}
@@ -0,0 +1,56 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PatientVectorIndexTest {
+    private static final String COUNT_SQL = "SELECT count(*) FROM patient_file_chunks WHERE patient_id = ?";
+
+    private JdbcTemplate jdbcTemplate;
+    private PatientVectorIndex index;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        Executor direct = Runnable::run;
+        EmbeddingService embeddingService = new EmbeddingService(new LocalHashEmbeddingProvider(32), direct, 16);
+        index = new PatientVectorIndex(jdbcTemplate, embeddingService, direct, 16, 100, 64, 256, 1000, 300);
+    }
+
+    @Test
+    void patientOverTheChunkLimitIsNotRecountedUntilAFileIsDeleted() {
+        when(jdbcTemplate.queryForObject(COUNT_SQL, Integer.class, 7L)).thenReturn(5000);
+
+        assertNull(index.search(7L, new float[32], 5));
+        assertNull(index.search(7L, new float[32], 5));
+        assertNull(index.search(7L, new float[32], 5));
+        verify(jdbcTemplate, times(1)).queryForObject(COUNT_SQL, Integer.class, 7L);
+
+        index.onFileDeleted(7L, UUID.randomUUID());
+        index.search(7L, new float[32], 5);
+        verify(jdbcTemplate, times(2)).queryForObject(COUNT_SQL, Integer.class, 7L);
+        assertEquals(0, index.loadedPatients());
+    }
+
+    @Test
+    void failedLoadBacksOffUntilInvalidated() {
+        when(jdbcTemplate.queryForObject(COUNT_SQL, Integer.class, 7L)).thenThrow(new DataAccessResourceFailureException("down"));
+
+        index.search(7L, new float[32], 5);
+        index.search(7L, new float[32], 5);
+        verify(jdbcTemplate, times(1)).queryForObject(anyString(), eq(Integer.class), any(Object[].class));
+
+        index.invalidatePatient(7L);
+        index.search(7L, new float[32], 5);
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), eq(Integer.class), any(Object[].class));
+    }
+}
@@ -0,0 +1,118 @@
+package com.zenlink.zenlink.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfScanClassifierTest {
+
+    @TempDir
+    Path dir;
+
+    private final PdfScanClassifier classifier = new PdfScanClassifier(true, 3, 0.5, 2, 20);
+
+    @Test
+    void samplesAreSpreadOverTheDocument() {
+        assertArrayEquals(new int[]{1, 6, 11}, PdfScanClassifier.samplePageNumbers(11, 3));
+        assertArrayEquals(new int[]{1, 2}, PdfScanClassifier.samplePageNumbers(2, 3));
+        assertArrayEquals(new int[]{1}, PdfScanClassifier.samplePageNumbers(5, 1));
+    }
+
+    @Test
+    void routesFollowTheSampledPages() throws Exception {
+        PdfScanClassifier.Classification text = classifier.classify(pdf("text.pdf", "TTTTT"));
+        PdfScanClassifier.Classification scanned = classifier.classify(pdf("scan.pdf", "SSSS"));
+        PdfScanClassifier.Classification mixed = classifier.classify(pdf("mixed.pdf", "TTSTS"));
+
+        assertEquals(PdfScanClassifier.Route.TEXT, text.route());
+        assertEquals(5, text.pageCount());
+        assertEquals(PdfScanClassifier.Route.SCANNED, scanned.route());
+        assertEquals(Map.of(1, PdfScanClassifier.PageKind.SCANNED, 3, PdfScanClassifier.PageKind.SCANNED,
+                4, PdfScanClassifier.PageKind.SCANNED), scanned.sampled());
+        assertEquals(PdfScanClassifier.Route.MIXED, mixed.route());
+        assertEquals(PdfScanClassifier.PageKind.SCANNED, mixed.sampled().get(3));
+    }
+
+    @Test
+    void smallImagesAndBrokenFilesDoNotCountAsScans() throws Exception {
+        assertEquals(PdfScanClassifier.PageKind.BLANK, classifier.classify(pdf("logo.pdf", "L")).sampled().get(1));
+
+        Path broken = Files.write(dir.resolve("broken.pdf"), new byte[]{1, 2, 3});
+        assertEquals(PdfScanClassifier.Route.MIXED, classifier.classify(broken).route());
+        assertEquals(1, classifier.stats().failed());
+    }
+
+    @Test
+    void scannedDocumentsAreVerifiedPeriodicallyAndCounted() throws Exception {
+        PdfScanClassifier.Classification scan = classifier.classify(pdf("scan.pdf", "SS"));
+
+        // verify-every=2: the first scanned document is extracted, the second is not
+        assertFalse(classifier.skipsExtraction(scan));
+        classifier.recordExtraction(scan, List.of("", "Pagina doi are text: hemoglobina 13.5 g/dl"), 4_000_000);
+        assertTrue(classifier.skipsExtraction(scan));
+
+        PdfScanClassifier.Stats stats = classifier.stats();
+        assertEquals(1, stats.extractionsSkipped());
+        assertEquals(1, stats.scannedVerified());
+        assertEquals(1, stats.scannedMispredicted());
+        assertEquals(2, stats.pagesChecked());
+        assertEquals(1, stats.pagesMispredicted());
+        assertFalse(classifier.skipsExtraction(classifier.classify(pdf("text.pdf", "TT"))));
+    }
+
+    @Test
+    void disabledClassifierNeverSkips() throws Exception {
+        PdfScanClassifier off = new PdfScanClassifier(false, 3, 0.5, 0, 20);
+
+        PdfScanClassifier.Classification c = off.classify(pdf("scan.pdf", "SS"));
+
+        assertEquals(PdfScanClassifier.Route.MIXED, c.route());
+        assertFalse(off.skipsExtraction(c));
+        assertEquals(Collections.emptyMap(), c.sampled());
+    }
+
+    /** One page per letter: T = text, S = full-page image, L = small logo only. */
+    private Path pdf(String name, String layout) throws Exception {
+        Path file = dir.resolve(name);
+        try (PDDocument doc = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            PDImageXObject image = LosslessFactory.createFromImage(doc, new BufferedImage(40, 50, BufferedImage.TYPE_BYTE_GRAY));
+            for (char kind : layout.toCharArray()) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    float w = page.getMediaBox().getWidth();
+                    float h = page.getMediaBox().getHeight();
+                    switch (kind) {
+                        case 'T' -> {
+                            cs.beginText();
+                            cs.setFont(font, 11);
+                            cs.newLineAtOffset(50, 740);
+                            cs.showText("Buletin de analize: hemoglobina 13.5 g/dl, leucocite 6000/mm3");
+                            cs.endText();
+                        }
+                        case 'S' -> cs.drawImage(image, 0, 0, w, h);
+                        default -> cs.drawImage(image, 50, 700, 60, 60);
+                    }
+                }
+            }
+            doc.save(file.toFile());
+        }
+        return file;
+    }
+}
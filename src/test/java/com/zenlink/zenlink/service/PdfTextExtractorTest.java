@@ -0,0 +1,83 @@
+package com.zenlink.zenlink.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfTextExtractorTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void parallelRangesMatchSequentialExtraction() throws Exception {
+        byte[] pdf = samplePdf(40);
+
+        List<String> sequential = new PdfTextExtractor(executor, 1, 4, 4).extractPages(pdf);
+        List<String> parallel = new PdfTextExtractor(executor, 4, 4, 4).extractPages(pdf);
+
+        assertEquals(40, sequential.size());
+        assertEquals(sequential, parallel);
+        assertTrue(parallel.get(36).contains("Page 37"));
+    }
+
+    @Test
+    void streamsEveryPageExactlyOnce() throws Exception {
+        List<Integer> seen = new ArrayList<>();
+
+        int pages = new PdfTextExtractor(executor, 3, 5, 4).extractPages(samplePdf(23), (page, text) -> {
+            assertTrue(text.contains("Page " + page));
+            seen.add(page);
+        });
+
+        assertEquals(23, pages);
+        assertEquals(23, seen.size());
+        assertEquals(23, seen.stream().distinct().count());
+    }
+
+    @Test
+    void brokenPdfFailsWithExtractionError() {
+        PdfTextExtractor extractor = new PdfTextExtractor(executor, 2, 4, 4);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> extractor.extractPages(new byte[]{1, 2, 3}));
+        assertTrue(e.getMessage().startsWith("Failed to extract PDF text"));
+    }
+
+    static byte[] samplePdf(int pages) throws Exception {
+        try (PDDocument doc = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int p = 1; p <= pages; p++) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    cs.beginText();
+                    cs.setFont(font, 11);
+                    cs.newLineAtOffset(50, 740);
+                    cs.showText("Page " + p + " - fisa pacient");
+                    for (int line = 0; line < 40; line++) {
+                        cs.newLineAtOffset(0, -16);
+                        cs.showText("Linia " + line + ": hemoglobina 13.5 g/dl, leucocite 6000/mm3, glicemie 92 mg/dl.");
+                    }
+                    cs.endText();
+                }
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.zenlink.zenlink.service;
+
+import com.zenlink.zenlink.config.RagVectorIndexProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PgVectorIndexManagerTest {
+
+    private final RagVectorIndexProperties props = new RagVectorIndexProperties();
+
+    @Test
+    void largeTablesAndPatientsGetIndexes() {
+        props.setMaxPatientIndexes(2);
+
+        List<PgVectorIndexManager.Action> actions = PgVectorIndexManager.plan(props, true, 250_000,
+                Map.of(7L, 30_000L, 8L, 90_000L, 9L, 25_000L, 10L, 12_000L), List.of());
+
+        assertEquals(List.of(PgVectorIndexManager.GLOBAL_INDEX, "idx_patient_file_chunks_embedding_p8",
+                "idx_patient_file_chunks_embedding_p7"), actions.stream().map(PgVectorIndexManager.Action::indexName).toList());
+        assertTrue(actions.stream().allMatch(PgVectorIndexManager.Action::create));
+        assertNull(actions.get(0).patientId());
+        assertEquals(90_000L, actions.get(1).rows());
+    }
+
+    @Test
+    void tableWideIndexNeedsIterativeScans() {
+        List<PgVectorIndexManager.Action> actions = PgVectorIndexManager.plan(props, false, 250_000, Map.of(), List.of());
+
+        assertTrue(actions.isEmpty());
+        assertTrue(PgVectorIndexManager.supportsIterativeScans("0.8.0"));
+        assertTrue(PgVectorIndexManager.supportsIterativeScans("1.0"));
+        assertFalse(PgVectorIndexManager.supportsIterativeScans("0.7.4"));
+        assertFalse(PgVectorIndexManager.supportsIterativeScans(null));
+    }
+
+    @Test
+    void invalidAndShrunkIndexesAreDroppedFirst() {
+        List<PgVectorIndexManager.AnnIndex> existing = List.of(
+                index(PgVectorIndexManager.GLOBAL_INDEX, null, true),
+                index("idx_patient_file_chunks_embedding_p7", 7L, false),
+                index("idx_patient_file_chunks_embedding_p8", 8L, true),
+                index("idx_patient_file_chunks_embedding_p9", 9L, true));
+
+        // 8 shrank below half the threshold, 9 is still above it
+        List<PgVectorIndexManager.Action> actions = PgVectorIndexManager.plan(props, true, 250_000,
+                Map.of(7L, 30_000L, 8L, 9_000L, 9L, 11_000L), existing);
+
+        assertEquals(3, actions.size());
+        assertFalse(actions.get(0).create());
+        assertEquals("idx_patient_file_chunks_embedding_p7", actions.get(0).indexName());
+        assertFalse(actions.get(1).create());
+        assertEquals("idx_patient_file_chunks_embedding_p8", actions.get(1).indexName());
+        // the invalid index of 7 is rebuilt
+        assertTrue(actions.get(2).create());
+        assertEquals(7L, actions.get(2).patientId());
+    }
+
+    @Test
+    void createStatementsFollowTheIndexType() {
+        PgVectorIndexManager.Action partial = new PgVectorIndexManager.Action(true, "idx_patient_file_chunks_embedding_p7", 7L, 40_000);
+
+        assertEquals("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_patient_file_chunks_embedding_p7 ON patient_file_chunks "
+                + "USING hnsw (embedding vector_l2_ops) WITH (m = 16, ef_construction = 64) WHERE patient_id = 7",
+                PgVectorIndexManager.createSql(props, partial));
+
+        props.setType(RagVectorIndexProperties.Type.IVFFLAT);
+        assertTrue(PgVectorIndexManager.createSql(props, partial).contains("ivfflat (embedding vector_l2_ops) WITH (lists = 40)"));
+        assertEquals(10, PgVectorIndexManager.lists(props, 2_000));
+        assertEquals(2_000, PgVectorIndexManager.lists(props, 4_000_000));
+        props.setLists(64);
+        assertEquals(64, PgVectorIndexManager.lists(props, 4_000_000));
+    }
+
+    @Test
+    void patientIdIsReadFromThePartialPredicate() {
+        assertEquals(42L, PgVectorIndexManager.patientOf("(patient_id = 42)"));
+        assertEquals(42L, PgVectorIndexManager.patientOf("(patient_id = '42'::bigint)"));
+        assertNull(PgVectorIndexManager.patientOf(null));
+        assertNull(PgVectorIndexManager.patientOf("(file_id IS NOT NULL)"));
+    }
+
+    @Test
+    void efSearchScalesWithKPerScopeAndFilter() {
+        RagVectorIndexProperties.EfSearch ef = props.getEfSearch();
+        RagVectorIndexProperties.ScopeSettings patient = new RagVectorIndexProperties.ScopeSettings();
+        patient.setFactor(8.0);
+        ef.getScopes().put(PatientFileRagQueryService.SCOPE_PATIENT, patient);
+
+        assertEquals(40, ef.forQuery(PatientFileRagQueryService.SCOPE_FILE, 5, false));
+        assertEquals(120, ef.forQuery(PatientFileRagQueryService.SCOPE_FILE, 30, false));
+        assertEquals(240, ef.forQuery(PatientFileRagQueryService.SCOPE_PATIENT, 30, false));
+        assertEquals(400, ef.forQuery(PatientFileRagQueryService.SCOPE_PATIENT, 30, true));
+    }
+
+    private static PgVectorIndexManager.AnnIndex index(String name, Long patientId, boolean valid) {
+        return new PgVectorIndexManager.AnnIndex(name, "hnsw", patientId, valid, 0, 0, 0);
+    }
+}
@@ -0,0 +1,69 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryEmbeddingCacheTest {
+
+    private final AtomicInteger providerCalls = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void normalizedRepeatsAreServedFromCache() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(countingService(), 10, 1_000, now::get);
+
+        float[] first = cache.embed("Ce tratament are pacientul?");
+        float[] second = cache.embed("  ce TRATAMENT are\tpacientul ");
+
+        assertSame(first, second);
+        assertEquals(1, providerCalls.get());
+        assertEquals(0.5, cache.stats().hitRate(), 1e-9);
+    }
+
+    @Test
+    void expiredEntriesAreEmbeddedAgain() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(countingService(), 10, 1_000, now::get);
+
+        cache.embed("hemoglobina");
+        now.addAndGet(1_000);
+        cache.embed("hemoglobina");
+
+        assertEquals(2, providerCalls.get());
+        assertEquals(0, cache.stats().hits());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(countingService(), 2, 1_000, now::get);
+
+        cache.embed("a");
+        cache.embed("b");
+        cache.embed("a");
+        cache.embed("c"); // evicts b
+        cache.embed("a");
+        cache.embed("b");
+
+        assertEquals(4, providerCalls.get());
+        assertEquals(2, cache.stats().evictions());
+        assertEquals(2, cache.stats().size());
+    }
+
+    private EmbeddingService countingService() {
+        LocalHashEmbeddingProvider local = new LocalHashEmbeddingProvider(16);
+        EmbeddingProvider counting = new EmbeddingProvider() {
+            public String modelId() { return local.modelId(); }
+            public int dimensions() { return local.dimensions(); }
+            public int maxBatchSize() { return 16; }
+            public List<float[]> embedBatch(List<String> texts) {
+                providerCalls.incrementAndGet();
+                return local.embedBatch(texts);
+            }
+        };
+        return new EmbeddingService(counting, Runnable::run, 16);
+    }
+}
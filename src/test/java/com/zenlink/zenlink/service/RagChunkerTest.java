@@ -0,0 +1,76 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RagChunkerTest {
+
+    private final RagChunker chunker = new RagChunker();
+
+    @Test
+    void chunksEndOnSentenceBoundariesWithinBudget() {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            page.append("Pacientul prezintă durere la nivelul dintelui ").append(30 + i % 10)
+                    .append(", tratată cu amoxicilină 500 mg de trei ori pe zi. ");
+        }
+        RagChunker.Profile profile = new RagChunker.Profile(120, 40);
+
+        List<RagChunker.Chunk> chunks = chunker.chunkPage(1, page, profile);
+
+        assertTrue(chunks.size() > 3);
+        for (RagChunker.Chunk c : chunks) {
+            assertTrue(RagChunker.estimateTokens(c.text()) <= 120, "over budget: " + c.text());
+            assertTrue(c.text().startsWith("Pacientul"), "starts mid-sentence: " + c.text());
+            assertTrue(c.text().endsWith("zi."), "ends mid-sentence: " + c.text());
+            assertEquals(c.text(), page.substring(c.charStart(), c.charEnd()));
+        }
+        // consecutive chunks overlap by (at least) one sentence
+        assertTrue(chunks.get(1).charStart() < chunks.get(0).charEnd());
+    }
+
+    @Test
+    void romanianAbbreviationsAndInitialsDoNotEndSentences() {
+        String sentence = "Consult efectuat de Dr. I. Popescu la ora 10, str. Mihai Eminescu nr. 5, tab. 3 și obs. finale. ";
+        String page = sentence.repeat(12);
+
+        List<RagChunker.Chunk> chunks = chunker.chunkPage(2, page, new RagChunker.Profile(60, 0));
+
+        for (RagChunker.Chunk c : chunks) {
+            assertTrue(c.text().startsWith("Consult"), "split after an abbreviation: " + c.text());
+            assertEquals(2, c.pageNumber());
+        }
+    }
+
+    @Test
+    void paragraphBreaksArePreferredOverLineBreaks() {
+        String para = "Hemoglobina 13.5 g/dl\nLeucocite 6000/mm3\nTrombocite 250000/mm3";
+        String page = String.join("\n\n", para, para, para, para, para, para);
+
+        List<RagChunker.Chunk> chunks = chunker.chunkPage(1, page, new RagChunker.Profile(40, 0));
+
+        for (RagChunker.Chunk c : chunks) {
+            assertTrue(c.text().startsWith("Hemoglobina"), c.text());
+            assertTrue(c.text().endsWith("250000/mm3"), c.text());
+        }
+    }
+
+    @Test
+    void wordsLongerThanTheBudgetAreSplitByCharacters() {
+        String page = "start " + "x".repeat(500) + " end";
+
+        List<RagChunker.Chunk> chunks = chunker.chunkPage(1, page, new RagChunker.Profile(16, 0));
+
+        assertEquals(page.replace(" ", ""), String.join("", chunks.stream().map(c -> c.text().replace(" ", "")).toList()));
+        for (int i = 0; i < chunks.size(); i++) assertEquals(i, chunks.get(i).chunkIndex());
+    }
+
+    @Test
+    void blankPagesHaveNoChunks() {
+        assertTrue(chunker.chunkPage(1, " \n\t ", new RagChunker.Profile(100, 10)).isEmpty());
+        assertEquals(1, chunker.chunkPage(1, "  Diagnostic: carie.  ", new RagChunker.Profile(100, 10)).size());
+    }
+}
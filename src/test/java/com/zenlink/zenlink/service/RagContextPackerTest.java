@@ -0,0 +1,62 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RagContextPackerTest {
+
+    private static final UUID FILE_A = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID FILE_B = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+    private static final String PAGE = "Hemoglobina 13.5 g/dl. Leucocite 6000/mm3. Trombocite 250000/mm3. Glicemie 95 mg/dl.";
+
+    @Test
+    void overlappingChunksOfAPageAreMergedOnce() {
+        List<PatientFileRagQueryService.RagHit> hits = List.of(
+                hit(1, FILE_B, 3, 0, 20, "Alt document, alt text"),
+                hit(2, FILE_A, 1, 23, 66, PAGE.substring(23, 66)),
+                hit(3, FILE_A, 1, 0, 42, PAGE.substring(0, 42)),
+                hit(4, FILE_A, 1, 44, PAGE.length(), PAGE.substring(44)));
+
+        List<RagContextPacker.Passage> passages = RagContextPacker.passages(hits);
+
+        assertEquals(2, passages.size());
+        assertEquals(FILE_B, passages.get(0).fileId());
+        assertEquals(PAGE, passages.get(1).text());
+        assertEquals(1, passages.get(1).rank());
+    }
+
+    @Test
+    void passagesWithoutOffsetsAreKeptButNotDuplicated() {
+        List<PatientFileRagQueryService.RagHit> hits = List.of(
+                hit(1, FILE_A, 1, -1, -1, "Diagnostic: carie"),
+                hit(2, FILE_A, 2, -1, -1, "Diagnostic: carie"),
+                hit(3, FILE_A, 2, -1, -1, "Tratament: obturație"));
+
+        assertEquals(List.of("Diagnostic: carie", "Tratament: obturație"),
+                RagContextPacker.passages(hits).stream().map(RagContextPacker.Passage::text).toList());
+    }
+
+    @Test
+    void contextStaysWithinTheTokenBudgetAndKeepsCitations() {
+        String sentence = "Pacientul prezintă durere la nivelul dintelui 36, tratată cu amoxicilină 500 mg. ";
+        List<PatientFileRagQueryService.RagHit> hits = List.of(
+                hit(1, FILE_A, 4, -1, -1, sentence.repeat(30)),
+                hit(2, FILE_B, 7, -1, -1, sentence.repeat(30)));
+
+        String context = new RagContextPacker(300).pack(hits);
+
+        assertTrue(RagChunker.estimateTokens(context) <= 300 + 5, "tokens: " + RagChunker.estimateTokens(context));
+        assertTrue(context.startsWith(RagContextPacker.HEADER));
+        assertTrue(context.contains("[1] Fișier: analize.pdf (" + FILE_A + "), pag. 4"));
+        assertTrue(context.contains("…"));
+        assertFalse(context.contains(FILE_B.toString())); // no room left for a useful part of the second hit
+    }
+
+    private static PatientFileRagQueryService.RagHit hit(long id, UUID fileId, int page, int start, int end, String text) {
+        return new PatientFileRagQueryService.RagHit(id, fileId, "analize.pdf", page, start, end, text, 0.1);
+    }
+}
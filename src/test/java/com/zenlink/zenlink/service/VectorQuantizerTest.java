@@ -0,0 +1,16 @@
+package com.zenlink.zenlink.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorQuantizerTest {
+
+    @Test
+    void signBitsFollowPostgresBitOrder() {
+        float[] v = {0.5f, -1f, 0f, 2f, -0.1f, 0.3f, 0.3f, -2f, 1f};
+
+        assertEquals("100101101", VectorQuantizer.signBitLiteral(v));
+        assertArrayEquals(new byte[]{(byte) 0b10010110, (byte) 0b10000000}, VectorQuantizer.signBitBytes(v));
+    }
+}